@@ -0,0 +1,222 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * CRSHelper.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+/**
+ * Helper class for coordinate reference systems: decoding of CRS codes
+ * and lookup of the math transforms between two CRSs are cached, and
+ * coordinates can be transformed in bulk (optionally in parallel).
+ * <br>
+ * CRS codes get decoded with longitude first, ie the same axis order as
+ * {@link org.geotools.referencing.crs.DefaultGeographicCRS#WGS84}.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class CRSHelper {
+
+  /** the minimum number of points per thread. */
+  public final static int MIN_POINTS_PER_THREAD = 10000;
+
+  /**
+   * Key for the transforms cache.
+   */
+  protected static class TransformKey {
+
+    /** the source CRS. */
+    protected CoordinateReferenceSystem m_Source;
+
+    /** the target CRS. */
+    protected CoordinateReferenceSystem m_Target;
+
+    /** the hashcode. */
+    protected int m_HashCode;
+
+    /**
+     * Initializes the key.
+     *
+     * @param source	the source CRS
+     * @param target	the target CRS
+     */
+    public TransformKey(CoordinateReferenceSystem source, CoordinateReferenceSystem target) {
+      m_Source   = source;
+      m_Target   = target;
+      m_HashCode = 31 * source.hashCode() + target.hashCode();
+    }
+
+    /**
+     * Returns the hashcode.
+     *
+     * @return		the hashcode
+     */
+    @Override
+    public int hashCode() {
+      return m_HashCode;
+    }
+
+    /**
+     * Checks whether the object is the same key.
+     *
+     * @param obj	the object to compare with
+     * @return		true if the same source/target CRS
+     */
+    @Override
+    public boolean equals(Object obj) {
+      TransformKey	other;
+
+      if (!(obj instanceof TransformKey))
+	return false;
+      other = (TransformKey) obj;
+
+      return (m_HashCode == other.m_HashCode) && m_Source.equals(other.m_Source) && m_Target.equals(other.m_Target);
+    }
+  }
+
+  /** the decoded CRSs (code - CRS). */
+  protected static Map<String,CoordinateReferenceSystem> m_CRSs;
+
+  /** the transforms (source/target - transform). */
+  protected static Map<TransformKey,MathTransform> m_Transforms;
+  static {
+    m_CRSs       = new ConcurrentHashMap<String,CoordinateReferenceSystem>();
+    m_Transforms = new ConcurrentHashMap<TransformKey,MathTransform>();
+  }
+
+  /**
+   * Decodes the CRS code (eg "EPSG:4326"), using longitude first.
+   *
+   * @param code	the code to decode
+   * @return		the CRS
+   * @throws FactoryException	if decoding fails
+   */
+  public static CoordinateReferenceSystem decode(String code) throws FactoryException {
+    CoordinateReferenceSystem	result;
+
+    result = m_CRSs.get(code);
+    if (result == null) {
+      result = CRS.decode(code, true);
+      m_CRSs.put(code, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the (lenient) transform from the source to the target CRS.
+   *
+   * @param source	the source CRS
+   * @param target	the target CRS
+   * @return		the transform
+   * @throws FactoryException	if no transform can be determined
+   */
+  public static MathTransform findTransform(CoordinateReferenceSystem source, CoordinateReferenceSystem target) throws FactoryException {
+    MathTransform	result;
+    TransformKey	key;
+
+    key    = new TransformKey(source, target);
+    result = m_Transforms.get(key);
+    if (result == null) {
+      result = CRS.findMathTransform(source, target, true);
+      m_Transforms.put(key, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes all cached CRSs and transforms.
+   */
+  public static void clearCache() {
+    m_CRSs.clear();
+    m_Transforms.clear();
+  }
+
+  /**
+   * Transforms the coordinates in place.
+   *
+   * @param transform	the transform to apply
+   * @param coords	the interleaved coordinates (x1, y1, x2, y2, ...)
+   * @param numThreads	the number of threads to use, -1 for all cores
+   * @throws Exception	if transformation fails
+   */
+  public static void transform(final MathTransform transform, final double[] coords, int numThreads) throws Exception {
+    int				numPoints;
+    int				chunk;
+    int				i;
+    ExecutorService		executor;
+    List<Future<Object>>	jobs;
+
+    if (transform.getSourceDimensions() != 2)
+      throw new IllegalArgumentException("Transform is not two-dimensional: " + transform.getSourceDimensions());
+    if (coords.length % 2 != 0)
+      throw new IllegalArgumentException("Odd number of ordinates: " + coords.length);
+
+    numPoints = coords.length / 2;
+    if (numPoints == 0)
+      return;
+    if (transform.isIdentity())
+      return;
+
+    if (numThreads == -1)
+      numThreads = Runtime.getRuntime().availableProcessors();
+    numThreads = Math.max(1, Math.min(numThreads, numPoints / MIN_POINTS_PER_THREAD));
+
+    if (numThreads == 1) {
+      transform.transform(coords, 0, coords, 0, numPoints);
+    }
+    else {
+      chunk    = (int) Math.ceil((double) numPoints / numThreads);
+      executor = Executors.newFixedThreadPool(numThreads);
+      jobs     = new ArrayList<Future<Object>>();
+      try {
+	for (i = 0; i < numPoints; i += chunk) {
+	  final int from = i;
+	  final int num  = Math.min(chunk, numPoints - i);
+	  jobs.add(executor.submit(new Callable<Object>() {
+	    @Override
+	    public Object call() throws Exception {
+	      transform.transform(coords, from * 2, coords, from * 2, num);
+	      return null;
+	    }
+	  }));
+	}
+	for (Future<Object> job: jobs)
+	  job.get();
+      }
+      finally {
+	executor.shutdownNow();
+      }
+    }
+  }
+}
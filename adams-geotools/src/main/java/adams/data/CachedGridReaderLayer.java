@@ -0,0 +1,67 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * CachedGridReaderLayer.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.data;
+
+import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.geotools.map.GridReaderLayer;
+import org.geotools.styling.Style;
+
+/**
+ * Grid reader layer that uses a reader obtained from the
+ * {@link GridCoverageReaderCache} and releases it again when the layer
+ * gets disposed.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class CachedGridReaderLayer
+  extends GridReaderLayer {
+
+  /** the cached reader. */
+  protected AbstractGridCoverage2DReader m_CachedReader;
+
+  /**
+   * Initializes the layer.
+   *
+   * @param reader	the reader acquired from the cache
+   * @param style	the style to use
+   */
+  public CachedGridReaderLayer(AbstractGridCoverage2DReader reader, Style style) {
+    super(reader, style);
+    m_CachedReader = reader;
+  }
+
+  /**
+   * Releases the reader (only once) and disposes the layer.
+   */
+  @Override
+  public void dispose() {
+    AbstractGridCoverage2DReader	reader;
+
+    synchronized(this) {
+      reader         = m_CachedReader;
+      m_CachedReader = null;
+    }
+    if (reader != null)
+      GridCoverageReaderCache.release(reader);
+
+    super.dispose();
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * GPSDistanceHelper.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geotools.referencing.GeodeticCalculator;
+import org.geotools.referencing.datum.DefaultEllipsoid;
+
+/**
+ * Helper class for calculating distances (in metres) between GPS
+ * locations, either single ones or in bulk.
+ * <br>
+ * Distances on the sphere ({@link DefaultEllipsoid#SPHERE}) use the
+ * haversine formula, distances on the ellipsoid ({@link DefaultEllipsoid#WGS84})
+ * use a geodetic calculator that is re-used per thread.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class GPSDistanceHelper {
+
+  /** the radius of the sphere (in metres). */
+  public final static double SPHERE_RADIUS = DefaultEllipsoid.SPHERE.getSemiMajorAxis();
+
+  /** the calculators for WGS84 (per thread). */
+  protected static ThreadLocal<GeodeticCalculator> m_CalculatorWGS84;
+  static {
+    m_CalculatorWGS84 = new ThreadLocal<GeodeticCalculator>() {
+      @Override
+      protected GeodeticCalculator initialValue() {
+	return new GeodeticCalculator(DefaultEllipsoid.WGS84);
+      }
+    };
+  }
+
+  /**
+   * Calculates the distance on the sphere using the haversine formula.
+   *
+   * @param long1	the longitude of the first location
+   * @param lat1	the latitude of the first location
+   * @param long2	the longitude of the second location
+   * @param lat2	the latitude of the second location
+   * @return		the distance in metres
+   */
+  public static double haversine(double long1, double lat1, double long2, double lat2) {
+    double	phi1;
+    double	phi2;
+
+    phi1 = Math.toRadians(lat1);
+    phi2 = Math.toRadians(lat2);
+
+    return haversine(Math.toRadians(long1), phi1, Math.cos(phi1), Math.toRadians(long2), phi2, Math.cos(phi2));
+  }
+
+  /**
+   * Calculates the distance on the sphere using the haversine formula,
+   * using precomputed radians and cosines of the latitudes.
+   *
+   * @param lambda1	the longitude of the first location (radians)
+   * @param phi1	the latitude of the first location (radians)
+   * @param cosPhi1	the cosine of the first latitude
+   * @param lambda2	the longitude of the second location (radians)
+   * @param phi2	the latitude of the second location (radians)
+   * @param cosPhi2	the cosine of the second latitude
+   * @return		the distance in metres
+   */
+  protected static double haversine(double lambda1, double phi1, double cosPhi1, double lambda2, double phi2, double cosPhi2) {
+    double	sinDPhi;
+    double	sinDLambda;
+    double	h;
+
+    sinDPhi    = Math.sin((phi2 - phi1) / 2.0);
+    sinDLambda = Math.sin((lambda2 - lambda1) / 2.0);
+    h          = sinDPhi * sinDPhi + cosPhi1 * cosPhi2 * sinDLambda * sinDLambda;
+
+    return 2.0 * SPHERE_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+  }
+
+  /**
+   * Calculates the distance on the WGS84 ellipsoid.
+   *
+   * @param long1	the longitude of the first location
+   * @param lat1	the latitude of the first location
+   * @param long2	the longitude of the second location
+   * @param lat2	the latitude of the second location
+   * @return		the distance in metres
+   */
+  public static double wgs84(double long1, double lat1, double long2, double lat2) {
+    GeodeticCalculator	calculator;
+
+    calculator = m_CalculatorWGS84.get();
+    calculator.setStartingGeographicPoint(long1, lat1);
+    calculator.setDestinationGeographicPoint(long2, lat2);
+
+    return calculator.getOrthodromicDistance();
+  }
+
+  /**
+   * Calculates the distance.
+   *
+   * @param type	the type of distance
+   * @param long1	the longitude of the first location
+   * @param lat1	the latitude of the first location
+   * @param long2	the longitude of the second location
+   * @param lat2	the latitude of the second location
+   * @return		the distance in metres
+   */
+  public static double distance(GPSDistanceType type, double long1, double lat1, double long2, double lat2) {
+    switch (type) {
+      case SPHERE:
+	return haversine(long1, lat1, long2, lat2);
+      case WGS84:
+	return wgs84(long1, lat1, long2, lat2);
+      default:
+	throw new IllegalStateException("Unhandled distance type: " + type);
+    }
+  }
+
+  /**
+   * Calculates the distances of the specified row of the matrix. Pairs with
+   * a missing coordinate (NaN) get NaN as distance for both types.
+   *
+   * @param type	the type of distance
+   * @param long1	the longitudes of the first set
+   * @param lat1	the latitudes of the first set
+   * @param long2	the longitudes of the second set
+   * @param lat2	the latitudes of the second set
+   * @param rad		the precomputed values for the sphere (lambda1, phi1, cos1, lambda2, phi2, cos2), null for WGS84
+   * @param row		the row to compute
+   * @param symmetric	whether only to compute the upper triangle
+   * @param matrix	the matrix to fill in
+   */
+  protected static void distances(GPSDistanceType type, double[] long1, double[] lat1, double[] long2, double[] lat2, double[][] rad, int row, boolean symmetric, double[][] matrix) {
+    int		n;
+    boolean	missing;
+
+    missing = Double.isNaN(long1[row]) || Double.isNaN(lat1[row]);
+    if (symmetric && missing)
+      matrix[row][row] = Double.NaN;
+
+    for (n = (symmetric ? row + 1 : 0); n < long2.length; n++) {
+      if (missing || Double.isNaN(long2[n]) || Double.isNaN(lat2[n]))
+	matrix[row][n] = Double.NaN;
+      else if (type == GPSDistanceType.SPHERE)
+	matrix[row][n] = haversine(rad[0][row], rad[1][row], rad[2][row], rad[3][n], rad[4][n], rad[5][n]);
+      else
+	matrix[row][n] = wgs84(long1[row], lat1[row], long2[n], lat2[n]);
+      if (symmetric)
+	matrix[n][row] = matrix[row][n];
+    }
+  }
+
+  /**
+   * Calculates the distance matrix between the two sets of locations
+   * (point-to-set). If both sets are the same arrays, only the upper
+   * triangle gets computed (pairwise). Locations with missing coordinates
+   * (NaN) result in NaN distances.
+   *
+   * @param type	the type of distance
+   * @param long1	the longitudes of the first set (rows)
+   * @param lat1	the latitudes of the first set (rows)
+   * @param long2	the longitudes of the second set (columns)
+   * @param lat2	the latitudes of the second set (columns)
+   * @param numThreads	the number of threads to use, -1 for all cores
+   * @return		the distances in metres
+   * @throws Exception	if computation fails
+   */
+  public static double[][] distances(final GPSDistanceType type, final double[] long1, final double[] lat1, final double[] long2, final double[] lat2, int numThreads) throws Exception {
+    final double[][]		result;
+    final double[][]		rad;
+    final boolean		symmetric;
+    final int			threads;
+    ExecutorService		executor;
+    List<Future<Object>>	jobs;
+    int				i;
+
+    if (long1.length != lat1.length)
+      throw new IllegalArgumentException("Number of longitudes and latitudes differ (first set): " + long1.length + " != " + lat1.length);
+    if (long2.length != lat2.length)
+      throw new IllegalArgumentException("Number of longitudes and latitudes differ (second set): " + long2.length + " != " + lat2.length);
+
+    symmetric = (long1 == long2) && (lat1 == lat2);
+    result    = new double[long1.length][long2.length];
+
+    // precompute radians/cosines
+    if (type == GPSDistanceType.SPHERE) {
+      rad = new double[6][];
+      rad[0] = new double[long1.length];
+      rad[1] = new double[long1.length];
+      rad[2] = new double[long1.length];
+      for (i = 0; i < long1.length; i++) {
+	rad[0][i] = Math.toRadians(long1[i]);
+	rad[1][i] = Math.toRadians(lat1[i]);
+	rad[2][i] = Math.cos(rad[1][i]);
+      }
+      if (symmetric) {
+	rad[3] = rad[0];
+	rad[4] = rad[1];
+	rad[5] = rad[2];
+      }
+      else {
+	rad[3] = new double[long2.length];
+	rad[4] = new double[long2.length];
+	rad[5] = new double[long2.length];
+	for (i = 0; i < long2.length; i++) {
+	  rad[3][i] = Math.toRadians(long2[i]);
+	  rad[4][i] = Math.toRadians(lat2[i]);
+	  rad[5][i] = Math.cos(rad[4][i]);
+	}
+      }
+    }
+    else {
+      rad = null;
+    }
+
+    if (numThreads == -1)
+      numThreads = Runtime.getRuntime().availableProcessors();
+    threads = Math.max(1, Math.min(numThreads, long1.length));
+
+    if (threads == 1) {
+      for (i = 0; i < long1.length; i++)
+	distances(type, long1, lat1, long2, lat2, rad, i, symmetric, result);
+    }
+    else {
+      // rows get interleaved, which balances the work for the upper triangle
+      executor = Executors.newFixedThreadPool(threads);
+      jobs     = new ArrayList<>();
+      try {
+	for (i = 0; i < threads; i++) {
+	  final int offset = i;
+	  jobs.add(executor.submit(new Callable<Object>() {
+	    @Override
+	    public Object call() throws Exception {
+	      for (int row = offset; row < long1.length; row += threads)
+		distances(type, long1, lat1, long2, lat2, rad, row, symmetric, result);
+	      return null;
+	    }
+	  }));
+	}
+	for (Future<Object> job: jobs)
+	  job.get();
+      }
+      finally {
+	executor.shutdownNow();
+      }
+    }
+
+    return result;
+  }
+}
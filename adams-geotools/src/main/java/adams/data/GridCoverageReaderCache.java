@@ -0,0 +1,265 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * GridCoverageReaderCache.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.data;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.geotools.coverage.grid.io.OverviewPolicy;
+
+import adams.core.logging.LoggingHelper;
+
+/**
+ * Process-wide cache of raster coverage readers, keyed by canonical file
+ * and overview policy. Opening the same raster file multiple times (e.g.,
+ * in several map displays) therefore shares a single reader, along with
+ * its headers and tile caches. The modification time of the file gets
+ * checked on lookup, replacing the reader of a modified file with a new
+ * one (the outdated reader gets disposed once no longer referenced).
+ * <br>
+ * Readers are reference counted: each {@link #acquire(File, OverviewPolicy)}
+ * must be matched by a {@link #release(AbstractGridCoverage2DReader)}, which
+ * {@link CachedGridReaderLayer} performs when getting disposed. Readers that
+ * are no longer referenced are kept for re-use, with the least recently
+ * used ones getting disposed once more than {@link #getMaxIdle()} are idle.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class GridCoverageReaderCache {
+
+  /**
+   * Container for a cached reader.
+   */
+  protected static class CacheEntry {
+
+    /** the key of the entry. */
+    public String key;
+
+    /** the modification time of the file when the reader was created. */
+    public long lastModified;
+
+    /** the reader. */
+    public AbstractGridCoverage2DReader reader;
+
+    /** the reference count. */
+    public int references;
+  }
+
+  /** the default number of idle readers to keep. */
+  public final static int DEFAULT_MAX_IDLE = 8;
+
+  /** the entries (key - entry), in access order. */
+  protected static Map<String,CacheEntry> m_Entries;
+
+  /** the entries per reader. */
+  protected static Map<AbstractGridCoverage2DReader,CacheEntry> m_Readers;
+
+  /** the maximum number of idle readers. */
+  protected static int m_MaxIdle;
+
+  /** the logger in use. */
+  protected static Logger LOGGER;
+
+  static {
+    m_Entries = new LinkedHashMap<>(16, 0.75f, true);
+    m_Readers = new IdentityHashMap<>();
+    m_MaxIdle = DEFAULT_MAX_IDLE;
+    LOGGER    = LoggingHelper.getLogger(GridCoverageReaderCache.class);
+  }
+
+  /**
+   * Generates the key for the file.
+   *
+   * @param file	the raster file
+   * @param policy	the overview policy
+   * @return		the key
+   */
+  protected static String createKey(File file, OverviewPolicy policy) {
+    String	path;
+
+    try {
+      path = file.getAbsoluteFile().getCanonicalPath();
+    }
+    catch (Exception e) {
+      path = file.getAbsolutePath();
+    }
+
+    return path + "\t" + policy;
+  }
+
+  /**
+   * Disposes the reader of the entry.
+   *
+   * @param entry	the entry to dispose
+   */
+  protected static void dispose(CacheEntry entry) {
+    m_Readers.remove(entry.reader);
+    try {
+      entry.reader.dispose();
+    }
+    catch (Exception e) {
+      LOGGER.log(Level.WARNING, "Failed to dispose reader: " + entry.key, e);
+    }
+  }
+
+  /**
+   * Disposes the least recently used idle readers, if there are more idle
+   * readers than allowed.
+   */
+  protected static void trim() {
+    Iterator<CacheEntry>	iter;
+    CacheEntry			entry;
+    int				idle;
+
+    idle = 0;
+    for (CacheEntry e: m_Entries.values()) {
+      if (e.references == 0)
+	idle++;
+    }
+
+    iter = m_Entries.values().iterator();
+    while ((idle > m_MaxIdle) && iter.hasNext()) {
+      entry = iter.next();
+      if (entry.references > 0)
+	continue;
+      iter.remove();
+      dispose(entry);
+      idle--;
+    }
+  }
+
+  /**
+   * Returns the reader for the specified file, either a cached one or a
+   * newly created one. Must be matched by a call to
+   * {@link #release(AbstractGridCoverage2DReader)}.
+   *
+   * @param file	the raster file
+   * @param policy	the overview policy to use
+   * @return		the reader
+   * @throws Exception	if creation of reader fails
+   * @see		RasterImageHelper#createReader(File, OverviewPolicy)
+   */
+  public static synchronized AbstractGridCoverage2DReader acquire(File file, OverviewPolicy policy) throws Exception {
+    String	key;
+    CacheEntry	entry;
+
+    key   = createKey(file, policy);
+    entry = m_Entries.get(key);
+
+    // outdated reader (file got modified in the meantime)?
+    if ((entry != null) && (entry.lastModified != file.lastModified())) {
+      if (LOGGER.isLoggable(Level.FINE))
+	LOGGER.fine("Outdated reader: " + key);
+      m_Entries.remove(key);
+      if (entry.references == 0)
+	dispose(entry);
+      entry = null;
+    }
+
+    if (entry == null) {
+      entry              = new CacheEntry();
+      entry.key          = key;
+      entry.lastModified = file.lastModified();
+      entry.reader       = RasterImageHelper.createReader(file.getAbsoluteFile(), policy);
+      m_Entries.put(key, entry);
+      m_Readers.put(entry.reader, entry);
+      if (LOGGER.isLoggable(Level.FINE))
+	LOGGER.fine("New reader: " + key);
+    }
+    else {
+      if (LOGGER.isLoggable(Level.FINE))
+	LOGGER.fine("Cached reader: " + key);
+    }
+    entry.references++;
+
+    return entry.reader;
+  }
+
+  /**
+   * Releases the reader. Once no longer referenced, the reader is either
+   * kept for re-use or disposed (if outdated or too many idle readers).
+   * Readers not managed by the cache get ignored.
+   *
+   * @param reader	the reader to release
+   */
+  public static synchronized void release(AbstractGridCoverage2DReader reader) {
+    CacheEntry	entry;
+
+    entry = m_Readers.get(reader);
+    if (entry == null)
+      return;
+
+    entry.references--;
+    if (entry.references > 0)
+      return;
+    entry.references = 0;
+
+    // outdated reader (file got modified in the meantime)?
+    if (m_Entries.get(entry.key) != entry)
+      dispose(entry);
+    else
+      trim();
+  }
+
+  /**
+   * Sets the maximum number of idle readers to keep.
+   *
+   * @param value	the maximum, 0 to dispose readers immediately
+   */
+  public static synchronized void setMaxIdle(int value) {
+    if (value >= 0) {
+      m_MaxIdle = value;
+      trim();
+    }
+  }
+
+  /**
+   * Returns the maximum number of idle readers to keep.
+   *
+   * @return		the maximum
+   */
+  public static synchronized int getMaxIdle() {
+    return m_MaxIdle;
+  }
+
+  /**
+   * Disposes all idle readers.
+   */
+  public static synchronized void clear() {
+    Iterator<CacheEntry>	iter;
+    CacheEntry			entry;
+
+    iter = m_Entries.values().iterator();
+    while (iter.hasNext()) {
+      entry = iter.next();
+      if (entry.references > 0)
+	continue;
+      iter.remove();
+      dispose(entry);
+    }
+  }
+}
@@ -15,16 +15,29 @@
 
 /**
  * RasterImageHelper.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.data;
 
+import java.awt.image.ColorModel;
+import java.awt.image.SampleModel;
+import java.io.File;
 import java.io.IOException;
 
+import javax.media.jai.ImageLayout;
+
 import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.TypeMap;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.GridFormatFinder;
+import org.geotools.coverage.grid.io.OverviewPolicy;
+import org.geotools.coverage.grid.io.UnknownFormat;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
 import org.geotools.styling.ChannelSelection;
 import org.geotools.styling.ContrastEnhancement;
 import org.geotools.styling.RasterSymbolizer;
@@ -32,7 +45,10 @@ import org.geotools.styling.SLD;
 import org.geotools.styling.SelectedChannelType;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleFactory;
+import org.opengis.coverage.ColorInterpretation;
 import org.opengis.filter.FilterFactory2;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
 import org.opengis.style.ContrastMethod;
 
 import adams.core.License;
@@ -61,6 +77,28 @@ public class RasterImageHelper {
   /** constant for the BLUE channel. */
   public final static int BLUE = 2;
 
+  /**
+   * Creates a reader for the specified raster file. The overview policy
+   * determines which overview (reduced-resolution level, internal or
+   * external ".ovr" file) the reader uses for the requested render scale.
+   *
+   * @param file	the raster file to read
+   * @param policy	the overview policy to use
+   * @return		the reader
+   * @throws Exception	if format unsupported or reader cannot be created
+   */
+  public static AbstractGridCoverage2DReader createReader(File file, OverviewPolicy policy) throws Exception {
+    AbstractGridFormat 	format;
+    Hints		hints;
+
+    format = GridFormatFinder.findFormat(file);
+    if ((format == null) || (format instanceof UnknownFormat))
+      throw new IllegalStateException("Unsupported raster format: " + file);
+    hints = new Hints(Hints.OVERVIEW_POLICY, policy);
+
+    return format.getReader(file, hints);
+  }
+
   /**
    * Create a Style to display the specified band of the GeoTIFF image
    * as a greyscale layer.
@@ -87,6 +125,56 @@ public class RasterImageHelper {
     return SLD.wrapSymbolizers(sym);
   }
 
+  /**
+   * Determines the names of the bands without decoding the coverage.
+   * The band count and color interpretation are taken from the image layout
+   * of the reader (i.e., the metadata). If the layout is not available, a
+   * coverage of 1x1 pixel covering the whole envelope gets read instead
+   * (the reader picks the coarsest overview/subsampling for that).
+   *
+   * @param reader	the raster reader to use
+   * @return		the band names
+   * @throws IOException	if reading of metadata/coverage fails
+   */
+  public static String[] getBandNames(AbstractGridCoverage2DReader reader) throws IOException {
+    String[]				result;
+    ImageLayout				layout;
+    SampleModel				sm;
+    ColorModel				cm;
+    ColorInterpretation			ci;
+    ParameterValue<GridGeometry2D>	gg;
+    GridCoverage2D			cov;
+    GridSampleDimension			dim;
+    int					i;
+
+    layout = reader.getImageLayout();
+    sm     = (layout != null) ? layout.getSampleModel(null) : null;
+    if (sm != null) {
+      cm     = layout.getColorModel(null);
+      result = new String[sm.getNumBands()];
+      for (i = 0; i < result.length; i++) {
+	ci = (cm != null) ? TypeMap.getColorInterpretation(cm, i) : null;
+	if (ci != null)
+	  result[i] = ci.name();
+	else
+	  result[i] = "band" + (i + 1);
+      }
+      return result;
+    }
+
+    gg = AbstractGridFormat.READ_GRIDGEOMETRY2D.createValue();
+    gg.setValue(new GridGeometry2D(new GridEnvelope2D(0, 0, 1, 1), reader.getOriginalEnvelope()));
+    cov    = reader.read(new GeneralParameterValue[]{gg});
+    result = new String[cov.getNumSampleDimensions()];
+    for (i = 0; i < result.length; i++) {
+      dim       = cov.getSampleDimension(i);
+      result[i] = dim.getDescription().toString();
+    }
+    cov.dispose(true);
+
+    return result;
+  }
+
   /**
    * This method examines the names of the sample dimensions in the provided coverage looking for
    * "red...", "green..." and "blue..." (case insensitive match). If these names are not found
@@ -99,11 +187,9 @@ public class RasterImageHelper {
   public static Style createRGBStyle(AbstractGridCoverage2DReader reader) {
     StyleFactory 		sf;
     FilterFactory2 		ff;
-    GridCoverage2D 		cov;
     int 			numBands;
     String[] 			sampleDimensionNames;
     int				i;
-    GridSampleDimension 	dim;
     int[] 			channelNum;
     String 			name;
     SelectedChannelType[] 	sct;
@@ -113,24 +199,18 @@ public class RasterImageHelper {
     
     sf  = CommonFactoryFinder.getStyleFactory(null);
     ff  = CommonFactoryFinder.getFilterFactory2(null);
-    cov = null;
+    // Get the names of the bands (without decoding the coverage)
     try {
-      cov = reader.read(null);
+      sampleDimensionNames = getBandNames(reader);
     } 
     catch (IOException giveUp) {
       throw new RuntimeException(giveUp);
     }
     // We need at least three bands to create an RGB style
-    numBands = cov.getNumSampleDimensions();
+    numBands = sampleDimensionNames.length;
     if (numBands < 3)
       return null;
     
-    // Get the names of the bands
-    sampleDimensionNames = new String[numBands];
-    for (i = 0; i < numBands; i++) {
-      dim                     = cov.getSampleDimension(i);
-      sampleDimensionNames[i] = dim.getDescription().toString();
-    }
     channelNum = new int[]{-1, -1, -1};
     // We examine the band names looking for "red...", "green...", "blue...".
     // Note that the channel numbers we record are indexed from 1, not 0.
@@ -153,7 +233,7 @@ public class RasterImageHelper {
       channelNum[BLUE]  = 3;
     }
     // Now we create a RasterSymbolizer using the selected channels
-    sct = new SelectedChannelType[cov.getNumSampleDimensions()];
+    sct = new SelectedChannelType[numBands];
     ce  = sf.contrastEnhancement(ff.literal(1.0), ContrastMethod.NORMALIZE);
     for (i = 0; i < 3; i++)
       sct[i] = sf.createSelectedChannelType(String.valueOf(channelNum[i]), ce);
@@ -0,0 +1,687 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * SpreadSheetToBinnedGeoToolsLayer.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.data.conversion;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.SLD;
+import org.geotools.styling.StyleImpl;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import adams.core.QuickInfoHelper;
+import adams.data.conversion.feature.AbstractFeatureGenerator;
+import adams.data.gps.AbstractGPS;
+import adams.data.spreadsheet.Cell;
+import adams.data.spreadsheet.Row;
+import adams.data.spreadsheet.SpreadSheet;
+import adams.data.spreadsheet.SpreadSheetColumnIndex;
+import adams.data.spreadsheet.SpreadSheetColumnRange;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ <!-- globalinfo-start -->
+ * Bins the GPS locations of the spreadsheet rows into square or hexagonal cells and turns the non-empty cells into a polygon layer.<br>
+ * Each cell feature has the number of locations ('count') as attribute, as well as the sum and mean ('&lt;column&gt;_sum', '&lt;column&gt;_mean') of the numeric columns to aggregate.<br>
+ * The rows get processed in a single pass, accumulating the statistics per cell, so the size of the layer depends only on the number of occupied cells.<br>
+ * The cell size is in degrees; for hexagons, it is the distance between the centers of neighboring cells in a row.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-gps &lt;adams.data.spreadsheet.SpreadSheetColumnIndex&gt; (property: GPS)
+ * &nbsp;&nbsp;&nbsp;The index of the column containing the GPS objects.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;example: An index is a number starting with 1; apart from column names (case-sensitive), the following placeholders can be used as well: first, second, third, last_2, last_1, last
+ * </pre>
+ *
+ * <pre>-shape &lt;SQUARE|HEXAGON&gt; (property: shape)
+ * &nbsp;&nbsp;&nbsp;The shape of the cells.
+ * &nbsp;&nbsp;&nbsp;default: SQUARE
+ * </pre>
+ *
+ * <pre>-cell-size &lt;double&gt; (property: cellSize)
+ * &nbsp;&nbsp;&nbsp;The size of the cells in degrees; for hexagons, the distance between the
+ * &nbsp;&nbsp;&nbsp;centers of neighboring cells in a row.
+ * &nbsp;&nbsp;&nbsp;default: 0.01
+ * &nbsp;&nbsp;&nbsp;minimum: 1.0E-6
+ * </pre>
+ *
+ * <pre>-aggregate &lt;adams.data.spreadsheet.SpreadSheetColumnRange&gt; (property: aggregate)
+ * &nbsp;&nbsp;&nbsp;The range of numeric columns to compute sum and mean for.
+ * &nbsp;&nbsp;&nbsp;default:
+ * &nbsp;&nbsp;&nbsp;example: A range is a comma-separated list of single 1-based indices or sub-ranges of indices ('start-end'); 'inv(...)' inverts the range '...'; apart from column names (case-sensitive), the following placeholders can be used as well: first, second, third, last_2, last_1, last
+ * </pre>
+ *
+ * <pre>-featuretype-name &lt;java.lang.String&gt; (property: featureTypeName)
+ * &nbsp;&nbsp;&nbsp;The name to use for the feature type.
+ * &nbsp;&nbsp;&nbsp;default: Bins
+ * </pre>
+ *
+ * <pre>-fill-color &lt;java.awt.Color&gt; (property: fillColor)
+ * &nbsp;&nbsp;&nbsp;The fill color for the cells.
+ * &nbsp;&nbsp;&nbsp;default: #0000ff
+ * </pre>
+ *
+ * <pre>-invisible &lt;boolean&gt; (property: invisible)
+ * &nbsp;&nbsp;&nbsp;If enabled, an invisible data layer gets created.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class SpreadSheetToBinnedGeoToolsLayer
+  extends AbstractConversion {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -6391772658127436614L;
+
+  /** the attribute for the count. */
+  public final static String COUNT = "count";
+
+  /** the suffix for the sum attributes. */
+  public final static String SUFFIX_SUM = "_sum";
+
+  /** the suffix for the mean attributes. */
+  public final static String SUFFIX_MEAN = "_mean";
+
+  /** the square root of 3. */
+  protected final static double SQRT3 = Math.sqrt(3.0);
+
+  /** the column with the GPS objects. */
+  protected SpreadSheetColumnIndex m_GPS;
+
+  /** the shape of the cells. */
+  protected BinShape m_Shape;
+
+  /** the cell size in degrees. */
+  protected double m_CellSize;
+
+  /** the columns to aggregate. */
+  protected SpreadSheetColumnRange m_Aggregate;
+
+  /** the name of the feature type. */
+  protected String m_FeatureTypeName;
+
+  /** the fill color. */
+  protected Color m_FillColor;
+
+  /** whether the layer is invisible. */
+  protected boolean m_Invisible;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+	"Bins the GPS locations of the spreadsheet rows into square or hexagonal "
+	+ "cells and turns the non-empty cells into a polygon layer.\n"
+	+ "Each cell feature has the number of locations ('" + COUNT + "') as "
+	+ "attribute, as well as the sum and mean ('<column>" + SUFFIX_SUM + "', "
+	+ "'<column>" + SUFFIX_MEAN + "') of the numeric columns to aggregate.\n"
+	+ "The rows get processed in a single pass, accumulating the statistics "
+	+ "per cell, so the size of the layer depends only on the number of "
+	+ "occupied cells.\n"
+	+ "The cell size is in degrees; for hexagons, it is the distance between "
+	+ "the centers of neighboring cells in a row.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+	    "gps", "GPS",
+	    new SpreadSheetColumnIndex("1"));
+
+    m_OptionManager.add(
+	    "shape", "shape",
+	    BinShape.SQUARE);
+
+    m_OptionManager.add(
+	    "cell-size", "cellSize",
+	    0.01, 0.000001, null);
+
+    m_OptionManager.add(
+	    "aggregate", "aggregate",
+	    new SpreadSheetColumnRange());
+
+    m_OptionManager.add(
+	    "featuretype-name", "featureTypeName",
+	    "Bins");
+
+    m_OptionManager.add(
+	    "fill-color", "fillColor",
+	    Color.BLUE);
+
+    m_OptionManager.add(
+	    "invisible", "invisible",
+	    false);
+  }
+
+  /**
+   * Sets the index of the column containing the GPS objects.
+   *
+   * @param value	the column index
+   */
+  public void setGPS(SpreadSheetColumnIndex value) {
+    m_GPS = value;
+    reset();
+  }
+
+  /**
+   * Returns the index of the column containing the GPS objects.
+   *
+   * @return		the column index
+   */
+  public SpreadSheetColumnIndex getGPS() {
+    return m_GPS;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String GPSTipText() {
+    return "The index of the column containing the GPS objects.";
+  }
+
+  /**
+   * Sets the shape of the cells.
+   *
+   * @param value	the shape
+   */
+  public void setShape(BinShape value) {
+    m_Shape = value;
+    reset();
+  }
+
+  /**
+   * Returns the shape of the cells.
+   *
+   * @return		the shape
+   */
+  public BinShape getShape() {
+    return m_Shape;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String shapeTipText() {
+    return "The shape of the cells.";
+  }
+
+  /**
+   * Sets the size of the cells.
+   *
+   * @param value	the size in degrees
+   */
+  public void setCellSize(double value) {
+    if (getOptionManager().isValid("cellSize", value)) {
+      m_CellSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the size of the cells.
+   *
+   * @return		the size in degrees
+   */
+  public double getCellSize() {
+    return m_CellSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String cellSizeTipText() {
+    return
+	"The size of the cells in degrees; for hexagons, the distance between "
+	+ "the centers of neighboring cells in a row.";
+  }
+
+  /**
+   * Sets the columns to aggregate.
+   *
+   * @param value	the columns
+   */
+  public void setAggregate(SpreadSheetColumnRange value) {
+    m_Aggregate = value;
+    reset();
+  }
+
+  /**
+   * Returns the columns to aggregate.
+   *
+   * @return		the columns
+   */
+  public SpreadSheetColumnRange getAggregate() {
+    return m_Aggregate;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String aggregateTipText() {
+    return "The range of numeric columns to compute sum and mean for.";
+  }
+
+  /**
+   * Sets the name to use for the feature type.
+   *
+   * @param value	the name
+   */
+  public void setFeatureTypeName(String value) {
+    m_FeatureTypeName = value;
+    reset();
+  }
+
+  /**
+   * Returns the name to use for the feature type.
+   *
+   * @return		the name
+   */
+  public String getFeatureTypeName() {
+    return m_FeatureTypeName;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String featureTypeNameTipText() {
+    return "The name to use for the feature type.";
+  }
+
+  /**
+   * Sets the fill color for the cells.
+   *
+   * @param value	the fill color
+   */
+  public void setFillColor(Color value) {
+    m_FillColor = value;
+    reset();
+  }
+
+  /**
+   * Returns the fill color for the cells.
+   *
+   * @return		the fill color
+   */
+  public Color getFillColor() {
+    return m_FillColor;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String fillColorTipText() {
+    return "The fill color for the cells.";
+  }
+
+  /**
+   * Sets whether to create an invisible data layer.
+   *
+   * @param value	true if invisible
+   */
+  public void setInvisible(boolean value) {
+    m_Invisible = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to create an invisible data layer.
+   *
+   * @return		true if invisible
+   */
+  public boolean getInvisible() {
+    return m_Invisible;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String invisibleTipText() {
+    return "If enabled, an invisible data layer gets created.";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "shape", m_Shape, "shape: ");
+    result += QuickInfoHelper.toString(this, "cellSize", m_CellSize, ", size: ");
+    result += QuickInfoHelper.toString(this, "GPS", m_GPS, ", GPS: ");
+    result += QuickInfoHelper.toString(this, "aggregate", m_Aggregate, ", aggregate: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the class that is accepted as input.
+   *
+   * @return		the class
+   */
+  @Override
+  public Class accepts() {
+    return SpreadSheet.class;
+  }
+
+  /**
+   * Returns the class that is generated as output.
+   *
+   * @return		the class
+   */
+  @Override
+  public Class generates() {
+    return Layer.class;
+  }
+
+  /**
+   * Combines the two cell indices into a single key.
+   *
+   * @param x		the first index
+   * @param y		the second index
+   * @return		the key
+   */
+  protected long toKey(int x, int y) {
+    return ((long) x << 32) | (y & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Determines the key of the cell that the location falls into.
+   *
+   * @param lon		the longitude
+   * @param lat		the latitude
+   * @return		the key
+   */
+  protected long determineKey(double lon, double lat) {
+    double	radius;
+    double	q;
+    double	r;
+    double	s;
+    long	rq;
+    long	rr;
+    long	rs;
+    double	dq;
+    double	dr;
+    double	ds;
+
+    switch (m_Shape) {
+      case SQUARE:
+	return toKey((int) Math.floor(lon / m_CellSize), (int) Math.floor(lat / m_CellSize));
+
+      case HEXAGON:
+	// axial coordinates with cube rounding
+	radius = m_CellSize / SQRT3;
+	q      = (SQRT3 / 3.0 * lon - lat / 3.0) / radius;
+	r      = (2.0 / 3.0 * lat) / radius;
+	s      = -q - r;
+	rq     = Math.round(q);
+	rr     = Math.round(r);
+	rs     = Math.round(s);
+	dq     = Math.abs(rq - q);
+	dr     = Math.abs(rr - r);
+	ds     = Math.abs(rs - s);
+	if ((dq > dr) && (dq > ds))
+	  rq = -rr - rs;
+	else if (dr > ds)
+	  rr = -rq - rs;
+	return toKey((int) rq, (int) rr);
+
+      default:
+	throw new IllegalStateException("Unhandled bin shape: " + m_Shape);
+    }
+  }
+
+  /**
+   * Creates the polygon for the cell with the specified key.
+   *
+   * @param factory	the factory to use
+   * @param key		the key of the cell
+   * @return		the polygon
+   */
+  protected Polygon createCell(GeometryFactory factory, long key) {
+    Coordinate[]	coords;
+    int			x;
+    int			y;
+    double		radius;
+    double		cx;
+    double		cy;
+    double		angle;
+    int			i;
+
+    x = (int) (key >> 32);
+    y = (int) key;
+
+    switch (m_Shape) {
+      case SQUARE:
+	coords = new Coordinate[]{
+	    new Coordinate(x * m_CellSize, y * m_CellSize),
+	    new Coordinate((x + 1) * m_CellSize, y * m_CellSize),
+	    new Coordinate((x + 1) * m_CellSize, (y + 1) * m_CellSize),
+	    new Coordinate(x * m_CellSize, (y + 1) * m_CellSize),
+	    new Coordinate(x * m_CellSize, y * m_CellSize),
+	};
+	break;
+
+      case HEXAGON:
+	radius = m_CellSize / SQRT3;
+	cx     = radius * (SQRT3 * x + SQRT3 / 2.0 * y);
+	cy     = radius * 1.5 * y;
+	coords = new Coordinate[7];
+	for (i = 0; i < 6; i++) {
+	  angle     = Math.toRadians(60.0 * i + 30.0);
+	  coords[i] = new Coordinate(cx + radius * Math.cos(angle), cy + radius * Math.sin(angle));
+	}
+	coords[6] = new Coordinate(coords[0]);
+	break;
+
+      default:
+	throw new IllegalStateException("Unhandled bin shape: " + m_Shape);
+    }
+
+    return factory.createPolygon(factory.createLinearRing(coords), null);
+  }
+
+  /**
+   * Performs the actual conversion.
+   *
+   * @return		the converted data
+   * @throws Exception	if something goes wrong with the conversion
+   */
+  @Override
+  protected Object doConvert() throws Exception {
+    SpreadSheet			sheet;
+    int				gps;
+    int[]			aggregate;
+    List<Integer>		cols;
+    TLongIntHashMap		slots;
+    TLongArrayList		keys;
+    TIntArrayList		counts;
+    TDoubleArrayList[]		sums;
+    TIntArrayList[]		valid;
+    Row				row;
+    Cell			cell;
+    Object			obj;
+    AbstractGPS			location;
+    long			key;
+    int				slot;
+    int				i;
+    int				n;
+    SimpleFeatureTypeBuilder	typeBuilder;
+    SimpleFeatureType		type;
+    SimpleFeatureBuilder	builder;
+    GeometryFactory		factory;
+    DefaultFeatureCollection	collection;
+    String			name;
+    long			start;
+
+    sheet = (SpreadSheet) m_Input;
+    start = System.currentTimeMillis();
+
+    m_GPS.setData(sheet);
+    gps = m_GPS.getIntIndex();
+    if (gps == -1)
+      throw new IllegalArgumentException("Column with GPS objects not found: " + m_GPS.getIndex());
+    m_Aggregate.setData(sheet);
+    cols = new ArrayList<>();
+    for (int col: m_Aggregate.getIntIndices()) {
+      if (col != gps)
+	cols.add(col);
+    }
+    aggregate = new int[cols.size()];
+    for (i = 0; i < cols.size(); i++)
+      aggregate[i] = cols.get(i);
+
+    // accumulate
+    slots  = new TLongIntHashMap(1024, 0.5f, Long.MIN_VALUE, -1);
+    keys   = new TLongArrayList();
+    counts = new TIntArrayList();
+    sums   = new TDoubleArrayList[aggregate.length];
+    valid  = new TIntArrayList[aggregate.length];
+    for (n = 0; n < aggregate.length; n++) {
+      sums[n]  = new TDoubleArrayList();
+      valid[n] = new TIntArrayList();
+    }
+    for (i = 0; i < sheet.getRowCount(); i++) {
+      row  = sheet.getRow(i);
+      cell = row.getCell(gps);
+      obj  = ((cell == null) || cell.isMissing()) ? null : cell.getObject();
+      if (!(obj instanceof AbstractGPS))
+	continue;
+      location = (AbstractGPS) obj;
+      key      = determineKey(location.getLongitude().toDecimal(), location.getLatitude().toDecimal());
+      slot     = slots.get(key);
+      if (slot == -1) {
+	slot = keys.size();
+	slots.put(key, slot);
+	keys.add(key);
+	counts.add(0);
+	for (n = 0; n < aggregate.length; n++) {
+	  sums[n].add(0.0);
+	  valid[n].add(0);
+	}
+      }
+      counts.set(slot, counts.get(slot) + 1);
+      for (n = 0; n < aggregate.length; n++) {
+	cell = row.getCell(aggregate[n]);
+	if ((cell == null) || cell.isMissing() || !cell.isNumeric())
+	  continue;
+	sums[n].set(slot, sums[n].get(slot) + cell.toDouble());
+	valid[n].set(slot, valid[n].get(slot) + 1);
+      }
+    }
+
+    // feature type
+    typeBuilder = new SimpleFeatureTypeBuilder();
+    typeBuilder.setName(m_FeatureTypeName);
+    typeBuilder.setCRS(DefaultGeographicCRS.WGS84);
+    typeBuilder.add(AbstractFeatureGenerator.GEOMETRY, Polygon.class);
+    typeBuilder.add(COUNT, Integer.class);
+    for (n = 0; n < aggregate.length; n++) {
+      name = sheet.getHeaderRow().getContent(aggregate[n]);
+      typeBuilder.add(name + SUFFIX_SUM, Double.class);
+      typeBuilder.add(name + SUFFIX_MEAN, Double.class);
+    }
+    type = typeBuilder.buildFeatureType();
+
+    // features
+    builder    = new SimpleFeatureBuilder(type);
+    factory    = JTSFactoryFinder.getGeometryFactory(null);
+    collection = new DefaultFeatureCollection(null, type);
+    for (slot = 0; slot < keys.size(); slot++) {
+      builder.add(createCell(factory, keys.get(slot)));
+      builder.add(counts.get(slot));
+      for (n = 0; n < aggregate.length; n++) {
+	builder.add(sums[n].get(slot));
+	if (valid[n].get(slot) == 0)
+	  builder.add(null);
+	else
+	  builder.add(sums[n].get(slot) / valid[n].get(slot));
+      }
+      collection.add(builder.buildFeature(m_FeatureTypeName + "." + (slot + 1)));
+    }
+
+    if (isLoggingEnabled())
+      getLogger().info("Binned " + sheet.getRowCount() + " rows into " + keys.size() + " cells in " + (System.currentTimeMillis() - start) + "ms");
+
+    if (m_Invisible)
+      return new FeatureLayer(collection, new StyleImpl(){});
+    else
+      return new FeatureLayer(collection, SLD.createSimpleStyle(type, m_FillColor));
+  }
+}
@@ -15,10 +15,17 @@
 
 /**
  * AbstractFeatureGenerator.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.data.conversion.feature;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.geotools.feature.FeatureCollection;
 import org.geotools.map.Layer;
 import org.opengis.feature.Feature;
@@ -49,10 +56,31 @@ public abstract class AbstractFeatureGenerator<F extends Feature, C extends Feat
 
   /** the constant for the feature builder. */
   public final static String GEOMETRY = "the_geom";
+
+  /** the minimum number of rows per thread. */
+  public final static int MIN_ROWS_PER_THREAD = 1000;
   
   /** the name of the feature type. */
   protected String m_FeatureTypeName;
 
+  /** the number of threads to use. */
+  protected int m_NumThreads;
+
+  /** the spreadsheet that was used for the last initialization (single features). */
+  protected transient SpreadSheet m_LastOwner;
+
+  /** the 0-based index of the row currently processed, -1 if unknown. */
+  protected int m_CurrentRow;
+
+  /** the prefix for the feature IDs (empty = feature type name). */
+  protected String m_FeatureIDPrefix;
+
+  /** the prefix for the feature IDs of the current conversion, null if none. */
+  protected String m_IDPrefix;
+
+  /** the executor for the thread generators of the current conversion. */
+  protected transient ExecutorService m_Executor;
+
   /**
    * Adds options to the internal list of options.
    */
@@ -63,8 +91,28 @@ public abstract class AbstractFeatureGenerator<F extends Feature, C extends Feat
     m_OptionManager.add(
 	    "featuretype-name", "featureTypeName",
 	    getDefaultFeatureTypeName());
+
+    m_OptionManager.add(
+	    "num-threads", "numThreads",
+	    1, -1, null);
+
+    m_OptionManager.add(
+	    "feature-id-prefix", "featureIDPrefix",
+	    "");
   }
   
+  /**
+   * Resets the scheme.
+   */
+  @Override
+  protected void reset() {
+    super.reset();
+
+    m_LastOwner  = null;
+    m_CurrentRow = -1;
+    m_IDPrefix   = null;
+  }
+
   /**
    * Returns the default name for the feature type.
    * 
@@ -103,13 +151,85 @@ public abstract class AbstractFeatureGenerator<F extends Feature, C extends Feat
     return "The name to use for the feature type.";
   }
 
+  /**
+   * Sets the number of threads to use for generating the features.
+   *
+   * @param value	the number of threads, -1 for all cores
+   */
+  public void setNumThreads(int value) {
+    if (getOptionManager().isValid("numThreads", value)) {
+      m_NumThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads to use for generating the features.
+   *
+   * @return		the number of threads, -1 for all cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return
+	"The number of threads to use for generating the features (-1 for all "
+	+ "cores); the rows get split into chunks, with each thread using its "
+	+ "own copy of the generator.";
+  }
+
+  /**
+   * Sets the prefix for the feature IDs.
+   *
+   * @param value	the prefix, empty to use the feature type name
+   */
+  public void setFeatureIDPrefix(String value) {
+    m_FeatureIDPrefix = value;
+    reset();
+  }
+
+  /**
+   * Returns the prefix for the feature IDs.
+   *
+   * @return		the prefix, empty to use the feature type name
+   */
+  public String getFeatureIDPrefix() {
+    return m_FeatureIDPrefix;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String featureIDPrefixTipText() {
+    return
+	"The prefix for the feature IDs, which are made up of prefix and 1-based "
+	+ "row index; uses the feature type name if empty; use different "
+	+ "prefixes (e.g., via a variable) when merging layers generated from "
+	+ "different spreadsheets.";
+  }
+
   /**
    * Returns a quick info about the object, which can be displayed in the GUI.
    *
    * @return		null if no info available, otherwise short string
    */
   public String getQuickInfo() {
-    return QuickInfoHelper.toString(this, "featureTypeName", m_FeatureTypeName, "Name: ");
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "featureTypeName", m_FeatureTypeName, "Name: ");
+    result += QuickInfoHelper.toString(this, "numThreads", (m_NumThreads == -1 ? "all" : "" + m_NumThreads), ", threads: ");
+
+    return result;
   }
 
   /**
@@ -156,7 +276,11 @@ public abstract class AbstractFeatureGenerator<F extends Feature, C extends Feat
   protected abstract F doGenerateFeature(Row row);
   
   /**
-   * Generates a single feature per row.
+   * Generates a single feature per row. The generator only gets checked
+   * and initialized if the row belongs to a different spreadsheet than the
+   * previous one, as initializing rebuilds the feature type and, for
+   * streamed rows from the same spreadsheet, would otherwise dominate the
+   * time spent per feature.
    * 
    * @param row		the row to create the feature for
    * @return		the generated feature, null if failed to generate
@@ -164,14 +288,179 @@ public abstract class AbstractFeatureGenerator<F extends Feature, C extends Feat
   public F generateFeature(Row row) {
     F		result;
     
-    check(row.getOwner());
-    init(row.getOwner());
+    if (row.getOwner() != m_LastOwner) {
+      check(row.getOwner());
+      init(row.getOwner());
+      m_LastOwner = row.getOwner();
+    }
     
     result = doGenerateFeature(row);
     
     return result;
   }
   
+  /**
+   * Starts the conversion of a complete spreadsheet: checks and initializes
+   * the generator and determines the prefix for the feature IDs.
+   *
+   * @param sheet	the spreadsheet to convert
+   */
+  protected void startConversion(SpreadSheet sheet) {
+    check(sheet);
+    init(sheet);
+    m_LastOwner = null;
+    m_IDPrefix  = (m_FeatureIDPrefix.isEmpty() ? m_FeatureTypeName : m_FeatureIDPrefix) + ".";
+  }
+
+  /**
+   * Returns the ID to use for the feature generated from the current row.
+   * Made up of the prefix (feature type name or user-supplied) and the row
+   * index, so that IDs are reproducible, i.e., the same for every run and
+   * regardless of the number of threads in use.
+   *
+   * @return		the ID, null if no row index available (generates ID)
+   */
+  protected String createFeatureID() {
+    if ((m_CurrentRow < 0) || (m_IDPrefix == null))
+      return null;
+    else
+      return m_IDPrefix + (m_CurrentRow + 1);
+  }
+
+  /**
+   * Determines the number of threads to use for the spreadsheet.
+   *
+   * @param sheet	the spreadsheet to process
+   * @return		the number of threads
+   */
+  protected int determineNumThreads(SpreadSheet sheet) {
+    int		result;
+
+    result = m_NumThreads;
+    if (result == -1)
+      result = Runtime.getRuntime().availableProcessors();
+    result = Math.min(result, sheet.getRowCount() / MIN_ROWS_PER_THREAD);
+
+    return Math.max(1, result);
+  }
+
+  /**
+   * Creates the generators for the threads, i.e., copies of this generator
+   * initialized with the spreadsheet (own builders, geometry factories, etc),
+   * and the executor for running them. The executor is used for all calls
+   * of {@link #generateFeatures(SpreadSheet, int, int, AbstractFeatureGenerator[])}
+   * of this conversion and needs to be shut down with
+   * {@link #releaseThreadGenerators()}.
+   *
+   * @param sheet	the spreadsheet to process
+   * @return		the generators, null if single-threaded
+   */
+  protected AbstractFeatureGenerator<F,C,L>[] createThreadGenerators(SpreadSheet sheet) {
+    AbstractFeatureGenerator<F,C,L>[]	result;
+    int					numThreads;
+    int					i;
+
+    numThreads = determineNumThreads(sheet);
+    if (numThreads < 2)
+      return null;
+
+    result = new AbstractFeatureGenerator[numThreads];
+    for (i = 0; i < numThreads; i++) {
+      result[i] = shallowCopy();
+      result[i].check(sheet);
+      result[i].init(sheet);
+      result[i].m_IDPrefix = m_IDPrefix;
+    }
+    releaseThreadGenerators();
+    m_Executor = Executors.newFixedThreadPool(numThreads);
+    if (isLoggingEnabled())
+      getLogger().info("Generating features using " + numThreads + " threads");
+
+    return result;
+  }
+
+  /**
+   * Shuts down the executor of the thread generators, if any.
+   */
+  protected void releaseThreadGenerators() {
+    if (m_Executor != null) {
+      m_Executor.shutdownNow();
+      m_Executor = null;
+    }
+  }
+
+  /**
+   * Generates the features for the specified rows, either sequentially or
+   * in parallel (if thread generators available). Rows that failed to
+   * generate a feature result in a warning.
+   *
+   * @param sheet	the spreadsheet to use
+   * @param from	the first row (0-based, incl)
+   * @param to		the last row (0-based, excl)
+   * @param generators	the thread generators, null for single-threaded
+   * @return		the generated features, in row order
+   */
+  protected List<F> generateFeatures(final SpreadSheet sheet, int from, int to, AbstractFeatureGenerator<F,C,L>[] generators) {
+    List<F>			result;
+    final Object[]		features;
+    List<Future<Object>>	jobs;
+    int				chunk;
+    int				i;
+
+    features = new Object[to - from];
+
+    if ((generators == null) || (generators.length < 2) || (features.length < 2)) {
+      for (i = from; i < to; i++) {
+	m_CurrentRow       = i;
+	features[i - from] = doGenerateFeature(sheet.getRow(i));
+      }
+      m_CurrentRow = -1;
+    }
+    else {
+      if (m_Executor == null)
+	m_Executor = Executors.newFixedThreadPool(generators.length);
+      chunk = (int) Math.ceil((double) features.length / generators.length);
+      jobs  = new ArrayList<>();
+      try {
+	for (i = 0; i < generators.length; i++) {
+	  final AbstractFeatureGenerator<F,C,L> generator = generators[i];
+	  final int start  = from + i * chunk;
+	  final int end    = Math.min(to, start + chunk);
+	  final int offset = from;
+	  if (start >= end)
+	    break;
+	  jobs.add(m_Executor.submit(new Callable<Object>() {
+	    @Override
+	    public Object call() throws Exception {
+	      for (int n = start; n < end; n++) {
+		generator.m_CurrentRow = n;
+		features[n - offset]   = generator.doGenerateFeature(sheet.getRow(n));
+	      }
+	      generator.m_CurrentRow = -1;
+	      return null;
+	    }
+	  }));
+	}
+	for (Future<Object> job: jobs)
+	  job.get();
+      }
+      catch (Exception e) {
+	for (Future<Object> job: jobs)
+	  job.cancel(true);
+	throw new IllegalStateException("Failed to generate features in parallel!", e);
+      }
+    }
+
+    result = new ArrayList<>(features.length);
+    for (i = 0; i < features.length; i++) {
+      if (features[i] == null)
+	getLogger().warning("Failed to generate feature for row #" + (from+i+1) + ": " + sheet.getRow(from + i));
+      result.add((F) features[i]);
+    }
+
+    return result;
+  }
+
   /**
    * Generates the features from the given spreadsheet and adds them
    * to the feature collection.
@@ -181,20 +470,24 @@ public abstract class AbstractFeatureGenerator<F extends Feature, C extends Feat
    */
   protected C doGenerateCollection(SpreadSheet sheet) {
     C		result;
+    List<F>	features;
     F		feature;
     int		i;
     
     result = newFeatureCollection();
+    try {
+      features = generateFeatures(sheet, 0, sheet.getRowCount(), createThreadGenerators(sheet));
+    }
+    finally {
+      releaseThreadGenerators();
+    }
     
-    for (i = 0; i < sheet.getRowCount(); i++) {
-      feature = doGenerateFeature(sheet.getRow(i));
-      if (feature == null) {
-	getLogger().warning("Failed to generate feature for row #" + (i+1) + ": " + sheet.getRow(i));
-      }
-      else {
-	if (!addFeature(result, feature))
-	  getLogger().warning("Feature generated for row #" + (i+1) + " not added to collection: " + feature);
-      }
+    for (i = 0; i < features.size(); i++) {
+      feature = features.get(i);
+      if (feature == null)
+	continue;
+      if (!addFeature(result, feature))
+	getLogger().warning("Feature generated for row #" + (i+1) + " not added to collection: " + feature);
     }
     
     return result;
@@ -209,8 +502,7 @@ public abstract class AbstractFeatureGenerator<F extends Feature, C extends Feat
   public C generateCollection(SpreadSheet sheet) {
     C		result;
     
-    check(sheet);
-    init(sheet);
+    startConversion(sheet);
     
     result = doGenerateCollection(sheet);
     
@@ -235,8 +527,7 @@ public abstract class AbstractFeatureGenerator<F extends Feature, C extends Feat
     L	result;
     C	collection;
     
-    check(sheet);
-    init(sheet);
+    startConversion(sheet);
     
     collection = doGenerateCollection(sheet);
     result     = doGenerateLayer(collection);
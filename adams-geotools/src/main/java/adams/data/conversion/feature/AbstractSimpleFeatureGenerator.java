@@ -0,0 +1,525 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * AbstractSimpleFeatureGenerator.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.data.conversion.feature;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.collection.SpatialIndexFeatureCollection;
+import org.geotools.data.collection.SpatialIndexFeatureSource;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.map.FeatureLayer;
+import org.geotools.styling.SLD;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleImpl;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import adams.core.QuickInfoHelper;
+import adams.core.io.PlaceholderDirectory;
+import adams.data.spreadsheet.SpreadSheet;
+
+/**
+ * Ancestor for generators of simple features, which support storing the
+ * features in a spatially indexed collection or in a temporary shape file
+ * rather than a plain in-memory collection. With the latter two, the
+ * features get generated in chunks of rows and added to the storage straight
+ * away, with the layer reading from the storage on demand.
+ * <br>
+ * The temporary shape files are owned by the generator, not by the layers,
+ * as other holders of a layer may still read from them after a consumer
+ * disposed it. They get removed with {@link #deleteTempFiles()}, when the
+ * generator gets destroyed or, at the latest, when the JVM exits.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public abstract class AbstractSimpleFeatureGenerator
+  extends AbstractFeatureGenerator<SimpleFeature, DefaultFeatureCollection, FeatureLayer> {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 2618441727264766823L;
+
+  /**
+   * Feature layer that disposes the underlying data store as well. The
+   * shape file of the store is left untouched.
+   */
+  public static class DataStoreFeatureLayer
+    extends FeatureLayer {
+
+    /** the data store. */
+    protected DataStore m_DataStore;
+
+    /** the shape file, null if not known. */
+    protected File m_ShapeFile;
+
+    /**
+     * Initializes the layer.
+     *
+     * @param store	the data store to dispose
+     * @param source	the feature source
+     * @param style	the style
+     */
+    public DataStoreFeatureLayer(DataStore store, SimpleFeatureSource source, Style style) {
+      this(store, source, style, null);
+    }
+
+    /**
+     * Initializes the layer.
+     *
+     * @param store	the data store to dispose
+     * @param source	the feature source
+     * @param style	the style
+     * @param shapeFile	the shape file the store reads from, null if not known
+     */
+    public DataStoreFeatureLayer(DataStore store, SimpleFeatureSource source, Style style, File shapeFile) {
+      super(source, style);
+      m_DataStore = store;
+      m_ShapeFile = shapeFile;
+    }
+
+    /**
+     * Returns the shape file the store reads from.
+     *
+     * @return		the shape file, null if not known
+     */
+    public File getShapeFile() {
+      return m_ShapeFile;
+    }
+
+    /**
+     * Disposes the layer and the data store.
+     */
+    @Override
+    public void dispose() {
+      super.dispose();
+      if (m_DataStore != null) {
+	m_DataStore.dispose();
+	m_DataStore = null;
+      }
+    }
+  }
+
+  /** the number of rows to generate features for in one go (non-memory storage). */
+  public final static int CHUNK_SIZE = 10000;
+
+  /** the file extensions of a shape file. */
+  public final static String[] SHAPEFILE_EXTENSIONS = {".shp", ".shx", ".dbf", ".prj", ".qix", ".fix", ".cpg"};
+
+  /** how to store the features. */
+  protected FeatureStorage m_Storage;
+
+  /** the directory for temporary shape files. */
+  protected PlaceholderDirectory m_StorageDir;
+
+  /** the temporary shape files created so far. */
+  protected transient List<File> m_TempFiles;
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+	    "storage", "storage",
+	    FeatureStorage.MEMORY);
+
+    m_OptionManager.add(
+	    "storage-dir", "storageDir",
+	    new PlaceholderDirectory("${TMP}"));
+  }
+
+  /**
+   * Sets how to store the features.
+   *
+   * @param value	the storage
+   */
+  public void setStorage(FeatureStorage value) {
+    m_Storage = value;
+    reset();
+  }
+
+  /**
+   * Returns how to store the features.
+   *
+   * @return		the storage
+   */
+  public FeatureStorage getStorage() {
+    return m_Storage;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String storageTipText() {
+    return
+	"How to store the features: " + FeatureStorage.MEMORY + " collects "
+	+ "them in memory, " + FeatureStorage.INDEXED_MEMORY + " uses a spatially "
+	+ "indexed in-memory collection and " + FeatureStorage.SHAPEFILE + " "
+	+ "writes them to a temporary shape file that the layer reads from on demand.";
+  }
+
+  /**
+   * Sets the directory for the temporary shape files.
+   *
+   * @param value	the directory
+   */
+  public void setStorageDir(PlaceholderDirectory value) {
+    m_StorageDir = value;
+    reset();
+  }
+
+  /**
+   * Returns the directory for the temporary shape files.
+   *
+   * @return		the directory
+   */
+  public PlaceholderDirectory getStorageDir() {
+    return m_StorageDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String storageDirTipText() {
+    return "The directory for the temporary shape files (storage " + FeatureStorage.SHAPEFILE + ").";
+  }
+
+  /**
+   * Returns the fill color for the layer.
+   *
+   * @return		the fill color
+   */
+  public abstract Color getFillColor();
+
+  /**
+   * Returns whether to create an invisible data layer.
+   *
+   * @return		true if invisible
+   */
+  public abstract boolean getInvisible();
+
+  /**
+   * Returns a quick info about the object, which can be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = super.getQuickInfo();
+    result += QuickInfoHelper.toString(this, "storage", m_Storage, ", storage: ");
+
+    return result;
+  }
+
+  /**
+   * Creates a new and empty feature collection instance.
+   *
+   * @return		the collection
+   */
+  @Override
+  protected DefaultFeatureCollection newFeatureCollection() {
+    return new DefaultFeatureCollection();
+  }
+
+  /**
+   * Adds the feature to the collection.
+   *
+   * @param collection	the collection to extend
+   * @param feature	the feature to add
+   * @return		true if successfully added
+   */
+  @Override
+  protected boolean addFeature(DefaultFeatureCollection collection, SimpleFeature feature) {
+    return collection.add(feature);
+  }
+
+  /**
+   * Creates the style for the layer.
+   *
+   * @param schema	the schema of the features
+   * @return		the style
+   */
+  protected Style createStyle(SimpleFeatureType schema) {
+    if (getInvisible())
+      return new StyleImpl(){};
+    else
+      return SLD.createSimpleStyle(schema, getFillColor());
+  }
+
+  /**
+   * Generates the actual layer from the collection.
+   *
+   * @param collection	the collection to use
+   * @return		the generated layer
+   */
+  @Override
+  protected FeatureLayer doGenerateLayer(DefaultFeatureCollection collection) {
+    return new FeatureLayer(collection, createStyle(collection.getSchema()));
+  }
+
+  /**
+   * Generates the features and stores them in a spatially indexed collection.
+   *
+   * @param sheet	the spreadsheet to process
+   * @return		the layer, null if no features generated
+   */
+  protected FeatureLayer generateIndexedLayer(SpreadSheet sheet) {
+    SpatialIndexFeatureCollection					collection;
+    AbstractFeatureGenerator<SimpleFeature,DefaultFeatureCollection,FeatureLayer>[]	generators;
+    int									i;
+
+    collection = null;
+    generators = createThreadGenerators(sheet);
+    try {
+      for (i = 0; i < sheet.getRowCount(); i += CHUNK_SIZE) {
+	for (SimpleFeature feature: generateFeatures(sheet, i, Math.min(sheet.getRowCount(), i + CHUNK_SIZE), generators)) {
+	  if (feature == null)
+	    continue;
+	  if (collection == null)
+	    collection = new SpatialIndexFeatureCollection(feature.getFeatureType());
+	  collection.add(feature);
+	}
+      }
+    }
+    finally {
+      releaseThreadGenerators();
+    }
+
+    if (collection == null)
+      return null;
+
+    return new FeatureLayer(new SpatialIndexFeatureSource(collection), createStyle(collection.getSchema()));
+  }
+
+  /**
+   * Creates a temporary shape file in the storage directory. The files get
+   * removed with {@link #deleteTempFiles()} or, at the latest, when the JVM
+   * exits.
+   *
+   * @return		the shape file
+   * @throws Exception	if creation fails
+   */
+  protected File createTempShapeFile() throws Exception {
+    File	result;
+    String	prefix;
+
+    result = File.createTempFile("features-", SHAPEFILE_EXTENSIONS[0], m_StorageDir.getAbsoluteFile());
+    prefix = result.getAbsolutePath().substring(0, result.getAbsolutePath().length() - SHAPEFILE_EXTENSIONS[0].length());
+    for (String ext: SHAPEFILE_EXTENSIONS)
+      new File(prefix + ext).deleteOnExit();
+    synchronized(this) {
+      if (m_TempFiles == null)
+	m_TempFiles = new ArrayList<>();
+      m_TempFiles.add(result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes the temporary shape files generated so far. Only to be called
+   * once the layers using them are no longer needed, e.g., when the flow
+   * finished.
+   *
+   * @return		true if all files removed
+   */
+  public synchronized boolean deleteTempFiles() {
+    boolean	result;
+
+    result = true;
+    if (m_TempFiles != null) {
+      for (File file: m_TempFiles) {
+	if (!deleteShapeFile(file))
+	  result = false;
+      }
+      m_TempFiles.clear();
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes all the files of the shape file.
+   *
+   * @param file	the .shp file
+   * @return		true if all files removed
+   */
+  public static boolean deleteShapeFile(File file) {
+    boolean	result;
+    String	prefix;
+    File	current;
+
+    result = true;
+    prefix = file.getAbsolutePath().substring(0, file.getAbsolutePath().length() - SHAPEFILE_EXTENSIONS[0].length());
+    for (String ext: SHAPEFILE_EXTENSIONS) {
+      current = new File(prefix + ext);
+      if (current.exists() && !current.delete())
+	result = false;
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the features and writes them straight to a temporary shape
+   * file. The geometry is expected to be the first attribute of the
+   * features, as with the schemas of the shape files.
+   *
+   * @param sheet	the spreadsheet to process
+   * @return		the layer, null if no features generated
+   * @throws Exception	if writing fails
+   */
+  protected FeatureLayer generateShapeFileLayer(SpreadSheet sheet) throws Exception {
+    File						file;
+    ShapefileDataStoreFactory				factory;
+    Map<String,Serializable>				params;
+    ShapefileDataStore					store;
+    FeatureWriter<SimpleFeatureType,SimpleFeature>	writer;
+    SimpleFeature					next;
+    SimpleFeatureSource					source;
+    AbstractFeatureGenerator<SimpleFeature,DefaultFeatureCollection,FeatureLayer>[]	generators;
+    int							i;
+
+    store      = null;
+    writer     = null;
+    file       = null;
+    generators = createThreadGenerators(sheet);
+    try {
+      for (i = 0; i < sheet.getRowCount(); i += CHUNK_SIZE) {
+	for (SimpleFeature feature: generateFeatures(sheet, i, Math.min(sheet.getRowCount(), i + CHUNK_SIZE), generators)) {
+	  if (feature == null)
+	    continue;
+	  if (store == null) {
+	    file    = createTempShapeFile();
+	    factory = new ShapefileDataStoreFactory();
+	    params  = new HashMap<>();
+	    params.put(ShapefileDataStoreFactory.URLP.key, file.toURI().toURL());
+	    params.put(ShapefileDataStoreFactory.CREATE_SPATIAL_INDEX.key, Boolean.TRUE);
+	    store = (ShapefileDataStore) factory.createNewDataStore(params);
+	    store.createSchema(feature.getFeatureType());
+	    writer = store.getFeatureWriterAppend(store.getTypeNames()[0], Transaction.AUTO_COMMIT);
+	  }
+	  next = writer.next();
+	  next.setAttributes(feature.getAttributes());
+	  writer.write();
+	}
+      }
+    }
+    catch (Exception e) {
+      if (writer != null)
+	writer.close();
+      if (store != null)
+	store.dispose();
+      if (file != null) {
+	deleteShapeFile(file);
+	synchronized(this) {
+	  m_TempFiles.remove(file);
+	}
+      }
+      throw e;
+    }
+    finally {
+      releaseThreadGenerators();
+    }
+
+    if (store == null)
+      return null;
+
+    writer.close();
+    if (isLoggingEnabled())
+      getLogger().info("Features stored in: " + file);
+    source = store.getFeatureSource();
+
+    return new DataStoreFeatureLayer(store, source, createStyle(source.getSchema()), file);
+  }
+
+  /**
+   * Generates a layer from the given spreadsheet. Unless storing the
+   * features in memory, the features get generated in chunks of rows and
+   * added to the storage straight away.
+   *
+   * @param sheet	the spreadsheet to process
+   * @return		the generated feature collection
+   */
+  @Override
+  public FeatureLayer generateLayer(SpreadSheet sheet) {
+    FeatureLayer	result;
+
+    if (m_Storage == FeatureStorage.MEMORY)
+      return super.generateLayer(sheet);
+
+    startConversion(sheet);
+
+    switch (m_Storage) {
+      case INDEXED_MEMORY:
+	result = generateIndexedLayer(sheet);
+	break;
+      case SHAPEFILE:
+	try {
+	  result = generateShapeFileLayer(sheet);
+	}
+	catch (Exception e) {
+	  throw new IllegalStateException("Failed to store features in shape file!", e);
+	}
+	break;
+      default:
+	throw new IllegalStateException("Unhandled feature storage: " + m_Storage);
+    }
+
+    // no features generated, fall back on empty collection
+    if (result == null)
+      result = doGenerateLayer(newFeatureCollection());
+    result.setTitle(m_FeatureTypeName);
+
+    return result;
+  }
+
+  /**
+   * Frees up memory in a "destructive" non-reversible way. Removes the
+   * temporary shape files.
+   */
+  @Override
+  public void destroy() {
+    deleteTempFiles();
+    super.destroy();
+  }
+}
@@ -15,20 +15,15 @@
 
 /**
  * SimpleBarGenerator.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.data.conversion.feature;
 
 import java.awt.Color;
 
-import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
-import org.geotools.map.FeatureLayer;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.geotools.styling.SLD;
-import org.geotools.styling.Style;
-import org.geotools.styling.StyleImpl;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
@@ -61,6 +56,33 @@ import com.vividsolutions.jts.util.GeometricShapeFactory;
  * &nbsp;&nbsp;&nbsp;default: SimpleBarGenerator
  * </pre>
  * 
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads to use for generating the features (-1 for all cores
+ * &nbsp;&nbsp;&nbsp;); the rows get split into chunks, with each thread using its own copy of 
+ * &nbsp;&nbsp;&nbsp;the generator.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ * 
+ * <pre>-feature-id-prefix &lt;java.lang.String&gt; (property: featureIDPrefix)
+ * &nbsp;&nbsp;&nbsp;The prefix for the feature IDs, which are made up of prefix and 1-based 
+ * &nbsp;&nbsp;&nbsp;row index; uses the feature type name if empty; use different prefixes 
+ * &nbsp;&nbsp;&nbsp;(e.g., via a variable) when merging layers generated from different spreadsheets.
+ * &nbsp;&nbsp;&nbsp;default: 
+ * </pre>
+ * 
+ * <pre>-storage &lt;MEMORY|INDEXED_MEMORY|SHAPEFILE&gt; (property: storage)
+ * &nbsp;&nbsp;&nbsp;How to store the features: MEMORY collects them in memory, INDEXED_MEMORY 
+ * &nbsp;&nbsp;&nbsp;uses a spatially indexed in-memory collection and SHAPEFILE writes them to 
+ * &nbsp;&nbsp;&nbsp;a temporary shape file that the layer reads from on demand.
+ * &nbsp;&nbsp;&nbsp;default: MEMORY
+ * </pre>
+ * 
+ * <pre>-storage-dir &lt;adams.core.io.PlaceholderDirectory&gt; (property: storageDir)
+ * &nbsp;&nbsp;&nbsp;The directory for the temporary shape files (storage SHAPEFILE).
+ * &nbsp;&nbsp;&nbsp;default: ${TMP}
+ * </pre>
+ * 
  * <pre>-gps &lt;adams.data.spreadsheet.SpreadSheetColumnIndex&gt; (property: GPS)
  * &nbsp;&nbsp;&nbsp;The index of the column containing the GPS objects.
  * &nbsp;&nbsp;&nbsp;default: 
@@ -101,7 +123,7 @@ import com.vividsolutions.jts.util.GeometricShapeFactory;
  * @version $Revision$
  */
 public class SimpleBarGenerator
-  extends AbstractFeatureGenerator<SimpleFeature, DefaultFeatureCollection, FeatureLayer> {
+  extends AbstractSimpleFeatureGenerator {
 
   /** for serialization. */
   private static final long serialVersionUID = 8557388938912123237L;
@@ -453,28 +475,6 @@ public class SimpleBarGenerator
     m_GeometryFactory = new GeometricShapeFactory();
   }
 
-  /**
-   * Creates a new and empty feature collection instance.
-   * 
-   * @return		the collection
-   */
-  @Override
-  protected DefaultFeatureCollection newFeatureCollection() {
-    return new DefaultFeatureCollection();
-  }
-
-  /**
-   * Adds the feature to the collection.
-   * 
-   * @param collection	the collection to extend
-   * @param feature	the feature to add
-   * @return		true if successfully added
-   */
-  @Override
-  protected boolean addFeature(DefaultFeatureCollection collection, SimpleFeature feature) {
-    return collection.add(feature);
-  }
-
   /**
    * Generates a single feature per row.
    * 
@@ -523,29 +523,7 @@ public class SimpleBarGenerator
       }
     }
     
-    result = m_Builder.buildFeature(null);
-    
-    return result;
-  }
-
-  /**
-   * Generates the actual layer from the collection.
-   * 
-   * @param collection	the collection to use
-   * @return		the generated layer
-   */
-  @Override
-  protected FeatureLayer doGenerateLayer(DefaultFeatureCollection collection) {
-    FeatureLayer	result;
-    Style 		style;
-
-    if (m_Invisible) {
-      result = new FeatureLayer(collection, new StyleImpl(){});
-    }
-    else {
-      style  = SLD.createSimpleStyle(collection.getSchema(), m_FillColor);
-      result = new FeatureLayer(collection, style);
-    }
+    result = m_Builder.buildFeature(createFeatureID());
     
     return result;
   }
@@ -15,20 +15,16 @@
 
 /**
  * SimpleCircleGenerator.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.data.conversion.feature;
 
 import java.awt.Color;
 
-import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
-import org.geotools.map.FeatureLayer;
+import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.geotools.styling.SLD;
-import org.geotools.styling.Style;
-import org.geotools.styling.StyleImpl;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
@@ -41,12 +37,14 @@ import adams.data.spreadsheet.SpreadSheetColumnIndex;
 import adams.data.spreadsheet.SpreadSheetColumnRange;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.util.GeometricShapeFactory;
 
 /**
  <!-- globalinfo-start -->
- * Generates a circle feature layer, using the GPS coordinates column in the spreadsheet as center for the circle, the radius column for the radius of the circle and adds any additionally defined colunms as attributes to the feature points.
+ * Generates a circle feature layer, using the GPS coordinates column in the spreadsheet as center for the circle, the radius column for the radius of the circle and adds any additionally defined colunms as attributes to the feature points.<br>
+ * In geodesic mode, the radius is interpreted as metres and the circle gets scaled according to the WGS84 ellipsoid at the latitude of the center; otherwise the radius is in degrees.
  * <br><br>
  <!-- globalinfo-end -->
  *
@@ -61,6 +59,33 @@ import com.vividsolutions.jts.util.GeometricShapeFactory;
  * &nbsp;&nbsp;&nbsp;default: SimpleCircleGenerator
  * </pre>
  * 
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads to use for generating the features (-1 for all cores
+ * &nbsp;&nbsp;&nbsp;); the rows get split into chunks, with each thread using its own copy of 
+ * &nbsp;&nbsp;&nbsp;the generator.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ * 
+ * <pre>-feature-id-prefix &lt;java.lang.String&gt; (property: featureIDPrefix)
+ * &nbsp;&nbsp;&nbsp;The prefix for the feature IDs, which are made up of prefix and 1-based 
+ * &nbsp;&nbsp;&nbsp;row index; uses the feature type name if empty; use different prefixes 
+ * &nbsp;&nbsp;&nbsp;(e.g., via a variable) when merging layers generated from different spreadsheets.
+ * &nbsp;&nbsp;&nbsp;default: 
+ * </pre>
+ * 
+ * <pre>-storage &lt;MEMORY|INDEXED_MEMORY|SHAPEFILE&gt; (property: storage)
+ * &nbsp;&nbsp;&nbsp;How to store the features: MEMORY collects them in memory, INDEXED_MEMORY 
+ * &nbsp;&nbsp;&nbsp;uses a spatially indexed in-memory collection and SHAPEFILE writes them to 
+ * &nbsp;&nbsp;&nbsp;a temporary shape file that the layer reads from on demand.
+ * &nbsp;&nbsp;&nbsp;default: MEMORY
+ * </pre>
+ * 
+ * <pre>-storage-dir &lt;adams.core.io.PlaceholderDirectory&gt; (property: storageDir)
+ * &nbsp;&nbsp;&nbsp;The directory for the temporary shape files (storage SHAPEFILE).
+ * &nbsp;&nbsp;&nbsp;default: ${TMP}
+ * </pre>
+ * 
  * <pre>-gps &lt;adams.data.spreadsheet.SpreadSheetColumnIndex&gt; (property: GPS)
  * &nbsp;&nbsp;&nbsp;The index of the column containing the GPS objects.
  * &nbsp;&nbsp;&nbsp;default: 
@@ -76,7 +101,14 @@ import com.vividsolutions.jts.util.GeometricShapeFactory;
  * <pre>-num-points &lt;int&gt; (property: numPoints)
  * &nbsp;&nbsp;&nbsp;The number of points to use for drawing the circle.
  * &nbsp;&nbsp;&nbsp;default: 36
- * &nbsp;&nbsp;&nbsp;minimum: 2
+ * &nbsp;&nbsp;&nbsp;minimum: 3
+ * </pre>
+ * 
+ * <pre>-geodesic &lt;boolean&gt; (property: geodesic)
+ * &nbsp;&nbsp;&nbsp;If enabled, the radius is interpreted as metres and the circle gets scaled 
+ * &nbsp;&nbsp;&nbsp;according to the WGS84 ellipsoid at the latitude of the center; otherwise 
+ * &nbsp;&nbsp;&nbsp;the radius is in degrees.
+ * &nbsp;&nbsp;&nbsp;default: false
  * </pre>
  * 
  * <pre>-additional-attributes &lt;adams.data.spreadsheet.SpreadSheetColumnRange&gt; (property: additionalAttributes)
@@ -101,11 +133,17 @@ import com.vividsolutions.jts.util.GeometricShapeFactory;
  * @version $Revision$
  */
 public class SimpleCircleGenerator
-  extends AbstractFeatureGenerator<SimpleFeature, DefaultFeatureCollection, FeatureLayer> {
+  extends AbstractSimpleFeatureGenerator {
 
   /** for serialization. */
   private static final long serialVersionUID = 8557388938912123237L;
 
+  /** the semi-major axis of the WGS84 ellipsoid (in metres). */
+  public final static double WGS84_A = 6378137.0;
+
+  /** the squared eccentricity of the WGS84 ellipsoid. */
+  public final static double WGS84_E2 = 0.00669437999014;
+
   /** the index of the GPS coordinates column. */
   protected SpreadSheetColumnIndex m_GPS;
 
@@ -121,6 +159,9 @@ public class SimpleCircleGenerator
   /** the number of points for the radius. */
   protected int m_NumPoints;
 
+  /** whether the radius is in metres (geodesic). */
+  protected boolean m_Geodesic;
+
   /** the additional attributes to store in the features. */
   protected SpreadSheetColumnRange m_AdditionalAttributes;
 
@@ -145,6 +186,15 @@ public class SimpleCircleGenerator
   /** the geometry factory to use. */
   protected transient GeometricShapeFactory m_GeometryFactory;
 
+  /** the factory for the geodesic circles. */
+  protected transient GeometryFactory m_PolygonFactory;
+
+  /** the cosine values of the unit circle (geodesic). */
+  protected transient double[] m_Cos;
+
+  /** the sine values of the unit circle (geodesic). */
+  protected transient double[] m_Sin;
+
   /**
    * Returns a string describing the object.
    *
@@ -156,7 +206,10 @@ public class SimpleCircleGenerator
 	"Generates a circle feature layer, using the GPS coordinates column in the "
 	+ "spreadsheet as center for the circle, the radius column for the radius "
 	+ "of the circle and adds any additionally defined colunms as attributes "
-	+ "to the feature points.";
+	+ "to the feature points.\n"
+	+ "In geodesic mode, the radius is interpreted as metres and the circle "
+	+ "gets scaled according to the WGS84 ellipsoid at the latitude of the "
+	+ "center; otherwise the radius is in degrees.";
   }
 
   /**
@@ -176,7 +229,11 @@ public class SimpleCircleGenerator
 
     m_OptionManager.add(
 	    "num-points", "numPoints",
-	    36, 2, null);
+	    36, 3, null);
+
+    m_OptionManager.add(
+	    "geodesic", "geodesic",
+	    false);
 
     m_OptionManager.add(
 	    "additional-attributes", "additionalAttributes",
@@ -252,15 +309,16 @@ public class SimpleCircleGenerator
   /**
    * Sets the number of points to use for drawing the circle.
    *
-   * @param value	the number of points (> 1)
+   * @param value	the number of points (> 2)
    */
   public void setNumPoints(int value) {
-    if (value > 1) {
+    // a polygon ring requires at least three distinct points
+    if (value > 2) {
       m_NumPoints = value;
       reset();
     }
     else {
-      getLogger().warning("At least 2 data points required, provided: " + value);
+      getLogger().warning("At least 3 data points required, provided: " + value);
     }
   }
 
@@ -283,6 +341,38 @@ public class SimpleCircleGenerator
     return "The number of points to use for drawing the circle.";
   }
 
+  /**
+   * Sets whether the radius is in metres and the circles are geodesic.
+   *
+   * @param value	true if geodesic
+   */
+  public void setGeodesic(boolean value) {
+    m_Geodesic = value;
+    reset();
+  }
+
+  /**
+   * Returns whether the radius is in metres and the circles are geodesic.
+   *
+   * @return		true if geodesic
+   */
+  public boolean getGeodesic() {
+    return m_Geodesic;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String geodesicTipText() {
+    return 
+	"If enabled, the radius is interpreted as metres and the circle gets "
+	+ "scaled according to the WGS84 ellipsoid at the latitude of the center; "
+	+ "otherwise the radius is in degrees.";
+  }
+
   /**
    * Sets the range of columns of additional attributes to add to the feature.
    *
@@ -382,6 +472,7 @@ public class SimpleCircleGenerator
     result  = super.getQuickInfo();
     result += QuickInfoHelper.toString(this, "GPS", m_GPS, ", GPS: ");
     result += QuickInfoHelper.toString(this, "radius", m_Radius, ", radius: ");
+    result += QuickInfoHelper.toString(this, "geodesic", m_Geodesic, "geodesic", ", ");
     result += QuickInfoHelper.toString(this, "additionalAttributes", m_AdditionalAttributes, ", additional: ");
     result += QuickInfoHelper.toString(this, "fillColor", m_FillColor, ", fill: ");
     result += QuickInfoHelper.toString(this, "invisible", m_Invisible, "invisible", ", ");
@@ -450,28 +541,50 @@ public class SimpleCircleGenerator
     m_FeatureType     = builder.buildFeatureType();
     m_Builder         = new SimpleFeatureBuilder(m_FeatureType);
     m_GeometryFactory = new GeometricShapeFactory();
+    m_GeometryFactory.setNumPoints(m_NumPoints);
+    m_PolygonFactory  = JTSFactoryFinder.getGeometryFactory(null);
+
+    // unit circle
+    m_Cos = new double[m_NumPoints];
+    m_Sin = new double[m_NumPoints];
+    for (i = 0; i < m_NumPoints; i++) {
+      m_Cos[i] = Math.cos(2.0 * Math.PI * i / m_NumPoints);
+      m_Sin[i] = Math.sin(2.0 * Math.PI * i / m_NumPoints);
+    }
   }
 
   /**
-   * Creates a new and empty feature collection instance.
-   * 
-   * @return		the collection
+   * Creates a geodesic circle, using the precomputed unit circle, scaled
+   * locally with the meridional and normal radii of curvature of the WGS84
+   * ellipsoid at the latitude of the center.
+   *
+   * @param lon		the longitude of the center (in decimal degrees)
+   * @param lat		the latitude of the center (in decimal degrees)
+   * @param radius	the radius in metres
+   * @return		the circle
    */
-  @Override
-  protected DefaultFeatureCollection newFeatureCollection() {
-    return new DefaultFeatureCollection();
-  }
+  protected Polygon createGeodesicCircle(double lon, double lat, double radius) {
+    Coordinate[]	coords;
+    double		sinLat;
+    double		cosLat;
+    double		w;
+    double		degLat;
+    double		degLon;
+    int			i;
 
-  /**
-   * Adds the feature to the collection.
-   * 
-   * @param collection	the collection to extend
-   * @param feature	the feature to add
-   * @return		true if successfully added
-   */
-  @Override
-  protected boolean addFeature(DefaultFeatureCollection collection, SimpleFeature feature) {
-    return collection.add(feature);
+    sinLat = Math.sin(Math.toRadians(lat));
+    cosLat = Math.max(1E-12, Math.cos(Math.toRadians(lat)));
+    w      = 1.0 - WGS84_E2 * sinLat * sinLat;
+    // degrees per metre
+    degLat = 180.0 / (Math.PI * WGS84_A * (1.0 - WGS84_E2) / (w * Math.sqrt(w)));
+    degLon = 180.0 / (Math.PI * WGS84_A / Math.sqrt(w) * cosLat);
+
+    coords = new Coordinate[m_NumPoints + 1];
+    for (i = 0; i < m_NumPoints; i++)
+      coords[i] = new Coordinate(lon + radius * degLon * m_Cos[i], lat + radius * degLat * m_Sin[i]);
+    coords[m_NumPoints] = new Coordinate(coords[0]);
+
+    return m_PolygonFactory.createPolygon(m_PolygonFactory.createLinearRing(coords), null);
   }
 
   /**
@@ -490,12 +603,19 @@ public class SimpleCircleGenerator
     location = (AbstractGPS) row.getCell(m_GPSIndex).getObject();
     radius   = row.getCell(m_RadiusIndex).toDouble();
     
-    m_GeometryFactory.setNumPoints(m_NumPoints);
-    m_GeometryFactory.setSize(radius * 2);
-    m_GeometryFactory.setCentre(new Coordinate(
-	    location.getLongitude().toDecimal(), 
-	    location.getLatitude().toDecimal()));
-    m_Builder.add(m_GeometryFactory.createCircle());
+    if (m_Geodesic) {
+      m_Builder.add(createGeodesicCircle(
+	  location.getLongitude().toDecimal(),
+	  location.getLatitude().toDecimal(),
+	  radius));
+    }
+    else {
+      m_GeometryFactory.setSize(radius * 2);
+      m_GeometryFactory.setCentre(new Coordinate(
+	      location.getLongitude().toDecimal(), 
+	      location.getLatitude().toDecimal()));
+      m_Builder.add(m_GeometryFactory.createCircle());
+    }
     
     for (i = 0; i < m_AdditionalAttributesIndices.length; i++) {
       if (m_AdditionalAttributesType[i] == null)
@@ -521,29 +641,7 @@ public class SimpleCircleGenerator
       }
     }
     
-    result = m_Builder.buildFeature(null);
-    
-    return result;
-  }
-
-  /**
-   * Generates the actual layer from the collection.
-   * 
-   * @param collection	the collection to use
-   * @return		the generated layer
-   */
-  @Override
-  protected FeatureLayer doGenerateLayer(DefaultFeatureCollection collection) {
-    FeatureLayer	result;
-    Style 		style;
-
-    if (m_Invisible) {
-      result = new FeatureLayer(collection, new StyleImpl(){});
-    }
-    else {
-      style  = SLD.createSimpleStyle(collection.getSchema(), m_FillColor);
-      result = new FeatureLayer(collection, style);
-    }
+    result = m_Builder.buildFeature(createFeatureID());
     
     return result;
   }
@@ -15,22 +15,24 @@
 
 /**
  * RasterFileReader.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.data.io.input;
 
 import adams.core.logging.LoggingHelper;
+import adams.data.CachedGridReaderLayer;
+import adams.data.GridCoverageReaderCache;
 import adams.data.RasterImageHelper;
 import adams.data.RasterType;
 import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
-import org.geotools.coverage.grid.io.AbstractGridFormat;
-import org.geotools.coverage.grid.io.GridFormatFinder;
+import org.geotools.coverage.grid.io.OverviewPolicy;
 import org.geotools.map.GridReaderLayer;
 import org.geotools.styling.Style;
 
 /**
  <!-- globalinfo-start -->
- * Reads raster files.
+ * Reads raster files.<br>
+ * The readers get shared, i.e., reading the same file multiple times re-uses the reader (and its headers&#47;tile caches) as long as the file hasn't changed.
  * <br><br>
  <!-- globalinfo-end -->
  *
@@ -55,6 +57,12 @@ import org.geotools.styling.Style;
  * &nbsp;&nbsp;&nbsp;default: 1
  * </pre>
  * 
+ * <pre>-overview-policy &lt;QUALITY|SPEED|NEAREST|IGNORE&gt; (property: overviewPolicy)
+ * &nbsp;&nbsp;&nbsp;The policy for selecting the overview (reduced resolution level) for the 
+ * &nbsp;&nbsp;&nbsp;current render scale; IGNORE always reads the full resolution.
+ * &nbsp;&nbsp;&nbsp;default: NEAREST
+ * </pre>
+ * 
  <!-- options-end -->
  *
  * @author  fracpete (fracpete at waikato dot ac dot nz)
@@ -72,6 +80,9 @@ public class RasterFileReader
   /** the greyscale band. */
   protected int m_GreyScaleBand;
 
+  /** the overview policy. */
+  protected OverviewPolicy m_OverviewPolicy;
+
   /**
    * Returns a string describing the object.
    *
@@ -79,7 +90,11 @@ public class RasterFileReader
    */
   @Override
   public String globalInfo() {
-    return "Reads raster files.";
+    return 
+	"Reads raster files.\n"
+	+ "The readers get shared, i.e., reading the same file multiple times "
+	+ "re-uses the reader (and its headers/tile caches) as long as the file "
+	+ "hasn't changed.";
   }
 
   /**
@@ -117,6 +132,10 @@ public class RasterFileReader
     m_OptionManager.add(
 	    "greyscale-band", "greyScaleBand",
 	    1);
+
+    m_OptionManager.add(
+	    "overview-policy", "overviewPolicy",
+	    OverviewPolicy.NEAREST);
   }
   
   /**
@@ -177,6 +196,38 @@ public class RasterFileReader
     return "The greyscale band to use.";
   }
 
+  /**
+   * Sets the policy for selecting the overview.
+   *
+   * @param value	the policy
+   */
+  public void setOverviewPolicy(OverviewPolicy value) {
+    m_OverviewPolicy = value;
+    reset();
+  }
+
+  /**
+   * Returns the policy for selecting the overview.
+   *
+   * @return		the policy
+   */
+  public OverviewPolicy getOverviewPolicy() {
+    return m_OverviewPolicy;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String overviewPolicyTipText() {
+    return 
+	"The policy for selecting the overview (reduced resolution level) for "
+	+ "the current render scale; " + OverviewPolicy.IGNORE + " always reads "
+	+ "the full resolution.";
+  }
+
   /**
    * Performs the actual reading.
    * 
@@ -186,29 +237,33 @@ public class RasterFileReader
   protected GridReaderLayer doRead() {
     GridReaderLayer 			result;
     Style 				style;
-    AbstractGridFormat 			format;
     AbstractGridCoverage2DReader	reader;
 
     try {
-      format = GridFormatFinder.findFormat(m_Input.getAbsoluteFile());        
-      reader = format.getReader(m_Input.getAbsoluteFile());
+      reader = GridCoverageReaderCache.acquire(m_Input.getAbsoluteFile(), m_OverviewPolicy);
     }
     catch (Exception e) {
       LoggingHelper.handleException(this, "Failed to load raster file : " + m_Input, e);
       return null;
     }
 
-    switch (m_Type) {
-      case GREYSCALE:
-	style = RasterImageHelper.createGreyscaleStyle(m_GreyScaleBand);
-	break;
-      case RGB:
-	style = RasterImageHelper.createRGBStyle(reader);
-	break;
-      default:
-	throw new IllegalStateException("Unhandled raster type: " + m_Type);
+    try {
+      switch (m_Type) {
+	case GREYSCALE:
+	  style = RasterImageHelper.createGreyscaleStyle(m_GreyScaleBand);
+	  break;
+	case RGB:
+	  style = RasterImageHelper.createRGBStyle(reader);
+	  break;
+	default:
+	  throw new IllegalStateException("Unhandled raster type: " + m_Type);
+      }
+    }
+    catch (RuntimeException e) {
+      GridCoverageReaderCache.release(reader);
+      throw e;
     }
-    result = new GridReaderLayer(reader, style);
+    result = new CachedGridReaderLayer(reader, style);
 
     return result;
   }
@@ -15,23 +15,33 @@
 
 /**
  * ShapeFileReader.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.data.io.input;
 
 import adams.core.logging.LoggingHelper;
-import org.geotools.data.FileDataStore;
-import org.geotools.data.FileDataStoreFinder;
+import org.geotools.data.shapefile.ShapeFileIndexer;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.data.shapefile.files.ShpFileType;
+import org.geotools.data.shapefile.files.ShpFiles;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.map.FeatureLayer;
 import org.geotools.styling.SLD;
 import org.geotools.styling.Style;
+import org.geotools.util.NullProgressListener;
 
 import java.awt.Color;
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
 
 /**
  <!-- globalinfo-start -->
- * Reads shape files.
+ * Reads shape files.<br>
+ * Optionally builds the quadtree spatial index ('.qix') if missing, which allows rendering and querying of large shape files without scanning all the features. Memory-mapped access can be enabled as well.
  * <br><br>
  <!-- globalinfo-end -->
  *
@@ -51,6 +61,29 @@ import java.awt.Color;
  * &nbsp;&nbsp;&nbsp;default: #000000
  * </pre>
  * 
+ * <pre>-create-spatial-index &lt;boolean&gt; (property: createSpatialIndex)
+ * &nbsp;&nbsp;&nbsp;If enabled, the quadtree spatial index ('.qix') gets built when missing or 
+ * &nbsp;&nbsp;&nbsp;outdated.
+ * &nbsp;&nbsp;&nbsp;default: true
+ * </pre>
+ * 
+ * <pre>-use-spatial-index &lt;boolean&gt; (property: useSpatialIndex)
+ * &nbsp;&nbsp;&nbsp;If enabled, the spatial index gets used for spatial queries (eg when rendering 
+ * &nbsp;&nbsp;&nbsp;or querying areas of the map).
+ * &nbsp;&nbsp;&nbsp;default: true
+ * </pre>
+ * 
+ * <pre>-memory-mapped &lt;boolean&gt; (property: memoryMapped)
+ * &nbsp;&nbsp;&nbsp;If enabled, memory-mapped buffers are used for accessing the files.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ * 
+ * <pre>-cache-memory-maps &lt;boolean&gt; (property: cacheMemoryMaps)
+ * &nbsp;&nbsp;&nbsp;If enabled, the memory maps get cached and re-used rather than created for 
+ * &nbsp;&nbsp;&nbsp;each access.
+ * &nbsp;&nbsp;&nbsp;default: true
+ * </pre>
+ * 
  <!-- options-end -->
  *
  * @author  fracpete (fracpete at waikato dot ac dot nz)
@@ -62,9 +95,24 @@ public class ShapeFileReader
   /** for serialization. */
   private static final long serialVersionUID = -6604635751859495622L;
 
+  /** the extension of the quadtree spatial index. */
+  public final static String EXT_QIX = ".qix";
+
   /** the fill color to use. */
   protected Color m_FillColor;
 
+  /** whether to create the spatial index. */
+  protected boolean m_CreateSpatialIndex;
+
+  /** whether to use the spatial index. */
+  protected boolean m_UseSpatialIndex;
+
+  /** whether to use memory-mapped buffers. */
+  protected boolean m_MemoryMapped;
+
+  /** whether to cache memory maps. */
+  protected boolean m_CacheMemoryMaps;
+
   /**
    * Returns a string describing the object.
    *
@@ -72,7 +120,12 @@ public class ShapeFileReader
    */
   @Override
   public String globalInfo() {
-    return "Reads shape files.";
+    return 
+	"Reads shape files.\n"
+	+ "Optionally builds the quadtree spatial index ('" + EXT_QIX + "') if "
+	+ "missing, which allows rendering and querying of large shape files "
+	+ "without scanning all the features. Memory-mapped access can be "
+	+ "enabled as well.";
   }
 
   /**
@@ -106,6 +159,22 @@ public class ShapeFileReader
     m_OptionManager.add(
 	    "fill-color", "fillColor",
 	    Color.BLACK);
+
+    m_OptionManager.add(
+	    "create-spatial-index", "createSpatialIndex",
+	    true);
+
+    m_OptionManager.add(
+	    "use-spatial-index", "useSpatialIndex",
+	    true);
+
+    m_OptionManager.add(
+	    "memory-mapped", "memoryMapped",
+	    false);
+
+    m_OptionManager.add(
+	    "cache-memory-maps", "cacheMemoryMaps",
+	    true);
   }
   
   /**
@@ -137,6 +206,193 @@ public class ShapeFileReader
     return "The fill color for the shape file.";
   }
 
+  /**
+   * Sets whether to build the spatial index if missing or outdated.
+   *
+   * @param value	true if to create
+   */
+  public void setCreateSpatialIndex(boolean value) {
+    m_CreateSpatialIndex = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to build the spatial index if missing or outdated.
+   *
+   * @return		true if to create
+   */
+  public boolean getCreateSpatialIndex() {
+    return m_CreateSpatialIndex;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String createSpatialIndexTipText() {
+    return "If enabled, the quadtree spatial index ('" + EXT_QIX + "') gets built when missing or outdated.";
+  }
+
+  /**
+   * Sets whether to use the spatial index.
+   *
+   * @param value	true if to use
+   */
+  public void setUseSpatialIndex(boolean value) {
+    m_UseSpatialIndex = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to use the spatial index.
+   *
+   * @return		true if to use
+   */
+  public boolean getUseSpatialIndex() {
+    return m_UseSpatialIndex;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String useSpatialIndexTipText() {
+    return "If enabled, the spatial index gets used for spatial queries (eg when rendering or querying areas of the map).";
+  }
+
+  /**
+   * Sets whether to use memory-mapped buffers.
+   *
+   * @param value	true if to use
+   */
+  public void setMemoryMapped(boolean value) {
+    m_MemoryMapped = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to use memory-mapped buffers.
+   *
+   * @return		true if to use
+   */
+  public boolean getMemoryMapped() {
+    return m_MemoryMapped;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String memoryMappedTipText() {
+    return "If enabled, memory-mapped buffers are used for accessing the files.";
+  }
+
+  /**
+   * Sets whether to cache the memory maps.
+   *
+   * @param value	true if to cache
+   */
+  public void setCacheMemoryMaps(boolean value) {
+    m_CacheMemoryMaps = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to cache the memory maps.
+   *
+   * @return		true if to cache
+   */
+  public boolean getCacheMemoryMaps() {
+    return m_CacheMemoryMaps;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String cacheMemoryMapsTipText() {
+    return "If enabled, the memory maps get cached and re-used rather than created for each access.";
+  }
+
+  /**
+   * Builds the quadtree spatial index if missing or older than the shape file.
+   *
+   * @param file	the shape file
+   * @throws Exception	if indexing fails
+   */
+  protected void createSpatialIndex(File file) throws Exception {
+    File		qix;
+    ShapeFileIndexer	indexer;
+    int			count;
+    long		start;
+
+    qix = new File(file.getParentFile(), file.getName().replaceFirst("\\.[^.]*$", "") + EXT_QIX);
+    if (qix.exists() && (qix.lastModified() >= file.lastModified()))
+      return;
+
+    if (!file.getParentFile().canWrite()) {
+      getLogger().warning("Cannot create spatial index, directory not writable: " + file.getParentFile());
+      return;
+    }
+
+    start   = System.currentTimeMillis();
+    indexer = new ShapeFileIndexer();
+    indexer.setShapeFileName(new ShpFiles(file));
+    count = indexer.index(false, new NullProgressListener());
+    if (isLoggingEnabled())
+      getLogger().info("Built spatial index " + qix + " (" + count + " features) in " + (System.currentTimeMillis() - start) + "ms");
+  }
+
+  /**
+   * Opens the data store for the shape file, using the configured access
+   * options.
+   *
+   * @param file	the shape file
+   * @return		the data store
+   * @throws Exception	if opening fails
+   */
+  protected ShapefileDataStore openDataStore(File file) throws Exception {
+    ShapefileDataStore		result;
+    ShapefileDataStoreFactory	factory;
+    Map<String,Serializable>	params;
+
+    if (m_CreateSpatialIndex) {
+      try {
+	createSpatialIndex(file);
+      }
+      catch (Exception e) {
+	getLogger().log(Level.WARNING, "Failed to build spatial index for: " + file, e);
+      }
+    }
+
+    factory = new ShapefileDataStoreFactory();
+    params  = new HashMap<>();
+    params.put(ShapefileDataStoreFactory.URLP.key, file.toURI().toURL());
+    params.put(ShapefileDataStoreFactory.CREATE_SPATIAL_INDEX.key, m_CreateSpatialIndex);
+    params.put(ShapefileDataStoreFactory.ENABLE_SPATIAL_INDEX.key, m_UseSpatialIndex);
+    params.put(ShapefileDataStoreFactory.MEMORY_MAPPED.key, m_MemoryMapped);
+    params.put(ShapefileDataStoreFactory.CACHE_MEMORY_MAPS.key, m_CacheMemoryMaps);
+    result = (ShapefileDataStore) factory.createDataStore(params);
+
+    if (isLoggingEnabled()) {
+      if (m_UseSpatialIndex && new ShpFiles(file).exists(ShpFileType.QIX))
+	getLogger().info("Using quadtree spatial index for: " + file);
+      else
+	getLogger().info("No spatial index used, features get scanned sequentially: " + file);
+      getLogger().info("Memory-mapped: " + m_MemoryMapped + ", cache memory maps: " + m_CacheMemoryMaps);
+    }
+
+    return result;
+  }
+
   /**
    * Performs the actual reading.
    * 
@@ -145,12 +401,12 @@ public class ShapeFileReader
   @Override
   protected FeatureLayer doRead() {
     FeatureLayer		result;
-    FileDataStore 		store;
+    ShapefileDataStore 		store;
     SimpleFeatureSource 	featureSource;
     Style 			style;
     
     try {
-      store         = FileDataStoreFinder.getDataStore(m_Input.getAbsoluteFile());
+      store         = openDataStore(m_Input.getAbsoluteFile());
       featureSource = store.getFeatureSource();
     }
     catch (Exception e) {
@@ -15,34 +15,38 @@
 
 /**
  * GeoToolsMapDisplay.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.flow.sink;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
 
 import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
-import org.geotools.coverage.grid.io.AbstractGridFormat;
-import org.geotools.coverage.grid.io.GridFormatFinder;
+import org.geotools.coverage.grid.io.OverviewPolicy;
 import org.geotools.data.FileDataStore;
 import org.geotools.data.FileDataStoreFinder;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.map.FeatureLayer;
-import org.geotools.map.GridReaderLayer;
 import org.geotools.map.Layer;
 import org.geotools.styling.SLD;
 import org.geotools.styling.Style;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
 
 import adams.core.QuickInfoHelper;
 import adams.core.Utils;
 import adams.core.base.BaseInteger;
 import adams.core.io.PlaceholderFile;
+import adams.data.CachedGridReaderLayer;
+import adams.data.GridCoverageReaderCache;
 import adams.data.RasterImageHelper;
 import adams.data.RasterType;
 import adams.flow.core.Token;
@@ -50,7 +54,17 @@ import adams.flow.sink.infotool.DefaultInfoToolSupplier;
 import adams.flow.sink.infotool.InfoToolSupplier;
 import adams.gui.core.AntiAliasingSupporter;
 import adams.gui.core.BasePanel;
+import adams.gui.visualization.maps.ClusteringPointLayer;
+import adams.gui.visualization.maps.CoalescingFeatureLayer;
 import adams.gui.visualization.maps.MapDisplayPanel;
+import adams.gui.visualization.maps.SimplifyingFeatureLayer;
+import adams.gui.visualization.maps.TileCachedLayer;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Lineal;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygonal;
 
 /**
  <!-- globalinfo-start -->
@@ -160,6 +174,13 @@ import adams.gui.visualization.maps.MapDisplayPanel;
  * &nbsp;&nbsp;&nbsp;default: 
  * </pre>
  * 
+ * <pre>-overview-policy &lt;QUALITY|SPEED|NEAREST|IGNORE&gt; (property: overviewPolicy)
+ * &nbsp;&nbsp;&nbsp;The policy for selecting the overview (reduced resolution level) of the 
+ * &nbsp;&nbsp;&nbsp;background images for the current render scale; IGNORE always reads the 
+ * &nbsp;&nbsp;&nbsp;full resolution.
+ * &nbsp;&nbsp;&nbsp;default: NEAREST
+ * </pre>
+ * 
  * <pre>-anti-aliasing-enabled &lt;boolean&gt; (property: antiAliasingEnabled)
  * &nbsp;&nbsp;&nbsp;If enabled, uses anti-aliasing for drawing lines.
  * &nbsp;&nbsp;&nbsp;default: false
@@ -171,6 +192,58 @@ import adams.gui.visualization.maps.MapDisplayPanel;
  * &nbsp;&nbsp;&nbsp;default: adams.flow.sink.infotool.DefaultInfoTool
  * </pre>
  * 
+ * <pre>-cluster-points &lt;boolean&gt; (property: clusterPoints)
+ * &nbsp;&nbsp;&nbsp;If enabled, incoming point layers get displayed as clusters depending on 
+ * &nbsp;&nbsp;&nbsp;the zoom level, with individual points only appearing when zoomed in.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ * 
+ * <pre>-cluster-radius &lt;int&gt; (property: clusterRadius)
+ * &nbsp;&nbsp;&nbsp;The radius in pixels within which points get merged into a cluster.
+ * &nbsp;&nbsp;&nbsp;default: 40
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ * 
+ * <pre>-cluster-color &lt;java.awt.Color&gt; (property: clusterColor)
+ * &nbsp;&nbsp;&nbsp;The color for drawing the clusters; individual points use the point style 
+ * &nbsp;&nbsp;&nbsp;of the layer, falling back on this color if the style has no fill.
+ * &nbsp;&nbsp;&nbsp;default: #ff0000
+ * </pre>
+ * 
+ * <pre>-coalesce-layers &lt;boolean&gt; (property: coalesceLayers)
+ * &nbsp;&nbsp;&nbsp;If enabled, the features of incoming layers get merged into a single layer 
+ * &nbsp;&nbsp;&nbsp;per feature type, which gets repainted at most at the specified rate; merged 
+ * &nbsp;&nbsp;&nbsp;line and polygon layers get simplified if enabled, but clustering does not 
+ * &nbsp;&nbsp;&nbsp;apply to merged layers.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ * 
+ * <pre>-max-repaints-per-second &lt;double&gt; (property: maxRepaintsPerSecond)
+ * &nbsp;&nbsp;&nbsp;The maximum number of repaints per second of merged layers.
+ * &nbsp;&nbsp;&nbsp;default: 4.0
+ * &nbsp;&nbsp;&nbsp;minimum: 0.01
+ * </pre>
+ * 
+ * <pre>-simplify-geometries &lt;boolean&gt; (property: simplifyGeometries)
+ * &nbsp;&nbsp;&nbsp;If enabled, the geometries of line and polygon layers get simplified to 
+ * &nbsp;&nbsp;&nbsp;the current pixel size for rendering (cached per zoom level); full detail 
+ * &nbsp;&nbsp;&nbsp;is only used when zoomed in closely.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ * 
+ * <pre>-simplify-tolerance &lt;double&gt; (property: simplifyTolerance)
+ * &nbsp;&nbsp;&nbsp;The tolerance for simplifying the geometries, in pixels.
+ * &nbsp;&nbsp;&nbsp;default: 0.5
+ * &nbsp;&nbsp;&nbsp;minimum: 0.0
+ * </pre>
+ * 
+ * <pre>-max-tiles &lt;int&gt; (property: maxTiles)
+ * &nbsp;&nbsp;&nbsp;The maximum number of rendered tiles to cache per background layer; each 
+ * &nbsp;&nbsp;&nbsp;tile requires 256KB of memory.
+ * &nbsp;&nbsp;&nbsp;default: 96
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ * 
  <!-- options-end -->
  *
  * @author  fracpete (fracpete at waikato dot ac dot nz)
@@ -201,16 +274,46 @@ public class GeoToolsMapDisplay
   /** the greyscale band. */
   protected BaseInteger[] m_GreyScaleBands;
 
+  /** the overview policy for the background images. */
+  protected OverviewPolicy m_OverviewPolicy;
+
   /** whether anti-aliasing is enabled. */
   protected boolean m_AntiAliasingEnabled;
   
   /** the info tool to use. */
   protected InfoToolSupplier m_InfoTool;
 
-  /** the background layer. */
+  /** whether to cluster point layers. */
+  protected boolean m_ClusterPoints;
+
+  /** the cluster radius in pixels. */
+  protected int m_ClusterRadius;
+
+  /** the color for the clusters. */
+  protected Color m_ClusterColor;
+
+  /** whether to merge the incoming layers. */
+  protected boolean m_CoalesceLayers;
+
+  /** the maximum repaints per second for merged layers. */
+  protected double m_MaxRepaintsPerSecond;
+
+  /** whether to simplify the geometries. */
+  protected boolean m_SimplifyGeometries;
+
+  /** the tolerance for simplifying in pixels. */
+  protected double m_SimplifyTolerance;
+
+  /** the maximum number of tiles to cache per background layer. */
+  protected int m_MaxTiles;
+
+  /** the merged layers (feature type - layer). */
+  protected Map<SimpleFeatureType,CoalescingFeatureLayer> m_CoalescedLayers;
+
+  /** the background layers created by the display (get disposed). */
   protected List<Layer> m_BackgroundLayers;
 
-  /** the data layer. */
+  /** the data layers created by the display, i.e., wrappers and merged layers (get disposed). */
   protected List<Layer> m_DataLayers;
   
   /** the panel. */
@@ -260,6 +363,10 @@ public class GeoToolsMapDisplay
 	    "greyscale-band", "greyScaleBands",
 	    new BaseInteger[0]);
 
+    m_OptionManager.add(
+	    "overview-policy", "overviewPolicy",
+	    OverviewPolicy.NEAREST);
+
     m_OptionManager.add(
 	    "anti-aliasing-enabled", "antiAliasingEnabled",
 	    false);
@@ -267,6 +374,38 @@ public class GeoToolsMapDisplay
     m_OptionManager.add(
 	    "info-tool", "infoTool",
 	    new DefaultInfoToolSupplier());
+
+    m_OptionManager.add(
+	    "cluster-points", "clusterPoints",
+	    false);
+
+    m_OptionManager.add(
+	    "cluster-radius", "clusterRadius",
+	    40, 1, null);
+
+    m_OptionManager.add(
+	    "cluster-color", "clusterColor",
+	    Color.RED);
+
+    m_OptionManager.add(
+	    "coalesce-layers", "coalesceLayers",
+	    false);
+
+    m_OptionManager.add(
+	    "max-repaints-per-second", "maxRepaintsPerSecond",
+	    4.0, 0.01, null);
+
+    m_OptionManager.add(
+	    "simplify-geometries", "simplifyGeometries",
+	    false);
+
+    m_OptionManager.add(
+	    "simplify-tolerance", "simplifyTolerance",
+	    0.5, 0.0, null);
+
+    m_OptionManager.add(
+	    "max-tiles", "maxTiles",
+	    TileCachedLayer.DEFAULT_MAX_TILES, 1, null);
   }
 
   /**
@@ -278,6 +417,7 @@ public class GeoToolsMapDisplay
     
     m_BackgroundLayers = new ArrayList<Layer>();
     m_DataLayers       = new ArrayList<Layer>();
+    m_CoalescedLayers  = new HashMap<SimpleFeatureType,CoalescingFeatureLayer>();
   }
   
   /**
@@ -293,6 +433,9 @@ public class GeoToolsMapDisplay
     result += QuickInfoHelper.toString(this, "backgroundShapes", Utils.flatten(m_BackgroundShapes, ", "), "shapes: ");
     result += QuickInfoHelper.toString(this, "antiAliasingEnabled", m_AntiAliasingEnabled, "anti-aliasing", ", ");
     result += QuickInfoHelper.toString(this, "infoTool", m_InfoTool, ", info: ");
+    result += QuickInfoHelper.toString(this, "clusterPoints", m_ClusterPoints, "clustering", ", ");
+    result += QuickInfoHelper.toString(this, "coalesceLayers", m_CoalesceLayers, "merged", ", ");
+    result += QuickInfoHelper.toString(this, "simplifyGeometries", m_SimplifyGeometries, "simplified", ", ");
 
     return result;
   }
@@ -484,6 +627,38 @@ public class GeoToolsMapDisplay
     return "The corresponding greyscale band(s) to use for the background images.";
   }
 
+  /**
+   * Sets the policy for selecting the overview of the background images.
+   *
+   * @param value	the policy
+   */
+  public void setOverviewPolicy(OverviewPolicy value) {
+    m_OverviewPolicy = value;
+    reset();
+  }
+
+  /**
+   * Returns the policy for selecting the overview of the background images.
+   *
+   * @return		the policy
+   */
+  public OverviewPolicy getOverviewPolicy() {
+    return m_OverviewPolicy;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String overviewPolicyTipText() {
+    return 
+	"The policy for selecting the overview (reduced resolution level) of "
+	+ "the background images for the current render scale; " 
+	+ OverviewPolicy.IGNORE + " always reads the full resolution.";
+  }
+
   /**
    * Sets whether to use anti-aliasing.
    *
@@ -542,6 +717,259 @@ public class GeoToolsMapDisplay
     return "The info-tool to use for displaying details on locations on the map (when clicked).";
   }
 
+  /**
+   * Sets whether to display point layers as clusters.
+   * 
+   * @param value	true if to cluster
+   */
+  public void setClusterPoints(boolean value) {
+    m_ClusterPoints = value;
+    reset();
+  }
+  
+  /**
+   * Returns whether to display point layers as clusters.
+   * 
+   * @return		true if to cluster
+   */
+  public boolean getClusterPoints() {
+    return m_ClusterPoints;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String clusterPointsTipText() {
+    return 
+	"If enabled, incoming point layers get displayed as clusters depending "
+	+ "on the zoom level, with individual points only appearing when zoomed in.";
+  }
+
+  /**
+   * Sets the radius within which points get merged.
+   * 
+   * @param value	the radius in pixels
+   */
+  public void setClusterRadius(int value) {
+    if (getOptionManager().isValid("clusterRadius", value)) {
+      m_ClusterRadius = value;
+      reset();
+    }
+  }
+  
+  /**
+   * Returns the radius within which points get merged.
+   * 
+   * @return		the radius in pixels
+   */
+  public int getClusterRadius() {
+    return m_ClusterRadius;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String clusterRadiusTipText() {
+    return "The radius in pixels within which points get merged into a cluster.";
+  }
+
+  /**
+   * Sets the color for drawing the clusters.
+   * 
+   * @param value	the color
+   */
+  public void setClusterColor(Color value) {
+    m_ClusterColor = value;
+    reset();
+  }
+  
+  /**
+   * Returns the color for drawing the clusters.
+   * 
+   * @return		the color
+   */
+  public Color getClusterColor() {
+    return m_ClusterColor;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String clusterColorTipText() {
+    return 
+	"The color for drawing the clusters; individual points use the point "
+	+ "style of the layer, falling back on this color if the style has no fill.";
+  }
+
+  /**
+   * Sets whether to merge the features of incoming layers.
+   * 
+   * @param value	true if to merge
+   */
+  public void setCoalesceLayers(boolean value) {
+    m_CoalesceLayers = value;
+    reset();
+  }
+  
+  /**
+   * Returns whether to merge the features of incoming layers.
+   * 
+   * @return		true if to merge
+   */
+  public boolean getCoalesceLayers() {
+    return m_CoalesceLayers;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String coalesceLayersTipText() {
+    return 
+	"If enabled, the features of incoming layers get merged into a single "
+	+ "layer per feature type, which gets repainted at most at the specified "
+	+ "rate; merged line and polygon layers get simplified if enabled, but "
+	+ "clustering does not apply to merged layers.";
+  }
+
+  /**
+   * Sets the maximum number of repaints per second of merged layers.
+   * 
+   * @param value	the maximum
+   */
+  public void setMaxRepaintsPerSecond(double value) {
+    if (getOptionManager().isValid("maxRepaintsPerSecond", value)) {
+      m_MaxRepaintsPerSecond = value;
+      reset();
+    }
+  }
+  
+  /**
+   * Returns the maximum number of repaints per second of merged layers.
+   * 
+   * @return		the maximum
+   */
+  public double getMaxRepaintsPerSecond() {
+    return m_MaxRepaintsPerSecond;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxRepaintsPerSecondTipText() {
+    return "The maximum number of repaints per second of merged layers.";
+  }
+
+  /**
+   * Sets whether to simplify the geometries for rendering.
+   * 
+   * @param value	true if to simplify
+   */
+  public void setSimplifyGeometries(boolean value) {
+    m_SimplifyGeometries = value;
+    reset();
+  }
+  
+  /**
+   * Returns whether to simplify the geometries for rendering.
+   * 
+   * @return		true if to simplify
+   */
+  public boolean getSimplifyGeometries() {
+    return m_SimplifyGeometries;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String simplifyGeometriesTipText() {
+    return 
+	"If enabled, the geometries of line and polygon layers get simplified "
+	+ "to the current pixel size for rendering (cached per zoom level); full "
+	+ "detail is only used when zoomed in closely.";
+  }
+
+  /**
+   * Sets the tolerance for simplifying the geometries.
+   * 
+   * @param value	the tolerance in pixels
+   */
+  public void setSimplifyTolerance(double value) {
+    if (getOptionManager().isValid("simplifyTolerance", value)) {
+      m_SimplifyTolerance = value;
+      reset();
+    }
+  }
+  
+  /**
+   * Returns the tolerance for simplifying the geometries.
+   * 
+   * @return		the tolerance in pixels
+   */
+  public double getSimplifyTolerance() {
+    return m_SimplifyTolerance;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String simplifyToleranceTipText() {
+    return "The tolerance for simplifying the geometries, in pixels.";
+  }
+
+  /**
+   * Sets the maximum number of tiles to cache per background layer.
+   * 
+   * @param value	the maximum number of tiles
+   */
+  public void setMaxTiles(int value) {
+    if (getOptionManager().isValid("maxTiles", value)) {
+      m_MaxTiles = value;
+      reset();
+    }
+  }
+  
+  /**
+   * Returns the maximum number of tiles to cache per background layer.
+   * 
+   * @return		the maximum number of tiles
+   */
+  public int getMaxTiles() {
+    return m_MaxTiles;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxTilesTipText() {
+    return 
+	"The maximum number of rendered tiles to cache per background layer; "
+	+ "each tile requires 256KB of memory.";
+  }
+
   /**
    * Returns the class that the consumer accepts.
    * 
@@ -565,14 +993,14 @@ public class GeoToolsMapDisplay
     SimpleFeatureSource[] 		featureSource;
     Style 				style;
     Layer				layer;
-    AbstractGridFormat 			format;
     AbstractGridCoverage2DReader	reader;
     InfoToolSupplier			infoTool;
     
     result = new BasePanel(new BorderLayout());
 
-    m_BackgroundLayers.clear();
-    m_DataLayers.clear();
+    disposeLayers(m_BackgroundLayers);
+    disposeLayers(m_DataLayers);
+    m_CoalescedLayers.clear();
 
     infoTool = m_InfoTool.shallowCopy(true);
     if (infoTool.requiresDatabaseConnection())
@@ -581,32 +1009,38 @@ public class GeoToolsMapDisplay
     m_PanelMap = new MapDisplayPanel();
     m_PanelMap.getMapPane().setBackground(m_BackgroundColor);
     m_PanelMap.setAntiAliasingEnabled(m_AntiAliasingEnabled);
+    m_PanelMap.setMaxTiles(m_MaxTiles);
     m_PanelMap.setInfoTool(infoTool);
 
     // raster files
     for (i = 0; i < m_BackgroundImages.length; i++) {
       try {
-	format = GridFormatFinder.findFormat(m_BackgroundImages[i].getAbsoluteFile());        
-	reader = format.getReader(m_BackgroundImages[i].getAbsoluteFile());
+	reader = GridCoverageReaderCache.acquire(m_BackgroundImages[i].getAbsoluteFile(), m_OverviewPolicy);
       }
       catch (Exception e) {
 	handleException("Failed to load raster file : " + m_BackgroundImages[i], e);
 	return result;
       }
 
-      switch (m_RasterTypes[i]) {
-	case GREYSCALE:
-	  style = RasterImageHelper.createGreyscaleStyle(m_GreyScaleBands[i].intValue());
-	  break;
-	case RGB:
-	  style = RasterImageHelper.createRGBStyle(reader);
-	  break;
-	default:
-	  throw new IllegalStateException("Unhandled raster type: " + m_RasterTypes[i]);
+      try {
+	switch (m_RasterTypes[i]) {
+	  case GREYSCALE:
+	    style = RasterImageHelper.createGreyscaleStyle(m_GreyScaleBands[i].intValue());
+	    break;
+	  case RGB:
+	    style = RasterImageHelper.createRGBStyle(reader);
+	    break;
+	  default:
+	    throw new IllegalStateException("Unhandled raster type: " + m_RasterTypes[i]);
+	}
       }
-      layer = new GridReaderLayer(reader, style);
+      catch (RuntimeException e) {
+	GridCoverageReaderCache.release(reader);
+	throw e;
+      }
+      layer = new CachedGridReaderLayer(reader, style);
       m_BackgroundLayers.add(layer);
-      m_PanelMap.addLayer(layer);
+      m_PanelMap.addBackgroundLayer(layer);
     }
     
     // shape files
@@ -625,7 +1059,11 @@ public class GeoToolsMapDisplay
       style = SLD.createSimpleStyle(featureSource[i].getSchema(), m_FillColors[i]);
       layer = new FeatureLayer(featureSource[i], style);
       m_BackgroundLayers.add(layer);
-      m_PanelMap.addLayer(layer);
+      if (m_SimplifyGeometries) {
+	layer = simplify((FeatureLayer) layer);
+	m_BackgroundLayers.add(layer);
+      }
+      m_PanelMap.addBackgroundLayer(layer);
     }
     
     result.add(m_PanelMap, BorderLayout.CENTER);
@@ -639,7 +1077,23 @@ public class GeoToolsMapDisplay
   @Override
   public void clearPanel() {
     m_PanelMap.removeAllLayers();
-    m_DataLayers.clear();
+    disposeLayers(m_DataLayers);
+    m_CoalescedLayers.clear();
+  }
+
+  /**
+   * Disposes the layers (e.g., releasing cached raster readers) and empties
+   * the list. Only to be used for layers that the display created itself,
+   * never for the layers received as tokens.
+   *
+   * @param layers	the layers to dispose
+   */
+  protected void disposeLayers(List<Layer> layers) {
+    if (layers == null)
+      return;
+    for (Layer layer: layers)
+      layer.dispose();
+    layers.clear();
   }
 
   /**
@@ -650,8 +1104,120 @@ public class GeoToolsMapDisplay
    */
   @Override
   protected void display(Token token) {
-    m_DataLayers.add((Layer) token.getPayload());
-    m_PanelMap.addLayer((Layer) token.getPayload());
+    Layer	layer;
+
+    // the incoming layer is owned by the token, only wrappers get disposed
+    layer = (Layer) token.getPayload();
+    if (m_CoalesceLayers && (layer instanceof FeatureLayer) && (layer.getFeatureSource().getSchema() instanceof SimpleFeatureType)) {
+      displayCoalesced((FeatureLayer) layer);
+      return;
+    }
+    if (m_SimplifyGeometries && isLineOrPolygonLayer(layer)) {
+      layer = simplify((FeatureLayer) layer);
+      m_DataLayers.add(layer);
+    }
+    if (m_ClusterPoints && isPointLayer(layer)) {
+      try {
+	layer = new ClusteringPointLayer((FeatureLayer) layer, m_ClusterRadius, m_ClusterColor);
+	m_DataLayers.add(layer);
+	if (isLoggingEnabled())
+	  getLogger().info("Clustering " + ((ClusteringPointLayer) layer).getNumPoints() + " points");
+      }
+      catch (Exception e) {
+	handleException("Failed to set up clustering for layer: " + layer.getTitle(), e);
+      }
+    }
+    m_PanelMap.addLayer(layer);
+  }
+
+  /**
+   * Merges the features of the layer into the layer for its feature type.
+   * The incoming layer is left untouched, as it is owned by the token.
+   * Line and polygon layers get simplified if enabled, clustering does not
+   * apply, as the clusters are computed from a fixed set of points.
+   *
+   * @param layer	the layer to merge
+   */
+  protected void displayCoalesced(FeatureLayer layer) {
+    SimpleFeatureType		type;
+    CoalescingFeatureLayer	coalesced;
+    Layer			display;
+
+    type      = (SimpleFeatureType) layer.getFeatureSource().getSchema();
+    coalesced = m_CoalescedLayers.get(type);
+    if (coalesced == null) {
+      coalesced = new CoalescingFeatureLayer(type, layer.getStyle(), m_MaxRepaintsPerSecond);
+      m_CoalescedLayers.put(type, coalesced);
+      m_DataLayers.add(coalesced);
+      display   = coalesced;
+      if (m_SimplifyGeometries && isLineOrPolygonLayer(coalesced)) {
+	display = simplify(coalesced);
+	m_DataLayers.add(display);
+      }
+      m_PanelMap.addLayer(display);
+    }
+    try {
+      coalesced.addFeatures(layer.getFeatureSource().getFeatures());
+    }
+    catch (Exception e) {
+      handleException("Failed to merge features of layer: " + layer.getTitle(), e);
+    }
+  }
+
+  /**
+   * Wraps the layer in a layer that simplifies the geometries for rendering.
+   *
+   * @param layer	the layer to wrap
+   * @return		the wrapped layer
+   */
+  protected Layer simplify(FeatureLayer layer) {
+    SimplifyingFeatureLayer	result;
+
+    result = new SimplifyingFeatureLayer(layer, m_SimplifyTolerance);
+    result.setAntiAliasingEnabled(m_AntiAliasingEnabled);
+
+    return result;
+  }
+
+  /**
+   * Checks whether the layer is a feature layer with line or polygon
+   * geometries (or generic geometries).
+   *
+   * @param layer	the layer to check
+   * @return		true if line/polygon layer
+   */
+  protected boolean isLineOrPolygonLayer(Layer layer) {
+    GeometryDescriptor	geom;
+    Class		binding;
+
+    if (!(layer instanceof FeatureLayer))
+      return false;
+    geom = layer.getFeatureSource().getSchema().getGeometryDescriptor();
+    if (geom == null)
+      return false;
+    binding = geom.getType().getBinding();
+
+    return Lineal.class.isAssignableFrom(binding) || Polygonal.class.isAssignableFrom(binding) || (binding == Geometry.class);
+  }
+
+  /**
+   * Checks whether the layer is a feature layer with point geometries.
+   *
+   * @param layer	the layer to check
+   * @return		true if point layer
+   */
+  protected boolean isPointLayer(Layer layer) {
+    GeometryDescriptor	geom;
+    Class		binding;
+
+    if (!(layer instanceof FeatureLayer))
+      return false;
+    geom = layer.getFeatureSource().getSchema().getGeometryDescriptor();
+    if (geom == null)
+      return false;
+    binding = geom.getType().getBinding();
+
+    return Point.class.isAssignableFrom(binding) || MultiPoint.class.isAssignableFrom(binding);
   }
   
   /**
@@ -713,6 +1279,8 @@ public class GeoToolsMapDisplay
   @Override
   protected void clear() {
     m_PanelMap.removeAllLayers();
+    disposeLayers(m_DataLayers);
+    m_CoalescedLayers.clear();
   }
 
   @Override
@@ -736,16 +1304,13 @@ public class GeoToolsMapDisplay
    */
   @Override
   public void cleanUp() {
-    if (m_BackgroundLayers != null) {
-      for (Layer layer: m_BackgroundLayers)
-	layer.dispose();
-      m_BackgroundLayers.clear();
-    }
-    if (m_DataLayers != null) {
-      for (Layer layer: m_DataLayers)
-	layer.dispose();
-      m_DataLayers.clear();
-    }
+    // remove the layers first, as disposing the map content disposes its layers
+    if (m_PanelMap != null)
+      m_PanelMap.removeAllLayers();
+    disposeLayers(m_BackgroundLayers);
+    disposeLayers(m_DataLayers);
+    if (m_CoalescedLayers != null)
+      m_CoalescedLayers.clear();
     if (m_PanelMap != null) {
       m_PanelMap.cleanUp();
       m_PanelMap = null;
@@ -0,0 +1,648 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * StreamingShapeFileWriter.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.flow.sink;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import adams.core.QuickInfoHelper;
+import adams.core.io.PlaceholderFile;
+import adams.data.conversion.feature.AbstractFeatureGenerator;
+import adams.data.conversion.feature.SimplePointGenerator;
+import adams.data.spreadsheet.Row;
+
+/**
+ <!-- globalinfo-start -->
+ * Appends incoming features to a shape file as they arrive, rather than collecting them in a feature layer first. Spreadsheet rows get turned into features using the specified feature generator.<br>
+ * The shape file gets created with the schema of the first feature and a single writer is kept open for it, which gets closed (i.e., the shape file is complete on disk) when the next file gets started or the flow finishes. Memory usage therefore stays bounded, regardless of the number of features.<br>
+ * In order to keep the amount of data at risk bounded as well (e.g., when the flow gets killed), the output gets rolled over to a new shape file (OUTPUT-2.shp, OUTPUT-3.shp, etc) by default, once the current file has reached the maximum number of features or has been open longer than the maximum interval. The interval gets checked whenever a feature arrives. Set both limits to 0 to write a single file.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;org.opengis.feature.simple.SimpleFeature<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.Row<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: StreamingShapeFileWriter
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseText&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-output &lt;adams.core.io.PlaceholderFile&gt; (property: output)
+ * &nbsp;&nbsp;&nbsp;The shape file to write the features to.
+ * &nbsp;&nbsp;&nbsp;default: ${TMP}&#47;out.shp
+ * </pre>
+ *
+ * <pre>-append &lt;boolean&gt; (property: append)
+ * &nbsp;&nbsp;&nbsp;If enabled, features get appended to an existing shape file, otherwise the
+ * &nbsp;&nbsp;&nbsp;file gets overwritten.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-max-features &lt;int&gt; (property: maxFeatures)
+ * &nbsp;&nbsp;&nbsp;The maximum number of features per shape file, after which to roll over
+ * &nbsp;&nbsp;&nbsp;to a new file (OUTPUT-2.shp, OUTPUT-3.shp, etc); 0 for no limit.
+ * &nbsp;&nbsp;&nbsp;default: 100000
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-max-interval &lt;int&gt; (property: maxInterval)
+ * &nbsp;&nbsp;&nbsp;The maximum time in seconds that a shape file is kept open, after which
+ * &nbsp;&nbsp;&nbsp;to roll over to a new file with the next feature; 0 for no limit.
+ * &nbsp;&nbsp;&nbsp;default: 3600
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-generator &lt;adams.data.conversion.feature.AbstractFeatureGenerator&gt; (property: generator)
+ * &nbsp;&nbsp;&nbsp;The generator for turning spreadsheet rows into features.
+ * &nbsp;&nbsp;&nbsp;default: adams.data.conversion.feature.SimplePointGenerator
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class StreamingShapeFileWriter
+  extends AbstractSink {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -1434917372506911744L;
+
+  /** the shape file to write to. */
+  protected PlaceholderFile m_Output;
+
+  /** whether to append. */
+  protected boolean m_Append;
+
+  /** the maximum number of features per file. */
+  protected int m_MaxFeatures;
+
+  /** the maximum number of seconds a file is kept open. */
+  protected int m_MaxInterval;
+
+  /** the feature generator for rows. */
+  protected AbstractFeatureGenerator m_Generator;
+
+  /** the data store in use. */
+  protected transient ShapefileDataStore m_DataStore;
+
+  /** the name of the feature type in the store. */
+  protected String m_TypeName;
+
+  /** the writer in use. */
+  protected transient FeatureWriter<SimpleFeatureType,SimpleFeature> m_Writer;
+
+  /** the attribute indices of the incoming features (excl geometry). */
+  protected int[] m_SourceIndices;
+
+  /** the attribute indices in the shape file (excl geometry). */
+  protected int[] m_TargetIndices;
+
+  /** the type of the incoming features. */
+  protected transient SimpleFeatureType m_Type;
+
+  /** the index of the current file (0 = output file). */
+  protected int m_FileIndex;
+
+  /** the number of features in the current file. */
+  protected int m_FileCount;
+
+  /** the time the current file was opened. */
+  protected long m_FileStart;
+
+  /** the total number of features written. */
+  protected long m_Count;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+	"Appends incoming features to a shape file as they arrive, rather "
+	+ "than collecting them in a feature layer first. Spreadsheet rows get "
+	+ "turned into features using the specified feature generator.\n"
+	+ "The shape file gets created with the schema of the first feature and "
+	+ "a single writer is kept open for it, which gets closed (i.e., the "
+	+ "shape file is complete on disk) when the next file gets started or "
+	+ "the flow finishes. Memory usage therefore stays bounded, regardless "
+	+ "of the number of features.\n"
+	+ "In order to keep the amount of data at risk bounded as well (e.g., "
+	+ "when the flow gets killed), the output gets rolled over to a new "
+	+ "shape file (OUTPUT-2.shp, OUTPUT-3.shp, etc) by default, once the "
+	+ "current file has reached the maximum number of features or has been "
+	+ "open longer than the maximum interval. The interval gets checked "
+	+ "whenever a feature arrives. Set both limits to 0 to write a single file.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+	    "output", "output",
+	    new PlaceholderFile("${TMP}/out.shp"));
+
+    m_OptionManager.add(
+	    "append", "append",
+	    false);
+
+    m_OptionManager.add(
+	    "max-features", "maxFeatures",
+	    100000, 0, null);
+
+    m_OptionManager.add(
+	    "max-interval", "maxInterval",
+	    3600, 0, null);
+
+    m_OptionManager.add(
+	    "generator", "generator",
+	    new SimplePointGenerator());
+  }
+
+  /**
+   * Sets the shape file to write to.
+   *
+   * @param value	the file
+   */
+  public void setOutput(PlaceholderFile value) {
+    m_Output = value;
+    reset();
+  }
+
+  /**
+   * Returns the shape file to write to.
+   *
+   * @return		the file
+   */
+  public PlaceholderFile getOutput() {
+    return m_Output;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String outputTipText() {
+    return "The shape file to write the features to.";
+  }
+
+  /**
+   * Sets whether to append to an existing shape file.
+   *
+   * @param value	true if to append
+   */
+  public void setAppend(boolean value) {
+    m_Append = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to append to an existing shape file.
+   *
+   * @return		true if to append
+   */
+  public boolean getAppend() {
+    return m_Append;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String appendTipText() {
+    return "If enabled, features get appended to an existing shape file, otherwise the file gets overwritten.";
+  }
+
+  /**
+   * Sets the maximum number of features per file.
+   *
+   * @param value	the maximum, 0 for no limit
+   */
+  public void setMaxFeatures(int value) {
+    if (getOptionManager().isValid("maxFeatures", value)) {
+      m_MaxFeatures = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of features per file.
+   *
+   * @return		the maximum, 0 for no limit
+   */
+  public int getMaxFeatures() {
+    return m_MaxFeatures;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxFeaturesTipText() {
+    return
+	"The maximum number of features per shape file, after which to roll "
+	+ "over to a new file (OUTPUT-2.shp, OUTPUT-3.shp, etc); 0 for no limit.";
+  }
+
+  /**
+   * Sets the maximum time in seconds that a file is kept open.
+   *
+   * @param value	the maximum, 0 for no limit
+   */
+  public void setMaxInterval(int value) {
+    if (getOptionManager().isValid("maxInterval", value)) {
+      m_MaxInterval = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum time in seconds that a file is kept open.
+   *
+   * @return		the maximum, 0 for no limit
+   */
+  public int getMaxInterval() {
+    return m_MaxInterval;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxIntervalTipText() {
+    return
+	"The maximum time in seconds that a shape file is kept open, after "
+	+ "which to roll over to a new file with the next feature; 0 for no limit.";
+  }
+
+  /**
+   * Sets the generator for turning rows into features.
+   *
+   * @param value	the generator
+   */
+  public void setGenerator(AbstractFeatureGenerator value) {
+    m_Generator = value;
+    reset();
+  }
+
+  /**
+   * Returns the generator for turning rows into features.
+   *
+   * @return		the generator
+   */
+  public AbstractFeatureGenerator getGenerator() {
+    return m_Generator;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String generatorTipText() {
+    return "The generator for turning spreadsheet rows into features.";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "output", m_Output);
+    result += QuickInfoHelper.toString(this, "append", m_Append, "append", ", ");
+    result += QuickInfoHelper.toString(this, "maxFeatures", m_MaxFeatures, ", max: ");
+    result += QuickInfoHelper.toString(this, "maxInterval", m_MaxInterval, ", interval: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return		the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{SimpleFeature.class, Row.class};
+  }
+
+  /**
+   * Initializes the item for flow execution.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    result = super.setUp();
+
+    if (result == null) {
+      if (m_Output.isDirectory())
+	result = "Output points to a directory: " + m_Output;
+      else if (!m_Output.getAbsoluteFile().getParentFile().exists())
+	result = "Output directory does not exist: " + m_Output.getAbsoluteFile().getParentFile();
+    }
+
+    if (result == null) {
+      m_Count     = 0;
+      m_FileIndex = 0;
+      m_FileCount = 0;
+    }
+
+    return result;
+  }
+
+  /**
+   * Determines the non-geometry attributes of the feature type.
+   *
+   * @param type	the type to inspect
+   * @return		the indices
+   */
+  protected int[] getAttributeIndices(SimpleFeatureType type) {
+    List<Integer>		result;
+    GeometryDescriptor		geom;
+    int				i;
+    int[]			indices;
+
+    result = new ArrayList<>();
+    geom   = type.getGeometryDescriptor();
+    for (i = 0; i < type.getAttributeCount(); i++) {
+      if (type.getDescriptor(i) == geom)
+	continue;
+      result.add(i);
+    }
+
+    indices = new int[result.size()];
+    for (i = 0; i < indices.length; i++)
+      indices[i] = result.get(i);
+
+    return indices;
+  }
+
+  /**
+   * Returns the shape file for the specified rollover index.
+   *
+   * @param index	the index of the file, 0 for the output file
+   * @return		the file
+   */
+  protected File getFile(int index) {
+    File	output;
+    String	name;
+
+    output = m_Output.getAbsoluteFile();
+    if (index == 0)
+      return output;
+
+    name = output.getName();
+    if (name.toLowerCase().endsWith(".shp"))
+      name = name.substring(0, name.length() - 4);
+
+    return new File(output.getParentFile(), name + "-" + (index + 1) + ".shp");
+  }
+
+  /**
+   * Opens (or creates) the shape file and the append writer that is used
+   * for all the features going into this file.
+   *
+   * @param file	the shape file to open
+   * @param append	whether to append to an existing file
+   * @throws Exception	if opening fails
+   */
+  protected void open(File file, boolean append) throws Exception {
+    ShapefileDataStoreFactory	factory;
+    Map<String,Serializable>	params;
+    SimpleFeatureType		target;
+
+    factory = new ShapefileDataStoreFactory();
+    params  = new HashMap<>();
+    params.put(ShapefileDataStoreFactory.URLP.key, file.toURI().toURL());
+    params.put(ShapefileDataStoreFactory.CREATE_SPATIAL_INDEX.key, Boolean.TRUE);
+
+    if (append && file.exists()) {
+      m_DataStore = (ShapefileDataStore) factory.createDataStore(params);
+      if (isLoggingEnabled())
+	getLogger().info("Appending to: " + file);
+    }
+    else {
+      m_DataStore = (ShapefileDataStore) factory.createNewDataStore(params);
+      m_DataStore.createSchema(m_Type);
+      if (isLoggingEnabled())
+	getLogger().info("Created: " + file);
+    }
+    m_TypeName = m_DataStore.getTypeNames()[0];
+    target     = m_DataStore.getSchema();
+
+    m_SourceIndices = getAttributeIndices(m_Type);
+    m_TargetIndices = getAttributeIndices(target);
+    if (m_SourceIndices.length != m_TargetIndices.length)
+      throw new IllegalStateException(
+	  "Number of attributes differ, features: " + m_SourceIndices.length
+	  + ", shape file: " + m_TargetIndices.length);
+
+    m_Writer    = m_DataStore.getFeatureWriterAppend(m_TypeName, Transaction.AUTO_COMMIT);
+    m_FileCount = 0;
+    m_FileStart = System.currentTimeMillis();
+  }
+
+  /**
+   * Closes the writer, finalizing the current shape file on disk, and
+   * disposes the data store.
+   */
+  protected void close() {
+    if (m_Writer != null) {
+      try {
+	m_Writer.close();
+	if (isLoggingEnabled())
+	  getLogger().info("Wrote " + m_FileCount + " features to " + getFile(m_FileIndex) + " (total: " + m_Count + ")");
+      }
+      catch (Exception e) {
+	getLogger().log(Level.SEVERE, "Failed to close writer for: " + getFile(m_FileIndex), e);
+      }
+      m_Writer = null;
+    }
+
+    if (m_DataStore != null) {
+      m_DataStore.dispose();
+      m_DataStore = null;
+    }
+  }
+
+  /**
+   * Checks whether the current file has reached the maximum number of
+   * features or has been open longer than the maximum interval.
+   *
+   * @return		true if to start a new file
+   */
+  protected boolean isRolloverDue() {
+    if (m_FileCount == 0)
+      return false;
+    if ((m_MaxFeatures > 0) && (m_FileCount >= m_MaxFeatures))
+      return true;
+    if ((m_MaxInterval > 0) && (System.currentTimeMillis() - m_FileStart >= m_MaxInterval * 1000L))
+      return true;
+    return false;
+  }
+
+  /**
+   * Closes the current shape file and starts the next one.
+   *
+   * @throws Exception	if opening the next file fails
+   */
+  protected void rollover() throws Exception {
+    close();
+    m_FileIndex++;
+    open(getFile(m_FileIndex), false);
+  }
+
+  /**
+   * Writes the feature to the shape file.
+   *
+   * @param feature	the feature to write
+   * @throws Exception	if writing fails
+   */
+  protected void write(SimpleFeature feature) throws Exception {
+    SimpleFeature	next;
+    int			i;
+
+    if (m_DataStore == null) {
+      m_Type = feature.getFeatureType();
+      open(getFile(m_FileIndex), m_Append && (m_FileIndex == 0));
+    }
+    else if (isRolloverDue()) {
+      rollover();
+    }
+    if (m_Writer == null)
+      throw new IllegalStateException("No writer available for: " + getFile(m_FileIndex));
+
+    next = m_Writer.next();
+    next.setDefaultGeometry(feature.getDefaultGeometry());
+    for (i = 0; i < m_SourceIndices.length; i++)
+      next.setAttribute(m_TargetIndices[i], feature.getAttribute(m_SourceIndices[i]));
+    m_Writer.write();
+
+    m_Count++;
+    m_FileCount++;
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String	result;
+    Feature	feature;
+
+    result = null;
+
+    try {
+      if (m_InputToken.getPayload() instanceof Row)
+	feature = m_Generator.generateFeature((Row) m_InputToken.getPayload());
+      else
+	feature = (Feature) m_InputToken.getPayload();
+
+      if (feature == null)
+	result = "Failed to generate feature from: " + m_InputToken.getPayload();
+      else if (!(feature instanceof SimpleFeature))
+	result = "Only simple features can be written to shape files: " + feature.getClass().getName();
+      else
+	write((SimpleFeature) feature);
+    }
+    catch (Exception e) {
+      result = handleException("Failed to write feature to: " + m_Output, e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Cleans up after the execution has finished.
+   */
+  @Override
+  public void wrapUp() {
+    close();
+    m_Type = null;
+
+    super.wrapUp();
+  }
+}
@@ -15,12 +15,13 @@
 
 /*
  * SpreadSheetInfoToolSupplier.java
- * Copyright (C) 2013-2018 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.flow.sink.infotool;
 
 import adams.core.License;
 import adams.core.annotation.MixedCopyright;
+import adams.data.CRSHelper;
 import adams.data.spreadsheet.DefaultSpreadSheet;
 import adams.data.spreadsheet.Row;
 import adams.data.spreadsheet.SparseDataRow;
@@ -34,21 +35,48 @@ import adams.gui.core.SpreadSheetTable;
 import adams.gui.dialog.ApprovalDialog;
 import adams.gui.event.SearchEvent;
 import adams.gui.event.SearchListener;
+import adams.gui.visualization.maps.ClusteringPointLayer;
+import adams.gui.visualization.maps.SimplifyingFeatureLayer;
+import adams.gui.visualization.maps.TileCachedLayer;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygonal;
+import org.geotools.data.FeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.geometry.DirectPosition2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
 import org.geotools.map.Layer;
 import org.geotools.map.MapContent;
+import org.geotools.referencing.CRS;
 import org.geotools.swing.event.MapMouseEvent;
 import org.geotools.swing.tool.CursorTool;
 import org.geotools.swing.tool.FeatureLayerHelper;
-import org.geotools.swing.tool.InfoToolHelper;
 import org.geotools.swing.tool.InfoToolResult;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.geometry.DirectPosition;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import weka.core.Utils;
 
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import java.awt.BorderLayout;
 import java.awt.Dialog;
 import java.awt.Dialog.ModalityType;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 
 /**
@@ -82,6 +110,15 @@ public class SpreadSheetInfoToolSupplier
     /** the multi-page pane for displaying the info. */
     protected MultiPagePane m_Content;
 
+    /** the executor for the queries. */
+    protected ExecutorService m_Executor;
+
+    /** the outstanding queries. */
+    protected List<Future<?>> m_Queries;
+
+    /** the current query generation, gets incremented with every click. */
+    protected volatile int m_Generation;
+
     /**
      * Sets whether to allow the user to search the table.
      *
@@ -101,7 +138,222 @@ public class SpreadSheetInfoToolSupplier
     }
 
     /**
-     * Creates and shows a reporter.
+     * Returns the executor for the queries, creates it if necessary.
+     *
+     * @return		the executor
+     */
+    protected synchronized ExecutorService getExecutor() {
+      if (m_Executor == null) {
+	m_Executor = Executors.newFixedThreadPool(
+	    Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+	    new ThreadFactory() {
+	      @Override
+	      public Thread newThread(Runnable r) {
+		Thread result = new Thread(r, "SpreadSheetInfoTool");
+		result.setDaemon(true);
+		return result;
+	      }
+	    });
+      }
+      return m_Executor;
+    }
+
+    /**
+     * Cancels all outstanding queries.
+     */
+    protected void cancelQueries() {
+      m_Generation++;
+      if (m_Queries != null) {
+	for (Future<?> query: m_Queries)
+	  query.cancel(true);
+	m_Queries.clear();
+      }
+    }
+
+    /**
+     * Turns the features into a spreadsheet.
+     *
+     * @param features	the features to convert
+     * @return		the spreadsheet
+     */
+    protected SpreadSheet toSpreadSheet(List<SimpleFeature> features) {
+      SpreadSheet	result;
+      Row		headerRow;
+      Row		dataRow;
+      String		key;
+      Object		value;
+
+      result = new DefaultSpreadSheet();
+      result.setDataRowClass(SparseDataRow.class);
+      headerRow = result.getHeaderRow();
+      headerRow.addCell("id").setContent("ID");
+      for (SimpleFeature feature: features) {
+	dataRow = result.addRow();
+	dataRow.addCell("id").setContent(feature.getID());
+	for (Property prop: feature.getProperties()) {
+	  key   = prop.getName().getLocalPart();
+	  value = prop.getValue();
+	  if (value == null)
+	    continue;
+	  if (value instanceof Geometry)
+	    value = ((Geometry) value).getGeometryType();
+	  if (!headerRow.hasCell(key))
+	    headerRow.addCell(key).setContent(key);
+	  dataRow.addCell(key).setContent(value.toString());
+	}
+      }
+
+      return result;
+    }
+
+    /**
+     * Turns the result of a feature layer helper into a spreadsheet.
+     *
+     * @param info	the info to convert
+     * @return		the spreadsheet
+     */
+    protected SpreadSheet toSpreadSheet(InfoToolResult info) {
+      SpreadSheet		result;
+      Row			headerRow;
+      Row			dataRow;
+      Map<String,Object>	data;
+      int			n;
+
+      result = new DefaultSpreadSheet();
+      result.setDataRowClass(SparseDataRow.class);
+      headerRow = result.getHeaderRow();
+      headerRow.addCell("id").setContent("ID");
+      for (n = 0; n < info.getNumFeatures(); n++) {
+	data    = info.getFeatureData(n);
+	dataRow = result.addRow();
+	dataRow.addCell("id").setContent(info.getFeatureId(n));
+	for (String key: data.keySet()) {
+	  if (!headerRow.hasCell(key))
+	    headerRow.addCell(key).setContent(key);
+	  dataRow.addCell(key).setContent(data.get(key).toString());
+	}
+      }
+
+      return result;
+    }
+
+    /**
+     * Creates the panel for displaying the spreadsheet.
+     *
+     * @param sheet	the spreadsheet to display
+     * @return		the panel
+     */
+    protected JPanel createPanel(SpreadSheet sheet) {
+      JPanel		result;
+      SearchPanel	searchPanel;
+
+      final SpreadSheetTable table = new SpreadSheetTable(sheet);
+      result = new JPanel(new BorderLayout());
+      result.add(new BaseScrollPane(table));
+      if (m_AllowSearch) {
+	searchPanel = new SearchPanel(LayoutType.HORIZONTAL, true);
+	searchPanel.addSearchListener(new SearchListener() {
+	  @Override
+	  public void searchInitiated(SearchEvent e) {
+	    table.search(e.getParameters().getSearchString(), e.getParameters().isRegExp());
+	  }
+	});
+	result.add(searchPanel, BorderLayout.SOUTH);
+      }
+
+      return result;
+    }
+
+    /**
+     * Queries the layer in the background and replaces the content of the
+     * page with the result once available (unless outdated by then).
+     *
+     * @param layer	the layer to query
+     * @param layerName	the name of the layer
+     * @param pos	the position to query
+     * @param area	the currently displayed area
+     * @param content	the map content
+     * @param page	the page to display the result in
+     * @return		the query
+     */
+    protected Future<?> query(final Layer layer, final String layerName, final DirectPosition2D pos, final ReferencedEnvelope area, final MapContent content, final JPanel page) {
+      final int	generation;
+
+      generation = m_Generation;
+
+      return getExecutor().submit(new Runnable() {
+	@Override
+	public void run() {
+	  SpreadSheet		sheet;
+	  FeatureLayerHelper	helper;
+	  String		error;
+
+	  sheet = null;
+	  error = null;
+	  try {
+	    if (layer instanceof FeatureLayer) {
+	      sheet = toSpreadSheet(queryFeatures(layer.getFeatureSource(), pos, area));
+	    }
+	    else {
+	      helper = new FeatureLayerHelper();
+	      helper.setMapContent(content);
+	      helper.setLayer(layer);
+	      sheet = toSpreadSheet(helper.getInfo(pos));
+	    }
+	  }
+	  catch (Exception ex) {
+	    if (generation != m_Generation)
+	      return;
+	    getLogger().log(Level.WARNING, "Unable to query layer " + layerName, ex);
+	    error = "Query failed: " + ex;
+	  }
+
+	  final SpreadSheet fSheet = sheet;
+	  final String fError = error;
+	  SwingUtilities.invokeLater(new Runnable() {
+	    @Override
+	    public void run() {
+	      if (generation != m_Generation)
+		return;
+	      page.removeAll();
+	      if (fError != null)
+		page.add(new JLabel(fError), BorderLayout.NORTH);
+	      else
+		page.add(createPanel(fSheet), BorderLayout.CENTER);
+	      page.revalidate();
+	      page.repaint();
+	    }
+	  });
+	}
+      });
+    }
+
+    /**
+     * Returns the layer that holds the actual data, i.e., unwraps the
+     * layers that only cache, simplify or cluster another layer for
+     * display.
+     *
+     * @param layer	the layer to unwrap
+     * @return		the data layer
+     */
+    protected Layer unwrap(Layer layer) {
+      while (true) {
+	if (layer instanceof TileCachedLayer)
+	  layer = ((TileCachedLayer) layer).getLayer();
+	else if (layer instanceof SimplifyingFeatureLayer)
+	  layer = ((SimplifyingFeatureLayer) layer).getSource();
+	else if (layer instanceof ClusteringPointLayer)
+	  layer = ((ClusteringPointLayer) layer).getSource();
+	else
+	  return layer;
+      }
+    }
+
+    /**
+     * Creates and shows a reporter. The selected layers get queried in
+     * the background, with the results getting displayed as they become
+     * available. Outstanding queries of the previous click get cancelled.
+     * Layers without a feature source (e.g., rasters) are skipped.
      * 
      * @param e		the map click event
      */
@@ -109,18 +361,11 @@ public class SpreadSheetInfoToolSupplier
     protected void createReporter(MapMouseEvent e) {
       DirectPosition2D 		pos;
       MapContent 		content;
-      int 			n;
-      InfoToolHelper 		helper;
+      ReferencedEnvelope	area;
       String 			layerName;
-      InfoToolResult 		result;
-      SpreadSheet		sheet;
-      JPanel			panel;
-      SearchPanel		searchPanel;
-      Row			headerRow;
-      Row			dataRow;
-      String			id;
-      Map<String,Object>	data;
-      
+      Layer			data;
+      JPanel			page;
+
       if (m_Dialog == null) {
 	m_Dialog = new ApprovalDialog((Dialog) null, ModalityType.MODELESS);
 	m_Dialog.setCancelVisible(false);
@@ -130,58 +375,35 @@ public class SpreadSheetInfoToolSupplier
 	m_Dialog.getContentPane().add(m_Content, BorderLayout.CENTER);
 	m_Dialog.setSize(GUIHelper.getDefaultDialogDimension());
 	m_Dialog.setLocationRelativeTo(e.getComponent());
+	m_Queries = new ArrayList<>();
       }
-      
+
+      cancelQueries();
+
       pos     = e.getWorldPos();
       content = getMapPane().getMapContent();
+      area    = content.getViewport().getBounds();
       m_Content.removeAllPages();
       for (Layer layer : content.layers()) {
 	if (layer.isSelected()) {
 	  layerName = layer.getTitle();
+	  data      = unwrap(layer);
+	  if (data.getFeatureSource() == null) {
+	    if (getLogger().isLoggable(Level.FINE))
+	      getLogger().fine("Layer has no feature source, skipped: " + layerName);
+	    continue;
+	  }
 	  if ((layerName == null) || layerName.isEmpty())
-	    layerName = layer.getFeatureSource().getName().getLocalPart();
+	    layerName = data.getFeatureSource().getName().getLocalPart();
 	  if ((layerName == null) || layerName.isEmpty())
-	    layerName = layer.getFeatureSource().getSchema().getName().getLocalPart();
-
-	  helper = new FeatureLayerHelper();
-	  helper.setMapContent(content);
-	  helper.setLayer(layer);
+	    layerName = data.getFeatureSource().getSchema().getName().getLocalPart();
+	  if ((layerName == null) || layerName.isEmpty())
+	    layerName = "Layer " + (m_Content.getPageCount() + 1);
 
-	  try {
-	    result    = helper.getInfo(pos);
-	    sheet     = new DefaultSpreadSheet();
-	    sheet.setDataRowClass(SparseDataRow.class);
-	    headerRow = sheet.getHeaderRow();
-	    headerRow.addCell("id").setContent("ID");
-	    for (n = 0; n < result.getNumFeatures(); n++) {
-	      id   = result.getFeatureId(n);
-	      data = result.getFeatureData(n);
-	      dataRow = sheet.addRow();
-	      dataRow.addCell("id").setContent(id);
-	      for (String key: data.keySet()) {
-		if (!headerRow.hasCell(key))
-		  headerRow.addCell(key).setContent(key);
-		dataRow.addCell(key).setContent(data.get(key).toString());
-	      }
-	    }
-	    final SpreadSheetTable table = new SpreadSheetTable(sheet);
-	    panel = new JPanel(new BorderLayout());
-	    panel.add(new BaseScrollPane(table));
-	    if (m_AllowSearch) {
-	      searchPanel = new SearchPanel(LayoutType.HORIZONTAL, true);
-	      searchPanel.addSearchListener(new SearchListener() {
-		@Override
-		public void searchInitiated(SearchEvent e) {
-		  table.search(e.getParameters().getSearchString(), e.getParameters().isRegExp());
-		}
-	      });
-	      panel.add(searchPanel, BorderLayout.SOUTH);
-	    }
-	    m_Content.addPage(layerName, panel);
-	  } 
-	  catch (Exception ex) {
-	    getLogger().log(Level.WARNING, "Unable to query layer " + layerName);
-	  }
+	  page = new JPanel(new BorderLayout());
+	  page.add(new JLabel("Querying..."), BorderLayout.NORTH);
+	  m_Content.addPage(layerName, page);
+	  m_Queries.add(query(data, layerName, pos, area, content, page));
 	}
       }
 
@@ -198,6 +420,13 @@ public class SpreadSheetInfoToolSupplier
      */
     @Override
     public void cleanUp() {
+      cancelQueries();
+      synchronized(this) {
+	if (m_Executor != null) {
+	  m_Executor.shutdownNow();
+	  m_Executor = null;
+	}
+      }
       if (m_Dialog != null) {
 	m_Dialog.setVisible(false);
 	m_Dialog.dispose();
@@ -205,6 +434,76 @@ public class SpreadSheetInfoToolSupplier
     }
   }
   
+  /** the fraction of the displayed area to use as search distance. */
+  public final static double SEARCH_FRACTION = 0.01;
+
+  /**
+   * Returns the features at the position, using a bounding box filter
+   * (which makes use of a spatial index of the feature source, e.g., the
+   * .qix file of a shape file). Polygons must contain the position, other
+   * geometries must be within the search distance.
+   *
+   * @param source	the feature source to query
+   * @param pos		the position
+   * @param area	the displayed area, used for determining the search distance
+   * @return		the features
+   * @throws Exception	if transforming the position or querying fails
+   */
+  public static List<SimpleFeature> queryFeatures(FeatureSource source, DirectPosition2D pos, ReferencedEnvelope area) throws Exception {
+    List<SimpleFeature>		result;
+    CoordinateReferenceSystem	crs;
+    DirectPosition		p;
+    double			width;
+    Point			point;
+    Geometry			geom;
+    Object			feature;
+    FilterFactory2		ff;
+    Filter			filter;
+    FeatureIterator		iter;
+
+    result = new ArrayList<>();
+    if (source.getSchema().getGeometryDescriptor() == null)
+      return result;
+
+    crs = source.getSchema().getCoordinateReferenceSystem();
+    p   = pos;
+    if ((crs != null) && (pos.getCoordinateReferenceSystem() != null) && !CRS.equalsIgnoreMetadata(crs, pos.getCoordinateReferenceSystem())) {
+      p    = CRSHelper.findTransform(pos.getCoordinateReferenceSystem(), crs).transform(pos, null);
+      area = area.transform(crs, true);
+    }
+    width  = SEARCH_FRACTION * (area.getWidth() + area.getHeight()) / 2;
+    point  = new GeometryFactory().createPoint(new Coordinate(p.getOrdinate(0), p.getOrdinate(1)));
+    ff     = CommonFactoryFinder.getFilterFactory2(null);
+    filter = ff.bbox(
+	ff.property(source.getSchema().getGeometryDescriptor().getLocalName()),
+	new ReferencedEnvelope(point.getX() - width, point.getX() + width, point.getY() - width, point.getY() + width, crs));
+    iter   = source.getFeatures(filter).features();
+    try {
+      while (iter.hasNext()) {
+	if (Thread.currentThread().isInterrupted())
+	  throw new InterruptedException("Query interrupted");
+	feature = iter.next();
+	if (!(feature instanceof SimpleFeature))
+	  continue;
+	geom = (Geometry) ((SimpleFeature) feature).getDefaultGeometry();
+	if (geom == null)
+	  continue;
+	if (geom instanceof Polygonal) {
+	  if (geom.intersects(point))
+	    result.add((SimpleFeature) feature);
+	}
+	else if (geom.isWithinDistance(point, width)) {
+	  result.add((SimpleFeature) feature);
+	}
+      }
+    }
+    finally {
+      iter.close();
+    }
+
+    return result;
+  }
+
   /** the CursorTool instance in use. */
   protected SpreadSheetInfoTool m_InfoTool;
   
@@ -218,7 +517,13 @@ public class SpreadSheetInfoToolSupplier
    */
   @Override
   public String globalInfo() {
-    return "Provides the a spreadsheet-based info tool.";
+    return
+	"Provides the a spreadsheet-based info tool.\n"
+	+ "The selected layers get queried in the background using a bounding "
+	+ "box filter (making use of the spatial index of the feature source, "
+	+ "if available), with the results getting displayed as they become "
+	+ "available; clicking again cancels any outstanding queries.\n"
+	+ "Layers without features (e.g., rasters) are skipped.";
   }
 
   /**
@@ -0,0 +1,923 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * GeoTIFFOverviewBuilder.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.flow.transformer;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import adams.core.QuickInfoHelper;
+import adams.core.io.PlaceholderFile;
+import adams.flow.core.Token;
+
+/**
+ <!-- globalinfo-start -->
+ * Generates an external overview file ('&lt;file&gt;.ovr') for a GeoTIFF, containing reduced resolution levels of the image (each level halving width and height of the previous one).<br>
+ * Each level gets computed from the previous one, tile by tile, by averaging blocks of 2x2 pixels (palette images use the top-left pixel instead), keeping only a few tiles in memory. Intermediate levels get stored in temporary files next to the overview file.<br>
+ * The GeoTIFF reader automatically picks up the overviews and, depending on the overview policy, uses the level that is closest to the current render scale, avoiding reading and resampling the full resolution image when zoomed out.<br>
+ * Forwards the name of the generated overview file.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;java.lang.String<br>
+ * &nbsp;&nbsp;&nbsp;java.io.File<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;java.lang.String<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: GeoTIFFOverviewBuilder
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseText&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-num-levels &lt;int&gt; (property: numLevels)
+ * &nbsp;&nbsp;&nbsp;The maximum number of overview levels to generate; -1 generates levels until
+ * &nbsp;&nbsp;&nbsp;the minimum size is reached.
+ * &nbsp;&nbsp;&nbsp;default: -1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ * <pre>-min-size &lt;int&gt; (property: minSize)
+ * &nbsp;&nbsp;&nbsp;No further levels get generated once width or height of a level falls below
+ * &nbsp;&nbsp;&nbsp;this size.
+ * &nbsp;&nbsp;&nbsp;default: 256
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-tile-size &lt;int&gt; (property: tileSize)
+ * &nbsp;&nbsp;&nbsp;The width and height of the tiles in the overview file.
+ * &nbsp;&nbsp;&nbsp;default: 256
+ * &nbsp;&nbsp;&nbsp;minimum: 16
+ * </pre>
+ *
+ * <pre>-overwrite &lt;boolean&gt; (property: overwrite)
+ * &nbsp;&nbsp;&nbsp;If enabled, an existing overview file gets regenerated, otherwise it is left
+ * &nbsp;&nbsp;&nbsp;untouched.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class GeoTIFFOverviewBuilder
+  extends AbstractTransformer {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -2817665239781870741L;
+
+  /** the extension for external overviews. */
+  public final static String EXTENSION = ".ovr";
+
+  /** the maximum number of levels. */
+  protected int m_NumLevels;
+
+  /** the minimum size of a level. */
+  protected int m_MinSize;
+
+  /** the tile size. */
+  protected int m_TileSize;
+
+  /** whether to overwrite existing overviews. */
+  protected boolean m_Overwrite;
+
+  /**
+   * Image whose tiles get computed on demand (e.g., when pulled by the
+   * image writer), so that only a few tiles are held in memory at a time.
+   */
+  protected static abstract class AbstractLazyImage
+    implements RenderedImage {
+
+    /** the width. */
+    protected int m_Width;
+
+    /** the height. */
+    protected int m_Height;
+
+    /** the tile size. */
+    protected int m_TileSize;
+
+    /** the image type. */
+    protected ImageTypeSpecifier m_Type;
+
+    /**
+     * Initializes the image.
+     *
+     * @param width	the width
+     * @param height	the height
+     * @param tileSize	the tile size
+     * @param type	the image type
+     */
+    protected AbstractLazyImage(int width, int height, int tileSize, ImageTypeSpecifier type) {
+      m_Width    = width;
+      m_Height   = height;
+      m_TileSize = tileSize;
+      m_Type     = type;
+    }
+
+    /**
+     * Computes the specified region, which lies within the image bounds.
+     *
+     * @param region	the region to compute
+     * @return		the raster, with its origin at the region's location
+     * @throws Exception	if computation fails
+     */
+    protected abstract Raster computeRegion(Rectangle region) throws Exception;
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+      return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+      return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+      return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+      return m_Type.getColorModel();
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+      return m_Type.getSampleModel(m_TileSize, m_TileSize);
+    }
+
+    @Override
+    public int getWidth() {
+      return m_Width;
+    }
+
+    @Override
+    public int getHeight() {
+      return m_Height;
+    }
+
+    @Override
+    public int getMinX() {
+      return 0;
+    }
+
+    @Override
+    public int getMinY() {
+      return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+      return (m_Width + m_TileSize - 1) / m_TileSize;
+    }
+
+    @Override
+    public int getNumYTiles() {
+      return (m_Height + m_TileSize - 1) / m_TileSize;
+    }
+
+    @Override
+    public int getMinTileX() {
+      return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+      return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+      return m_TileSize;
+    }
+
+    @Override
+    public int getTileHeight() {
+      return m_TileSize;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+      return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+      return 0;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+      WritableRaster	result;
+
+      result = Raster.createWritableRaster(getSampleModel(), new Point(tileX * m_TileSize, tileY * m_TileSize));
+      result.setRect(getData(result.getBounds()));
+
+      return result;
+    }
+
+    @Override
+    public Raster getData() {
+      return getData(new Rectangle(0, 0, m_Width, m_Height));
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+      Rectangle	region;
+
+      region = rect.intersection(new Rectangle(0, 0, m_Width, m_Height));
+      try {
+	return computeRegion(region);
+      }
+      catch (Exception e) {
+	throw new IllegalStateException("Failed to compute region: " + region, e);
+      }
+    }
+
+    @Override
+    public WritableRaster copyData(WritableRaster raster) {
+      if (raster == null)
+	raster = Raster.createWritableRaster(m_Type.getSampleModel(m_Width, m_Height), null);
+      raster.setRect(getData(raster.getBounds()));
+      return raster;
+    }
+  }
+
+  /**
+   * Image that reads the requested regions from the first image of a reader.
+   */
+  protected static class ReaderImage
+    extends AbstractLazyImage {
+
+    /** the reader to use. */
+    protected ImageReader m_Reader;
+
+    /**
+     * Initializes the image.
+     *
+     * @param reader	the reader to use
+     * @param tileSize	the tile size
+     * @throws Exception	if determining dimensions or type fails
+     */
+    public ReaderImage(ImageReader reader, int tileSize) throws Exception {
+      super(reader.getWidth(0), reader.getHeight(0), tileSize, reader.getImageTypes(0).next());
+      m_Reader = reader;
+    }
+
+    /**
+     * Reads the specified region.
+     *
+     * @param region	the region to read
+     * @return		the raster, with its origin at the region's location
+     * @throws Exception	if reading fails
+     */
+    @Override
+    protected synchronized Raster computeRegion(Rectangle region) throws Exception {
+      ImageReadParam	param;
+
+      param = m_Reader.getDefaultReadParam();
+      param.setSourceRegion(region);
+
+      return m_Reader.read(0, param).getRaster().createTranslatedChild(region.x, region.y);
+    }
+  }
+
+  /**
+   * Image that halves width and height of another image, averaging blocks
+   * of 2x2 pixels (or picking the top-left pixel for palette images).
+   */
+  protected static class HalvedImage
+    extends AbstractLazyImage {
+
+    /** the image to reduce. */
+    protected AbstractLazyImage m_Source;
+
+    /**
+     * Initializes the image.
+     *
+     * @param source	the image to reduce
+     * @param tileSize	the tile size
+     */
+    public HalvedImage(AbstractLazyImage source, int tileSize) {
+      super((source.getWidth() + 1) / 2, (source.getHeight() + 1) / 2, tileSize, source.m_Type);
+      m_Source = source;
+    }
+
+    /**
+     * Computes the specified region from the corresponding region of the
+     * source image.
+     *
+     * @param region	the region to compute
+     * @return		the raster, with its origin at the region's location
+     */
+    @Override
+    protected Raster computeRegion(Rectangle region) {
+      WritableRaster	result;
+      Raster		src;
+      Rectangle		srcRegion;
+      boolean		average;
+      boolean		integral;
+      double[]		row0;
+      double[]		row1;
+      double		sum;
+      int		n;
+      int		b;
+      int		x;
+      int		y;
+      int		sx;
+      int		sy;
+
+      srcRegion = new Rectangle(region.x * 2, region.y * 2, region.width * 2, region.height * 2)
+	.intersection(new Rectangle(0, 0, m_Source.getWidth(), m_Source.getHeight()));
+      src       = m_Source.getData(srcRegion);
+      result    = Raster.createWritableRaster(m_Type.getSampleModel(region.width, region.height), new Point(region.x, region.y));
+      average   = !(m_Type.getColorModel() instanceof IndexColorModel);
+      integral  = (result.getTransferType() != DataBuffer.TYPE_FLOAT) && (result.getTransferType() != DataBuffer.TYPE_DOUBLE);
+      row0      = new double[srcRegion.width];
+      row1      = new double[srcRegion.width];
+
+      for (b = 0; b < result.getNumBands(); b++) {
+	for (y = region.y; y < region.y + region.height; y++) {
+	  sy = y * 2;
+	  src.getSamples(srcRegion.x, sy, srcRegion.width, 1, b, row0);
+	  if (sy + 1 < srcRegion.y + srcRegion.height)
+	    src.getSamples(srcRegion.x, sy + 1, srcRegion.width, 1, b, row1);
+	  for (x = region.x; x < region.x + region.width; x++) {
+	    sx = x * 2 - srcRegion.x;
+	    if (!average) {
+	      result.setSample(x, y, b, row0[sx]);
+	      continue;
+	    }
+	    sum = row0[sx];
+	    n   = 1;
+	    if (sx + 1 < srcRegion.width) {
+	      sum += row0[sx + 1];
+	      n++;
+	    }
+	    if (sy + 1 < srcRegion.y + srcRegion.height) {
+	      sum += row1[sx];
+	      n++;
+	      if (sx + 1 < srcRegion.width) {
+		sum += row1[sx + 1];
+		n++;
+	      }
+	    }
+	    if (integral)
+	      result.setSample(x, y, b, (int) Math.round(sum / n));
+	    else
+	      result.setSample(x, y, b, sum / n);
+	  }
+	}
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+	"Generates an external overview file ('<file>" + EXTENSION + "') for a "
+	+ "GeoTIFF, containing reduced resolution levels of the image (each "
+	+ "level halving width and height of the previous one).\n"
+	+ "Each level gets computed from the previous one, tile by tile, by "
+	+ "averaging blocks of 2x2 pixels (palette images use the top-left pixel "
+	+ "instead), keeping only a few tiles in memory. Intermediate levels get "
+	+ "stored in temporary files next to the overview file.\n"
+	+ "The GeoTIFF reader automatically picks up the overviews and, depending "
+	+ "on the overview policy, uses the level that is closest to the current "
+	+ "render scale, avoiding reading and resampling the full resolution "
+	+ "image when zoomed out.\n"
+	+ "Forwards the name of the generated overview file.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+	    "num-levels", "numLevels",
+	    -1, -1, null);
+
+    m_OptionManager.add(
+	    "min-size", "minSize",
+	    256, 1, null);
+
+    m_OptionManager.add(
+	    "tile-size", "tileSize",
+	    256, 16, null);
+
+    m_OptionManager.add(
+	    "overwrite", "overwrite",
+	    false);
+  }
+
+  /**
+   * Sets the maximum number of levels to generate.
+   *
+   * @param value	the number of levels, -1 until minimum size reached
+   */
+  public void setNumLevels(int value) {
+    if (getOptionManager().isValid("numLevels", value)) {
+      m_NumLevels = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of levels to generate.
+   *
+   * @return		the number of levels, -1 until minimum size reached
+   */
+  public int getNumLevels() {
+    return m_NumLevels;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numLevelsTipText() {
+    return
+	"The maximum number of overview levels to generate; -1 generates "
+	+ "levels until the minimum size is reached.";
+  }
+
+  /**
+   * Sets the minimum size of a level.
+   *
+   * @param value	the minimum size
+   */
+  public void setMinSize(int value) {
+    if (getOptionManager().isValid("minSize", value)) {
+      m_MinSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the minimum size of a level.
+   *
+   * @return		the minimum size
+   */
+  public int getMinSize() {
+    return m_MinSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String minSizeTipText() {
+    return "No further levels get generated once width or height of a level falls below this size.";
+  }
+
+  /**
+   * Sets the tile size.
+   *
+   * @param value	the tile size
+   */
+  public void setTileSize(int value) {
+    if (getOptionManager().isValid("tileSize", value)) {
+      m_TileSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the tile size.
+   *
+   * @return		the tile size
+   */
+  public int getTileSize() {
+    return m_TileSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String tileSizeTipText() {
+    return "The width and height of the tiles in the overview file.";
+  }
+
+  /**
+   * Sets whether to regenerate existing overviews.
+   *
+   * @param value	true if to overwrite
+   */
+  public void setOverwrite(boolean value) {
+    m_Overwrite = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to regenerate existing overviews.
+   *
+   * @return		true if to overwrite
+   */
+  public boolean getOverwrite() {
+    return m_Overwrite;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String overwriteTipText() {
+    return "If enabled, an existing overview file gets regenerated, otherwise it is left untouched.";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "numLevels", (m_NumLevels == -1 ? "auto" : "" + m_NumLevels), "levels: ");
+    result += QuickInfoHelper.toString(this, "minSize", m_MinSize, ", min: ");
+    result += QuickInfoHelper.toString(this, "overwrite", m_Overwrite, "overwrite", ", ");
+
+    return result;
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return		the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{String.class, File.class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the Class of the generated tokens
+   */
+  @Override
+  public Class[] generates() {
+    return new Class[]{String.class};
+  }
+
+  /**
+   * Returns a TIFF writer.
+   *
+   * @return		the writer, null if none available
+   */
+  protected ImageWriter newWriter() {
+    Iterator<ImageWriter>	writers;
+
+    writers = ImageIO.getImageWritersByFormatName("tiff");
+    if (!writers.hasNext())
+      return null;
+
+    return writers.next();
+  }
+
+  /**
+   * Returns the parameters for writing a tiled image.
+   *
+   * @param writer	the writer to get the parameters for
+   * @return		the parameters
+   */
+  protected ImageWriteParam newWriteParam(ImageWriter writer) {
+    ImageWriteParam	result;
+
+    result = writer.getDefaultWriteParam();
+    if (result.canWriteTiles()) {
+      result.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+      result.setTiling(m_TileSize, m_TileSize, 0, 0);
+    }
+
+    return result;
+  }
+
+  /**
+   * Opens a reader for the specified file.
+   *
+   * @param file	the file to read
+   * @return		the reader, with its input stream set
+   * @throws Exception	if opening fails
+   */
+  protected ImageReader openReader(File file) throws Exception {
+    ImageInputStream		istream;
+    Iterator<ImageReader>	readers;
+    ImageReader			result;
+
+    istream = ImageIO.createImageInputStream(file);
+    if (istream == null)
+      throw new IllegalStateException("Failed to open: " + file);
+    readers = ImageIO.getImageReaders(istream);
+    if (!readers.hasNext()) {
+      istream.close();
+      throw new IllegalStateException("No image reader available for: " + file);
+    }
+    result = readers.next();
+    result.setInput(istream, false, true);
+
+    return result;
+  }
+
+  /**
+   * Disposes the reader and closes its input stream.
+   *
+   * @param reader	the reader to close, ignored if null
+   */
+  protected void closeReader(ImageReader reader) {
+    if (reader == null)
+      return;
+    try {
+      if (reader.getInput() instanceof ImageInputStream)
+	((ImageInputStream) reader.getInput()).close();
+    }
+    catch (Exception e) {
+      // ignored
+    }
+    reader.dispose();
+  }
+
+  /**
+   * Writes the image as tiled TIFF to the specified file. The tiles get
+   * computed on demand by the writer.
+   *
+   * @param image	the image to write
+   * @param file	the file to write to
+   * @return		null if successful, otherwise error message
+   * @throws Exception	if writing fails
+   */
+  protected String writeLevel(RenderedImage image, File file) throws Exception {
+    ImageWriter		writer;
+    ImageOutputStream	ostream;
+
+    writer = newWriter();
+    if (writer == null)
+      return "No TIFF writer available!";
+    ostream = ImageIO.createImageOutputStream(file);
+    try {
+      writer.setOutput(ostream);
+      writer.write(null, new IIOImage(image, null, null), newWriteParam(writer));
+    }
+    finally {
+      writer.dispose();
+      ostream.close();
+    }
+
+    return null;
+  }
+
+  /**
+   * Writes the overview levels to the specified file. Each level gets
+   * computed from the previous one, tile by tile, and stored in a temporary
+   * file, which serves as input for the next level. Finally, the levels
+   * get combined into the overview file. Only a few tiles are held in
+   * memory at any time.
+   *
+   * @param reader	the reader for the full resolution image
+   * @param output	the overview file to write
+   * @return		null if successful, otherwise error message
+   * @throws Exception	if reading/writing fails
+   */
+  protected String writeOverviews(ImageReader reader, File output) throws Exception {
+    String		result;
+    ImageWriter		writer;
+    ImageOutputStream	ostream;
+    List<File>		levels;
+    AbstractLazyImage	previous;
+    ImageReader		levelReader;
+    HalvedImage		level;
+    File		tmpFile;
+    int			width;
+    int			height;
+
+    result      = null;
+    levels      = new ArrayList<File>();
+    levelReader = null;
+    width       = reader.getWidth(0);
+    height      = reader.getHeight(0);
+    try {
+      previous = new ReaderImage(reader, m_TileSize);
+      while ((m_NumLevels == -1) || (levels.size() < m_NumLevels)) {
+	if (((previous.getWidth() + 1) / 2 < m_MinSize) || ((previous.getHeight() + 1) / 2 < m_MinSize))
+	  break;
+	if (isStopped())
+	  return null;
+	level   = new HalvedImage(previous, m_TileSize);
+	tmpFile = File.createTempFile("overview-", ".tif", output.getAbsoluteFile().getParentFile());
+	levels.add(tmpFile);
+	if (isLoggingEnabled())
+	  getLogger().info("Level " + levels.size() + ": " + level.getWidth() + "x" + level.getHeight());
+	result = writeLevel(level, tmpFile);
+	if (result != null)
+	  return result;
+	closeReader(levelReader);
+	levelReader = openReader(tmpFile);
+	previous    = new ReaderImage(levelReader, m_TileSize);
+      }
+      closeReader(levelReader);
+      levelReader = null;
+
+      if (levels.size() == 0)
+	return "Image too small for generating overviews (" + width + "x" + height + ", min size " + m_MinSize + ")";
+
+      // combine levels
+      writer = newWriter();
+      if (writer == null)
+	return "No TIFF writer available!";
+      ostream = ImageIO.createImageOutputStream(output);
+      try {
+	writer.setOutput(ostream);
+	if (!writer.canWriteSequence())
+	  return "TIFF writer cannot write multi-page files: " + writer.getClass().getName();
+	writer.prepareWriteSequence(null);
+	for (File file: levels) {
+	  if (isStopped())
+	    return null;
+	  levelReader = openReader(file);
+	  writer.writeToSequence(new IIOImage(new ReaderImage(levelReader, m_TileSize), null, null), newWriteParam(writer));
+	  closeReader(levelReader);
+	  levelReader = null;
+	}
+	writer.endWriteSequence();
+      }
+      finally {
+	writer.dispose();
+	ostream.close();
+      }
+    }
+    finally {
+      closeReader(levelReader);
+      for (File file: levels) {
+	if (file.exists() && !file.delete())
+	  getLogger().warning("Failed to remove temporary file: " + file);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String			result;
+    PlaceholderFile		file;
+    File			output;
+    ImageInputStream		istream;
+    Iterator<ImageReader>	readers;
+    ImageReader			reader;
+
+    result = null;
+
+    if (m_InputToken.getPayload() instanceof String)
+      file = new PlaceholderFile((String) m_InputToken.getPayload());
+    else
+      file = new PlaceholderFile((File) m_InputToken.getPayload());
+    output = new File(file.getAbsolutePath() + EXTENSION);
+
+    if (output.exists() && !m_Overwrite) {
+      if (isLoggingEnabled())
+	getLogger().info("Overview file already exists: " + output);
+      m_OutputToken = new Token(output.getAbsolutePath());
+      return null;
+    }
+
+    istream = null;
+    reader  = null;
+    try {
+      istream = ImageIO.createImageInputStream(file.getAbsoluteFile());
+      if (istream == null) {
+	result = "Failed to open: " + file;
+      }
+      else {
+	readers = ImageIO.getImageReaders(istream);
+	if (!readers.hasNext()) {
+	  result = "No image reader available for: " + file;
+	}
+	else {
+	  reader = readers.next();
+	  reader.setInput(istream, false, true);
+	  result = writeOverviews(reader, output);
+	}
+      }
+    }
+    catch (Exception e) {
+      result = handleException("Failed to generate overviews for: " + file, e);
+    }
+    finally {
+      if (reader != null)
+	reader.dispose();
+      if (istream != null) {
+	try {
+	  istream.close();
+	}
+	catch (Exception e) {
+	  // ignored
+	}
+      }
+    }
+
+    if ((result != null) || isStopped()) {
+      if (output.exists() && !output.delete())
+	getLogger().warning("Failed to remove incomplete overview file: " + output);
+    }
+    else {
+      m_OutputToken = new Token(output.getAbsolutePath());
+    }
+
+    return result;
+  }
+}
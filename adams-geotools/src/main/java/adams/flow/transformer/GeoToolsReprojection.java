@@ -0,0 +1,742 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * GeoToolsReprojection.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.flow.transformer;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.styling.SLD;
+import org.geotools.styling.Style;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import adams.core.QuickInfoHelper;
+import adams.data.CRSHelper;
+import adams.data.gps.AbstractGPS;
+import adams.data.spreadsheet.Cell;
+import adams.data.spreadsheet.Row;
+import adams.data.spreadsheet.SpreadSheet;
+import adams.data.spreadsheet.SpreadSheetColumnIndex;
+import adams.flow.core.Token;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFilter;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ <!-- globalinfo-start -->
+ * Reprojects layers or the GPS locations of spreadsheets into another coordinate reference system (CRS), eg a projected one with metres as unit.<br>
+ * Layers use the CRS of their feature type; the source CRS is only used for layers without CRS and for spreadsheets (longitude&#47;latitude of the GPS objects). For spreadsheets, the projected coordinates get added as two new columns.<br>
+ * The transforms are cached per source&#47;target CRS pair and the coordinates get transformed in bulk (in parallel for large numbers of coordinates).
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;org.geotools.map.Layer<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.SpreadSheet<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;org.geotools.map.Layer<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.SpreadSheet<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: GeoToolsReprojection
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseText&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-source-crs &lt;java.lang.String&gt; (property: sourceCRS)
+ * &nbsp;&nbsp;&nbsp;The code of the CRS of the GPS locations and of layers without CRS (longitude
+ * &nbsp;&nbsp;&nbsp;first).
+ * &nbsp;&nbsp;&nbsp;default: EPSG:4326
+ * </pre>
+ *
+ * <pre>-target-crs &lt;java.lang.String&gt; (property: targetCRS)
+ * &nbsp;&nbsp;&nbsp;The code of the CRS to project into (longitude first).
+ * &nbsp;&nbsp;&nbsp;default: EPSG:3857
+ * </pre>
+ *
+ * <pre>-gps &lt;adams.data.spreadsheet.SpreadSheetColumnIndex&gt; (property: GPS)
+ * &nbsp;&nbsp;&nbsp;The index of the column containing the GPS objects.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;example: An index is a number starting with 1; apart from column names (case-sensitive), the following placeholders can be used as well: first, second, third, last_2, last_1, last
+ * </pre>
+ *
+ * <pre>-x-column &lt;java.lang.String&gt; (property: XColumn)
+ * &nbsp;&nbsp;&nbsp;The name of the column for the projected X coordinates (spreadsheets only).
+ * &nbsp;&nbsp;&nbsp;default: X
+ * </pre>
+ *
+ * <pre>-y-column &lt;java.lang.String&gt; (property: YColumn)
+ * &nbsp;&nbsp;&nbsp;The name of the column for the projected Y coordinates (spreadsheets only).
+ * &nbsp;&nbsp;&nbsp;default: Y
+ * </pre>
+ *
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads to use for transforming the coordinates (-1 for all
+ * &nbsp;&nbsp;&nbsp;cores).
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class GeoToolsReprojection
+  extends AbstractTransformer {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 5637841198542735214L;
+
+  /**
+   * Collects the coordinates of geometries.
+   */
+  protected static class CoordinateCollector
+    implements CoordinateSequenceFilter {
+
+    /** the collected coordinates (interleaved). */
+    protected TDoubleArrayList m_Coordinates = new TDoubleArrayList();
+
+    /**
+     * Collects the coordinate.
+     *
+     * @param seq	the sequence
+     * @param i		the index of the coordinate
+     */
+    @Override
+    public void filter(CoordinateSequence seq, int i) {
+      m_Coordinates.add(seq.getX(i));
+      m_Coordinates.add(seq.getY(i));
+    }
+
+    /**
+     * Returns whether processing is finished.
+     *
+     * @return		always false
+     */
+    @Override
+    public boolean isDone() {
+      return false;
+    }
+
+    /**
+     * Returns whether the geometry got changed.
+     *
+     * @return		always false
+     */
+    @Override
+    public boolean isGeometryChanged() {
+      return false;
+    }
+
+    /**
+     * Returns the collected coordinates.
+     *
+     * @return		the coordinates (interleaved)
+     */
+    public double[] getCoordinates() {
+      return m_Coordinates.toArray();
+    }
+  }
+
+  /**
+   * Updates the coordinates of geometries, in the same order as they
+   * were collected.
+   */
+  protected static class CoordinateUpdater
+    implements CoordinateSequenceFilter {
+
+    /** the coordinates to use (interleaved). */
+    protected double[] m_Coordinates;
+
+    /** the current offset. */
+    protected int m_Offset;
+
+    /**
+     * Initializes the updater.
+     *
+     * @param coords	the coordinates to use (interleaved)
+     */
+    public CoordinateUpdater(double[] coords) {
+      m_Coordinates = coords;
+      m_Offset      = 0;
+    }
+
+    /**
+     * Updates the coordinate.
+     *
+     * @param seq	the sequence
+     * @param i		the index of the coordinate
+     */
+    @Override
+    public void filter(CoordinateSequence seq, int i) {
+      seq.setOrdinate(i, CoordinateSequence.X, m_Coordinates[m_Offset++]);
+      seq.setOrdinate(i, CoordinateSequence.Y, m_Coordinates[m_Offset++]);
+    }
+
+    /**
+     * Returns whether processing is finished.
+     *
+     * @return		always false
+     */
+    @Override
+    public boolean isDone() {
+      return false;
+    }
+
+    /**
+     * Returns whether the geometry got changed.
+     *
+     * @return		always true
+     */
+    @Override
+    public boolean isGeometryChanged() {
+      return true;
+    }
+  }
+
+  /** the code of the source CRS. */
+  protected String m_SourceCRS;
+
+  /** the code of the target CRS. */
+  protected String m_TargetCRS;
+
+  /** the column with the GPS objects. */
+  protected SpreadSheetColumnIndex m_GPS;
+
+  /** the name of the X column. */
+  protected String m_XColumn;
+
+  /** the name of the Y column. */
+  protected String m_YColumn;
+
+  /** the number of threads. */
+  protected int m_NumThreads;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+	"Reprojects layers or the GPS locations of spreadsheets into another "
+	+ "coordinate reference system (CRS), eg a projected one with metres as unit.\n"
+	+ "Layers use the CRS of their feature type; the source CRS is only used "
+	+ "for layers without CRS and for spreadsheets (longitude/latitude of the "
+	+ "GPS objects). For spreadsheets, the projected coordinates get added "
+	+ "as two new columns.\n"
+	+ "The transforms are cached per source/target CRS pair and the "
+	+ "coordinates get transformed in bulk (in parallel for large numbers "
+	+ "of coordinates).";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+	    "source-crs", "sourceCRS",
+	    "EPSG:4326");
+
+    m_OptionManager.add(
+	    "target-crs", "targetCRS",
+	    "EPSG:3857");
+
+    m_OptionManager.add(
+	    "gps", "GPS",
+	    new SpreadSheetColumnIndex("1"));
+
+    m_OptionManager.add(
+	    "x-column", "XColumn",
+	    "X");
+
+    m_OptionManager.add(
+	    "y-column", "YColumn",
+	    "Y");
+
+    m_OptionManager.add(
+	    "num-threads", "numThreads",
+	    1, -1, null);
+  }
+
+  /**
+   * Sets the code of the source CRS.
+   *
+   * @param value	the code, eg EPSG:4326
+   */
+  public void setSourceCRS(String value) {
+    m_SourceCRS = value;
+    reset();
+  }
+
+  /**
+   * Returns the code of the source CRS.
+   *
+   * @return		the code, eg EPSG:4326
+   */
+  public String getSourceCRS() {
+    return m_SourceCRS;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String sourceCRSTipText() {
+    return "The code of the CRS of the GPS locations and of layers without CRS (longitude first).";
+  }
+
+  /**
+   * Sets the code of the target CRS.
+   *
+   * @param value	the code, eg EPSG:3857
+   */
+  public void setTargetCRS(String value) {
+    m_TargetCRS = value;
+    reset();
+  }
+
+  /**
+   * Returns the code of the target CRS.
+   *
+   * @return		the code, eg EPSG:3857
+   */
+  public String getTargetCRS() {
+    return m_TargetCRS;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String targetCRSTipText() {
+    return "The code of the CRS to project into (longitude first).";
+  }
+
+  /**
+   * Sets the index of the column containing the GPS objects.
+   *
+   * @param value	the column index
+   */
+  public void setGPS(SpreadSheetColumnIndex value) {
+    m_GPS = value;
+    reset();
+  }
+
+  /**
+   * Returns the index of the column containing the GPS objects.
+   *
+   * @return		the column index
+   */
+  public SpreadSheetColumnIndex getGPS() {
+    return m_GPS;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String GPSTipText() {
+    return "The index of the column containing the GPS objects.";
+  }
+
+  /**
+   * Sets the name of the column for the X coordinates.
+   *
+   * @param value	the name
+   */
+  public void setXColumn(String value) {
+    m_XColumn = value;
+    reset();
+  }
+
+  /**
+   * Returns the name of the column for the X coordinates.
+   *
+   * @return		the name
+   */
+  public String getXColumn() {
+    return m_XColumn;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String XColumnTipText() {
+    return "The name of the column for the projected X coordinates (spreadsheets only).";
+  }
+
+  /**
+   * Sets the name of the column for the Y coordinates.
+   *
+   * @param value	the name
+   */
+  public void setYColumn(String value) {
+    m_YColumn = value;
+    reset();
+  }
+
+  /**
+   * Returns the name of the column for the Y coordinates.
+   *
+   * @return		the name
+   */
+  public String getYColumn() {
+    return m_YColumn;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String YColumnTipText() {
+    return "The name of the column for the projected Y coordinates (spreadsheets only).";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value	the number of threads, -1 for all cores
+   */
+  public void setNumThreads(int value) {
+    if (getOptionManager().isValid("numThreads", value)) {
+      m_NumThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads to use.
+   *
+   * @return		the number of threads, -1 for all cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return "The number of threads to use for transforming the coordinates (-1 for all cores).";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "sourceCRS", m_SourceCRS);
+    result += QuickInfoHelper.toString(this, "targetCRS", m_TargetCRS, " -> ");
+    result += QuickInfoHelper.toString(this, "numThreads", (m_NumThreads == -1 ? "all" : "" + m_NumThreads), ", threads: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return		the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{Layer.class, SpreadSheet.class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the Class of the generated tokens
+   */
+  @Override
+  public Class[] generates() {
+    return new Class[]{Layer.class, SpreadSheet.class};
+  }
+
+  /**
+   * Reprojects the features of the layer.
+   *
+   * @param layer	the layer to reproject
+   * @return		the reprojected layer
+   * @throws Exception	if reprojection fails
+   */
+  protected Layer reproject(Layer layer) throws Exception {
+    FeatureLayer		result;
+    FeatureType			schema;
+    SimpleFeatureType		type;
+    SimpleFeatureType		newType;
+    CoordinateReferenceSystem	source;
+    CoordinateReferenceSystem	target;
+    MathTransform		transform;
+    FeatureIterator		iter;
+    Feature			feature;
+    List<SimpleFeature>		features;
+    List<Geometry>		geoms;
+    Geometry			geom;
+    CoordinateCollector		collector;
+    CoordinateUpdater		updater;
+    double[]			coords;
+    SimpleFeatureBuilder	builder;
+    ListFeatureCollection	collection;
+    Style			style;
+    int				i;
+    long			start;
+
+    schema = layer.getFeatureSource().getSchema();
+    if (!(schema instanceof SimpleFeatureType))
+      throw new IllegalArgumentException("Only layers with simple features are supported: " + schema.getClass().getName());
+    type   = (SimpleFeatureType) schema;
+    source = type.getCoordinateReferenceSystem();
+    if (source == null)
+      source = CRSHelper.decode(m_SourceCRS);
+    target    = CRSHelper.decode(m_TargetCRS);
+    transform = CRSHelper.findTransform(source, target);
+
+    // collect coordinates
+    start     = System.currentTimeMillis();
+    features  = new ArrayList<SimpleFeature>();
+    geoms     = new ArrayList<Geometry>();
+    collector = new CoordinateCollector();
+    iter      = layer.getFeatureSource().getFeatures().features();
+    try {
+      while (iter.hasNext()) {
+	feature = (Feature) iter.next();
+	if (!(feature instanceof SimpleFeature))
+	  continue;
+	geom = (Geometry) ((SimpleFeature) feature).getDefaultGeometry();
+	if (geom != null) {
+	  geom = (Geometry) geom.clone();
+	  geom.apply(collector);
+	}
+	features.add((SimpleFeature) feature);
+	geoms.add(geom);
+      }
+    }
+    finally {
+      iter.close();
+    }
+
+    // transform
+    coords = collector.getCoordinates();
+    CRSHelper.transform(transform, coords, m_NumThreads);
+    if (isStopped())
+      return null;
+
+    // update geometries
+    newType    = SimpleFeatureTypeBuilder.retype(type, target);
+    builder    = new SimpleFeatureBuilder(newType);
+    collection = new ListFeatureCollection(newType);
+    updater    = new CoordinateUpdater(coords);
+    for (i = 0; i < features.size(); i++) {
+      geom = geoms.get(i);
+      builder.init(features.get(i));
+      if (geom != null) {
+	geom.apply(updater);
+	builder.set(newType.getGeometryDescriptor().getLocalName(), geom);
+      }
+      collection.add(builder.buildFeature(features.get(i).getID()));
+    }
+
+    if (isLoggingEnabled())
+      getLogger().info(
+	  "Reprojected " + features.size() + " features (" + (coords.length / 2) + " coordinates) in "
+	  + (System.currentTimeMillis() - start) + "ms");
+
+    if (layer instanceof FeatureLayer)
+      style = ((FeatureLayer) layer).getStyle();
+    else
+      style = SLD.createSimpleStyle(newType);
+    result = new FeatureLayer(collection, style);
+    result.setTitle(layer.getTitle());
+
+    return result;
+  }
+
+  /**
+   * Adds the projected coordinates of the GPS locations to the spreadsheet.
+   *
+   * @param sheet	the spreadsheet to process
+   * @return		the updated copy of the spreadsheet, null if failed
+   * @throws Exception	if reprojection fails
+   */
+  protected SpreadSheet reproject(SpreadSheet sheet) throws Exception {
+    SpreadSheet		result;
+    MathTransform	transform;
+    int			gps;
+    int[]		rows;
+    double[]		coords;
+    int			count;
+    Cell		cell;
+    Object		obj;
+    AbstractGPS		location;
+    Row			header;
+    Row			row;
+    String		keyX;
+    String		keyY;
+    int			i;
+    long		start;
+
+    m_GPS.setData(sheet);
+    gps = m_GPS.getIntIndex();
+    if (gps == -1)
+      throw new IllegalStateException("Column with GPS objects not found: " + m_GPS.getIndex());
+
+    transform = CRSHelper.findTransform(CRSHelper.decode(m_SourceCRS), CRSHelper.decode(m_TargetCRS));
+
+    // collect coordinates
+    start  = System.currentTimeMillis();
+    rows   = new int[sheet.getRowCount()];
+    coords = new double[sheet.getRowCount() * 2];
+    count  = 0;
+    for (i = 0; i < sheet.getRowCount(); i++) {
+      rows[i] = -1;
+      cell    = sheet.getRow(i).getCell(gps);
+      obj     = ((cell == null) || cell.isMissing()) ? null : cell.getObject();
+      if (!(obj instanceof AbstractGPS))
+	continue;
+      location              = (AbstractGPS) obj;
+      rows[i]               = count;
+      coords[count * 2]     = location.getLongitude().toDecimal();
+      coords[count * 2 + 1] = location.getLatitude().toDecimal();
+      count++;
+    }
+    if (count < sheet.getRowCount())
+      coords = Arrays.copyOf(coords, count * 2);
+
+    // transform
+    CRSHelper.transform(transform, coords, m_NumThreads);
+    if (isStopped())
+      return null;
+
+    if (isLoggingEnabled())
+      getLogger().info("Reprojected " + count + " locations in " + (System.currentTimeMillis() - start) + "ms");
+
+    // add columns
+    result = sheet.getClone();
+    header = result.getHeaderRow();
+    keyX   = "reprojection-" + header.getCellCount();
+    header.addCell(keyX).setContentAsString(m_XColumn);
+    keyY   = "reprojection-" + header.getCellCount();
+    header.addCell(keyY).setContentAsString(m_YColumn);
+    for (i = 0; i < result.getRowCount(); i++) {
+      row = result.getRow(i);
+      if (rows[i] == -1) {
+	row.addCell(keyX).setMissing();
+	row.addCell(keyY).setMissing();
+      }
+      else {
+	row.addCell(keyX).setContent(coords[rows[i] * 2]);
+	row.addCell(keyY).setContent(coords[rows[i] * 2 + 1]);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String	result;
+    Object	output;
+
+    result = null;
+
+    try {
+      if (m_InputToken.getPayload() instanceof Layer)
+	output = reproject((Layer) m_InputToken.getPayload());
+      else
+	output = reproject((SpreadSheet) m_InputToken.getPayload());
+      if (output != null)
+	m_OutputToken = new Token(output);
+    }
+    catch (Exception e) {
+      result = handleException("Failed to reproject: " + m_SourceCRS + " -> " + m_TargetCRS, e);
+    }
+
+    return result;
+  }
+}
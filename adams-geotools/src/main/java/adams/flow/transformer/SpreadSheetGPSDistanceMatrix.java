@@ -0,0 +1,511 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * SpreadSheetGPSDistanceMatrix.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.flow.transformer;
+
+import adams.core.QuickInfoHelper;
+import adams.data.GPSDistanceHelper;
+import adams.data.GPSDistanceType;
+import adams.data.gps.AbstractGPS;
+import adams.data.spreadsheet.Cell;
+import adams.data.spreadsheet.DefaultSpreadSheet;
+import adams.data.spreadsheet.Row;
+import adams.data.spreadsheet.SpreadSheet;
+import adams.data.spreadsheet.SpreadSheetColumnIndex;
+import adams.flow.core.Token;
+
+/**
+ <!-- globalinfo-start -->
+ * Computes the distances (in metres) between the GPS locations of spreadsheets.<br>
+ * With a single spreadsheet as input, the pairwise distances of all rows get computed (only half the matrix gets calculated). With an array of two spreadsheets, the distances from each row of the first spreadsheet to all the rows of the second one get computed (point-to-set).<br>
+ * The rows of the matrix get distributed across the specified number of threads.<br>
+ * Since the matrix gets output as spreadsheet with one cell per distance, its size is limited by the maximum number of cells (rows x columns); larger inputs get rejected. As a rule of thumb, each cell requires around 100 bytes of heap, i.e., the default of 1,000,000 cells (1000 locations pairwise) requires around 100MB. For large sets of locations, split the second spreadsheet into chunks and compute point-to-set matrices instead.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.SpreadSheet<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.SpreadSheet[]<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.SpreadSheet<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: SpreadSheetGPSDistanceMatrix
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseText&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-gps &lt;adams.data.spreadsheet.SpreadSheetColumnIndex&gt; (property: GPS)
+ * &nbsp;&nbsp;&nbsp;The index of the column containing the GPS objects.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;example: An index is a number starting with 1; apart from column names (case-sensitive), the following placeholders can be used as well: first, second, third, last_2, last_1, last
+ * </pre>
+ *
+ * <pre>-id &lt;adams.data.spreadsheet.SpreadSheetColumnIndex&gt; (property: ID)
+ * &nbsp;&nbsp;&nbsp;The index of the column containing the IDs for labeling rows and columns
+ * &nbsp;&nbsp;&nbsp;of the matrix; uses the 1-based row index if empty.
+ * &nbsp;&nbsp;&nbsp;default:
+ * &nbsp;&nbsp;&nbsp;example: An index is a number starting with 1; apart from column names (case-sensitive), the following placeholders can be used as well: first, second, third, last_2, last_1, last
+ * </pre>
+ *
+ * <pre>-type &lt;SPHERE|WGS84&gt; (property: type)
+ * &nbsp;&nbsp;&nbsp;The model for calculating the distances: SPHERE uses the haversine formula,
+ * &nbsp;&nbsp;&nbsp;WGS84 the ellipsoid.
+ * &nbsp;&nbsp;&nbsp;default: WGS84
+ * </pre>
+ *
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads to use for computing the matrix (-1 for all cores).
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ * <pre>-max-cells &lt;int&gt; (property: maxCells)
+ * &nbsp;&nbsp;&nbsp;The maximum number of cells (rows x columns) of the matrix; larger inputs
+ * &nbsp;&nbsp;&nbsp;get rejected (-1 for no limit).
+ * &nbsp;&nbsp;&nbsp;default: 1000000
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class SpreadSheetGPSDistanceMatrix
+  extends AbstractTransformer {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 4093164283683626361L;
+
+  /** the column with the GPS objects. */
+  protected SpreadSheetColumnIndex m_GPS;
+
+  /** the column with the IDs. */
+  protected SpreadSheetColumnIndex m_ID;
+
+  /** the distance type. */
+  protected GPSDistanceType m_Type;
+
+  /** the number of threads. */
+  protected int m_NumThreads;
+
+  /** the maximum number of cells of the matrix. */
+  protected int m_MaxCells;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+	"Computes the distances (in metres) between the GPS locations of "
+	+ "spreadsheets.\n"
+	+ "With a single spreadsheet as input, the pairwise distances of all "
+	+ "rows get computed (only half the matrix gets calculated). With an "
+	+ "array of two spreadsheets, the distances from each row of the first "
+	+ "spreadsheet to all the rows of the second one get computed "
+	+ "(point-to-set).\n"
+	+ "The rows of the matrix get distributed across the specified number "
+	+ "of threads.\n"
+	+ "Since the matrix gets output as spreadsheet with one cell per "
+	+ "distance, its size is limited by the maximum number of cells "
+	+ "(rows x columns); larger inputs get rejected. As a rule of thumb, "
+	+ "each cell requires around 100 bytes of heap, i.e., the default of "
+	+ "1,000,000 cells (1000 locations pairwise) requires around 100MB. "
+	+ "For large sets of locations, split the second spreadsheet into "
+	+ "chunks and compute point-to-set matrices instead.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+	    "gps", "GPS",
+	    new SpreadSheetColumnIndex("1"));
+
+    m_OptionManager.add(
+	    "id", "ID",
+	    new SpreadSheetColumnIndex());
+
+    m_OptionManager.add(
+	    "type", "type",
+	    GPSDistanceType.WGS84);
+
+    m_OptionManager.add(
+	    "num-threads", "numThreads",
+	    1, -1, null);
+
+    m_OptionManager.add(
+	    "max-cells", "maxCells",
+	    1000000, -1, null);
+  }
+
+  /**
+   * Sets the index of the column containing the GPS objects.
+   *
+   * @param value	the column index
+   */
+  public void setGPS(SpreadSheetColumnIndex value) {
+    m_GPS = value;
+    reset();
+  }
+
+  /**
+   * Returns the index of the column containing the GPS objects.
+   *
+   * @return		the column index
+   */
+  public SpreadSheetColumnIndex getGPS() {
+    return m_GPS;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String GPSTipText() {
+    return "The index of the column containing the GPS objects.";
+  }
+
+  /**
+   * Sets the index of the column containing the IDs.
+   *
+   * @param value	the column index
+   */
+  public void setID(SpreadSheetColumnIndex value) {
+    m_ID = value;
+    reset();
+  }
+
+  /**
+   * Returns the index of the column containing the IDs.
+   *
+   * @return		the column index
+   */
+  public SpreadSheetColumnIndex getID() {
+    return m_ID;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String IDTipText() {
+    return
+	"The index of the column containing the IDs for labeling rows and "
+	+ "columns of the matrix; uses the 1-based row index if empty.";
+  }
+
+  /**
+   * Sets the model for calculating the distances.
+   *
+   * @param value	the type
+   */
+  public void setType(GPSDistanceType value) {
+    m_Type = value;
+    reset();
+  }
+
+  /**
+   * Returns the model for calculating the distances.
+   *
+   * @return		the type
+   */
+  public GPSDistanceType getType() {
+    return m_Type;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String typeTipText() {
+    return
+	"The model for calculating the distances: " + GPSDistanceType.SPHERE
+	+ " uses the haversine formula, " + GPSDistanceType.WGS84 + " the ellipsoid.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value	the number of threads, -1 for all cores
+   */
+  public void setNumThreads(int value) {
+    if (getOptionManager().isValid("numThreads", value)) {
+      m_NumThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads to use.
+   *
+   * @return		the number of threads, -1 for all cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return "The number of threads to use for computing the matrix (-1 for all cores).";
+  }
+
+  /**
+   * Sets the maximum number of cells (rows x columns) of the matrix.
+   *
+   * @param value	the maximum, -1 for no limit
+   */
+  public void setMaxCells(int value) {
+    if (getOptionManager().isValid("maxCells", value)) {
+      m_MaxCells = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of cells (rows x columns) of the matrix.
+   *
+   * @return		the maximum, -1 for no limit
+   */
+  public int getMaxCells() {
+    return m_MaxCells;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxCellsTipText() {
+    return
+	"The maximum number of cells (rows x columns) of the matrix; larger "
+	+ "inputs get rejected (-1 for no limit).";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "GPS", m_GPS, "GPS: ");
+    result += QuickInfoHelper.toString(this, "type", m_Type, ", type: ");
+    result += QuickInfoHelper.toString(this, "numThreads", (m_NumThreads == -1 ? "all" : "" + m_NumThreads), ", threads: ");
+    result += QuickInfoHelper.toString(this, "maxCells", (m_MaxCells == -1 ? "unlimited" : "" + m_MaxCells), ", max cells: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return		the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{SpreadSheet.class, SpreadSheet[].class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the Class of the generated tokens
+   */
+  @Override
+  public Class[] generates() {
+    return new Class[]{SpreadSheet.class};
+  }
+
+  /**
+   * Extracts the coordinates from the spreadsheet. Rows without GPS object
+   * get NaN as coordinates.
+   *
+   * @param sheet	the spreadsheet to process
+   * @param coords	the array to fill in (longitudes, latitudes)
+   * @return		the labels for the rows
+   */
+  protected String[] extract(SpreadSheet sheet, double[][] coords) {
+    String[]	result;
+    int		gps;
+    int		id;
+    int		i;
+    Row		row;
+    Cell	cell;
+    Object	obj;
+
+    m_GPS.setData(sheet);
+    m_ID.setData(sheet);
+    gps = m_GPS.getIntIndex();
+    id  = m_ID.getIntIndex();
+    if (gps == -1)
+      throw new IllegalArgumentException("Column with GPS objects not found: " + m_GPS.getIndex());
+
+    result    = new String[sheet.getRowCount()];
+    coords[0] = new double[sheet.getRowCount()];
+    coords[1] = new double[sheet.getRowCount()];
+    for (i = 0; i < sheet.getRowCount(); i++) {
+      row  = sheet.getRow(i);
+      cell = row.getCell(gps);
+      obj  = ((cell == null) || cell.isMissing()) ? null : cell.getObject();
+      if (obj instanceof AbstractGPS) {
+	coords[0][i] = ((AbstractGPS) obj).getLongitude().toDecimal();
+	coords[1][i] = ((AbstractGPS) obj).getLatitude().toDecimal();
+      }
+      else {
+	coords[0][i] = Double.NaN;
+	coords[1][i] = Double.NaN;
+      }
+      if ((id > -1) && row.hasCell(id) && !row.getCell(id).isMissing())
+	result[i] = row.getCell(id).getContent();
+      else
+	result[i] = "" + (i + 1);
+    }
+
+    return result;
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String		result;
+    SpreadSheet[]	sheets;
+    double[][]		coords1;
+    double[][]		coords2;
+    String[]		labels1;
+    String[]		labels2;
+    double[][]		matrix;
+    SpreadSheet		output;
+    Row			row;
+    int			i;
+    int			n;
+    long		start;
+    long		cells;
+
+    result = null;
+
+    if (m_InputToken.getPayload() instanceof SpreadSheet)
+      sheets = new SpreadSheet[]{(SpreadSheet) m_InputToken.getPayload()};
+    else
+      sheets = (SpreadSheet[]) m_InputToken.getPayload();
+    if ((sheets.length < 1) || (sheets.length > 2))
+      result = "Either one or two spreadsheets required, provided: " + sheets.length;
+
+    if (result == null) {
+      try {
+	start   = System.currentTimeMillis();
+	coords1 = new double[2][];
+	labels1 = extract(sheets[0], coords1);
+	if (sheets.length == 2) {
+	  coords2 = new double[2][];
+	  labels2 = extract(sheets[1], coords2);
+	}
+	else {
+	  coords2 = coords1;
+	  labels2 = labels1;
+	}
+	cells = (long) labels1.length * (long) labels2.length;
+	if ((m_MaxCells > -1) && (cells > m_MaxCells)) {
+	  result = "Distance matrix of " + labels1.length + "x" + labels2.length + " = " + cells
+	    + " cells exceeds the maximum of " + m_MaxCells + " cells, "
+	    + "split the locations into chunks or increase 'maxCells'!";
+	}
+	else {
+	  matrix = GPSDistanceHelper.distances(m_Type, coords1[0], coords1[1], coords2[0], coords2[1], m_NumThreads);
+	  if (isLoggingEnabled())
+	    getLogger().info("Computed " + matrix.length + "x" + labels2.length + " distances in " + (System.currentTimeMillis() - start) + "ms");
+
+	  output = new DefaultSpreadSheet();
+	  row    = output.getHeaderRow();
+	  row.addCell("id").setContentAsString("ID");
+	  for (n = 0; n < labels2.length; n++)
+	    row.addCell("" + n).setContentAsString(labels2[n]);
+	  for (i = 0; i < matrix.length; i++) {
+	    row = output.addRow();
+	    row.addCell("id").setContentAsString(labels1[i]);
+	    for (n = 0; n < matrix[i].length; n++) {
+	      if (Double.isNaN(matrix[i][n]))
+		row.addCell("" + n).setMissing();
+	      else
+		row.addCell("" + n).setContent(matrix[i][n]);
+	    }
+	  }
+	  m_OutputToken = new Token(output);
+	}
+      }
+      catch (Exception e) {
+	result = handleException("Failed to compute distance matrix!", e);
+      }
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,663 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * SpreadSheetSpatialJoin.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.flow.transformer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.map.Layer;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import adams.core.QuickInfoHelper;
+import adams.data.gps.AbstractGPS;
+import adams.data.spreadsheet.Cell;
+import adams.data.spreadsheet.Row;
+import adams.data.spreadsheet.SpreadSheet;
+import adams.data.spreadsheet.SpreadSheetColumnIndex;
+import adams.flow.control.StorageName;
+import adams.flow.core.Token;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygonal;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ <!-- globalinfo-start -->
+ * Tags the rows of a spreadsheet with the attributes of the polygon that contains the row's GPS location (point-in-polygon join).<br>
+ * The polygons are taken from the layer in internal storage (eg obtained with the GeoToolsLayerFileReader and a ShapeFileReader); both the layer and the GPS locations must use the same coordinate system (longitude&#47;latitude).<br>
+ * The envelopes of the polygons are indexed once using an STR-tree and the containment tests use prepared geometries. The index is re-used as long as the layer in storage does not change. Rows without GPS location or not contained in any polygon get missing values.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.SpreadSheet<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.SpreadSheet<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: SpreadSheetSpatialJoin
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseText&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-gps &lt;adams.data.spreadsheet.SpreadSheetColumnIndex&gt; (property: GPS)
+ * &nbsp;&nbsp;&nbsp;The index of the column containing the GPS objects.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;example: An index is a number starting with 1; apart from column names (case-sensitive), the following placeholders can be used as well: first, second, third, last_2, last_1, last
+ * </pre>
+ *
+ * <pre>-storage-name &lt;adams.flow.control.StorageName&gt; (property: storageName)
+ * &nbsp;&nbsp;&nbsp;The name of the storage item containing the polygon layer.
+ * &nbsp;&nbsp;&nbsp;default: polygons
+ * </pre>
+ *
+ * <pre>-prefix &lt;java.lang.String&gt; (property: prefix)
+ * &nbsp;&nbsp;&nbsp;The prefix for the names of the columns containing the polygon attributes.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads to use for locating the polygons (-1 for all cores).
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class SpreadSheetSpatialJoin
+  extends AbstractTransformer {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -2712849563521017093L;
+
+  /** the column with the GPS objects. */
+  protected SpreadSheetColumnIndex m_GPS;
+
+  /** the storage item with the polygon layer. */
+  protected StorageName m_StorageName;
+
+  /** the prefix for the attribute columns. */
+  protected String m_Prefix;
+
+  /** the number of threads. */
+  protected int m_NumThreads;
+
+  /** the layer that the index was built for. */
+  protected transient Layer m_IndexedLayer;
+
+  /** the spatial index of the polygons (stores the polygon indices). */
+  protected transient STRtree m_Index;
+
+  /** the prepared polygons. */
+  protected transient PreparedGeometry[] m_Polygons;
+
+  /** the attributes of the polygons. */
+  protected transient Object[][] m_Attributes;
+
+  /** the names of the attributes. */
+  protected transient String[] m_AttributeNames;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+	"Tags the rows of a spreadsheet with the attributes of the polygon that "
+	+ "contains the row's GPS location (point-in-polygon join).\n"
+	+ "The polygons are taken from the layer in internal storage (eg obtained "
+	+ "with the " + GeoToolsLayerFileReader.class.getSimpleName() + " and a "
+	+ "ShapeFileReader); both the layer and the GPS locations must use the "
+	+ "same coordinate system (longitude/latitude).\n"
+	+ "The envelopes of the polygons are indexed once using an STR-tree and "
+	+ "the containment tests use prepared geometries. The index is re-used "
+	+ "as long as the layer in storage does not change. Rows without GPS "
+	+ "location or not contained in any polygon get missing values.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+	    "gps", "GPS",
+	    new SpreadSheetColumnIndex("1"));
+
+    m_OptionManager.add(
+	    "storage-name", "storageName",
+	    new StorageName("polygons"));
+
+    m_OptionManager.add(
+	    "prefix", "prefix",
+	    "");
+
+    m_OptionManager.add(
+	    "num-threads", "numThreads",
+	    1, -1, null);
+  }
+
+  /**
+   * Resets the scheme.
+   */
+  @Override
+  protected void reset() {
+    super.reset();
+
+    clearIndex();
+  }
+
+  /**
+   * Sets the index of the column containing the GPS objects.
+   *
+   * @param value	the column index
+   */
+  public void setGPS(SpreadSheetColumnIndex value) {
+    m_GPS = value;
+    reset();
+  }
+
+  /**
+   * Returns the index of the column containing the GPS objects.
+   *
+   * @return		the column index
+   */
+  public SpreadSheetColumnIndex getGPS() {
+    return m_GPS;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String GPSTipText() {
+    return "The index of the column containing the GPS objects.";
+  }
+
+  /**
+   * Sets the name of the storage item containing the polygon layer.
+   *
+   * @param value	the storage name
+   */
+  public void setStorageName(StorageName value) {
+    m_StorageName = value;
+    reset();
+  }
+
+  /**
+   * Returns the name of the storage item containing the polygon layer.
+   *
+   * @return		the storage name
+   */
+  public StorageName getStorageName() {
+    return m_StorageName;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String storageNameTipText() {
+    return "The name of the storage item containing the polygon layer.";
+  }
+
+  /**
+   * Sets the prefix for the attribute columns.
+   *
+   * @param value	the prefix
+   */
+  public void setPrefix(String value) {
+    m_Prefix = value;
+    reset();
+  }
+
+  /**
+   * Returns the prefix for the attribute columns.
+   *
+   * @return		the prefix
+   */
+  public String getPrefix() {
+    return m_Prefix;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String prefixTipText() {
+    return "The prefix for the names of the columns containing the polygon attributes.";
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value	the number of threads, -1 for all cores
+   */
+  public void setNumThreads(int value) {
+    if (getOptionManager().isValid("numThreads", value)) {
+      m_NumThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads to use.
+   *
+   * @return		the number of threads, -1 for all cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return "The number of threads to use for locating the polygons (-1 for all cores).";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "storageName", m_StorageName, "polygons: ");
+    result += QuickInfoHelper.toString(this, "GPS", m_GPS, ", GPS: ");
+    result += QuickInfoHelper.toString(this, "numThreads", (m_NumThreads == -1 ? "all" : "" + m_NumThreads), ", threads: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return		the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{SpreadSheet.class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the Class of the generated tokens
+   */
+  @Override
+  public Class[] generates() {
+    return new Class[]{SpreadSheet.class};
+  }
+
+  /**
+   * Removes the spatial index.
+   */
+  protected void clearIndex() {
+    m_IndexedLayer   = null;
+    m_Index          = null;
+    m_Polygons       = null;
+    m_Attributes     = null;
+    m_AttributeNames = null;
+  }
+
+  /**
+   * Builds the spatial index for the polygons of the layer.
+   *
+   * @param layer	the layer to index
+   * @throws Exception	if reading of the features fails
+   */
+  protected void buildIndex(Layer layer) throws Exception {
+    FeatureCollection			collection;
+    FeatureIterator			iter;
+    Feature				feature;
+    SimpleFeature			sfeature;
+    Geometry				geom;
+    PreparedGeometryFactory		factory;
+    List<PreparedGeometry>		polygons;
+    List<Object[]>			attributes;
+    List<String>			names;
+    List<Integer>			attIndices;
+    Object[]				values;
+    int					i;
+    int					skipped;
+    long				start;
+
+    clearIndex();
+
+    start      = System.currentTimeMillis();
+    factory    = new PreparedGeometryFactory();
+    polygons   = new ArrayList<>();
+    attributes = new ArrayList<>();
+    names      = null;
+    attIndices = null;
+    skipped    = 0;
+    m_Index    = new STRtree();
+
+    collection = layer.getFeatureSource().getFeatures();
+    iter       = collection.features();
+    try {
+      while (iter.hasNext()) {
+	feature = (Feature) iter.next();
+	if (!(feature instanceof SimpleFeature)) {
+	  skipped++;
+	  continue;
+	}
+	sfeature = (SimpleFeature) feature;
+	geom     = (Geometry) sfeature.getDefaultGeometry();
+	if ((geom == null) || !(geom instanceof Polygonal)) {
+	  skipped++;
+	  continue;
+	}
+	// determine attributes from first polygon
+	if (names == null) {
+	  names      = new ArrayList<>();
+	  attIndices = new ArrayList<>();
+	  i          = 0;
+	  for (AttributeDescriptor desc: sfeature.getFeatureType().getAttributeDescriptors()) {
+	    if (!(desc instanceof GeometryDescriptor)) {
+	      names.add(desc.getLocalName());
+	      attIndices.add(i);
+	    }
+	    i++;
+	  }
+	}
+	values = new Object[attIndices.size()];
+	for (i = 0; i < attIndices.size(); i++)
+	  values[i] = sfeature.getAttribute(attIndices.get(i));
+	m_Index.insert(geom.getEnvelopeInternal(), polygons.size());
+	polygons.add(factory.create(geom));
+	attributes.add(values);
+      }
+    }
+    finally {
+      iter.close();
+    }
+    // build now, so the tree is read-only when queried from several threads
+    m_Index.build();
+
+    m_IndexedLayer   = layer;
+    m_Polygons       = polygons.toArray(new PreparedGeometry[polygons.size()]);
+    m_Attributes     = attributes.toArray(new Object[attributes.size()][]);
+    m_AttributeNames = (names == null) ? new String[0] : names.toArray(new String[names.size()]);
+
+    if (isLoggingEnabled())
+      getLogger().info(
+	  "Indexed " + m_Polygons.length + " polygons (skipped " + skipped
+	  + " features) in " + (System.currentTimeMillis() - start) + "ms");
+  }
+
+  /**
+   * Locates the polygons containing the GPS locations of the specified rows.
+   * If several polygons contain a location, the first one (in layer order)
+   * is used.
+   *
+   * @param sheet	the spreadsheet to process
+   * @param gps		the index of the GPS column
+   * @param from	the first row (incl)
+   * @param to		the last row (excl)
+   * @param matches	the array for storing the polygon indices (-1 if none)
+   */
+  protected void locate(SpreadSheet sheet, int gps, int from, int to, int[] matches) {
+    GeometryFactory	factory;
+    Cell		cell;
+    Object		obj;
+    AbstractGPS		location;
+    Coordinate		coord;
+    Point		point;
+    List		candidates;
+    int			i;
+    int			index;
+
+    factory = new GeometryFactory();
+    for (i = from; i < to; i++) {
+      matches[i] = -1;
+      if (isStopped())
+	break;
+      cell = sheet.getRow(i).getCell(gps);
+      obj  = ((cell == null) || cell.isMissing()) ? null : cell.getObject();
+      if (!(obj instanceof AbstractGPS))
+	continue;
+      location   = (AbstractGPS) obj;
+      coord      = new Coordinate(location.getLongitude().toDecimal(), location.getLatitude().toDecimal());
+      point      = factory.createPoint(coord);
+      candidates = m_Index.query(new Envelope(coord));
+      for (Object candidate: candidates) {
+	index = (Integer) candidate;
+	if ((matches[i] > -1) && (index > matches[i]))
+	  continue;
+	if (m_Polygons[index].covers(point))
+	  matches[i] = index;
+      }
+    }
+  }
+
+  /**
+   * Locates the polygons for all the rows, distributing the rows in
+   * chunks across the threads.
+   *
+   * @param sheet	the spreadsheet to process
+   * @param gps		the index of the GPS column
+   * @return		the polygon indices (-1 if none)
+   * @throws Exception	if a thread fails
+   */
+  protected int[] locate(final SpreadSheet sheet, final int gps) throws Exception {
+    final int[]			result;
+    int				numThreads;
+    int				chunk;
+    int				i;
+    ExecutorService		executor;
+    List<Future<Object>>	jobs;
+
+    result     = new int[sheet.getRowCount()];
+    numThreads = m_NumThreads;
+    if (numThreads == -1)
+      numThreads = Runtime.getRuntime().availableProcessors();
+    numThreads = Math.max(1, Math.min(numThreads, sheet.getRowCount()));
+
+    if (numThreads == 1) {
+      locate(sheet, gps, 0, sheet.getRowCount(), result);
+    }
+    else {
+      chunk    = (int) Math.ceil((double) sheet.getRowCount() / numThreads);
+      executor = Executors.newFixedThreadPool(numThreads);
+      jobs     = new ArrayList<>();
+      try {
+	for (i = 0; i < sheet.getRowCount(); i += chunk) {
+	  final int from = i;
+	  final int to   = Math.min(i + chunk, sheet.getRowCount());
+	  jobs.add(executor.submit(new Callable<Object>() {
+	    @Override
+	    public Object call() throws Exception {
+	      locate(sheet, gps, from, to, result);
+	      return null;
+	    }
+	  }));
+	}
+	for (Future<Object> job: jobs)
+	  job.get();
+      }
+      finally {
+	executor.shutdownNow();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Stores the value in the cell.
+   *
+   * @param cell	the cell to update
+   * @param value	the value to store, null for missing
+   */
+  protected void setValue(Cell cell, Object value) {
+    if (value == null)
+      cell.setMissing();
+    else if ((value instanceof Double) || (value instanceof Float))
+      cell.setContent(((Number) value).doubleValue());
+    else if (value instanceof Number)
+      cell.setContent(((Number) value).longValue());
+    else if (value instanceof Boolean)
+      cell.setContent((Boolean) value);
+    else
+      cell.setContentAsString(value.toString());
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String		result;
+    SpreadSheet		sheet;
+    Object		layer;
+    Row			header;
+    Row			row;
+    int			gps;
+    int[]		matches;
+    String[]		keys;
+    int			i;
+    int			n;
+    long		start;
+
+    result = null;
+    sheet  = (SpreadSheet) m_InputToken.getPayload();
+
+    layer = null;
+    if (getStorageHandler().getStorage().has(m_StorageName))
+      layer = getStorageHandler().getStorage().get(m_StorageName);
+    if (layer == null)
+      result = "Storage item not available: " + m_StorageName;
+    else if (!(layer instanceof Layer))
+      result = "Storage item '" + m_StorageName + "' is not a " + Layer.class.getName() + ": " + layer.getClass().getName();
+
+    if (result == null) {
+      m_GPS.setData(sheet);
+      gps = m_GPS.getIntIndex();
+      if (gps == -1)
+	result = "Column with GPS objects not found: " + m_GPS.getIndex();
+
+      try {
+	if (result == null) {
+	  if (m_IndexedLayer != layer)
+	    buildIndex((Layer) layer);
+
+	  start   = System.currentTimeMillis();
+	  matches = locate(sheet, gps);
+	  if (isStopped())
+	    return null;
+	  if (isLoggingEnabled())
+	    getLogger().info("Located " + sheet.getRowCount() + " rows in " + (System.currentTimeMillis() - start) + "ms");
+
+	  sheet  = sheet.getClone();
+	  header = sheet.getHeaderRow();
+	  keys   = new String[m_AttributeNames.length];
+	  for (n = 0; n < m_AttributeNames.length; n++) {
+	    keys[n] = "spatial-join-" + header.getCellCount();
+	    header.addCell(keys[n]).setContentAsString(m_Prefix + m_AttributeNames[n]);
+	  }
+	  for (i = 0; i < sheet.getRowCount(); i++) {
+	    row = sheet.getRow(i);
+	    for (n = 0; n < keys.length; n++)
+	      setValue(row.addCell(keys[n]), (matches[i] == -1) ? null : m_Attributes[matches[i]][n]);
+	  }
+	  m_OutputToken = new Token(sheet);
+	}
+      }
+      catch (Exception e) {
+	result = handleException("Failed to join spreadsheet with polygons!", e);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Cleans up after the execution has finished.
+   */
+  @Override
+  public void wrapUp() {
+    clearIndex();
+
+    super.wrapUp();
+  }
+}
@@ -0,0 +1,678 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ClusteringPointLayer.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.gui.visualization.maps;
+
+import adams.core.logging.Logger;
+import adams.core.logging.LoggingHelper;
+import adams.data.CRSHelper;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.DirectLayer;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
+import org.geotools.map.event.MapLayerEvent;
+import org.geotools.referencing.CRS;
+import org.geotools.styling.PointSymbolizer;
+import org.geotools.styling.SLD;
+import org.geotools.styling.Style;
+import org.opengis.feature.Feature;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import javax.swing.Timer;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+/**
+ * Layer that draws the points of a feature layer as clusters, depending on
+ * the zoom level. Points that are closer than the cluster radius (in pixels)
+ * get merged into a single symbol displaying the number of points. Once
+ * zoomed in far enough, the individual points get drawn, using the fill
+ * color, outline color and size of the layer's point style (if available).
+ * <br>
+ * The coordinates of the points are extracted once into primitive arrays
+ * and get transformed into the coordinate reference system of the map when
+ * it differs from the one of the layer. The clusters are computed per zoom
+ * level (powers of two of the map scale) using a grid on a background
+ * thread and then cached, along with a spatial index for retrieving only
+ * the visible clusters. While the clusters of a level are being computed,
+ * the ones of the closest cached level get drawn.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ClusteringPointLayer
+  extends DirectLayer {
+
+  /** the maximum number of zoom levels to cache. */
+  public final static int MAX_CACHED_LEVELS = 16;
+
+  /** the number of clusters from which on a spatial index gets built. */
+  public final static int MIN_INDEX_SIZE = 1000;
+
+  /** the default radius in pixels for single points. */
+  public final static int POINT_RADIUS = 3;
+
+  /** the delay in msec for coalescing repaint requests. */
+  public final static int REPAINT_DELAY = 100;
+
+  /** the logger. */
+  private static final Logger LOGGER = LoggingHelper.getLogger(ClusteringPointLayer.class);
+
+  /**
+   * Container for the coordinates of the points in a specific CRS.
+   */
+  protected static class Points {
+
+    /** the coordinate reference system (null if unknown). */
+    public CoordinateReferenceSystem crs;
+
+    /** the x coordinates. */
+    public double[] x;
+
+    /** the y coordinates. */
+    public double[] y;
+
+    /** the bounds of the points. */
+    public ReferencedEnvelope bounds;
+  }
+
+  /**
+   * Container for the clusters of a zoom level.
+   */
+  protected static class Clusters {
+
+    /** the x coordinates of the cluster centers. */
+    public double[] x;
+
+    /** the y coordinates of the cluster centers. */
+    public double[] y;
+
+    /** the number of points per cluster. */
+    public int[] count;
+
+    /** the spatial index of the clusters, null if not indexed. */
+    public STRtree index;
+  }
+
+  /** the underlying layer. */
+  protected Layer m_Source;
+
+  /** the points in the CRS of the layer. */
+  protected Points m_Original;
+
+  /** the points in the CRS of the map. */
+  protected volatile Points m_Points;
+
+  /** the CRS the points were last requested for. */
+  protected CoordinateReferenceSystem m_RequestedCRS;
+
+  /** the cluster radius in pixels. */
+  protected int m_Radius;
+
+  /** the color to use for the clusters. */
+  protected Color m_Color;
+
+  /** the fill color for single points. */
+  protected Color m_PointFill;
+
+  /** the outline color for single points (null if none). */
+  protected Color m_PointOutline;
+
+  /** the radius in pixels for single points. */
+  protected int m_PointRadius;
+
+  /** the cached clusters per zoom level. */
+  protected Map<Integer,Clusters> m_Cache;
+
+  /** the zoom levels currently being computed. */
+  protected Set<Integer> m_Pending;
+
+  /** the generation, gets incremented when the CRS changes. */
+  protected int m_Generation;
+
+  /** the executor for transforming the points and computing the clusters. */
+  protected ExecutorService m_Executor;
+
+  /** for coalescing the repaint requests. */
+  protected Timer m_RepaintTimer;
+
+  /**
+   * Initializes the layer from the points of the feature layer.
+   *
+   * @param source	the layer to obtain the points from
+   * @param radius	the cluster radius in pixels
+   * @param color	the color for drawing the clusters (and points, if the style has no fill)
+   * @throws Exception	if reading the features fails
+   */
+  public ClusteringPointLayer(FeatureLayer source, int radius, Color color) throws Exception {
+    super();
+
+    m_Source  = source;
+    m_Radius  = Math.max(1, radius);
+    m_Color   = color;
+    m_Pending = new HashSet<Integer>();
+    m_Cache   = new LinkedHashMap<Integer,Clusters>(MAX_CACHED_LEVELS, 0.75f, true) {
+      private static final long serialVersionUID = 6011285745633012931L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer,Clusters> eldest) {
+	return size() > MAX_CACHED_LEVELS;
+      }
+    };
+    m_Executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+	Thread result = new Thread(r, "ClusteringPointLayer");
+	result.setDaemon(true);
+	return result;
+      }
+    });
+    m_RepaintTimer = new Timer(REPAINT_DELAY, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	fireMapLayerListenerLayerChanged(MapLayerEvent.DATA_CHANGED);
+      }
+    });
+    m_RepaintTimer.setRepeats(false);
+    setTitle(source.getTitle());
+    initPointStyle(source.getStyle());
+    extractPoints();
+  }
+
+  /**
+   * Obtains fill color, outline color and size for single points from the
+   * first point symbolizer of the style. Falls back to the cluster color
+   * and the default radius.
+   *
+   * @param style	the style of the layer, can be null
+   */
+  protected void initPointStyle(Style style) {
+    PointSymbolizer	sym;
+    int			size;
+
+    sym            = (style == null) ? null : SLD.pointSymbolizer(style);
+    m_PointFill    = (sym == null) ? null : SLD.pointFill(sym);
+    m_PointOutline = (sym == null) ? null : SLD.pointColor(sym);
+    size           = (sym == null) ? -1 : SLD.pointSize(sym);
+    if (m_PointFill == null)
+      m_PointFill = m_Color;
+    m_PointRadius  = (size > 0) ? Math.max(1, size / 2) : POINT_RADIUS;
+  }
+
+  /**
+   * Extracts the coordinates of all the points (and multi-points).
+   *
+   * @throws Exception	if reading the features fails
+   */
+  protected void extractPoints() throws Exception {
+    FeatureCollection		collection;
+    FeatureIterator		iter;
+    Feature			feature;
+    GeometryAttribute		attr;
+    Object			value;
+    Geometry			geom;
+    TDoubleArrayList		x;
+    TDoubleArrayList		y;
+    Coordinate			coord;
+    int				i;
+
+    x          = new TDoubleArrayList();
+    y          = new TDoubleArrayList();
+    collection = m_Source.getFeatureSource().getFeatures();
+    iter       = collection.features();
+    try {
+      while (iter.hasNext()) {
+	feature = (Feature) iter.next();
+	attr    = feature.getDefaultGeometryProperty();
+	value   = (attr == null) ? null : attr.getValue();
+	if (value instanceof Point) {
+	  coord = ((Point) value).getCoordinate();
+	  x.add(coord.x);
+	  y.add(coord.y);
+	}
+	else if (value instanceof MultiPoint) {
+	  geom = (Geometry) value;
+	  for (i = 0; i < geom.getNumGeometries(); i++) {
+	    coord = geom.getGeometryN(i).getCoordinate();
+	    x.add(coord.x);
+	    y.add(coord.y);
+	  }
+	}
+      }
+    }
+    finally {
+      iter.close();
+    }
+
+    m_Original     = newPoints(m_Source.getFeatureSource().getSchema().getCoordinateReferenceSystem(), x.toArray(), y.toArray());
+    m_Points       = m_Original;
+    m_RequestedCRS = m_Original.crs;
+  }
+
+  /**
+   * Creates the container for the points, computing the bounds.
+   *
+   * @param crs		the coordinate reference system, can be null
+   * @param x		the x coordinates
+   * @param y		the y coordinates
+   * @return		the container
+   */
+  protected Points newPoints(CoordinateReferenceSystem crs, double[] x, double[] y) {
+    Points	result;
+    int		i;
+
+    result        = new Points();
+    result.crs    = crs;
+    result.x      = x;
+    result.y      = y;
+    result.bounds = new ReferencedEnvelope(crs);
+    for (i = 0; i < x.length; i++)
+      result.bounds.expandToInclude(x[i], y[i]);
+
+    return result;
+  }
+
+  /**
+   * Checks whether the two CRSs are the same (unknown CRSs are considered
+   * the same as any other).
+   *
+   * @param crs1	the first CRS
+   * @param crs2	the second CRS
+   * @return		true if the same
+   */
+  protected boolean isSameCRS(CoordinateReferenceSystem crs1, CoordinateReferenceSystem crs2) {
+    return (crs1 == null) || (crs2 == null) || CRS.equalsIgnoreMetadata(crs1, crs2);
+  }
+
+  /**
+   * Transforms the original points into the specified CRS.
+   *
+   * @param crs		the target CRS
+   * @return		the transformed points, no points if the transformation fails
+   */
+  protected Points transformPoints(CoordinateReferenceSystem crs) {
+    double[]	coords;
+    double[]	x;
+    double[]	y;
+    int		i;
+
+    if (isSameCRS(m_Original.crs, crs))
+      return newPoints(crs, m_Original.x, m_Original.y);
+
+    coords = new double[m_Original.x.length * 2];
+    for (i = 0; i < m_Original.x.length; i++) {
+      coords[i * 2]     = m_Original.x[i];
+      coords[i * 2 + 1] = m_Original.y[i];
+    }
+    try {
+      CRSHelper.transform(CRSHelper.findTransform(m_Original.crs, crs), coords, -1);
+    }
+    catch (Exception e) {
+      LOGGER.log(Level.SEVERE, "Failed to transform points of layer: " + getTitle(), e);
+      return newPoints(crs, new double[0], new double[0]);
+    }
+    x = new double[m_Original.x.length];
+    y = new double[m_Original.x.length];
+    for (i = 0; i < x.length; i++) {
+      x[i] = coords[i * 2];
+      y[i] = coords[i * 2 + 1];
+    }
+
+    return newPoints(crs, x, y);
+  }
+
+  /**
+   * Returns the points in the specified CRS. If they still need
+   * transforming, this happens in the background.
+   *
+   * @param crs		the CRS of the map, can be null
+   * @return		the points, null if not yet available
+   */
+  protected Points getPoints(final CoordinateReferenceSystem crs) {
+    Points	result;
+    final int	generation;
+
+    result = m_Points;
+    if (isSameCRS(result.crs, crs))
+      return result;
+
+    synchronized(m_Cache) {
+      if ((m_RequestedCRS != null) && isSameCRS(m_RequestedCRS, crs))
+	return null;
+      m_RequestedCRS = crs;
+      m_Generation++;
+      m_Cache.clear();
+      m_Pending.clear();
+      generation = m_Generation;
+    }
+
+    m_Executor.submit(new Runnable() {
+      @Override
+      public void run() {
+	Points	points;
+
+	points = transformPoints(crs);
+	synchronized(m_Cache) {
+	  if (generation != m_Generation)
+	    return;
+	  m_Points = points;
+	}
+	m_RepaintTimer.restart();
+      }
+    });
+
+    return null;
+  }
+
+  /**
+   * Returns the underlying layer.
+   *
+   * @return		the layer
+   */
+  public Layer getSource() {
+    return m_Source;
+  }
+
+  /**
+   * Returns the number of points.
+   *
+   * @return		the number of points
+   */
+  public int getNumPoints() {
+    return m_Original.x.length;
+  }
+
+  /**
+   * Computes the clusters for the given cell size.
+   *
+   * @param points	the points to cluster
+   * @param cell	the size of the grid cells in world units
+   * @return		the clusters
+   */
+  protected Clusters computeClusters(Points points, double cell) {
+    Clusters		result;
+    TLongIntHashMap	slots;
+    TDoubleArrayList	sumX;
+    TDoubleArrayList	sumY;
+    TIntArrayList	counts;
+    long		key;
+    int			slot;
+    int			i;
+
+    slots  = new TLongIntHashMap(1024, 0.5f, Long.MIN_VALUE, -1);
+    sumX   = new TDoubleArrayList();
+    sumY   = new TDoubleArrayList();
+    counts = new TIntArrayList();
+    for (i = 0; i < points.x.length; i++) {
+      key  =   ((long) Math.floor((points.x[i] - points.bounds.getMinX()) / cell) << 32)
+	     | ((long) Math.floor((points.y[i] - points.bounds.getMinY()) / cell) & 0xFFFFFFFFL);
+      slot = slots.get(key);
+      if (slot == -1) {
+	slots.put(key, counts.size());
+	sumX.add(points.x[i]);
+	sumY.add(points.y[i]);
+	counts.add(1);
+      }
+      else {
+	sumX.set(slot, sumX.get(slot) + points.x[i]);
+	sumY.set(slot, sumY.get(slot) + points.y[i]);
+	counts.set(slot, counts.get(slot) + 1);
+      }
+    }
+
+    result       = new Clusters();
+    result.count = counts.toArray();
+    result.x     = new double[result.count.length];
+    result.y     = new double[result.count.length];
+    for (i = 0; i < result.count.length; i++) {
+      result.x[i] = sumX.get(i) / result.count[i];
+      result.y[i] = sumY.get(i) / result.count[i];
+    }
+    if (result.count.length >= MIN_INDEX_SIZE) {
+      result.index = new STRtree();
+      for (i = 0; i < result.count.length; i++)
+	result.index.insert(new Envelope(result.x[i], result.x[i], result.y[i], result.y[i]), i);
+      result.index.build();
+    }
+
+    return result;
+  }
+
+  /**
+   * Computes the clusters of the zoom level in the background, unless
+   * already being computed.
+   *
+   * @param points	the points to cluster
+   * @param level	the zoom level
+   */
+  protected void requestClusters(final Points points, final int level) {
+    final int	generation;
+
+    synchronized(m_Cache) {
+      if (m_Pending.contains(level))
+	return;
+      m_Pending.add(level);
+      generation = m_Generation;
+    }
+
+    m_Executor.submit(new Runnable() {
+      @Override
+      public void run() {
+	Clusters	clusters;
+	double		cell;
+	double		extent;
+
+	cell   = m_Radius * Math.pow(2.0, level);
+	// keep the grid indices within integer range
+	extent = Math.max(points.bounds.getWidth(), points.bounds.getHeight());
+	cell   = Math.max(cell, extent / (1 << 30));
+	if (cell <= 0)
+	  cell = 1.0;
+	clusters = computeClusters(points, cell);
+	synchronized(m_Cache) {
+	  if (generation != m_Generation)
+	    return;
+	  m_Pending.remove(level);
+	  m_Cache.put(level, clusters);
+	}
+	m_RepaintTimer.restart();
+      }
+    });
+  }
+
+  /**
+   * Returns the clusters for the zoom level. If not yet available, they get
+   * computed in the background and the clusters of the closest cached level
+   * get returned instead.
+   *
+   * @param points		the points to cluster
+   * @param worldPerPixel	the world units per pixel
+   * @return			the clusters, null if none available yet
+   */
+  protected Clusters getClusters(Points points, double worldPerPixel) {
+    Clusters	result;
+    int		level;
+    int		closest;
+
+    level = (int) Math.floor(Math.log(worldPerPixel) / Math.log(2.0));
+    synchronized(m_Cache) {
+      result = m_Cache.get(level);
+      if (result != null)
+	return result;
+      closest = Integer.MAX_VALUE;
+      for (Map.Entry<Integer,Clusters> entry: m_Cache.entrySet()) {
+	if (Math.abs((long) entry.getKey() - level) < Math.abs((long) closest - level)) {
+	  closest = entry.getKey();
+	  result  = entry.getValue();
+	}
+      }
+    }
+    requestClusters(points, level);
+
+    return result;
+  }
+
+  /**
+   * Draws the cluster.
+   *
+   * @param g		the graphics context
+   * @param tr		the world-to-screen transform
+   * @param x		the x coordinate (world)
+   * @param y		the y coordinate (world)
+   * @param count	the number of points in the cluster
+   */
+  protected void drawCluster(Graphics2D g, AffineTransform tr, double x, double y, int count) {
+    Point2D	pt;
+    int		r;
+    String	label;
+    FontMetrics	metrics;
+
+    pt = tr.transform(new Point2D.Double(x, y), null);
+    if (count == 1) {
+      r = m_PointRadius;
+      g.setColor(m_PointFill);
+      g.fillOval((int) pt.getX() - r, (int) pt.getY() - r, 2 * r, 2 * r);
+      if (m_PointOutline != null) {
+	g.setColor(m_PointOutline);
+	g.drawOval((int) pt.getX() - r, (int) pt.getY() - r, 2 * r, 2 * r);
+      }
+      return;
+    }
+
+    r = Math.min(m_Radius / 2, (int) (POINT_RADIUS * 2 + 2 * Math.log10(count) * POINT_RADIUS));
+    g.setColor(new Color(m_Color.getRed(), m_Color.getGreen(), m_Color.getBlue(), 160));
+    g.fillOval((int) pt.getX() - r, (int) pt.getY() - r, 2 * r, 2 * r);
+    g.setColor(m_Color.darker());
+    g.drawOval((int) pt.getX() - r, (int) pt.getY() - r, 2 * r, 2 * r);
+    label   = "" + count;
+    metrics = g.getFontMetrics();
+    g.setColor(Color.WHITE);
+    g.drawString(label, (int) pt.getX() - metrics.stringWidth(label) / 2, (int) pt.getY() + metrics.getAscent() / 2 - 1);
+  }
+
+  /**
+   * Draws the layer.
+   *
+   * @param graphics	the graphics context
+   * @param map		the map content
+   * @param viewport	the viewport
+   */
+  @Override
+  public void draw(Graphics2D graphics, MapContent map, MapViewport viewport) {
+    ReferencedEnvelope	bounds;
+    Rectangle		screen;
+    AffineTransform	tr;
+    Points		points;
+    Clusters		clusters;
+    Envelope		visible;
+    double		margin;
+    List		items;
+    int			i;
+
+    if (m_Original.x.length == 0)
+      return;
+
+    bounds = viewport.getBounds();
+    screen = viewport.getScreenArea();
+    tr     = viewport.getWorldToScreen();
+    if ((bounds == null) || bounds.isEmpty() || (screen == null) || screen.isEmpty() || (tr == null))
+      return;
+
+    points = getPoints(viewport.getCoordinateReferenceSystem());
+    if (points == null)
+      return;
+    clusters = getClusters(points, bounds.getWidth() / screen.getWidth());
+    if (clusters == null)
+      return;
+    margin   = (bounds.getWidth() / screen.getWidth()) * m_Radius;
+    visible  = new Envelope(bounds);
+    visible.expandBy(margin);
+
+    graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    if (clusters.index != null) {
+      items = clusters.index.query(visible);
+      for (Object item: items) {
+	i = (Integer) item;
+	drawCluster(graphics, tr, clusters.x[i], clusters.y[i], clusters.count[i]);
+      }
+    }
+    else {
+      for (i = 0; i < clusters.count.length; i++) {
+	if (visible.contains(clusters.x[i], clusters.y[i]))
+	  drawCluster(graphics, tr, clusters.x[i], clusters.y[i], clusters.count[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns the bounds of the points (in the CRS of the layer).
+   *
+   * @return		the bounds
+   */
+  @Override
+  public ReferencedEnvelope getBounds() {
+    return m_Original.bounds;
+  }
+
+  /**
+   * Stops the background computations, removes the cached clusters and
+   * detaches from the underlying layer, which is not disposed, as it is
+   * owned by whoever created it.
+   */
+  @Override
+  public void dispose() {
+    m_RepaintTimer.stop();
+    m_Executor.shutdownNow();
+    synchronized(m_Cache) {
+      m_Cache.clear();
+      m_Pending.clear();
+    }
+
+    super.dispose();
+  }
+}
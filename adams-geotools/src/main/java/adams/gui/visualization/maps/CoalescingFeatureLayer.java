@@ -0,0 +1,222 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * CoalescingFeatureLayer.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.gui.visualization.maps;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.event.MapLayerEvent;
+import org.geotools.styling.Style;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Feature layer that merges the features of incoming layers (of the same
+ * feature type) into a single, growing collection. New features get
+ * buffered and only get added to the collection when the layer gets
+ * repainted, which happens at most at the specified rate.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class CoalescingFeatureLayer
+  extends FeatureLayer {
+
+  /** the features being displayed, backed by a copy-on-write list (snapshot-safe for rendering). */
+  protected ListFeatureCollection m_Collection;
+
+  /** the features waiting to be added. */
+  protected List<SimpleFeature> m_Pending;
+
+  /** the minimum interval between repaints in msec. */
+  protected int m_Interval;
+
+  /** the timestamp of the last repaint. */
+  protected long m_LastRepaint;
+
+  /** for triggering the throttled repaint. */
+  protected Timer m_RepaintTimer;
+
+  /** whether a repaint has been scheduled already. */
+  protected volatile boolean m_RepaintScheduled;
+
+  /**
+   * Initializes the layer.
+   *
+   * @param type		the feature type
+   * @param style		the style to use
+   * @param maxRepaintsPerSecond	the maximum number of repaints per second
+   */
+  public CoalescingFeatureLayer(SimpleFeatureType type, Style style, double maxRepaintsPerSecond) {
+    this(new ListFeatureCollection(type, new CopyOnWriteArrayList<SimpleFeature>()), style, maxRepaintsPerSecond);
+  }
+
+  /**
+   * Initializes the layer.
+   *
+   * @param collection		the collection to use, backed by a copy-on-write list
+   * @param style		the style to use
+   * @param maxRepaintsPerSecond	the maximum number of repaints per second
+   */
+  protected CoalescingFeatureLayer(ListFeatureCollection collection, Style style, double maxRepaintsPerSecond) {
+    super(collection, style);
+
+    m_Collection   = collection;
+    m_Pending      = new ArrayList<SimpleFeature>();
+    m_Interval     = (int) Math.max(1, Math.round(1000.0 / maxRepaintsPerSecond));
+    m_LastRepaint  = 0;
+    m_RepaintTimer = new Timer(m_Interval, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	flush();
+      }
+    });
+    m_RepaintTimer.setRepeats(false);
+    setTitle(collection.getSchema().getTypeName());
+  }
+
+  /**
+   * Returns the feature type of the layer.
+   *
+   * @return		the feature type
+   */
+  public SimpleFeatureType getFeatureType() {
+    return (SimpleFeatureType) getFeatureSource().getSchema();
+  }
+
+  /**
+   * Adds the features of the collection.
+   *
+   * @param collection	the features to add
+   * @return		the number of features added
+   */
+  public int addFeatures(FeatureCollection collection) {
+    int			result;
+    FeatureIterator	iter;
+    Object		feature;
+
+    result = 0;
+    iter   = collection.features();
+    try {
+      synchronized(m_Pending) {
+	while (iter.hasNext()) {
+	  feature = iter.next();
+	  if (feature instanceof SimpleFeature) {
+	    m_Pending.add((SimpleFeature) feature);
+	    result++;
+	  }
+	}
+      }
+    }
+    finally {
+      iter.close();
+    }
+
+    if (result > 0)
+      scheduleRepaint();
+
+    return result;
+  }
+
+  /**
+   * Adds the feature.
+   *
+   * @param feature	the feature to add
+   */
+  public void addFeature(SimpleFeature feature) {
+    synchronized(m_Pending) {
+      m_Pending.add(feature);
+    }
+    scheduleRepaint();
+  }
+
+  /**
+   * Returns the number of features (displayed and pending).
+   *
+   * @return		the number of features
+   */
+  public int getNumFeatures() {
+    synchronized(m_Pending) {
+      return m_Collection.size() + m_Pending.size();
+    }
+  }
+
+  /**
+   * Schedules a repaint, respecting the maximum repaint rate.
+   */
+  protected void scheduleRepaint() {
+    if (m_RepaintScheduled)
+      return;
+    m_RepaintScheduled = true;
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+	long delay;
+	if (m_RepaintTimer.isRunning())
+	  return;
+	delay = Math.max(0, m_LastRepaint + m_Interval - System.currentTimeMillis());
+	m_RepaintTimer.setInitialDelay((int) delay);
+	m_RepaintTimer.start();
+      }
+    });
+  }
+
+  /**
+   * Moves the pending features into the displayed collection (in a single
+   * step) and notifies the listeners.
+   */
+  protected void flush() {
+    List<SimpleFeature>	pending;
+
+    m_RepaintScheduled = false;
+    synchronized(m_Pending) {
+      if (m_Pending.isEmpty())
+	return;
+      pending = new ArrayList<SimpleFeature>(m_Pending);
+      m_Pending.clear();
+      m_Collection.addAll(pending);
+    }
+    m_LastRepaint = System.currentTimeMillis();
+    fireMapLayerListenerLayerChanged(MapLayerEvent.DATA_CHANGED);
+  }
+
+  /**
+   * Stops the repaints and removes the features.
+   */
+  @Override
+  public void dispose() {
+    m_RepaintTimer.stop();
+    synchronized(m_Pending) {
+      m_Pending.clear();
+      m_Collection.clear();
+    }
+
+    super.dispose();
+  }
+}
@@ -15,7 +15,7 @@
 
 /**
  * MapDisplayPanel.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.gui.visualization.maps;
 
@@ -39,6 +39,7 @@ import adams.gui.event.RecentItemEvent;
 import adams.gui.event.RecentItemListener;
 import adams.gui.sendto.SendToActionSupporter;
 import adams.gui.sendto.SendToActionUtils;
+import adams.gui.visualization.maps.TileCachedLayer.TileListener;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.Layer;
 import org.geotools.map.MapContent;
@@ -58,17 +59,26 @@ import javax.swing.JComponent;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Specialized panel for displaying maps.
@@ -78,13 +88,16 @@ import java.util.List;
  */
 public class MapDisplayPanel
   extends ToolBarPanel
-  implements MenuBarProvider, SendToActionSupporter, AntiAliasingSupporter, CleanUpHandler {
+  implements MenuBarProvider, SendToActionSupporter, AntiAliasingSupporter, CleanUpHandler, TileListener {
 
   /** the file to store the recent files in. */
   public final static String SESSION_FILE = "MapDisplaySession.props";
 
   /** the zoom factor. */
   public final static double ZOOM_FACTOR = 0.1;
+
+  /** the background color of the map. */
+  public final static Color MAP_BACKGROUND = Color.WHITE;
   
   /** for serialization. */
   private static final long serialVersionUID = 6932946817132289325L;
@@ -134,6 +147,15 @@ public class MapDisplayPanel
   /** the filechooser for opening/saving files. */
   protected GeoToolsLayerFileChooser m_FileChooser;
   
+  /** the executor for rendering the tiles of the background layers. */
+  protected ExecutorService m_TileExecutor;
+
+  /** the maximum number of tiles to cache per background layer. */
+  protected int m_MaxTiles;
+
+  /** the layers loaded by the panel itself (disposed when removed). */
+  protected List<Layer> m_LoadedLayers;
+
   /** the info tool to use. */
   protected AbstractInfoToolSupplier m_InfoTool;
   
@@ -145,8 +167,10 @@ public class MapDisplayPanel
     super.initialize();
 
     m_RecentFilesHandler = null;
+    m_LoadedLayers       = new ArrayList<>();
     m_FileChooser        = new GeoToolsLayerFileChooser();
     m_InfoTool           = new DefaultInfoToolSupplier();
+    m_MaxTiles           = TileCachedLayer.DEFAULT_MAX_TILES;
   }
   
   /**
@@ -167,7 +191,17 @@ public class MapDisplayPanel
 
     map = new MapContent();
     map.setTitle(getName());
-    m_MapPane = new JMapPane();
+    m_MapPane = new JMapPane() {
+      private static final long serialVersionUID = 2381956297561208213L;
+      @Override
+      protected void paintComponent(Graphics g) {
+	// background layers go underneath the (transparent) rendered layers
+	paintBackgroundLayers((Graphics2D) g);
+	super.paintComponent(g);
+      }
+    };
+    m_MapPane.setOpaque(false);
+    m_MapPane.setBackground(new Color(0, 0, 0, 0));
     m_MapPane.setRenderer(new StreamingRenderer());
     m_MapPane.setMapContent(map);
     m_MapPane.addMouseWheelListener(new MouseWheelListener() {
@@ -285,6 +319,8 @@ public class MapDisplayPanel
 	  RenderingHints.KEY_ANTIALIASING, 
 	  value ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
     }
+    for (TileCachedLayer layer: getBackgroundLayers())
+      layer.setAntiAliasingEnabled(value);
   }
 
   /**
@@ -306,6 +342,25 @@ public class MapDisplayPanel
     return "If enabled, uses anti-aliasing for drawing lines.";
   }
   
+  /**
+   * Sets the maximum number of tiles to cache per background layer. Only
+   * affects background layers added afterwards.
+   *
+   * @param value	the maximum number of tiles
+   */
+  public void setMaxTiles(int value) {
+    m_MaxTiles = Math.max(1, value);
+  }
+
+  /**
+   * Returns the maximum number of tiles to cache per background layer.
+   *
+   * @return		the maximum number of tiles
+   */
+  public int getMaxTiles() {
+    return m_MaxTiles;
+  }
+
   /**
    * Returns the underlying map pane.
    * 
@@ -329,8 +384,13 @@ public class MapDisplayPanel
    */
   @Override
   public void cleanUp() {
+    m_LoadedLayers.clear();
     if (getMapContent() != null)
       getMapContent().dispose();
+    if (m_TileExecutor != null) {
+      m_TileExecutor.shutdownNow();
+      m_TileExecutor = null;
+    }
   }
   
   /**
@@ -340,8 +400,12 @@ public class MapDisplayPanel
     List<Layer>		layers;
     
     layers = getMapContent().layers();
-    for (Layer layer: layers)
+    for (Layer layer: layers) {
       getMapContent().removeLayer(layer);
+      if ((layer instanceof TileCachedLayer) || m_LoadedLayers.contains(layer))
+	layer.dispose();
+    }
+    m_LoadedLayers.clear();
   }
   
   /**
@@ -352,6 +416,119 @@ public class MapDisplayPanel
   public void addLayer(Layer layer) {
     getMapContent().addLayer(layer);
   }
+
+  /**
+   * Adds the layer as background layer. Each background layer gets wrapped
+   * in its own {@link TileCachedLayer}, which is listed like any other
+   * layer, but rendered into cached image tiles on background threads and
+   * painted below all other layers. The wrapped layers are not disposed by
+   * the panel.
+   * 
+   * @param layer	the layer to add
+   */
+  public void addBackgroundLayer(Layer layer) {
+    TileCachedLayer	tiled;
+    int			index;
+
+    if (m_TileExecutor == null)
+      m_TileExecutor = TileCachedLayer.newExecutor(-1);
+
+    index = getBackgroundLayers().size();
+    tiled = new TileCachedLayer(layer, m_MaxTiles, m_TileExecutor);
+    tiled.setAntiAliasingEnabled(m_AntiAliasingEnabled);
+    tiled.setTileListener(this);
+    getMapContent().addLayer(tiled);
+    getMapContent().moveLayer(getMapContent().layers().indexOf(tiled), index);
+  }
+
+  /**
+   * Returns the tile-cached wrappers of the background layers.
+   *
+   * @return		the wrappers
+   */
+  public List<TileCachedLayer> getBackgroundLayers() {
+    List<TileCachedLayer>	result;
+
+    result = new ArrayList<>();
+    if (getMapContent() != null) {
+      for (Layer layer: getMapContent().layers()) {
+	if (layer instanceof TileCachedLayer)
+	  result.add((TileCachedLayer) layer);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes the layer from the background layers.
+   * 
+   * @param layer	the (wrapped) layer to remove
+   * @return		true if the layer was removed
+   */
+  public boolean removeBackgroundLayer(Layer layer) {
+    for (TileCachedLayer tiled: getBackgroundLayers()) {
+      if ((tiled == layer) || (tiled.getLayer() == layer)) {
+	getMapContent().removeLayer(tiled);
+	tiled.dispose();
+	return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Discards the cached tiles of the background layers, forcing them to
+   * get rendered again (the data layers are not affected).
+   */
+  public void invalidateBackground() {
+    for (TileCachedLayer layer: getBackgroundLayers())
+      layer.invalidate();
+    m_MapPane.repaint();
+  }
+
+  /**
+   * Paints the background color and the visible background layers.
+   *
+   * @param g		the graphics context
+   */
+  protected void paintBackgroundLayers(Graphics2D g) {
+    g.setColor(MAP_BACKGROUND);
+    g.fillRect(0, 0, m_MapPane.getWidth(), m_MapPane.getHeight());
+    if (getMapContent() == null)
+      return;
+    for (TileCachedLayer layer: getBackgroundLayers()) {
+      if (layer.isVisible())
+	layer.paintTiles(g, getMapContent().getViewport());
+    }
+  }
+
+  /**
+   * Gets called when a tile of a background layer has been rendered.
+   * Repaints only the screen region covered by the tile.
+   *
+   * @param layer	the layer the tile belongs to
+   * @param area	the world area of the tile
+   */
+  @Override
+  public void tileRendered(TileCachedLayer layer, final ReferencedEnvelope area) {
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+	Rectangle region;
+	AffineTransform tr;
+	if (getMapContent() == null)
+	  return;
+	tr = getMapContent().getViewport().getWorldToScreen();
+	if (tr == null)
+	  return;
+	region = tr.createTransformedShape(
+	    new Rectangle2D.Double(area.getMinX(), area.getMinY(), area.getWidth(), area.getHeight())).getBounds();
+	region.grow(1, 1);
+	m_MapPane.repaint(region);
+      }
+    });
+  }
   
   /**
    * Removes the layer.
@@ -360,7 +537,13 @@ public class MapDisplayPanel
    * @return		true if the layer was removed
    */
   public boolean removeLayer(Layer layer) {
-    return getMapContent().removeLayer(layer);
+    boolean	result;
+
+    result = getMapContent().removeLayer(layer);
+    if (result && m_LoadedLayers.remove(layer))
+      layer.dispose();
+
+    return result;
   }
   
   /**
@@ -519,6 +702,7 @@ public class MapDisplayPanel
     }
     else {
       m_MapPane.getMapContent().addLayer(layer);
+      m_LoadedLayers.add(layer);
       if (m_RecentFilesHandler != null)
 	m_RecentFilesHandler.addRecentItem(new Setup(file, reader));
       reset();
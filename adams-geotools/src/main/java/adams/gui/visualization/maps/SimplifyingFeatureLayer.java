@@ -0,0 +1,494 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * SimplifyingFeatureLayer.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.gui.visualization.maps;
+
+import adams.core.logging.Logger;
+import adams.core.logging.LoggingHelper;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Lineal;
+import com.vividsolutions.jts.geom.Polygonal;
+import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.DirectLayer;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
+import org.geotools.map.event.MapLayerEvent;
+import org.geotools.map.event.MapLayerListener;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import javax.swing.Timer;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Layer that renders the features of a (line or polygon) feature layer
+ * with geometries simplified to the current pixel size, using a
+ * topology-preserving simplifier.
+ * <br>
+ * Only the features intersecting the viewport get retrieved (bbox query)
+ * and simplification happens on a background thread. The simplified
+ * geometries get cached per zoom band (power of two of the pixel size) and
+ * feature ID, so panning only simplifies features that weren't visible
+ * before and concurrent draws don't simplify the same feature twice. Until
+ * simplified, features get drawn with the geometry of the next finer band
+ * (if available) or at full detail. Bands where simplification removes
+ * hardly any vertices, ie close zoom, use the full detail of the underlying
+ * layer.
+ * <br>
+ * The features are assumed to be in the coordinate reference system of the map.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class SimplifyingFeatureLayer
+  extends DirectLayer {
+
+  /**
+   * The simplified geometries of a zoom band.
+   */
+  protected static class Band {
+
+    /** the simplified geometries (feature ID - geometry). */
+    public final Map<String,Geometry> simplified = new ConcurrentHashMap<String,Geometry>();
+
+    /** the IDs of the features queued for simplification. */
+    public final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+    /** the number of vertices before simplification. */
+    public final AtomicLong before = new AtomicLong();
+
+    /** the number of vertices after simplification. */
+    public final AtomicLong after = new AtomicLong();
+
+    /** whether to use the full detail. */
+    public volatile boolean fullDetail;
+  }
+
+  /** the maximum number of zoom bands to cache. */
+  public final static int MAX_CACHED_BANDS = 8;
+
+  /** the ratio of remaining vertices above which the full detail is used. */
+  public final static double FULL_DETAIL_RATIO = 0.9;
+
+  /** the minimum number of vertices to look at before deciding on full detail. */
+  public final static int MIN_SAMPLE_VERTICES = 10000;
+
+  /** the delay in msec for coalescing repaint requests. */
+  public final static int REPAINT_DELAY = 100;
+
+  /** the logger. */
+  private static final Logger LOGGER = LoggingHelper.getLogger(SimplifyingFeatureLayer.class);
+
+  /** the underlying layer. */
+  protected FeatureLayer m_Source;
+
+  /** the tolerance in pixels. */
+  protected double m_Tolerance;
+
+  /** the zoom bands. */
+  protected Map<Integer,Band> m_Cache;
+
+  /** the zoom band last drawn. */
+  protected volatile int m_CurrentBand;
+
+  /** the executor for simplifying the geometries. */
+  protected ExecutorService m_Executor;
+
+  /** for coalescing the repaint requests. */
+  protected Timer m_RepaintTimer;
+
+  /** forwards data changes of the underlying layer. */
+  protected MapLayerListener m_SourceListener;
+
+  /** whether to use anti-aliasing. */
+  protected boolean m_AntiAliasingEnabled;
+
+  /**
+   * Initializes the layer.
+   *
+   * @param source	the layer to simplify
+   * @param tolerance	the tolerance in pixels
+   */
+  public SimplifyingFeatureLayer(FeatureLayer source, double tolerance) {
+    super();
+
+    m_Source    = source;
+    m_Tolerance = tolerance;
+    m_Cache     = new LinkedHashMap<Integer,Band>(MAX_CACHED_BANDS, 0.75f, true) {
+      private static final long serialVersionUID = -3012476615487063227L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer,Band> eldest) {
+	return size() > MAX_CACHED_BANDS;
+      }
+    };
+    m_Executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+	Thread result = new Thread(r, "SimplifyingFeatureLayer");
+	result.setDaemon(true);
+	return result;
+      }
+    });
+    m_RepaintTimer = new Timer(REPAINT_DELAY, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	fireMapLayerListenerLayerChanged(MapLayerEvent.DATA_CHANGED);
+      }
+    });
+    m_RepaintTimer.setRepeats(false);
+    // eg features getting added to a merged layer
+    m_SourceListener = new MapLayerListener() {
+      @Override
+      public void layerChanged(MapLayerEvent event) {
+	if (event.getReason() == MapLayerEvent.DATA_CHANGED)
+	  fireMapLayerListenerLayerChanged(MapLayerEvent.DATA_CHANGED);
+      }
+      @Override
+      public void layerShown(MapLayerEvent event) {
+      }
+      @Override
+      public void layerHidden(MapLayerEvent event) {
+      }
+      @Override
+      public void layerSelected(MapLayerEvent event) {
+      }
+      @Override
+      public void layerDeselected(MapLayerEvent event) {
+      }
+      @Override
+      public void layerPreDispose(MapLayerEvent event) {
+      }
+    };
+    m_Source.addMapLayerListener(m_SourceListener);
+    setTitle(source.getTitle());
+  }
+
+  /**
+   * Returns the underlying layer.
+   *
+   * @return		the layer
+   */
+  public FeatureLayer getSource() {
+    return m_Source;
+  }
+
+  /**
+   * Sets whether to use anti-aliasing.
+   *
+   * @param value	true if to use anti-aliasing
+   */
+  public void setAntiAliasingEnabled(boolean value) {
+    m_AntiAliasingEnabled = value;
+  }
+
+  /**
+   * Returns whether anti-aliasing is used.
+   *
+   * @return		true if anti-aliasing is used
+   */
+  public boolean isAntiAliasingEnabled() {
+    return m_AntiAliasingEnabled;
+  }
+
+  /**
+   * Returns the zoom band for the pixel size.
+   *
+   * @param pixelSize	the size of a pixel in world units
+   * @return		the band
+   */
+  protected int getBandIndex(double pixelSize) {
+    return (int) Math.floor(Math.log(pixelSize) / Math.log(2.0));
+  }
+
+  /**
+   * Returns the specified zoom band, creates it if necessary.
+   *
+   * @param index	the band index
+   * @param create	whether to create the band if not present
+   * @return		the band, null if not present and not created
+   */
+  protected Band getBand(int index, boolean create) {
+    Band	result;
+
+    synchronized(m_Cache) {
+      result = m_Cache.get(index);
+      if ((result == null) && create) {
+	result = new Band();
+	m_Cache.put(index, result);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether the band is still in use, ie the one last drawn and
+   * still cached.
+   *
+   * @param index	the band index
+   * @param band	the band to check
+   * @return		true if still in use
+   */
+  protected boolean isCurrent(int index, Band band) {
+    if (index != m_CurrentBand)
+      return false;
+    synchronized(m_Cache) {
+      return (m_Cache.get(index) == band);
+    }
+  }
+
+  /**
+   * Returns whether the geometry can be simplified.
+   *
+   * @param geom	the geometry to check
+   * @return		true if line or polygon
+   */
+  protected boolean isSimplifiable(Object geom) {
+    return (geom instanceof Polygonal) || (geom instanceof Lineal);
+  }
+
+  /**
+   * Queues the features for simplification in the background. Features
+   * already queued for the band are skipped.
+   *
+   * @param index	the band index
+   * @param band	the band to add the simplified geometries to
+   * @param features	the features to simplify
+   */
+  protected void simplify(final int index, final Band band, final List<SimpleFeature> features) {
+    final double	tolerance;
+
+    tolerance = Math.pow(2.0, index) * m_Tolerance;
+    m_Executor.submit(new Runnable() {
+      @Override
+      public void run() {
+	Geometry	geom;
+	Geometry	simplified;
+	boolean		changed;
+	int		i;
+
+	changed = false;
+	i       = 0;
+	try {
+	  for (i = 0; i < features.size(); i++) {
+	    // skip outdated requests, eg after zooming again
+	    if (band.fullDetail || !isCurrent(index, band))
+	      break;
+	    geom       = (Geometry) features.get(i).getDefaultGeometry();
+	    simplified = TopologyPreservingSimplifier.simplify(geom, tolerance);
+	    band.before.addAndGet(geom.getNumPoints());
+	    band.after.addAndGet(simplified.getNumPoints());
+	    band.simplified.put(features.get(i).getID(), simplified);
+	    band.pending.remove(features.get(i).getID());
+	    changed = true;
+	  }
+	}
+	catch (Throwable t) {
+	  LOGGER.log(Level.SEVERE, "Failed to simplify layer: " + getTitle(), t);
+	}
+	finally {
+	  for (; i < features.size(); i++)
+	    band.pending.remove(features.get(i).getID());
+	}
+
+	if (LOGGER.isLoggable(Level.FINE))
+	  LOGGER.fine(getTitle() + ": tolerance=" + tolerance + ", vertices " + band.before.get() + " -> " + band.after.get());
+
+	if ((band.before.get() >= MIN_SAMPLE_VERTICES) && (band.after.get() > band.before.get() * FULL_DETAIL_RATIO)) {
+	  band.fullDetail = true;
+	  band.simplified.clear();
+	}
+	else if (changed) {
+	  m_RepaintTimer.restart();
+	}
+      }
+    });
+  }
+
+  /**
+   * Retrieves the features in the visible area, using the simplified
+   * geometries where available, and queues the missing ones for
+   * simplification.
+   *
+   * @param bounds	the visible area
+   * @param pixelSize	the size of a pixel in world units
+   * @return		the features to render
+   * @throws Exception	if querying the features fails
+   */
+  protected ListFeatureCollection getFeatures(ReferencedEnvelope bounds, double pixelSize) throws Exception {
+    ListFeatureCollection	result;
+    SimpleFeatureType		schema;
+    int				index;
+    Band			band;
+    Band			finer;
+    List<SimpleFeature>		missing;
+    FilterFactory2		ff;
+    Filter			filter;
+    FeatureIterator		iter;
+    Object			obj;
+    SimpleFeature		feature;
+    SimpleFeature		copy;
+    Geometry			geom;
+
+    schema = (SimpleFeatureType) m_Source.getFeatureSource().getSchema();
+    result = new ListFeatureCollection(schema);
+    if (schema.getGeometryDescriptor() == null)
+      return result;
+
+    index         = getBandIndex(pixelSize);
+    m_CurrentBand = index;
+    band          = getBand(index, true);
+    finer         = getBand(index - 1, false);
+    if ((finer != null) && finer.fullDetail)
+      finer = null;
+    missing       = new ArrayList<SimpleFeature>();
+    ff            = CommonFactoryFinder.getFilterFactory2(null);
+    filter        = ff.bbox(ff.property(schema.getGeometryDescriptor().getLocalName()), bounds);
+    iter          = m_Source.getFeatureSource().getFeatures(filter).features();
+    try {
+      while (iter.hasNext()) {
+	obj = iter.next();
+	if (!(obj instanceof SimpleFeature))
+	  continue;
+	feature = (SimpleFeature) obj;
+	if (band.fullDetail || !isSimplifiable(feature.getDefaultGeometry())) {
+	  result.add(feature);
+	  continue;
+	}
+	geom = band.simplified.get(feature.getID());
+	if (geom == null) {
+	  if (band.pending.add(feature.getID()))
+	    missing.add(feature);
+	  if (finer != null)
+	    geom = finer.simplified.get(feature.getID());
+	}
+	if (geom == null) {
+	  result.add(feature);
+	}
+	else {
+	  copy = SimpleFeatureBuilder.copy(feature);
+	  copy.setDefaultGeometry(geom);
+	  result.add(copy);
+	}
+      }
+    }
+    finally {
+      iter.close();
+    }
+
+    if (!missing.isEmpty())
+      simplify(index, band, missing);
+
+    return result;
+  }
+
+  /**
+   * Draws the (simplified) features.
+   *
+   * @param graphics	the graphics context
+   * @param map		the map content
+   * @param viewport	the viewport
+   */
+  @Override
+  public void draw(Graphics2D graphics, MapContent map, MapViewport viewport) {
+    ReferencedEnvelope	bounds;
+    Rectangle		screen;
+    AffineTransform	tr;
+    MapContent		content;
+    StreamingRenderer	renderer;
+
+    bounds = viewport.getBounds();
+    screen = viewport.getScreenArea();
+    tr     = viewport.getWorldToScreen();
+    if ((bounds == null) || bounds.isEmpty() || (screen == null) || screen.isEmpty() || (tr == null))
+      return;
+
+    content = new MapContent();
+    content.getViewport().setCoordinateReferenceSystem(bounds.getCoordinateReferenceSystem());
+    try {
+      content.addLayer(new FeatureLayer(getFeatures(bounds, bounds.getWidth() / screen.getWidth()), m_Source.getStyle()));
+      renderer = new StreamingRenderer();
+      renderer.setJava2DHints(
+	  new RenderingHints(
+	      RenderingHints.KEY_ANTIALIASING,
+	      m_AntiAliasingEnabled ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF));
+      renderer.setMapContent(content);
+      renderer.paint(graphics, screen, bounds, tr);
+    }
+    catch (Exception e) {
+      LOGGER.log(Level.SEVERE, "Failed to draw layer: " + getTitle(), e);
+    }
+    finally {
+      content.dispose();
+    }
+  }
+
+  /**
+   * Returns the bounds of the underlying layer.
+   *
+   * @return		the bounds
+   */
+  @Override
+  public ReferencedEnvelope getBounds() {
+    return m_Source.getBounds();
+  }
+
+  /**
+   * Stops the simplification, removes the simplified geometries and
+   * detaches from the underlying layer, which is not disposed, as it is
+   * owned by whoever created it.
+   */
+  @Override
+  public void dispose() {
+    m_RepaintTimer.stop();
+    m_Executor.shutdownNow();
+    synchronized(m_Cache) {
+      m_Cache.clear();
+    }
+    m_Source.removeMapLayerListener(m_SourceListener);
+
+    super.dispose();
+  }
+}
@@ -0,0 +1,541 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * TileCachedLayer.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+package adams.gui.visualization.maps;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.DirectLayer;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
+import org.geotools.map.event.MapLayerEvent;
+import org.geotools.referencing.CRS;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import javax.swing.Timer;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Layer that wraps another layer and renders it into image tiles on
+ * background threads and caches them, keyed by zoom level (power of two of
+ * the map resolution) and tile coordinates. Cached tiles get drawn
+ * immediately (scaled to the current resolution), missing ones are
+ * replaced by the tile of the next coarser level if available and get
+ * filled in once rendered.
+ * <br>
+ * If a {@link TileListener} is set, the owner is responsible for painting
+ * the tiles (see {@link #paintTiles(Graphics2D, MapViewport)}) and gets
+ * notified of the area of each completed tile, e.g., for repainting just
+ * that region. Otherwise, the tiles get painted by {@link #draw} and
+ * completed tiles trigger a (coalesced) layer-changed event.
+ * <br>
+ * Each cached tile uses 256KB ({@link #TILE_SIZE} squared ARGB pixels), i.e.,
+ * the default of {@link #DEFAULT_MAX_TILES} tiles requires up to 24MB per
+ * layer; owners with several layers should size the cache accordingly.
+ * <br>
+ * Meant for static background layers; the wrapped layer is not disposed
+ * by this layer.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class TileCachedLayer
+  extends DirectLayer {
+
+  /**
+   * Interface for classes that get notified when tiles have been rendered.
+   */
+  public interface TileListener {
+
+    /**
+     * Gets called when a tile has been rendered.
+     *
+     * @param layer	the layer the tile belongs to
+     * @param area	the world area of the tile
+     */
+    public void tileRendered(TileCachedLayer layer, ReferencedEnvelope area);
+  }
+
+  /** the size of the tiles in pixels. */
+  public final static int TILE_SIZE = 256;
+
+  /** the default maximum number of tiles to cache (enough for a full HD screen and the coarser level). */
+  public final static int DEFAULT_MAX_TILES = 96;
+
+  /** the delay in msec for coalescing repaint requests. */
+  public final static int REPAINT_DELAY = 100;
+
+  /** the wrapped layer. */
+  protected Layer m_Layer;
+
+  /** the map content with the wrapped layer. */
+  protected MapContent m_Content;
+
+  /** the cached tiles. */
+  protected Map<String,BufferedImage> m_Cache;
+
+  /** the tiles currently being rendered. */
+  protected Set<String> m_Pending;
+
+  /** the maximum number of tiles to cache. */
+  protected int m_MaxTiles;
+
+  /** the executor for rendering the tiles. */
+  protected ExecutorService m_Executor;
+
+  /** whether the executor is owned by the layer. */
+  protected boolean m_OwnsExecutor;
+
+  /** the listener for rendered tiles (null if none). */
+  protected TileListener m_TileListener;
+
+  /** the generation, gets incremented with each invalidation. */
+  protected volatile int m_Generation;
+
+  /** the zoom level last drawn. */
+  protected volatile int m_CurrentLevel;
+
+  /** the coordinate reference system of the tiles. */
+  protected volatile CoordinateReferenceSystem m_CRS;
+
+  /** whether to use anti-aliasing. */
+  protected boolean m_AntiAliasingEnabled;
+
+  /** for coalescing the repaint requests. */
+  protected Timer m_RepaintTimer;
+
+  /**
+   * Initializes the layer with default number of tiles and its own
+   * rendering threads (one per core).
+   *
+   * @param layer	the layer to wrap
+   */
+  public TileCachedLayer(Layer layer) {
+    this(layer, DEFAULT_MAX_TILES, newExecutor(-1), true);
+  }
+
+  /**
+   * Initializes the layer, using the supplied executor for rendering the
+   * tiles (e.g., shared among several layers).
+   *
+   * @param layer	the layer to wrap
+   * @param maxTiles	the maximum number of tiles to cache
+   * @param executor	the executor for rendering, does not get shut down by the layer
+   */
+  public TileCachedLayer(Layer layer, int maxTiles, ExecutorService executor) {
+    this(layer, maxTiles, executor, false);
+  }
+
+  /**
+   * Initializes the layer.
+   *
+   * @param layer	the layer to wrap
+   * @param maxTiles	the maximum number of tiles to cache
+   * @param executor	the executor for rendering
+   * @param ownsExecutor	whether the executor gets shut down when disposing the layer
+   */
+  protected TileCachedLayer(Layer layer, int maxTiles, ExecutorService executor, boolean ownsExecutor) {
+    super();
+
+    m_Layer        = layer;
+    m_MaxTiles     = Math.max(1, maxTiles);
+    m_Executor     = executor;
+    m_OwnsExecutor = ownsExecutor;
+    m_Content      = new MapContent();
+    m_Pending      = new HashSet<String>();
+    m_Generation   = 0;
+    m_Cache        = new LinkedHashMap<String,BufferedImage>(m_MaxTiles, 0.75f, true) {
+      private static final long serialVersionUID = -1480823906414618734L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,BufferedImage> eldest) {
+	return size() > m_MaxTiles;
+      }
+    };
+    m_RepaintTimer = new Timer(REPAINT_DELAY, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+	fireMapLayerListenerLayerChanged(MapLayerEvent.DATA_CHANGED);
+      }
+    });
+    m_RepaintTimer.setRepeats(false);
+    m_Content.addLayer(layer);
+    setTitle(layer.getTitle());
+  }
+
+  /**
+   * Creates an executor with daemon threads for rendering tiles.
+   *
+   * @param numThreads	the number of threads, -1 for all cores
+   * @return		the executor
+   */
+  public static ExecutorService newExecutor(int numThreads) {
+    if (numThreads == -1)
+      numThreads = Runtime.getRuntime().availableProcessors();
+
+    return Executors.newFixedThreadPool(Math.max(1, numThreads), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+	Thread result = new Thread(r, "TileCachedLayer");
+	result.setDaemon(true);
+	return result;
+      }
+    });
+  }
+
+  /**
+   * Returns the wrapped layer.
+   *
+   * @return		the layer
+   */
+  public Layer getLayer() {
+    return m_Layer;
+  }
+
+  /**
+   * Sets the listener for rendered tiles. If a listener is set, the tiles
+   * no longer get painted by {@link #draw}, but need to get painted by the
+   * owner using {@link #paintTiles(Graphics2D, MapViewport)}.
+   *
+   * @param value	the listener, null to paint via draw
+   */
+  public void setTileListener(TileListener value) {
+    m_TileListener = value;
+  }
+
+  /**
+   * Returns the listener for rendered tiles.
+   *
+   * @return		the listener, null if none set
+   */
+  public TileListener getTileListener() {
+    return m_TileListener;
+  }
+
+  /**
+   * Sets whether to use anti-aliasing for rendering the tiles.
+   *
+   * @param value	true if to use anti-aliasing
+   */
+  public void setAntiAliasingEnabled(boolean value) {
+    if (value != m_AntiAliasingEnabled) {
+      m_AntiAliasingEnabled = value;
+      invalidate();
+    }
+  }
+
+  /**
+   * Returns whether anti-aliasing is used for rendering the tiles.
+   *
+   * @return		true if anti-aliasing is used
+   */
+  public boolean isAntiAliasingEnabled() {
+    return m_AntiAliasingEnabled;
+  }
+
+  /**
+   * Removes all cached tiles, eg when the wrapped layer changed.
+   */
+  public void invalidate() {
+    synchronized(m_Cache) {
+      m_Generation++;
+      m_Cache.clear();
+      m_Pending.clear();
+    }
+  }
+
+  /**
+   * Notifies the listeners (eg the map pane) that the layer needs to be
+   * drawn again. Requests in quick succession get coalesced.
+   */
+  public void requestRepaint() {
+    m_RepaintTimer.restart();
+  }
+
+  /**
+   * Generates the key for the tile.
+   *
+   * @param level	the zoom level
+   * @param x		the tile column
+   * @param y		the tile row
+   * @return		the key
+   */
+  protected String toKey(int level, long x, long y) {
+    return level + "/" + x + "/" + y;
+  }
+
+  /**
+   * Returns the world size of the tiles at the specified level.
+   *
+   * @param level	the zoom level
+   * @return		the size in world units
+   */
+  protected double getTileWorldSize(int level) {
+    return TILE_SIZE * Math.pow(2.0, level);
+  }
+
+  /**
+   * Renders the specified tile.
+   *
+   * @param level	the zoom level
+   * @param x		the tile column
+   * @param y		the tile row
+   * @return		the tile
+   */
+  protected BufferedImage renderTile(int level, long x, long y) {
+    BufferedImage	result;
+    Graphics2D		g;
+    StreamingRenderer	renderer;
+    double		size;
+    ReferencedEnvelope	env;
+
+    size     = getTileWorldSize(level);
+    env      = new ReferencedEnvelope(x * size, (x + 1) * size, y * size, (y + 1) * size, m_CRS);
+    result   = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+    g        = result.createGraphics();
+    renderer = new StreamingRenderer();
+    renderer.setJava2DHints(
+	new RenderingHints(
+	    RenderingHints.KEY_ANTIALIASING,
+	    m_AntiAliasingEnabled ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF));
+    renderer.setMapContent(m_Content);
+    try {
+      renderer.paint(g, new Rectangle(0, 0, TILE_SIZE, TILE_SIZE), env);
+    }
+    finally {
+      g.dispose();
+    }
+
+    return result;
+  }
+
+  /**
+   * Queues the tile for rendering, unless already pending.
+   *
+   * @param level	the zoom level
+   * @param x		the tile column
+   * @param y		the tile row
+   */
+  protected void requestTile(final int level, final long x, final long y) {
+    final String	key;
+    final int		generation;
+
+    key = toKey(level, x, y);
+    synchronized(m_Cache) {
+      if (m_Pending.contains(key))
+	return;
+      m_Pending.add(key);
+      generation = m_Generation;
+    }
+
+    m_Executor.submit(new Runnable() {
+      @Override
+      public void run() {
+	BufferedImage	tile;
+
+	// skip outdated requests, eg after zooming again
+	if ((generation != m_Generation) || (level != m_CurrentLevel)) {
+	  synchronized(m_Cache) {
+	    m_Pending.remove(key);
+	  }
+	  return;
+	}
+	tile = renderTile(level, x, y);
+	synchronized(m_Cache) {
+	  m_Pending.remove(key);
+	  if (generation != m_Generation)
+	    return;
+	  m_Cache.put(key, tile);
+	}
+	tileRendered(level, x, y);
+      }
+    });
+  }
+
+  /**
+   * Notifies the listener about the rendered tile or, if no listener set,
+   * requests a repaint of the layer.
+   *
+   * @param level	the zoom level
+   * @param x		the tile column
+   * @param y		the tile row
+   */
+  protected void tileRendered(int level, long x, long y) {
+    TileListener	listener;
+    double		size;
+
+    listener = m_TileListener;
+    if (listener == null) {
+      requestRepaint();
+    }
+    else {
+      size = getTileWorldSize(level);
+      listener.tileRendered(this, new ReferencedEnvelope(x * size, (x + 1) * size, y * size, (y + 1) * size, m_CRS));
+    }
+  }
+
+  /**
+   * Draws the tile (or the part of it) into the specified world area.
+   *
+   * @param g		the graphics context
+   * @param tr		the world-to-screen transform
+   * @param tile	the tile to draw
+   * @param env		the world area {minX, minY, maxX, maxY}
+   * @param src		the pixel area of the tile {x1, y1, x2, y2}
+   */
+  protected void drawTile(Graphics2D g, AffineTransform tr, BufferedImage tile, double[] env, int[] src) {
+    Point2D	topLeft;
+    Point2D	bottomRight;
+
+    topLeft     = tr.transform(new Point2D.Double(env[0], env[3]), null);
+    bottomRight = tr.transform(new Point2D.Double(env[2], env[1]), null);
+    g.drawImage(
+	tile,
+	(int) Math.floor(topLeft.getX()), (int) Math.floor(topLeft.getY()),
+	(int) Math.ceil(bottomRight.getX()), (int) Math.ceil(bottomRight.getY()),
+	src[0], src[1], src[2], src[3],
+	null);
+  }
+
+  /**
+   * Draws the cached tiles for the visible area, unless a tile listener
+   * is set (then the owner paints the tiles).
+   *
+   * @param graphics	the graphics context
+   * @param map		the map content
+   * @param viewport	the viewport
+   * @see		#setTileListener(TileListener)
+   */
+  @Override
+  public void draw(Graphics2D graphics, MapContent map, MapViewport viewport) {
+    if (m_TileListener == null)
+      paintTiles(graphics, viewport);
+  }
+
+  /**
+   * Paints the cached tiles for the visible area and requests the missing
+   * ones.
+   *
+   * @param graphics	the graphics context
+   * @param viewport	the viewport
+   */
+  public void paintTiles(Graphics2D graphics, MapViewport viewport) {
+    ReferencedEnvelope		bounds;
+    Rectangle			screen;
+    AffineTransform		tr;
+    CoordinateReferenceSystem	crs;
+    int				level;
+    double			size;
+    long			minX;
+    long			maxX;
+    long			minY;
+    long			maxY;
+    long			x;
+    long			y;
+    BufferedImage		tile;
+    BufferedImage		parent;
+    double[]			env;
+    int				half;
+    int				offX;
+    int				offY;
+
+    bounds = viewport.getBounds();
+    screen = viewport.getScreenArea();
+    tr     = viewport.getWorldToScreen();
+    if ((bounds == null) || bounds.isEmpty() || (screen == null) || screen.isEmpty() || (tr == null))
+      return;
+
+    crs = viewport.getCoordinateReferenceSystem();
+    if ((m_CRS == null) || ((crs != null) && !CRS.equalsIgnoreMetadata(m_CRS, crs))) {
+      invalidate();
+      m_CRS = crs;
+      m_Content.getViewport().setCoordinateReferenceSystem(crs);
+    }
+
+    // finer level than the current resolution, so tiles only get scaled down
+    level          = (int) Math.floor(Math.log(bounds.getWidth() / screen.getWidth()) / Math.log(2.0));
+    m_CurrentLevel = level;
+    size           = getTileWorldSize(level);
+    minX           = (long) Math.floor(bounds.getMinX() / size);
+    maxX           = (long) Math.floor(bounds.getMaxX() / size);
+    minY           = (long) Math.floor(bounds.getMinY() / size);
+    maxY           = (long) Math.floor(bounds.getMaxY() / size);
+    half           = TILE_SIZE / 2;
+
+    for (y = minY; y <= maxY; y++) {
+      for (x = minX; x <= maxX; x++) {
+	env = new double[]{x * size, y * size, (x + 1) * size, (y + 1) * size};
+	synchronized(m_Cache) {
+	  tile   = m_Cache.get(toKey(level, x, y));
+	  parent = (tile != null) ? null : m_Cache.get(toKey(level + 1, Math.floorDiv(x, 2), Math.floorDiv(y, 2)));
+	}
+	if (tile != null) {
+	  drawTile(graphics, tr, tile, env, new int[]{0, 0, TILE_SIZE, TILE_SIZE});
+	  continue;
+	}
+	// use the quarter of the coarser tile as placeholder
+	if (parent != null) {
+	  offX = (int) Math.floorMod(x, 2) * half;
+	  offY = (1 - (int) Math.floorMod(y, 2)) * half;
+	  drawTile(graphics, tr, parent, env, new int[]{offX, offY, offX + half, offY + half});
+	}
+	requestTile(level, x, y);
+      }
+    }
+  }
+
+  /**
+   * Returns the bounds of the wrapped layer.
+   *
+   * @return		the bounds
+   */
+  @Override
+  public ReferencedEnvelope getBounds() {
+    return m_Layer.getBounds();
+  }
+
+  /**
+   * Removes the cached tiles and stops the rendering threads (if owned by
+   * the layer). The wrapped layer is not disposed.
+   */
+  @Override
+  public void dispose() {
+    m_RepaintTimer.stop();
+    if (m_OwnsExecutor)
+      m_Executor.shutdownNow();
+    invalidate();
+    m_Content.removeLayer(m_Layer);
+
+    super.dispose();
+  }
+}
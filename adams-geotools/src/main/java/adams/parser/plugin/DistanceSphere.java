@@ -15,13 +15,14 @@
 
 /**
  * DistanceSphere.java
- * Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2013-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.parser.plugin;
 
-import org.geotools.referencing.GeodeticCalculator;
 import org.geotools.referencing.datum.DefaultEllipsoid;
 
+import adams.data.GPSDistanceHelper;
+
 /**
  * Calculates the distance between two GPS locations or two pairs of
  * longitude/latitude using a sphere ({@link DefaultEllipsoid#SPHERE}).
@@ -66,12 +67,6 @@ public class DistanceSphere
    */
   @Override
   protected double distance(double long1, double lat1, double long2, double lat2) {
-    GeodeticCalculator	calculator;
-    
-    calculator = new GeodeticCalculator(DefaultEllipsoid.SPHERE);
-    calculator.setStartingGeographicPoint(long1, lat1);
-    calculator.setDestinationGeographicPoint(long2, lat2);
-    
-    return calculator.getOrthodromicDistance();
+    return GPSDistanceHelper.haversine(long1, lat1, long2, lat2);
   }
 }
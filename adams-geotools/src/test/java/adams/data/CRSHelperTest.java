@@ -0,0 +1,201 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CRSHelperTest.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data;
+
+import adams.env.Environment;
+import adams.test.AdamsTestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import java.util.Random;
+
+/**
+ * Tests the CRSHelper class.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class CRSHelperTest
+  extends AdamsTestCase {
+
+  /** the code for web mercator. */
+  public final static String WEB_MERCATOR = "EPSG:3857";
+
+  /** half the circumference of the equator in web mercator. */
+  public final static double HALF_EQUATOR = 20037508.342789244;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public CRSHelperTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception	if tear-down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    CRSHelper.clearCache();
+
+    super.tearDown();
+  }
+
+  /**
+   * Generates random interleaved longitude/latitude pairs.
+   *
+   * @param seed	the seed value
+   * @param numPoints	the number of points
+   * @return		the coordinates
+   */
+  protected double[] randomCoordinates(long seed, int numPoints) {
+    double[]	result;
+    Random	rnd;
+    int		i;
+
+    result = new double[numPoints * 2];
+    rnd    = new Random(seed);
+    for (i = 0; i < numPoints; i++) {
+      result[i * 2]     = rnd.nextDouble() * 360.0 - 180.0;
+      result[i * 2 + 1] = rnd.nextDouble() * 160.0 - 80.0;
+    }
+
+    return result;
+  }
+
+  /**
+   * Tests decoding (longitude first) and the caching of CRSs and transforms.
+   *
+   * @throws Exception	if decoding fails
+   */
+  public void testCaching() throws Exception {
+    CoordinateReferenceSystem	crs;
+    CoordinateReferenceSystem	target;
+
+    crs = CRSHelper.decode("EPSG:4326");
+    assertTrue("longitude first", CRS.equalsIgnoreMetadata(DefaultGeographicCRS.WGS84, crs));
+    assertSame("cached CRS", crs, CRSHelper.decode("EPSG:4326"));
+    target = CRSHelper.decode(WEB_MERCATOR);
+    assertSame("cached transform", CRSHelper.findTransform(crs, target), CRSHelper.findTransform(crs, target));
+  }
+
+  /**
+   * Tests transforming known locations into web mercator.
+   *
+   * @throws Exception	if transformation fails
+   */
+  public void testKnownLocations() throws Exception {
+    double[]	coords;
+
+    coords = new double[]{0.0, 0.0, 180.0, 0.0, -90.0, 0.0};
+    CRSHelper.transform(CRSHelper.findTransform(DefaultGeographicCRS.WGS84, CRSHelper.decode(WEB_MERCATOR)), coords, 1);
+    assertEquals("origin x", 0.0, coords[0], 1e-6);
+    assertEquals("origin y", 0.0, coords[1], 1e-6);
+    assertEquals("antimeridian x", HALF_EQUATOR, coords[2], 1e-3);
+    assertEquals("antimeridian y", 0.0, coords[3], 1e-6);
+    assertEquals("west x", -HALF_EQUATOR / 2, coords[4], 1e-3);
+    assertEquals("west y", 0.0, coords[5], 1e-6);
+  }
+
+  /**
+   * Tests that the multi-threaded transformation produces the same result
+   * as the sequential one, and that the inverse transform restores the
+   * original coordinates.
+   *
+   * @throws Exception	if transformation fails
+   */
+  public void testThreadsAndRoundTrip() throws Exception {
+    CoordinateReferenceSystem	target;
+    MathTransform		forward;
+    double[]			original;
+    double[]			seq;
+    double[]			par;
+    int				i;
+
+    target   = CRSHelper.decode(WEB_MERCATOR);
+    forward  = CRSHelper.findTransform(DefaultGeographicCRS.WGS84, target);
+    // enough points for several threads
+    original = randomCoordinates(1, CRSHelper.MIN_POINTS_PER_THREAD * 3 + 1);
+    seq      = original.clone();
+    par      = original.clone();
+    CRSHelper.transform(forward, seq, 1);
+    CRSHelper.transform(forward, par, 4);
+    for (i = 0; i < original.length; i++)
+      assertEquals("ordinate " + i, seq[i], par[i], 0.0);
+
+    CRSHelper.transform(CRSHelper.findTransform(target, DefaultGeographicCRS.WGS84), par, -1);
+    for (i = 0; i < original.length; i++)
+      assertEquals("round trip " + i, original[i], par[i], 1e-7);
+  }
+
+  /**
+   * Tests the identity transform and empty/invalid input.
+   *
+   * @throws Exception	if transformation fails
+   */
+  public void testSpecialCases() throws Exception {
+    MathTransform	identity;
+    double[]		coords;
+
+    identity = CRSHelper.findTransform(DefaultGeographicCRS.WGS84, DefaultGeographicCRS.WGS84);
+    coords   = new double[]{1.0, 2.0, 3.0, 4.0};
+    CRSHelper.transform(identity, coords, -1);
+    assertEquals("identity", 1.0, coords[0], 0.0);
+    assertEquals("identity", 4.0, coords[3], 0.0);
+
+    CRSHelper.transform(identity, new double[0], -1);
+
+    try {
+      CRSHelper.transform(identity, new double[3], -1);
+      fail("Odd number of ordinates not detected");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(CRSHelperTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    Environment.setEnvironmentClass(Environment.class);
+    runTest(suite());
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * GPSDistanceHelperTest.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data;
+
+import adams.env.Environment;
+import adams.test.AdamsTestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.util.Random;
+
+/**
+ * Tests the GPSDistanceHelper class.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class GPSDistanceHelperTest
+  extends AdamsTestCase {
+
+  /** the number of random locations. */
+  public final static int NUM_LOCATIONS = 50;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public GPSDistanceHelperTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Generates random locations.
+   *
+   * @param seed	the seed value
+   * @param num		the number of locations
+   * @return		the longitudes (index 0) and latitudes (index 1)
+   */
+  protected double[][] randomLocations(long seed, int num) {
+    double[][]	result;
+    Random	rnd;
+    int		i;
+
+    result = new double[2][num];
+    rnd    = new Random(seed);
+    for (i = 0; i < num; i++) {
+      result[0][i] = rnd.nextDouble() * 360.0 - 180.0;
+      result[1][i] = rnd.nextDouble() * 170.0 - 85.0;
+    }
+
+    return result;
+  }
+
+  /**
+   * Tests the haversine distance against arc lengths on the sphere.
+   */
+  public void testHaversine() {
+    assertEquals("same location", 0.0, GPSDistanceHelper.haversine(174.76, -36.85, 174.76, -36.85), 1e-6);
+    assertEquals("one degree latitude", GPSDistanceHelper.SPHERE_RADIUS * Math.toRadians(1.0), GPSDistanceHelper.haversine(0.0, 0.0, 0.0, 1.0), 1e-6);
+    assertEquals("quarter of equator", GPSDistanceHelper.SPHERE_RADIUS * Math.PI / 2.0, GPSDistanceHelper.haversine(0.0, 0.0, 90.0, 0.0), 1e-6);
+    assertEquals("antipodes", GPSDistanceHelper.SPHERE_RADIUS * Math.PI, GPSDistanceHelper.haversine(0.0, 0.0, 180.0, 0.0), 1e-6);
+    assertEquals("symmetric", GPSDistanceHelper.haversine(10.0, 20.0, -30.0, 40.0), GPSDistanceHelper.haversine(-30.0, 40.0, 10.0, 20.0), 1e-6);
+  }
+
+  /**
+   * Tests the distance on the WGS84 ellipsoid.
+   */
+  public void testWGS84() {
+    assertEquals("same location", 0.0, GPSDistanceHelper.wgs84(174.76, -36.85, 174.76, -36.85), 1e-6);
+    // length of the first degree of latitude from the equator
+    assertEquals("one degree latitude", 110574.4, GPSDistanceHelper.wgs84(0.0, 0.0, 0.0, 1.0), 1.0);
+    assertEquals("type", GPSDistanceHelper.wgs84(10.0, 20.0, -30.0, 40.0), GPSDistanceHelper.distance(GPSDistanceType.WGS84, 10.0, 20.0, -30.0, 40.0), 1e-6);
+  }
+
+  /**
+   * Tests the pairwise distance matrix (symmetric, upper triangle only),
+   * sequential and multi-threaded.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testPairwise() throws Exception {
+    double[][]	locs;
+    double[][]	seq;
+    double[][]	par;
+    int		i;
+    int		n;
+
+    locs = randomLocations(1, NUM_LOCATIONS);
+    for (GPSDistanceType type: GPSDistanceType.values()) {
+      seq = GPSDistanceHelper.distances(type, locs[0], locs[1], locs[0], locs[1], 1);
+      par = GPSDistanceHelper.distances(type, locs[0], locs[1], locs[0], locs[1], 4);
+      assertEquals(type + ": rows", NUM_LOCATIONS, seq.length);
+      for (i = 0; i < NUM_LOCATIONS; i++) {
+	assertEquals(type + ": columns", NUM_LOCATIONS, seq[i].length);
+	assertEquals(type + ": diagonal " + i, 0.0, seq[i][i], 1e-6);
+	for (n = 0; n < NUM_LOCATIONS; n++) {
+	  assertEquals(type + ": symmetric " + i + "/" + n, seq[i][n], seq[n][i], 1e-6);
+	  assertEquals(type + ": threads " + i + "/" + n, seq[i][n], par[i][n], 1e-6);
+	  if (i != n)
+	    assertEquals(type + ": single " + i + "/" + n, GPSDistanceHelper.distance(type, locs[0][i], locs[1][i], locs[0][n], locs[1][n]), seq[i][n], 1e-6);
+	}
+      }
+    }
+  }
+
+  /**
+   * Tests the point-to-set distance matrix.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testPointToSet() throws Exception {
+    double[][]	points;
+    double[][]	set;
+    double[][]	dist;
+    int		i;
+    int		n;
+
+    points = randomLocations(2, 3);
+    set    = randomLocations(3, NUM_LOCATIONS);
+    for (GPSDistanceType type: GPSDistanceType.values()) {
+      dist = GPSDistanceHelper.distances(type, points[0], points[1], set[0], set[1], -1);
+      assertEquals(type + ": rows", points[0].length, dist.length);
+      for (i = 0; i < points[0].length; i++) {
+	assertEquals(type + ": columns", NUM_LOCATIONS, dist[i].length);
+	for (n = 0; n < NUM_LOCATIONS; n++)
+	  assertEquals(type + ": " + i + "/" + n, GPSDistanceHelper.distance(type, points[0][i], points[1][i], set[0][n], set[1][n]), dist[i][n], 1e-6);
+      }
+    }
+  }
+
+  /**
+   * Tests that locations with missing coordinates result in NaN distances
+   * instead of failing the whole matrix.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testMissing() throws Exception {
+    double[][]	locs;
+    double[][]	set;
+    double[][]	dist;
+    int		i;
+    int		n;
+    int		threads;
+
+    locs       = randomLocations(4, 10);
+    locs[0][3] = Double.NaN;
+    locs[1][7] = Double.NaN;
+    set        = randomLocations(5, 5);
+    set[1][2]  = Double.NaN;
+    for (GPSDistanceType type: GPSDistanceType.values()) {
+      for (threads = 1; threads <= 4; threads += 3) {
+	// pairwise
+	dist = GPSDistanceHelper.distances(type, locs[0], locs[1], locs[0], locs[1], threads);
+	for (i = 0; i < locs[0].length; i++) {
+	  for (n = 0; n < locs[0].length; n++) {
+	    if ((i == 3) || (i == 7) || (n == 3) || (n == 7))
+	      assertTrue(type + "/" + threads + ": missing " + i + "/" + n, Double.isNaN(dist[i][n]));
+	    else
+	      assertFalse(type + "/" + threads + ": present " + i + "/" + n, Double.isNaN(dist[i][n]));
+	  }
+	}
+	// point-to-set
+	dist = GPSDistanceHelper.distances(type, locs[0], locs[1], set[0], set[1], threads);
+	for (i = 0; i < locs[0].length; i++) {
+	  for (n = 0; n < set[0].length; n++) {
+	    if ((i == 3) || (i == 7) || (n == 2))
+	      assertTrue(type + "/" + threads + ": missing " + i + "/" + n, Double.isNaN(dist[i][n]));
+	    else
+	      assertEquals(type + "/" + threads + ": " + i + "/" + n, GPSDistanceHelper.distance(type, locs[0][i], locs[1][i], set[0][n], set[1][n]), dist[i][n], 1e-6);
+	  }
+	}
+      }
+    }
+  }
+
+  /**
+   * Tests that differing numbers of longitudes and latitudes get rejected.
+   *
+   * @throws Exception	if computation fails
+   */
+  public void testMismatch() throws Exception {
+    try {
+      GPSDistanceHelper.distances(GPSDistanceType.SPHERE, new double[2], new double[3], new double[2], new double[2], 1);
+      fail("Mismatch in first set not detected");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      GPSDistanceHelper.distances(GPSDistanceType.SPHERE, new double[2], new double[2], new double[2], new double[1], 1);
+      fail("Mismatch in second set not detected");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(GPSDistanceHelperTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    Environment.setEnvironmentClass(Environment.class);
+    runTest(suite());
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SpreadSheetToBinnedGeoToolsLayerTest.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.conversion;
+
+import adams.env.Environment;
+import adams.test.AdamsTestCase;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.util.Random;
+
+/**
+ * Tests the cell key computation of the SpreadSheetToBinnedGeoToolsLayer
+ * conversion.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class SpreadSheetToBinnedGeoToolsLayerTest
+  extends AdamsTestCase {
+
+  /** the number of random locations to test. */
+  public final static int NUM_LOCATIONS = 1000;
+
+  /** the tolerance for coordinates. */
+  public final static double TOLERANCE = 1e-9;
+
+  /** the offsets of the neighboring hexagons (axial coordinates). */
+  public final static int[][] HEX_NEIGHBORS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, -1}, {-1, 1}};
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public SpreadSheetToBinnedGeoToolsLayerTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the conversion.
+   *
+   * @param shape	the shape of the cells
+   * @param cellSize	the cell size
+   * @return		the conversion
+   */
+  protected SpreadSheetToBinnedGeoToolsLayer newConversion(BinShape shape, double cellSize) {
+    SpreadSheetToBinnedGeoToolsLayer	result;
+
+    result = new SpreadSheetToBinnedGeoToolsLayer();
+    result.setShape(shape);
+    result.setCellSize(cellSize);
+
+    return result;
+  }
+
+  /**
+   * Returns the center of the cell.
+   *
+   * @param conv	the conversion to use
+   * @param key		the key of the cell
+   * @return		the center
+   */
+  protected Point getCenter(SpreadSheetToBinnedGeoToolsLayer conv, long key) {
+    return conv.createCell(new GeometryFactory(), key).getCentroid();
+  }
+
+  /**
+   * Tests that the indices survive the combination into a key, including
+   * negative ones.
+   */
+  public void testKey() {
+    SpreadSheetToBinnedGeoToolsLayer	conv;
+    int[]				values;
+    long				key;
+
+    conv   = newConversion(BinShape.HEXAGON, 1.0);
+    values = new int[]{0, 1, -1, 17, -42, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    for (int x: values) {
+      for (int y: values) {
+	key = conv.toKey(x, y);
+	assertEquals("x of " + x + "/" + y, x, (int) (key >> 32));
+	assertEquals("y of " + x + "/" + y, y, (int) key);
+      }
+    }
+  }
+
+  /**
+   * Tests that the square cells contain the locations.
+   */
+  public void testSquare() {
+    SpreadSheetToBinnedGeoToolsLayer	conv;
+    GeometryFactory			factory;
+    Random				rnd;
+    Polygon				cell;
+    double				lon;
+    double				lat;
+    int					i;
+
+    conv    = newConversion(BinShape.SQUARE, 0.25);
+    factory = new GeometryFactory();
+    rnd     = new Random(1);
+    for (i = 0; i < NUM_LOCATIONS; i++) {
+      lon  = rnd.nextDouble() * 360.0 - 180.0;
+      lat  = rnd.nextDouble() * 180.0 - 90.0;
+      cell = conv.createCell(factory, conv.determineKey(lon, lat));
+      assertTrue("location " + lon + "/" + lat + " in cell", cell.covers(factory.createPoint(new Coordinate(lon, lat))));
+      assertEquals("area", 0.25 * 0.25, cell.getArea(), TOLERANCE);
+    }
+  }
+
+  /**
+   * Tests that the center of a hexagon maps back onto its own key and that
+   * neighboring centers are one cell size apart.
+   */
+  public void testHexagonCenters() {
+    SpreadSheetToBinnedGeoToolsLayer	conv;
+    Point				center;
+    Point				neighbor;
+    long				key;
+    int					x;
+    int					y;
+
+    conv = newConversion(BinShape.HEXAGON, 0.5);
+    for (x = -5; x <= 5; x++) {
+      for (y = -5; y <= 5; y++) {
+	key    = conv.toKey(x, y);
+	center = getCenter(conv, key);
+	assertEquals("center of " + x + "/" + y, key, conv.determineKey(center.getX(), center.getY()));
+	for (int[] offset: HEX_NEIGHBORS) {
+	  neighbor = getCenter(conv, conv.toKey(x + offset[0], y + offset[1]));
+	  assertEquals("distance " + x + "/" + y + " -> " + offset[0] + "/" + offset[1], 0.5, center.distance(neighbor), TOLERANCE);
+	}
+      }
+    }
+  }
+
+  /**
+   * Tests that random locations fall into the hexagon of their key, which
+   * has the closest center of all the neighboring hexagons.
+   */
+  public void testHexagonLocations() {
+    SpreadSheetToBinnedGeoToolsLayer	conv;
+    GeometryFactory			factory;
+    Random				rnd;
+    Point				location;
+    Polygon				cell;
+    long				key;
+    int					x;
+    int					y;
+    int					i;
+
+    conv    = newConversion(BinShape.HEXAGON, 0.5);
+    factory = new GeometryFactory();
+    rnd     = new Random(2);
+    for (i = 0; i < NUM_LOCATIONS; i++) {
+      location = factory.createPoint(new Coordinate(rnd.nextDouble() * 360.0 - 180.0, rnd.nextDouble() * 180.0 - 90.0));
+      key      = conv.determineKey(location.getX(), location.getY());
+      cell     = conv.createCell(factory, key);
+      assertTrue("location " + location + " in cell", cell.buffer(TOLERANCE).covers(location));
+      x = (int) (key >> 32);
+      y = (int) key;
+      for (int[] offset: HEX_NEIGHBORS) {
+	assertTrue(
+	  "location " + location + " closest to own center",
+	  location.distance(cell.getCentroid()) <= location.distance(getCenter(conv, conv.toKey(x + offset[0], y + offset[1]))) + TOLERANCE);
+      }
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(SpreadSheetToBinnedGeoToolsLayerTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    Environment.setEnvironmentClass(Environment.class);
+    runTest(suite());
+  }
+}
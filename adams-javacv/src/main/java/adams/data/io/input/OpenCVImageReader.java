@@ -15,7 +15,7 @@
 
 /**
  * OpenCVImageReader.java
- * Copyright (C) 2014-2016 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2014-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.data.io.input;
 
@@ -26,14 +26,27 @@ import adams.data.io.output.OpenCVImageWriter;
 import adams.data.opencv.OpenCVHelper;
 import adams.data.opencv.OpenCVImageContainer;
 import org.bytedeco.javacpp.opencv_core.IplImage;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Size;
+import org.bytedeco.javacpp.opencv_imgcodecs;
+import org.bytedeco.javacpp.opencv_imgproc;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.logging.Level;
 
 /**
  <!-- globalinfo-start -->
  * OpenCV image reader for: jpg, bmp, wbmp, jpeg, png, gif<br>
+ * When using a reduced decode scale, OpenCV decodes the image directly at 1&#47;2, 1&#47;4 or 1&#47;8 of its size (very fast for JPEG images); grayscale images get decoded as single-channel images. Formats that OpenCV cannot decode (e.g., GIF) get decoded with ImageIO and downscaled afterwards. The EXIF orientation is ignored by either approach, just like when reading at full size. The scale (1 for full size) gets stored in the report under 'Decode scale'.<br>
  * For more information see:<br>
  * http:&#47;&#47;opencv.org&#47;
  * <br><br>
@@ -45,6 +58,13 @@ import java.util.logging.Level;
  * &nbsp;&nbsp;&nbsp;default: WARNING
  * </pre>
  * 
+ * <pre>-decode-scale &lt;FULL|HALF|QUARTER|EIGHTH&gt; (property: decodeScale)
+ * &nbsp;&nbsp;&nbsp;The scale to decode the image at; formats supported by OpenCV (jpg, jpeg,
+ * &nbsp;&nbsp;&nbsp;jpe, png, bmp, tif, tiff) get decoded directly at the reduced size, other
+ * &nbsp;&nbsp;&nbsp;formats get downscaled after decoding with ImageIO.
+ * &nbsp;&nbsp;&nbsp;default: FULL
+ * </pre>
+ * 
  <!-- options-end -->
  *
  * @author  fracpete (fracpete at waikato dot ac dot nz)
@@ -56,9 +76,93 @@ public class OpenCVImageReader
   /** for serialization. */
   private static final long serialVersionUID = 5347100846354068540L;
 
+  /** the report field for the decode scale. */
+  public final static String FIELD_DECODESCALE = "Decode scale";
+
+  /** the extensions of the formats that OpenCV can decode at reduced size. */
+  public final static String[] REDUCED_EXTENSIONS = {"jpg", "jpeg", "jpe", "png", "bmp", "tif", "tiff"};
+
+  /** the extensions for quick look-up. */
+  protected final static Set<String> REDUCED_SET = new HashSet<>(Arrays.asList(REDUCED_EXTENSIONS));
+
+  /**
+   * The scales at which to decode the images.
+   */
+  public enum DecodeScale {
+    /** full size. */
+    FULL(1, opencv_imgcodecs.IMREAD_COLOR, opencv_imgcodecs.IMREAD_GRAYSCALE),
+    /** half the size. */
+    HALF(2, opencv_imgcodecs.IMREAD_REDUCED_COLOR_2, opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_2),
+    /** quarter of the size. */
+    QUARTER(4, opencv_imgcodecs.IMREAD_REDUCED_COLOR_4, opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_4),
+    /** eighth of the size. */
+    EIGHTH(8, opencv_imgcodecs.IMREAD_REDUCED_COLOR_8, opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_8);
+
+    /** the divisor. */
+    private int m_Divisor;
+
+    /** the imread flag. */
+    private int m_Flag;
+
+    /** the imread flag for grayscale images. */
+    private int m_GrayscaleFlag;
+
+    /**
+     * Initializes the scale.
+     *
+     * @param divisor		the divisor for width/height
+     * @param flag		the flag for imread
+     * @param grayscaleFlag	the flag for imread for grayscale images
+     */
+    private DecodeScale(int divisor, int flag, int grayscaleFlag) {
+      m_Divisor       = divisor;
+      m_Flag          = flag;
+      m_GrayscaleFlag = grayscaleFlag;
+    }
+
+    /**
+     * Returns the divisor for width/height.
+     *
+     * @return		the divisor
+     */
+    public int getDivisor() {
+      return m_Divisor;
+    }
+
+    /**
+     * Returns the flag for imread.
+     *
+     * @return		the flag
+     */
+    public int getFlag() {
+      return m_Flag;
+    }
+
+    /**
+     * Returns the flag for imread for grayscale images.
+     *
+     * @return		the flag
+     */
+    public int getGrayscaleFlag() {
+      return m_GrayscaleFlag;
+    }
+
+    /**
+     * Returns the scale factor.
+     *
+     * @return		the factor
+     */
+    public double getScale() {
+      return 1.0 / m_Divisor;
+    }
+  }
+
   /** the format extensions. */
   protected String[] m_FormatExtensions;
 
+  /** the decode scale. */
+  protected DecodeScale m_DecodeScale;
+
   /**
    * Returns a string describing the object.
    *
@@ -69,10 +173,29 @@ public class OpenCVImageReader
     return 
 	"OpenCV image reader for: " + Utils.flatten(getFormatExtensions(), ", ")
 	+ "\n"
+	+ "When using a reduced decode scale, OpenCV decodes the image directly "
+	+ "at 1/2, 1/4 or 1/8 of its size (very fast for JPEG images); grayscale "
+	+ "images get decoded as single-channel images. Formats that OpenCV "
+	+ "cannot decode (e.g., GIF) get decoded with ImageIO and downscaled "
+	+ "afterwards. The EXIF orientation is ignored by either approach, just "
+	+ "like when reading at full size. The scale (1 for full size) gets "
+	+ "stored in the report under '" + FIELD_DECODESCALE + "'.\n"
 	+ "For more information see:\n"
 	+ "http://opencv.org/";
   }
 
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "decode-scale", "decodeScale",
+      DecodeScale.FULL);
+  }
+
   /**
    * Initializes the members.
    */
@@ -83,6 +206,38 @@ public class OpenCVImageReader
     m_FormatExtensions = ImageIO.getReaderFileSuffixes();
   }
 
+  /**
+   * Sets the scale to decode the images at.
+   *
+   * @param value	the scale
+   */
+  public void setDecodeScale(DecodeScale value) {
+    m_DecodeScale = value;
+    reset();
+  }
+
+  /**
+   * Returns the scale to decode the images at.
+   *
+   * @return		the scale
+   */
+  public DecodeScale getDecodeScale() {
+    return m_DecodeScale;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String decodeScaleTipText() {
+    return
+      "The scale to decode the image at; formats supported by OpenCV ("
+	+ Utils.flatten(REDUCED_EXTENSIONS, ", ") + ") get decoded directly at "
+	+ "the reduced size, other formats get downscaled after decoding with ImageIO.";
+  }
+
   /**
    * Returns a string describing the format (used in the file chooser).
    *
@@ -127,7 +282,10 @@ public class OpenCVImageReader
     IplImage 			ipl;
     
     result = null;
-    
+
+    if ((m_DecodeScale != DecodeScale.FULL) && supportsReduced(file))
+      return doReadReduced(file);
+
     try {
       img = ImageIO.read(file.getAbsoluteFile());
     }
@@ -138,10 +296,147 @@ public class OpenCVImageReader
     
     if (img != null) {
       ipl    = OpenCVHelper.toOpenCVImage(img);
+      if (m_DecodeScale != DecodeScale.FULL)
+	ipl = downscale(ipl);
       result = new OpenCVImageContainer();
       result.setImage(ipl);
+      result.getReport().setNumericValue(FIELD_DECODESCALE, m_DecodeScale.getScale());
     }
     
     return result;
   }
+
+  /**
+   * Checks whether OpenCV can decode the file at reduced size.
+   *
+   * @param file	the file to check
+   * @return		true if supported
+   */
+  protected boolean supportsReduced(PlaceholderFile file) {
+    String	name;
+    int		pos;
+
+    name = file.getName().toLowerCase();
+    pos  = name.lastIndexOf('.');
+    if (pos == -1)
+      return false;
+
+    return REDUCED_SET.contains(name.substring(pos + 1));
+  }
+
+  /**
+   * Downscales the image according to the decode scale, using the same
+   * dimensions as OpenCV's reduced decoding.
+   *
+   * @param image	the image to downscale
+   * @return		the downscaled image
+   */
+  protected IplImage downscale(IplImage image) {
+    Mat		src;
+    Mat		dest;
+    Size	size;
+
+    src  = OpenCVHelper.toMat(image);
+    dest = new Mat();
+    size = new Size(
+      Math.max(1, image.width() / m_DecodeScale.getDivisor()),
+      Math.max(1, image.height() / m_DecodeScale.getDivisor()));
+    try {
+      opencv_imgproc.resize(src, dest, size, 0, 0, opencv_imgproc.INTER_AREA);
+      return OpenCVHelper.toIplImage(dest);
+    }
+    finally {
+      size.deallocate();
+      dest.release();
+      src.release();
+    }
+  }
+
+  /**
+   * Checks whether the image is a grayscale one, only reading the header.
+   *
+   * @param file	the file to check
+   * @return		true if grayscale, false if not or undetermined
+   */
+  protected boolean isGrayscale(PlaceholderFile file) {
+    ImageInputStream			istream;
+    Iterator<ImageReader>		readers;
+    ImageReader				reader;
+    ImageTypeSpecifier			type;
+    Iterator<ImageTypeSpecifier>	types;
+
+    istream = null;
+    reader  = null;
+    try {
+      istream = ImageIO.createImageInputStream(file.getAbsoluteFile());
+      if (istream == null)
+	return false;
+      readers = ImageIO.getImageReaders(istream);
+      if (!readers.hasNext())
+	return false;
+      reader = readers.next();
+      reader.setInput(istream, true, true);
+      type = reader.getRawImageType(0);
+      if (type == null) {
+	types = reader.getImageTypes(0);
+	type  = types.hasNext() ? types.next() : null;
+      }
+      return (type != null) && (type.getColorModel().getColorSpace().getType() == ColorSpace.TYPE_GRAY);
+    }
+    catch (Exception e) {
+      getLogger().log(Level.FINE, "Failed to determine image type: " + file, e);
+      return false;
+    }
+    finally {
+      if (reader != null)
+	reader.dispose();
+      if (istream != null) {
+	try {
+	  istream.close();
+	}
+	catch (Exception e) {
+	  // ignored
+	}
+      }
+    }
+  }
+
+  /**
+   * Reads the image file at a reduced scale, letting OpenCV decode it
+   * (formats listed in {@link #REDUCED_EXTENSIONS} only).
+   *
+   * @param file	the file to read
+   * @return		the image container, null if failed to read
+   */
+  protected OpenCVImageContainer doReadReduced(PlaceholderFile file) {
+    OpenCVImageContainer	result;
+    Mat				mat;
+
+    result = null;
+    mat    = null;
+
+    try {
+      // ignore the EXIF orientation, just like ImageIO does when reading at full size
+      mat = opencv_imgcodecs.imread(
+	file.getAbsolutePath(),
+	(isGrayscale(file) ? m_DecodeScale.getGrayscaleFlag() : m_DecodeScale.getFlag()) | opencv_imgcodecs.IMREAD_IGNORE_ORIENTATION);
+      if (mat.empty())
+	getLogger().severe("Failed to load file: " + file);
+      else
+	result = new OpenCVImageContainer();
+    }
+    catch (Exception e) {
+      getLogger().log(Level.SEVERE, "Failed to load file: " + file, e);
+    }
+
+    if (result != null) {
+      result.setImage(OpenCVHelper.toIplImage(mat));
+      result.getReport().setNumericValue(FIELD_DECODESCALE, m_DecodeScale.getScale());
+    }
+
+    if (mat != null)
+      mat.release();
+
+    return result;
+  }
 }
@@ -15,7 +15,7 @@
 
 /**
  * OpenCVHelper.java
- * Copyright (C) 2014-2016 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2014-2026 University of Waikato, Hamilton, New Zealand
  */
 package adams.data.opencv;
 
@@ -31,6 +31,7 @@ import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.Java2DFrameConverter;
 import org.bytedeco.javacv.OpenCVFrameConverter;
 import org.bytedeco.javacv.OpenCVFrameConverter.ToIplImage;
+import org.bytedeco.javacv.OpenCVFrameConverter.ToMat;
 
 import java.awt.image.BufferedImage;
 
@@ -163,4 +164,21 @@ public class OpenCVHelper {
   public static Mat toMat(IplImage image) {
     return new Mat(image.asCvMat());
   }
+
+  /**
+   * Converts a {@link Mat} to an {@link IplImage}. The generated image is
+   * a copy, i.e., it does not share the memory with the matrix.
+   *
+   * @param mat		the matrix to convert
+   * @return		the generated image
+   */
+  public static IplImage toIplImage(Mat mat) {
+    ToMat 	matConv;
+    ToIplImage	iplConv;
+
+    matConv = new OpenCVFrameConverter.ToMat();
+    iplConv = new OpenCVFrameConverter.ToIplImage();
+
+    return iplConv.convert(matConv.convert(mat)).clone();
+  }
 }
@@ -0,0 +1,226 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ScriptObjectCache.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.opencv;
+
+import adams.core.ObjectCopyHelper;
+import adams.core.Variables;
+import adams.core.io.PlaceholderFile;
+import adams.core.option.OptionUtils;
+import adams.core.scripting.AbstractScriptingHandler;
+import adams.flow.core.AdditionalOptionsHandler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM-wide cache for the classes of script objects, to avoid compiling
+ * the same script file over and over again (e.g., in parallel branches).
+ * The cache is keyed by script file, class, scripting handler and script
+ * options, and gets refreshed whenever the modification time of the file
+ * changes. Each call returns a new instance of the cached class, with its
+ * own copy of the script options.
+ * <br>
+ * The cache holds at most {@link #MAX_ENTRIES} script objects, evicting
+ * the least recently used ones. Actors using cached scripts remove the
+ * entries of their script file via {@link #remove(PlaceholderFile)} when
+ * they get cleaned up, so the compiled classes don't outlive the flow.
+ * <br>
+ * Script options that contain variables are never cached, as their
+ * values can differ between calls.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class ScriptObjectCache {
+
+  /**
+   * Container for a cached script object.
+   */
+  protected static class CacheEntry {
+
+    /** the timestamp of the script file. */
+    public long lastModified;
+
+    /** the prototype object. */
+    public Object prototype;
+  }
+
+  /** the maximum number of cached script objects. */
+  public final static int MAX_ENTRIES = 32;
+
+  /** the cache (key - entry), in order of access. */
+  protected static Map<String,CacheEntry> m_Cache;
+  static {
+    m_Cache = new LinkedHashMap<String,CacheEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = -1851749318637412520L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,CacheEntry> eldest) {
+	return (size() > MAX_ENTRIES);
+      }
+    };
+  }
+
+  /**
+   * Returns the canonical path of the script file.
+   *
+   * @param scriptFile	the script file
+   * @return		the path
+   */
+  protected static String getPath(PlaceholderFile scriptFile) {
+    try {
+      return scriptFile.getAbsoluteFile().getCanonicalPath();
+    }
+    catch (Exception e) {
+      return scriptFile.getAbsolutePath();
+    }
+  }
+
+  /**
+   * Generates the key for the cache.
+   *
+   * @param handler		the scripting handler
+   * @param cls			the superclass of the script object
+   * @param scriptFile		the script file
+   * @param scriptOptions	the options for the script
+   * @return			the key
+   */
+  protected static String createKey(AbstractScriptingHandler handler, Class cls, PlaceholderFile scriptFile, String scriptOptions) {
+    return getPath(scriptFile) + "\t" + cls.getName() + "\t" + OptionUtils.getCommandLine(handler) + "\t" + scriptOptions;
+  }
+
+  /**
+   * Creates a new instance from the prototype, transferring a deep copy
+   * of the script options.
+   *
+   * @param prototype	the prototype to use
+   * @return		the new instance
+   * @throws Exception	if instantiation fails
+   */
+  protected static Object newInstance(Object prototype) throws Exception {
+    Object	result;
+
+    result = prototype.getClass().getDeclaredConstructor().newInstance();
+    if ((result instanceof AdditionalOptionsHandler) && (prototype instanceof AdditionalOptionsHandler))
+      ((AdditionalOptionsHandler) result).setAdditionalOptions(
+	ObjectCopyHelper.copyObject(((AdditionalOptionsHandler) prototype).getAdditionalOptions()));
+
+    return result;
+  }
+
+  /**
+   * Loads the script object, either using the cached class or by
+   * letting the handler load (and compile) the script.
+   *
+   * @param handler		the scripting handler to use
+   * @param cls			the superclass of the script object
+   * @param scriptFile		the script file
+   * @param scriptOptions	the options for the script
+   * @param vars		the variables to use
+   * @return			the result of the handler: error message (null if
+   * 				successful) and script object
+   * @see			AbstractScriptingHandler#loadScriptObject(Class, java.io.File, String, Variables)
+   */
+  public static synchronized Object[] loadScriptObject(AbstractScriptingHandler handler, Class cls, PlaceholderFile scriptFile, String scriptOptions, Variables vars) {
+    Object[]	result;
+    String	key;
+    CacheEntry	entry;
+    long	lastModified;
+    Object	copy;
+
+    // options with variables can change between calls
+    if ((scriptOptions != null) && scriptOptions.contains("@{"))
+      return handler.loadScriptObject(cls, scriptFile, scriptOptions, vars);
+    if (!scriptFile.exists() || scriptFile.isDirectory())
+      return handler.loadScriptObject(cls, scriptFile, scriptOptions, vars);
+
+    key          = createKey(handler, cls, scriptFile, scriptOptions);
+    lastModified = scriptFile.lastModified();
+    entry        = m_Cache.get(key);
+    if ((entry != null) && (entry.lastModified == lastModified)) {
+      try {
+	return new Object[]{null, newInstance(entry.prototype)};
+      }
+      catch (Exception e) {
+	m_Cache.remove(key);
+      }
+    }
+
+    result = handler.loadScriptObject(cls, scriptFile, scriptOptions, vars);
+    m_Cache.remove(key);
+    if ((result[0] == null) && (result[1] != null)) {
+      // the caller gets a copy as well, the prototype must never be handed out
+      try {
+	copy = newInstance(result[1]);
+      }
+      catch (Exception e) {
+	// cannot be instantiated again, don't cache
+	return result;
+      }
+      entry              = new CacheEntry();
+      entry.lastModified = lastModified;
+      entry.prototype    = result[1];
+      m_Cache.put(key, entry);
+      result = new Object[]{null, copy};
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes all cached script objects of the specified script file.
+   *
+   * @param scriptFile	the script file to remove
+   */
+  public static synchronized void remove(PlaceholderFile scriptFile) {
+    String		prefix;
+    List<String>	keys;
+
+    if (scriptFile == null)
+      return;
+
+    prefix = getPath(scriptFile) + "\t";
+    keys   = new ArrayList<>();
+    for (String key: m_Cache.keySet()) {
+      if (key.startsWith(prefix))
+	keys.add(key);
+    }
+    for (String key: keys)
+      m_Cache.remove(key);
+  }
+
+  /**
+   * Returns the number of cached script objects.
+   *
+   * @return		the number of objects
+   */
+  public static synchronized int size() {
+    return m_Cache.size();
+  }
+
+  /**
+   * Removes all cached script objects.
+   */
+  public static synchronized void clear() {
+    m_Cache.clear();
+  }
+}
@@ -15,7 +15,7 @@
 
 /*
  * Scripted.java
- * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2014-2026 University of Waikato, Hamilton, New Zealand
  */
 
 package adams.data.opencv.features;
@@ -26,6 +26,7 @@ import adams.core.scripting.AbstractScriptingHandler;
 import adams.core.scripting.Dummy;
 import adams.data.featureconverter.HeaderDefinition;
 import adams.data.opencv.OpenCVImageContainer;
+import adams.data.opencv.ScriptObjectCache;
 
 /**
  <!-- globalinfo-start -->
@@ -157,7 +158,8 @@ public class Scripted
   }
 
   /**
-   * Loads the scripts object and sets its options.
+   * Loads the scripts object and sets its options. Uses the JVM-wide
+   * cache to avoid recompiling the same script.
    *
    * @return		null if OK, otherwise the error message
    */
@@ -165,7 +167,8 @@ public class Scripted
   protected String loadScriptObject() {
     Object[]	result;
     
-    result = m_Handler.loadScriptObject(
+    result = ScriptObjectCache.loadScriptObject(
+	m_Handler,
 	AbstractOpenCVFeatureGenerator.class, 
 	m_ScriptFile, 
 	m_ScriptOptions, 
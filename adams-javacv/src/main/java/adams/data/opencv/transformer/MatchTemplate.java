@@ -0,0 +1,1055 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatchTemplate.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.opencv.transformer;
+
+import adams.core.TechnicalInformation;
+import adams.core.TechnicalInformation.Field;
+import adams.core.TechnicalInformation.Type;
+import adams.core.TechnicalInformationHandler;
+import adams.core.io.PlaceholderFile;
+import adams.data.opencv.OpenCVHelper;
+import adams.data.opencv.OpenCVImageContainer;
+import adams.data.report.Report;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacpp.opencv_core.IplImage;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Point;
+import org.bytedeco.javacpp.opencv_core.Rect;
+import org.bytedeco.javacpp.opencv_core.Scalar;
+import org.bytedeco.javacpp.opencv_core.Size;
+import org.bytedeco.javacpp.opencv_imgcodecs;
+import org.bytedeco.javacpp.opencv_imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ <!-- globalinfo-start -->
+ * Locates one or more templates in an image using OpenCV's matchTemplate (which uses a DFT-based correlation for large templates).<br>
+ * The search is performed on grayscale versions of the image and templates. Optionally, the search can be performed on a downscaled version first, with the candidate locations then refined at full resolution.<br>
+ * Matches that overlap a better match (across all templates) by more than the maximum overlap (intersection over union) get suppressed. The best N remaining matches are either stored in the report of the image or output as cropped regions of interest (with a copy of the image's report).<br>
+ * For more information see:<br>
+ * OpenCV documentation. Template Matching.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ * <pre>
+ * &#64;misc{missing_id,
+ *    author = {OpenCV documentation},
+ *    title = {Template Matching},
+ *    HTTP = {https:&#47;&#47;docs.opencv.org&#47;3.4&#47;de&#47;da9&#47;tutorial_template_matching.html}
+ * }
+ * </pre>
+ * <br><br>
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-template &lt;adams.core.io.PlaceholderFile&gt; [-template ...] (property: templates)
+ * &nbsp;&nbsp;&nbsp;The template image files to locate.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-method &lt;SQDIFF_NORMED|CCORR_NORMED|CCOEFF_NORMED&gt; (property: method)
+ * &nbsp;&nbsp;&nbsp;The matching method to use; SQDIFF_NORMED scores are turned into 1-value
+ * &nbsp;&nbsp;&nbsp;so that higher is always better.
+ * &nbsp;&nbsp;&nbsp;default: CCOEFF_NORMED
+ * </pre>
+ *
+ * <pre>-num-matches &lt;int&gt; (property: numMatches)
+ * &nbsp;&nbsp;&nbsp;The maximum number of best matches to output.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-min-score &lt;double&gt; (property: minScore)
+ * &nbsp;&nbsp;&nbsp;The minimum score a match must have.
+ * &nbsp;&nbsp;&nbsp;default: 0.0
+ * </pre>
+ *
+ * <pre>-search-scale &lt;double&gt; (property: searchScale)
+ * &nbsp;&nbsp;&nbsp;The scale at which to search for the templates; values below 1 search a
+ * &nbsp;&nbsp;&nbsp;downscaled image and refine the candidates at full resolution.
+ * &nbsp;&nbsp;&nbsp;default: 1.0
+ * &nbsp;&nbsp;&nbsp;minimum: 0.01
+ * &nbsp;&nbsp;&nbsp;maximum: 1.0
+ * </pre>
+ *
+ * <pre>-max-overlap &lt;double&gt; (property: maxOverlap)
+ * &nbsp;&nbsp;&nbsp;The maximum overlap (intersection over union) a match can have with a
+ * &nbsp;&nbsp;&nbsp;better match before it gets suppressed.
+ * &nbsp;&nbsp;&nbsp;default: 0.5
+ * &nbsp;&nbsp;&nbsp;minimum: 0.0
+ * &nbsp;&nbsp;&nbsp;maximum: 1.0
+ * </pre>
+ *
+ * <pre>-output-type &lt;REPORT|ROIS&gt; (property: outputType)
+ * &nbsp;&nbsp;&nbsp;Whether to store the matches in the report or output the cropped regions.
+ * &nbsp;&nbsp;&nbsp;default: REPORT
+ * </pre>
+ *
+ * <pre>-prefix &lt;java.lang.String&gt; (property: prefix)
+ * &nbsp;&nbsp;&nbsp;The prefix for the report fields when storing the matches in the report.
+ * &nbsp;&nbsp;&nbsp;default: Match.
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MatchTemplate
+  extends AbstractOpenCVTransformer
+  implements TechnicalInformationHandler {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -2203867436581370428L;
+
+  /** the report key for the x coordinate. */
+  public static final String REPORT_KEY_X = "X";
+
+  /** the report key for the y coordinate. */
+  public static final String REPORT_KEY_Y = "Y";
+
+  /** the report key for the width. */
+  public static final String REPORT_KEY_WIDTH = "Width";
+
+  /** the report key for the height. */
+  public static final String REPORT_KEY_HEIGHT = "Height";
+
+  /** the report key for the score. */
+  public static final String REPORT_KEY_SCORE = "Score";
+
+  /** the report key for the template. */
+  public static final String REPORT_KEY_TEMPLATE = "Template";
+
+  /** the report key for the number of matches. */
+  public static final String REPORT_KEY_COUNT = "Count";
+
+  /**
+   * The matching methods.
+   */
+  public enum MatchMethod {
+    /** normalized squared difference. */
+    SQDIFF_NORMED(opencv_imgproc.TM_SQDIFF_NORMED),
+    /** normalized cross-correlation. */
+    CCORR_NORMED(opencv_imgproc.TM_CCORR_NORMED),
+    /** normalized correlation coefficient. */
+    CCOEFF_NORMED(opencv_imgproc.TM_CCOEFF_NORMED);
+
+    /** the OpenCV method. */
+    private int m_Method;
+
+    /**
+     * Initializes the method.
+     *
+     * @param method	the OpenCV method
+     */
+    private MatchMethod(int method) {
+      m_Method = method;
+    }
+
+    /**
+     * Returns the OpenCV method.
+     *
+     * @return		the method
+     */
+    public int getMethod() {
+      return m_Method;
+    }
+  }
+
+  /**
+   * How to output the matches.
+   */
+  public enum OutputType {
+    /** stores the matches in the report. */
+    REPORT,
+    /** outputs the cropped regions. */
+    ROIS
+  }
+
+  /**
+   * Container for a single match.
+   */
+  protected static class TemplateMatch
+    implements Comparable<TemplateMatch> {
+
+    /** the template index. */
+    public int template;
+
+    /** the x coordinate. */
+    public int x;
+
+    /** the y coordinate. */
+    public int y;
+
+    /** the width. */
+    public int width;
+
+    /** the height. */
+    public int height;
+
+    /** the score (higher is better). */
+    public double score;
+
+    /**
+     * Computes the overlap with the other match (intersection over union).
+     *
+     * @param o		the other match
+     * @return		the overlap (0-1)
+     */
+    public double overlap(TemplateMatch o) {
+      int	w;
+      int	h;
+      double	inter;
+
+      w = Math.min(x + width, o.x + o.width) - Math.max(x, o.x);
+      h = Math.min(y + height, o.y + o.height) - Math.max(y, o.y);
+      if ((w <= 0) || (h <= 0))
+	return 0.0;
+      inter = (double) w * h;
+
+      return inter / ((double) width * height + (double) o.width * o.height - inter);
+    }
+
+    /**
+     * Sorts matches by descending score.
+     *
+     * @param o		the match to compare with
+     * @return		less than, equal to or greater than zero
+     */
+    @Override
+    public int compareTo(TemplateMatch o) {
+      return Double.compare(o.score, score);
+    }
+  }
+
+  /** the template files. */
+  protected PlaceholderFile[] m_Templates;
+
+  /** the method. */
+  protected MatchMethod m_Method;
+
+  /** the number of matches to output. */
+  protected int m_NumMatches;
+
+  /** the minimum score. */
+  protected double m_MinScore;
+
+  /** the search scale. */
+  protected double m_SearchScale;
+
+  /** the maximum overlap between matches. */
+  protected double m_MaxOverlap;
+
+  /** the output type. */
+  protected OutputType m_OutputType;
+
+  /** the prefix for the report. */
+  protected String m_Prefix;
+
+  /** the grayscale templates. */
+  protected transient List<Mat> m_TemplateMats;
+
+  /** the downscaled grayscale templates. */
+  protected transient List<Mat> m_ScaledTemplateMats;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+      "Locates one or more templates in an image using OpenCV's matchTemplate "
+	+ "(which uses a DFT-based correlation for large templates).\n"
+	+ "The search is performed on grayscale versions of the image and "
+	+ "templates. Optionally, the search can be performed on a downscaled "
+	+ "version first, with the candidate locations then refined at full "
+	+ "resolution.\n"
+	+ "Matches that overlap a better match (across all templates) by more "
+	+ "than the maximum overlap (intersection over union) get suppressed. "
+	+ "The best N remaining matches are either stored in the report of the "
+	+ "image or output as cropped regions of interest (with a copy of the "
+	+ "image's report).\n"
+	+ "For more information see:\n"
+	+ getTechnicalInformation();
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing
+   * detailed information about the technical background of this class,
+   * e.g., paper reference or book this class is based on.
+   *
+   * @return 		the technical information about this class
+   */
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation 	result;
+
+    result = new TechnicalInformation(Type.MISC);
+    result.setValue(Field.AUTHOR, "OpenCV documentation");
+    result.setValue(Field.TITLE, "Template Matching");
+    result.setValue(Field.HTTP, "https://docs.opencv.org/3.4/de/da9/tutorial_template_matching.html");
+
+    return result;
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+	    "template", "templates",
+	    new PlaceholderFile[0]);
+
+    m_OptionManager.add(
+	    "method", "method",
+	    MatchMethod.CCOEFF_NORMED);
+
+    m_OptionManager.add(
+	    "num-matches", "numMatches",
+	    1, 1, null);
+
+    m_OptionManager.add(
+	    "min-score", "minScore",
+	    0.0);
+
+    m_OptionManager.add(
+	    "search-scale", "searchScale",
+	    1.0, 0.01, 1.0);
+
+    m_OptionManager.add(
+	    "max-overlap", "maxOverlap",
+	    0.5, 0.0, 1.0);
+
+    m_OptionManager.add(
+	    "output-type", "outputType",
+	    OutputType.REPORT);
+
+    m_OptionManager.add(
+	    "prefix", "prefix",
+	    "Match.");
+  }
+
+  /**
+   * Resets the scheme.
+   */
+  @Override
+  protected void reset() {
+    super.reset();
+
+    releaseTemplates();
+  }
+
+  /**
+   * Sets the template files.
+   *
+   * @param value	the files
+   */
+  public void setTemplates(PlaceholderFile[] value) {
+    m_Templates = value;
+    reset();
+  }
+
+  /**
+   * Returns the template files.
+   *
+   * @return		the files
+   */
+  public PlaceholderFile[] getTemplates() {
+    return m_Templates;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the gui
+   */
+  public String templatesTipText() {
+    return "The template image files to locate.";
+  }
+
+  /**
+   * Sets the matching method.
+   *
+   * @param value	the method
+   */
+  public void setMethod(MatchMethod value) {
+    m_Method = value;
+    reset();
+  }
+
+  /**
+   * Returns the matching method.
+   *
+   * @return		the method
+   */
+  public MatchMethod getMethod() {
+    return m_Method;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the gui
+   */
+  public String methodTipText() {
+    return "The matching method to use; SQDIFF_NORMED scores are turned into 1-value so that higher is always better.";
+  }
+
+  /**
+   * Sets the maximum number of matches to output.
+   *
+   * @param value	the number of matches
+   */
+  public void setNumMatches(int value) {
+    if (getOptionManager().isValid("numMatches", value)) {
+      m_NumMatches = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of matches to output.
+   *
+   * @return		the number of matches
+   */
+  public int getNumMatches() {
+    return m_NumMatches;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the gui
+   */
+  public String numMatchesTipText() {
+    return "The maximum number of best matches to output.";
+  }
+
+  /**
+   * Sets the minimum score a match must have.
+   *
+   * @param value	the minimum
+   */
+  public void setMinScore(double value) {
+    m_MinScore = value;
+    reset();
+  }
+
+  /**
+   * Returns the minimum score a match must have.
+   *
+   * @return		the minimum
+   */
+  public double getMinScore() {
+    return m_MinScore;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the gui
+   */
+  public String minScoreTipText() {
+    return "The minimum score a match must have.";
+  }
+
+  /**
+   * Sets the scale at which to search for the templates.
+   *
+   * @param value	the scale
+   */
+  public void setSearchScale(double value) {
+    if (getOptionManager().isValid("searchScale", value)) {
+      m_SearchScale = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the scale at which to search for the templates.
+   *
+   * @return		the scale
+   */
+  public double getSearchScale() {
+    return m_SearchScale;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the gui
+   */
+  public String searchScaleTipText() {
+    return "The scale at which to search for the templates; values below 1 search a downscaled image and refine the candidates at full resolution.";
+  }
+
+  /**
+   * Sets the maximum overlap (intersection over union) between matches.
+   *
+   * @param value	the overlap
+   */
+  public void setMaxOverlap(double value) {
+    if (getOptionManager().isValid("maxOverlap", value)) {
+      m_MaxOverlap = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum overlap (intersection over union) between matches.
+   *
+   * @return		the overlap
+   */
+  public double getMaxOverlap() {
+    return m_MaxOverlap;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the gui
+   */
+  public String maxOverlapTipText() {
+    return "The maximum overlap (intersection over union) a match can have with a better match before it gets suppressed.";
+  }
+
+  /**
+   * Sets how to output the matches.
+   *
+   * @param value	the output type
+   */
+  public void setOutputType(OutputType value) {
+    m_OutputType = value;
+    reset();
+  }
+
+  /**
+   * Returns how to output the matches.
+   *
+   * @return		the output type
+   */
+  public OutputType getOutputType() {
+    return m_OutputType;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the gui
+   */
+  public String outputTypeTipText() {
+    return "Whether to store the matches in the report or output the cropped regions.";
+  }
+
+  /**
+   * Sets the prefix for the report fields.
+   *
+   * @param value	the prefix
+   */
+  public void setPrefix(String value) {
+    m_Prefix = value;
+    reset();
+  }
+
+  /**
+   * Returns the prefix for the report fields.
+   *
+   * @return		the prefix
+   */
+  public String getPrefix() {
+    return m_Prefix;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the gui
+   */
+  public String prefixTipText() {
+    return "The prefix for the report fields when storing the matches in the report.";
+  }
+
+  /**
+   * Turns the matrix into a grayscale one, if necessary.
+   *
+   * @param mat		the matrix to convert
+   * @return		the grayscale matrix, the input matrix if already grayscale
+   */
+  protected Mat toGray(Mat mat) {
+    Mat		result;
+
+    switch (mat.channels()) {
+      case 3:
+	result = new Mat();
+	opencv_imgproc.cvtColor(mat, result, opencv_imgproc.COLOR_BGR2GRAY);
+	break;
+      case 4:
+	result = new Mat();
+	opencv_imgproc.cvtColor(mat, result, opencv_imgproc.COLOR_BGRA2GRAY);
+	break;
+      default:
+	result = mat;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the size of the dimension after applying the search scale.
+   *
+   * @param size	the size to scale
+   * @return		the scaled size (can be 0)
+   */
+  protected int scaledSize(int size) {
+    return (int) Math.round(size * m_SearchScale);
+  }
+
+  /**
+   * Downscales the matrix using the search scale. The scaled matrix is at
+   * least 1x1 and needs to be released by the caller.
+   *
+   * @param mat		the matrix to scale
+   * @return		the scaled matrix
+   */
+  protected Mat scale(Mat mat) {
+    Mat		result;
+    Size	size;
+
+    result = new Mat();
+    size   = new Size(Math.max(1, scaledSize(mat.cols())), Math.max(1, scaledSize(mat.rows())));
+    try {
+      opencv_imgproc.resize(mat, result, size, 0, 0, opencv_imgproc.INTER_AREA);
+    }
+    finally {
+      size.deallocate();
+    }
+
+    return result;
+  }
+
+  /**
+   * Releases the matrices in the list.
+   *
+   * @param mats	the matrices to release, can be null or contain nulls
+   */
+  protected void release(List<Mat> mats) {
+    if (mats == null)
+      return;
+    for (Mat mat: mats) {
+      if (mat != null)
+	mat.release();
+    }
+  }
+
+  /**
+   * Releases the loaded templates.
+   */
+  protected void releaseTemplates() {
+    release(m_TemplateMats);
+    release(m_ScaledTemplateMats);
+    m_TemplateMats       = null;
+    m_ScaledTemplateMats = null;
+  }
+
+  /**
+   * Loads the templates, if necessary. Templates that would vanish at the
+   * search scale get no downscaled version and are searched at full
+   * resolution.
+   */
+  protected void loadTemplates() {
+    List<Mat>	templates;
+    List<Mat>	scaled;
+    Mat		template;
+
+    if (m_TemplateMats != null)
+      return;
+
+    templates = new ArrayList<>();
+    scaled    = new ArrayList<>();
+    for (PlaceholderFile file: m_Templates) {
+      template = opencv_imgcodecs.imread(file.getAbsolutePath(), opencv_imgcodecs.IMREAD_GRAYSCALE);
+      if (template.empty()) {
+	template.release();
+	release(templates);
+	release(scaled);
+	throw new IllegalStateException("Failed to load template: " + file);
+      }
+      templates.add(template);
+      if ((m_SearchScale < 1.0) && (scaledSize(template.cols()) >= 1) && (scaledSize(template.rows()) >= 1))
+	scaled.add(scale(template));
+      else
+	scaled.add(null);
+    }
+
+    m_TemplateMats       = templates;
+    m_ScaledTemplateMats = scaled;
+  }
+
+  /**
+   * Locates the best matches in the result of matchTemplate. Each located
+   * match gets suppressed in the result matrix (template-sized area around
+   * the peak) before looking for the next one.
+   *
+   * @param result	the result of matchTemplate (gets modified)
+   * @param width	the width of the template
+   * @param height	the height of the template
+   * @param max		the maximum number of matches to locate
+   * @param template	the index of the template
+   * @return		the matches (width/height are the template's)
+   */
+  protected List<TemplateMatch> locate(Mat result, int width, int height, int max, int template) {
+    List<TemplateMatch>	matches;
+    TemplateMatch	match;
+    DoublePointer	minVal;
+    DoublePointer	maxVal;
+    Point		minLoc;
+    Point		maxLoc;
+    Point		loc;
+    Scalar		suppressed;
+    Rect		rect;
+    Mat			roi;
+    boolean		sqdiff;
+    double		score;
+    int			left;
+    int			top;
+    int			right;
+    int			bottom;
+
+    matches    = new ArrayList<>();
+    sqdiff     = (m_Method == MatchMethod.SQDIFF_NORMED);
+    minVal     = new DoublePointer(1);
+    maxVal     = new DoublePointer(1);
+    minLoc     = new Point();
+    maxLoc     = new Point();
+    suppressed = new Scalar(sqdiff ? Float.MAX_VALUE : -Float.MAX_VALUE);
+
+    try {
+      while (matches.size() < max) {
+	opencv_core.minMaxLoc(result, minVal, maxVal, minLoc, maxLoc);
+	if (sqdiff) {
+	  score = 1.0 - minVal.get();
+	  loc   = minLoc;
+	}
+	else {
+	  score = maxVal.get();
+	  loc   = maxLoc;
+	}
+	if (score < m_MinScore)
+	  break;
+
+	match          = new TemplateMatch();
+	match.template = template;
+	match.x        = loc.x();
+	match.y        = loc.y();
+	match.width    = width;
+	match.height   = height;
+	match.score    = score;
+	matches.add(match);
+
+	// suppress area around peak
+	left   = Math.max(0, match.x - width / 2);
+	top    = Math.max(0, match.y - height / 2);
+	right  = Math.min(result.cols(), match.x + width / 2 + 1);
+	bottom = Math.min(result.rows(), match.y + height / 2 + 1);
+	rect   = new Rect(left, top, right - left, bottom - top);
+	roi    = new Mat(result, rect);
+	roi.put(suppressed);
+	roi.release();
+	rect.deallocate();
+      }
+    }
+    finally {
+      minVal.deallocate();
+      maxVal.deallocate();
+      minLoc.deallocate();
+      maxLoc.deallocate();
+      suppressed.deallocate();
+    }
+
+    return matches;
+  }
+
+  /**
+   * Refines a match located in the downscaled image at full resolution.
+   *
+   * @param image	the full resolution image
+   * @param template	the full resolution template
+   * @param match	the match located in the downscaled image
+   * @return		the refined match, null if below the minimum score
+   */
+  protected TemplateMatch refine(Mat image, Mat template, TemplateMatch match) {
+    List<TemplateMatch>	refined;
+    Mat			result;
+    Mat			roi;
+    Rect		rect;
+    int			margin;
+    int			x;
+    int			y;
+    int			left;
+    int			top;
+    int			right;
+    int			bottom;
+
+    margin = (int) Math.ceil(1.0 / m_SearchScale) + 1;
+    x      = (int) Math.round(match.x / m_SearchScale);
+    y      = (int) Math.round(match.y / m_SearchScale);
+    left   = Math.max(0, x - margin);
+    top    = Math.max(0, y - margin);
+    right  = Math.min(image.cols(), x + template.cols() + margin);
+    bottom = Math.min(image.rows(), y + template.rows() + margin);
+    if ((right - left < template.cols()) || (bottom - top < template.rows()))
+      return null;
+
+    rect   = new Rect(left, top, right - left, bottom - top);
+    roi    = new Mat(image, rect);
+    result = new Mat();
+    try {
+      opencv_imgproc.matchTemplate(roi, template, result, m_Method.getMethod());
+      refined = locate(result, template.cols(), template.rows(), 1, match.template);
+    }
+    finally {
+      result.release();
+      roi.release();
+      rect.deallocate();
+    }
+    if (refined.size() == 0)
+      return null;
+    refined.get(0).x += left;
+    refined.get(0).y += top;
+
+    return refined.get(0);
+  }
+
+  /**
+   * Locates the specified template in the image.
+   *
+   * @param image	the full resolution image
+   * @param scaled	the downscaled image, null if not searching at reduced scale
+   * @param index	the index of the template
+   * @return		the matches
+   */
+  protected List<TemplateMatch> match(Mat image, Mat scaled, int index) {
+    List<TemplateMatch>	result;
+    List<TemplateMatch>	candidates;
+    TemplateMatch	refined;
+    Mat			template;
+    Mat			scaledTemplate;
+    Mat			res;
+
+    result   = new ArrayList<>();
+    template = m_TemplateMats.get(index);
+    if ((template.cols() > image.cols()) || (template.rows() > image.rows()))
+      return result;
+
+    res = new Mat();
+    try {
+      if (scaled != null) {
+	scaledTemplate = m_ScaledTemplateMats.get(index);
+	if ((scaledTemplate != null) && (scaledTemplate.cols() <= scaled.cols()) && (scaledTemplate.rows() <= scaled.rows())) {
+	  opencv_imgproc.matchTemplate(scaled, scaledTemplate, res, m_Method.getMethod());
+	  candidates = locate(res, scaledTemplate.cols(), scaledTemplate.rows(), m_NumMatches, index);
+	  for (TemplateMatch candidate: candidates) {
+	    refined = refine(image, template, candidate);
+	    if (refined != null)
+	      result.add(refined);
+	  }
+	  return result;
+	}
+	if (isLoggingEnabled())
+	  getLogger().info("Template #" + (index + 1) + " too small/large for search scale, searching at full resolution");
+      }
+
+      opencv_imgproc.matchTemplate(image, template, res, m_Method.getMethod());
+      result.addAll(locate(res, template.cols(), template.rows(), m_NumMatches, index));
+    }
+    finally {
+      res.release();
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes matches that overlap a better match by more than the maximum
+   * overlap (non-maximum suppression), e.g., duplicates obtained from
+   * refining nearby candidates.
+   *
+   * @param matches	the matches to filter
+   * @return		the remaining matches, sorted by descending score
+   */
+  protected List<TemplateMatch> suppress(List<TemplateMatch> matches) {
+    List<TemplateMatch>	result;
+    boolean		keep;
+
+    Collections.sort(matches);
+    result = new ArrayList<>();
+    for (TemplateMatch match: matches) {
+      keep = true;
+      for (TemplateMatch kept: result) {
+	if (match.overlap(kept) > m_MaxOverlap) {
+	  keep = false;
+	  break;
+	}
+      }
+      if (keep)
+	result.add(match);
+    }
+
+    return result;
+  }
+
+  /**
+   * Crops the match from the image.
+   *
+   * @param image	the image to crop from
+   * @param match	the match to crop
+   * @return		the cropped image
+   */
+  protected IplImage crop(Mat image, TemplateMatch match) {
+    Rect	rect;
+    Mat		roi;
+
+    rect = new Rect(match.x, match.y, match.width, match.height);
+    roi  = new Mat(image, rect);
+    try {
+      return OpenCVHelper.toIplImage(roi);
+    }
+    finally {
+      roi.release();
+      rect.deallocate();
+    }
+  }
+
+  /**
+   * Performs the actual transforming of the image.
+   *
+   * @param img		the image to transform (can be modified, since it is a copy)
+   * @return		the generated image(s)
+   */
+  @Override
+  protected OpenCVImageContainer[] doTransform(OpenCVImageContainer img) {
+    OpenCVImageContainer[]	result;
+    List<TemplateMatch>		matches;
+    TemplateMatch		match;
+    Mat				full;
+    Mat				image;
+    Mat				scaled;
+    Report			report;
+    String			prefix;
+    int				i;
+
+    loadTemplates();
+
+    full   = new Mat(img.getImage());
+    image  = null;
+    scaled = null;
+    try {
+      image = toGray(full);
+      if (m_SearchScale < 1.0)
+	scaled = scale(image);
+
+      matches = new ArrayList<>();
+      for (i = 0; i < m_TemplateMats.size(); i++)
+	matches.addAll(match(image, scaled, i));
+      matches = suppress(matches);
+      while (matches.size() > m_NumMatches)
+	matches.remove(matches.size() - 1);
+
+      switch (m_OutputType) {
+	case REPORT:
+	  report = img.getReport();
+	  report.setNumericValue(m_Prefix + REPORT_KEY_COUNT, matches.size());
+	  for (i = 0; i < matches.size(); i++) {
+	    match  = matches.get(i);
+	    prefix = m_Prefix + (i + 1) + ".";
+	    report.setNumericValue(prefix + REPORT_KEY_X, match.x);
+	    report.setNumericValue(prefix + REPORT_KEY_Y, match.y);
+	    report.setNumericValue(prefix + REPORT_KEY_WIDTH, match.width);
+	    report.setNumericValue(prefix + REPORT_KEY_HEIGHT, match.height);
+	    report.setNumericValue(prefix + REPORT_KEY_SCORE, match.score);
+	    report.setStringValue(prefix + REPORT_KEY_TEMPLATE, m_Templates[match.template].getName());
+	  }
+	  result = new OpenCVImageContainer[]{img};
+	  break;
+
+	case ROIS:
+	  result = new OpenCVImageContainer[matches.size()];
+	  for (i = 0; i < matches.size(); i++) {
+	    match  = matches.get(i);
+	    report = img.getReport().getClone();
+	    report.setNumericValue(REPORT_KEY_X, match.x);
+	    report.setNumericValue(REPORT_KEY_Y, match.y);
+	    report.setNumericValue(REPORT_KEY_WIDTH, match.width);
+	    report.setNumericValue(REPORT_KEY_HEIGHT, match.height);
+	    report.setNumericValue(REPORT_KEY_SCORE, match.score);
+	    report.setStringValue(REPORT_KEY_TEMPLATE, m_Templates[match.template].getName());
+	    result[i] = new OpenCVImageContainer();
+	    result[i].setImage(crop(full, match));
+	    result[i].setReport(report);
+	  }
+	  break;
+
+	default:
+	  throw new IllegalStateException("Unhandled output type: " + m_OutputType);
+      }
+    }
+    finally {
+      if (scaled != null)
+	scaled.release();
+      if ((image != null) && (image != full))
+	image.release();
+      full.release();
+    }
+
+    return result;
+  }
+
+  /**
+   * Frees up memory in a "destructive" non-reversible way.
+   */
+  @Override
+  public void destroy() {
+    releaseTemplates();
+    super.destroy();
+  }
+}
@@ -15,7 +15,7 @@
 
 /*
  * Scripted.java
- * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2014-2026 University of Waikato, Hamilton, New Zealand
  */
 
 package adams.data.opencv.transformer;
@@ -23,6 +23,7 @@ package adams.data.opencv.transformer;
 import adams.core.scripting.AbstractScriptingHandler;
 import adams.core.scripting.Dummy;
 import adams.data.opencv.OpenCVImageContainer;
+import adams.data.opencv.ScriptObjectCache;
 
 /**
  <!-- globalinfo-start -->
@@ -140,7 +141,8 @@ public class Scripted
   }
 
   /**
-   * Loads the scripts object and sets its options.
+   * Loads the scripts object and sets its options. Uses the JVM-wide
+   * cache to avoid recompiling the same script.
    *
    * @return		null if OK, otherwise the error message
    */
@@ -148,7 +150,8 @@ public class Scripted
   protected String loadScriptObject() {
     Object[]	result;
     
-    result = m_Handler.loadScriptObject(
+    result = ScriptObjectCache.loadScriptObject(
+	m_Handler,
 	AbstractOpenCVTransformer.class, 
 	m_ScriptFile, 
 	m_ScriptOptions, 
@@ -0,0 +1,378 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * OpenCVThreads.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.standalone;
+
+import adams.core.QuickInfoHelper;
+import adams.core.VariableName;
+import org.bytedeco.javacpp.opencv_core;
+
+/**
+ <!-- globalinfo-start -->
+ * Controls the number of threads that OpenCV uses internally (e.g., in blur, erode, detectMultiScale), in order to avoid oversubscribing the machine when running several OpenCV actors in parallel branches.<br>
+ * FIXED uses the specified number of threads (e.g., the number of cores divided by the number of parallel branches running OpenCV actors) and DEFAULT restores OpenCV's own default.<br>
+ * Note: the setting is process-wide, i.e., it affects all flows running in the same JVM, not just this one. Several flows with this actor override each other: the one that executed last determines the number of threads, and the first one to finish restores OpenCV's default for all of them.<br>
+ * The number of threads in effect gets logged and can be stored in a variable. OpenCV's default gets restored when the flow finishes.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: OpenCVThreads
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseAnnotation&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-silent &lt;boolean&gt; (property: silent)
+ * &nbsp;&nbsp;&nbsp;If enabled, then no errors are output in the console.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-mode &lt;DEFAULT|FIXED&gt; (property: mode)
+ * &nbsp;&nbsp;&nbsp;How to determine the number of threads for OpenCV.
+ * &nbsp;&nbsp;&nbsp;default: FIXED
+ * </pre>
+ *
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads to use in FIXED mode; 1 turns off OpenCV's internal
+ * &nbsp;&nbsp;&nbsp;parallelism.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-set-variable &lt;boolean&gt; (property: setVariable)
+ * &nbsp;&nbsp;&nbsp;If enabled, the number of threads in effect gets stored in the specified
+ * &nbsp;&nbsp;&nbsp;variable.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-var-name &lt;adams.core.VariableName&gt; (property: variableName)
+ * &nbsp;&nbsp;&nbsp;The variable to store the number of threads in effect in.
+ * &nbsp;&nbsp;&nbsp;default: opencv_threads
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class OpenCVThreads
+  extends AbstractStandalone {
+
+  private static final long serialVersionUID = -3268826513591437616L;
+
+  /**
+   * How to determine the number of threads.
+   */
+  public enum Mode {
+    /** OpenCV's default. */
+    DEFAULT,
+    /** fixed number of threads. */
+    FIXED
+  }
+
+  /** the mode. */
+  protected Mode m_Mode;
+
+  /** the number of threads in FIXED mode. */
+  protected int m_NumThreads;
+
+  /** whether to store the number of threads in a variable. */
+  protected boolean m_SetVariable;
+
+  /** the variable to store the number of threads in. */
+  protected VariableName m_VariableName;
+
+  /** whether the number of threads got changed. */
+  protected boolean m_Modified;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+      "Controls the number of threads that OpenCV uses internally (e.g., in "
+	+ "blur, erode, detectMultiScale), in order to avoid oversubscribing "
+	+ "the machine when running several OpenCV actors in parallel branches.\n"
+	+ "FIXED uses the specified number of threads (e.g., the number of cores "
+	+ "divided by the number of parallel branches running OpenCV actors) and "
+	+ "DEFAULT restores OpenCV's own default.\n"
+	+ "Note: the setting is process-wide, i.e., it affects all flows running "
+	+ "in the same JVM, not just this one. Several flows with this actor "
+	+ "override each other: the one that executed last determines the number "
+	+ "of threads, and the first one to finish restores OpenCV's default for "
+	+ "all of them.\n"
+	+ "The number of threads in effect gets logged and can be stored in a "
+	+ "variable. OpenCV's default gets restored when the flow finishes.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "mode", "mode",
+      Mode.FIXED);
+
+    m_OptionManager.add(
+      "num-threads", "numThreads",
+      1, 1, null);
+
+    m_OptionManager.add(
+      "set-variable", "setVariable",
+      false);
+
+    m_OptionManager.add(
+      "var-name", "variableName",
+      new VariableName("opencv_threads"));
+  }
+
+  /**
+   * Sets how to determine the number of threads.
+   *
+   * @param value	the mode
+   */
+  public void setMode(Mode value) {
+    m_Mode = value;
+    reset();
+  }
+
+  /**
+   * Returns how to determine the number of threads.
+   *
+   * @return		the mode
+   */
+  public Mode getMode() {
+    return m_Mode;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String modeTipText() {
+    return "How to determine the number of threads for OpenCV.";
+  }
+
+  /**
+   * Sets the number of threads to use in FIXED mode.
+   *
+   * @param value	the number of threads
+   */
+  public void setNumThreads(int value) {
+    if (getOptionManager().isValid("numThreads", value)) {
+      m_NumThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads to use in FIXED mode.
+   *
+   * @return		the number of threads
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return "The number of threads to use in FIXED mode; 1 turns off OpenCV's internal parallelism.";
+  }
+
+  /**
+   * Sets whether to store the number of threads in a variable.
+   *
+   * @param value	true if to store
+   */
+  public void setSetVariable(boolean value) {
+    m_SetVariable = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to store the number of threads in a variable.
+   *
+   * @return		true if to store
+   */
+  public boolean getSetVariable() {
+    return m_SetVariable;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String setVariableTipText() {
+    return "If enabled, the number of threads in effect gets stored in the specified variable.";
+  }
+
+  /**
+   * Sets the variable to store the number of threads in.
+   *
+   * @param value	the variable name
+   */
+  public void setVariableName(VariableName value) {
+    m_VariableName = value;
+    reset();
+  }
+
+  /**
+   * Returns the variable to store the number of threads in.
+   *
+   * @return		the variable name
+   */
+  public VariableName getVariableName() {
+    return m_VariableName;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String variableNameTipText() {
+    return "The variable to store the number of threads in effect in.";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = QuickInfoHelper.toString(this, "mode", m_Mode, "mode: ");
+    switch (m_Mode) {
+      case FIXED:
+	result += QuickInfoHelper.toString(this, "numThreads", m_NumThreads, ", threads: ");
+	break;
+    }
+    if (m_SetVariable)
+      result += QuickInfoHelper.toString(this, "variableName", m_VariableName.paddedValue(), ", variable: ");
+
+    return result;
+  }
+
+  /**
+   * Determines the number of threads to use for OpenCV.
+   *
+   * @return		the number of threads, -1 for OpenCV's default
+   */
+  protected int determineNumThreads() {
+    switch (m_Mode) {
+      case DEFAULT:
+	return -1;
+      case FIXED:
+	return m_NumThreads;
+      default:
+	throw new IllegalStateException("Unhandled mode: " + m_Mode);
+    }
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String	result;
+    int		numThreads;
+    int		effective;
+
+    result = null;
+
+    try {
+      numThreads = determineNumThreads();
+      // OpenCV: 0 = sequential, negative = default
+      opencv_core.setNumThreads(numThreads == 1 ? 0 : numThreads);
+      m_Modified = true;
+      effective = opencv_core.getNumThreads();
+      getLogger().info(
+	"OpenCV threads in effect: " + effective + " (mode: " + m_Mode
+	  + ", requested: " + (numThreads == -1 ? "default" : numThreads)
+	  + ", available cores: " + Runtime.getRuntime().availableProcessors() + ")");
+      if (m_SetVariable)
+	getVariables().set(m_VariableName.getValue(), "" + effective);
+    }
+    catch (Throwable t) {
+      result = handleException("Failed to set number of OpenCV threads!", t);
+    }
+
+    return result;
+  }
+
+  /**
+   * Cleans up after the execution has finished, restoring OpenCV's default.
+   */
+  @Override
+  public void wrapUp() {
+    // getNumThreads only reports the threads in use, not whether the default was set
+    if (m_Modified) {
+      opencv_core.setNumThreads(-1);
+      m_Modified = false;
+    }
+
+    super.wrapUp();
+  }
+}
@@ -0,0 +1,1265 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * OpenCVDNNInference.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.transformer;
+
+import adams.core.QuickInfoHelper;
+import adams.core.base.BaseDouble;
+import adams.core.io.FileUtils;
+import adams.core.io.PlaceholderFile;
+import adams.data.image.AbstractImageContainer;
+import adams.data.opencv.OpenCVHelper;
+import adams.data.opencv.OpenCVImageContainer;
+import adams.data.report.DataType;
+import adams.data.report.Field;
+import adams.data.report.Report;
+import adams.data.spreadsheet.DefaultSpreadSheet;
+import adams.data.spreadsheet.Row;
+import adams.data.spreadsheet.SpreadSheet;
+import adams.flow.core.Token;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.MatVector;
+import org.bytedeco.javacpp.opencv_core.Scalar;
+import org.bytedeco.javacpp.opencv_core.Size;
+import org.bytedeco.javacpp.opencv_dnn;
+import org.bytedeco.javacpp.opencv_dnn.Net;
+import org.bytedeco.javacpp.opencv_imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ <!-- globalinfo-start -->
+ * Applies a deep neural network (e.g., ONNX, Caffe, TensorFlow) to the incoming images using OpenCV's DNN module on the CPU.<br>
+ * The model is only loaded once. Images get stacked into batches of the specified size before a forward pass is performed. A partially filled batch is processed once its oldest image has waited longer than the flush timeout, which gets checked whenever the flow executes the actor or queries it for output. Arrays of images are processed immediately (together with any buffered images), split into batches of the specified size; an empty array can therefore be used to flush the partial batch at the end of the input. Images that are still buffered when the flow finishes get processed, but their output can no longer be passed on.<br>
+ * The network output of each image is either stored in its report (top N classes and scores) or output as a spreadsheet (one row per image, with the running number of the image and its ID obtained from the report).
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.image.AbstractImageContainer<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.image.AbstractImageContainer[]<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.opencv.OpenCVImageContainer<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: OpenCVDNNInference
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseAnnotation&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-silent &lt;boolean&gt; (property: silent)
+ * &nbsp;&nbsp;&nbsp;If enabled, then no errors are output in the console.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-model &lt;adams.core.io.PlaceholderFile&gt; (property: model)
+ * &nbsp;&nbsp;&nbsp;The model file to load (e.g., .onnx, .caffemodel, .pb).
+ * &nbsp;&nbsp;&nbsp;default: ${CWD}
+ * </pre>
+ *
+ * <pre>-config &lt;adams.core.io.PlaceholderFile&gt; (property: config)
+ * &nbsp;&nbsp;&nbsp;The optional network configuration file (e.g., .prototxt, .pbtxt); ignored
+ * &nbsp;&nbsp;&nbsp;if pointing to a directory.
+ * &nbsp;&nbsp;&nbsp;default: ${CWD}
+ * </pre>
+ *
+ * <pre>-labels &lt;adams.core.io.PlaceholderFile&gt; (property: labels)
+ * &nbsp;&nbsp;&nbsp;The optional text file with the class labels (one per line); ignored if
+ * &nbsp;&nbsp;&nbsp;pointing to a directory.
+ * &nbsp;&nbsp;&nbsp;default: ${CWD}
+ * </pre>
+ *
+ * <pre>-width &lt;int&gt; (property: width)
+ * &nbsp;&nbsp;&nbsp;The width of the network input.
+ * &nbsp;&nbsp;&nbsp;default: 224
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-height &lt;int&gt; (property: height)
+ * &nbsp;&nbsp;&nbsp;The height of the network input.
+ * &nbsp;&nbsp;&nbsp;default: 224
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-scale-factor &lt;double&gt; (property: scaleFactor)
+ * &nbsp;&nbsp;&nbsp;The factor to multiply the pixel values with (after mean subtraction).
+ * &nbsp;&nbsp;&nbsp;default: 0.00392156862745098
+ * </pre>
+ *
+ * <pre>-mean &lt;adams.core.base.BaseDouble&gt; [-mean ...] (property: mean)
+ * &nbsp;&nbsp;&nbsp;The mean values to subtract from the channels (B, G, R order).
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-swap-rb &lt;boolean&gt; (property: swapRB)
+ * &nbsp;&nbsp;&nbsp;If enabled, the red and blue channels get swapped, i.e., the network receives
+ * &nbsp;&nbsp;&nbsp;RGB instead of BGR.
+ * &nbsp;&nbsp;&nbsp;default: true
+ * </pre>
+ *
+ * <pre>-crop &lt;boolean&gt; (property: crop)
+ * &nbsp;&nbsp;&nbsp;If enabled, the images get center-cropped after resizing while keeping
+ * &nbsp;&nbsp;&nbsp;the aspect ratio.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-batch-size &lt;int&gt; (property: batchSize)
+ * &nbsp;&nbsp;&nbsp;The number of images to stack into a single forward pass.
+ * &nbsp;&nbsp;&nbsp;default: 16
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-flush-timeout &lt;int&gt; (property: flushTimeout)
+ * &nbsp;&nbsp;&nbsp;The maximum time in msec a partially filled batch waits for more images
+ * &nbsp;&nbsp;&nbsp;before it gets processed (checked when the actor gets executed or queried
+ * &nbsp;&nbsp;&nbsp;for output); use 0 to wait until the batch is full or an image array arrives.
+ * &nbsp;&nbsp;&nbsp;default: 1000
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-output-type &lt;REPORT|SPREADSHEET&gt; (property: outputType)
+ * &nbsp;&nbsp;&nbsp;How to output the network predictions.
+ * &nbsp;&nbsp;&nbsp;default: REPORT
+ * </pre>
+ *
+ * <pre>-top &lt;int&gt; (property: top)
+ * &nbsp;&nbsp;&nbsp;The number of top-scoring classes to store in the report.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-prefix &lt;java.lang.String&gt; (property: prefix)
+ * &nbsp;&nbsp;&nbsp;The prefix for the report fields.
+ * &nbsp;&nbsp;&nbsp;default: DNN.
+ * </pre>
+ *
+ * <pre>-id-field &lt;adams.data.report.Field&gt; (property: IDField)
+ * &nbsp;&nbsp;&nbsp;The report field with the ID of the image (e.g., the filename), used in
+ * &nbsp;&nbsp;&nbsp;the spreadsheet output.
+ * &nbsp;&nbsp;&nbsp;default: Filename[S]
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class OpenCVDNNInference
+  extends AbstractTransformer {
+
+  private static final long serialVersionUID = 8417316427716284920L;
+
+  /**
+   * How to output the predictions.
+   */
+  public enum OutputType {
+    /** stores the top N classes/scores in the report of the images. */
+    REPORT,
+    /** outputs a spreadsheet with the raw network output per image. */
+    SPREADSHEET
+  }
+
+  /** the suffix for the class index. */
+  public final static String SUFFIX_CLASS = "Class-";
+
+  /** the suffix for the score. */
+  public final static String SUFFIX_SCORE = "Score-";
+
+  /** the suffix for the label. */
+  public final static String SUFFIX_LABEL = "Label-";
+
+  /** the model file. */
+  protected PlaceholderFile m_Model;
+
+  /** the configuration file. */
+  protected PlaceholderFile m_Config;
+
+  /** the labels file. */
+  protected PlaceholderFile m_Labels;
+
+  /** the width of the network input. */
+  protected int m_Width;
+
+  /** the height of the network input. */
+  protected int m_Height;
+
+  /** the scale factor for the pixels. */
+  protected double m_ScaleFactor;
+
+  /** the mean values to subtract. */
+  protected BaseDouble[] m_Mean;
+
+  /** whether to swap red and blue. */
+  protected boolean m_SwapRB;
+
+  /** whether to crop. */
+  protected boolean m_Crop;
+
+  /** the batch size. */
+  protected int m_BatchSize;
+
+  /** the flush timeout in msec. */
+  protected int m_FlushTimeout;
+
+  /** how to output the predictions. */
+  protected OutputType m_OutputType;
+
+  /** the number of top classes to store. */
+  protected int m_Top;
+
+  /** the prefix for the report fields. */
+  protected String m_Prefix;
+
+  /** the report field with the ID of the image. */
+  protected Field m_IDField;
+
+  /** the loaded network. */
+  protected transient Net m_Net;
+
+  /** the class labels. */
+  protected List<String> m_ClassLabels;
+
+  /** the buffered images. */
+  protected List<OpenCVImageContainer> m_Buffer;
+
+  /** the number of images processed so far. */
+  protected int m_Count;
+
+  /** the generated output. */
+  protected List m_Queue;
+
+  /** the time the oldest image of the partial batch got buffered. */
+  protected long m_BufferStart;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+      "Applies a deep neural network (e.g., ONNX, Caffe, TensorFlow) to the "
+	+ "incoming images using OpenCV's DNN module on the CPU.\n"
+	+ "The model is only loaded once. Images get stacked into batches of "
+	+ "the specified size before a forward pass is performed. A partially "
+	+ "filled batch is processed once its oldest image has waited longer "
+	+ "than the flush timeout, which gets checked whenever the flow executes "
+	+ "the actor or queries it for output. Arrays of images are processed "
+	+ "immediately (together with any buffered images), split into batches "
+	+ "of the specified size; an empty array can therefore be used to flush "
+	+ "the partial batch at the end of the input. Images that are still "
+	+ "buffered when the flow finishes get processed, but their output can "
+	+ "no longer be passed on.\n"
+	+ "The network output of each image is either stored in its report "
+	+ "(top N classes and scores) or output as a spreadsheet (one row per "
+	+ "image, with the running number of the image and its ID obtained "
+	+ "from the report).";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "model", "model",
+      new PlaceholderFile());
+
+    m_OptionManager.add(
+      "config", "config",
+      new PlaceholderFile());
+
+    m_OptionManager.add(
+      "labels", "labels",
+      new PlaceholderFile());
+
+    m_OptionManager.add(
+      "width", "width",
+      224, 1, null);
+
+    m_OptionManager.add(
+      "height", "height",
+      224, 1, null);
+
+    m_OptionManager.add(
+      "scale-factor", "scaleFactor",
+      1.0 / 255.0);
+
+    m_OptionManager.add(
+      "mean", "mean",
+      new BaseDouble[0]);
+
+    m_OptionManager.add(
+      "swap-rb", "swapRB",
+      true);
+
+    m_OptionManager.add(
+      "crop", "crop",
+      false);
+
+    m_OptionManager.add(
+      "batch-size", "batchSize",
+      16, 1, null);
+
+    m_OptionManager.add(
+      "flush-timeout", "flushTimeout",
+      1000, 0, null);
+
+    m_OptionManager.add(
+      "output-type", "outputType",
+      OutputType.REPORT);
+
+    m_OptionManager.add(
+      "top", "top",
+      1, 1, null);
+
+    m_OptionManager.add(
+      "prefix", "prefix",
+      "DNN.");
+
+    m_OptionManager.add(
+      "id-field", "IDField",
+      new Field("Filename", DataType.STRING));
+  }
+
+  /**
+   * Initializes the members.
+   */
+  @Override
+  protected void initialize() {
+    super.initialize();
+
+    m_Buffer = new ArrayList<>();
+    m_Queue  = new ArrayList();
+  }
+
+  /**
+   * Resets the scheme.
+   */
+  @Override
+  protected void reset() {
+    super.reset();
+
+    m_Buffer.clear();
+    m_Queue.clear();
+    m_Net         = null;
+    m_ClassLabels = null;
+    m_Count       = 0;
+  }
+
+  /**
+   * Sets the model file.
+   *
+   * @param value	the file
+   */
+  public void setModel(PlaceholderFile value) {
+    m_Model = value;
+    reset();
+  }
+
+  /**
+   * Returns the model file.
+   *
+   * @return		the file
+   */
+  public PlaceholderFile getModel() {
+    return m_Model;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String modelTipText() {
+    return "The model file to load (e.g., .onnx, .caffemodel, .pb).";
+  }
+
+  /**
+   * Sets the optional configuration file.
+   *
+   * @param value	the file
+   */
+  public void setConfig(PlaceholderFile value) {
+    m_Config = value;
+    reset();
+  }
+
+  /**
+   * Returns the optional configuration file.
+   *
+   * @return		the file
+   */
+  public PlaceholderFile getConfig() {
+    return m_Config;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String configTipText() {
+    return "The optional network configuration file (e.g., .prototxt, .pbtxt); ignored if pointing to a directory.";
+  }
+
+  /**
+   * Sets the optional file with the class labels.
+   *
+   * @param value	the file
+   */
+  public void setLabels(PlaceholderFile value) {
+    m_Labels = value;
+    reset();
+  }
+
+  /**
+   * Returns the optional file with the class labels.
+   *
+   * @return		the file
+   */
+  public PlaceholderFile getLabels() {
+    return m_Labels;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String labelsTipText() {
+    return "The optional text file with the class labels (one per line); ignored if pointing to a directory.";
+  }
+
+  /**
+   * Sets the width of the network input.
+   *
+   * @param value	the width
+   */
+  public void setWidth(int value) {
+    if (getOptionManager().isValid("width", value)) {
+      m_Width = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the width of the network input.
+   *
+   * @return		the width
+   */
+  public int getWidth() {
+    return m_Width;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String widthTipText() {
+    return "The width of the network input.";
+  }
+
+  /**
+   * Sets the height of the network input.
+   *
+   * @param value	the height
+   */
+  public void setHeight(int value) {
+    if (getOptionManager().isValid("height", value)) {
+      m_Height = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the height of the network input.
+   *
+   * @return		the height
+   */
+  public int getHeight() {
+    return m_Height;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String heightTipText() {
+    return "The height of the network input.";
+  }
+
+  /**
+   * Sets the factor to multiply the pixel values with.
+   *
+   * @param value	the factor
+   */
+  public void setScaleFactor(double value) {
+    m_ScaleFactor = value;
+    reset();
+  }
+
+  /**
+   * Returns the factor to multiply the pixel values with.
+   *
+   * @return		the factor
+   */
+  public double getScaleFactor() {
+    return m_ScaleFactor;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String scaleFactorTipText() {
+    return "The factor to multiply the pixel values with (after mean subtraction).";
+  }
+
+  /**
+   * Sets the mean values to subtract.
+   *
+   * @param value	the mean values
+   */
+  public void setMean(BaseDouble[] value) {
+    m_Mean = value;
+    reset();
+  }
+
+  /**
+   * Returns the mean values to subtract.
+   *
+   * @return		the mean values
+   */
+  public BaseDouble[] getMean() {
+    return m_Mean;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String meanTipText() {
+    return "The mean values to subtract from the channels (B, G, R order).";
+  }
+
+  /**
+   * Sets whether to swap red and blue channels.
+   *
+   * @param value	true if to swap
+   */
+  public void setSwapRB(boolean value) {
+    m_SwapRB = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to swap red and blue channels.
+   *
+   * @return		true if to swap
+   */
+  public boolean getSwapRB() {
+    return m_SwapRB;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String swapRBTipText() {
+    return "If enabled, the red and blue channels get swapped, i.e., the network receives RGB instead of BGR.";
+  }
+
+  /**
+   * Sets whether to center-crop the images.
+   *
+   * @param value	true if to crop
+   */
+  public void setCrop(boolean value) {
+    m_Crop = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to center-crop the images.
+   *
+   * @return		true if to crop
+   */
+  public boolean getCrop() {
+    return m_Crop;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String cropTipText() {
+    return "If enabled, the images get center-cropped after resizing while keeping the aspect ratio.";
+  }
+
+  /**
+   * Sets the number of images per forward pass.
+   *
+   * @param value	the batch size
+   */
+  public void setBatchSize(int value) {
+    if (getOptionManager().isValid("batchSize", value)) {
+      m_BatchSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of images per forward pass.
+   *
+   * @return		the batch size
+   */
+  public int getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String batchSizeTipText() {
+    return "The number of images to stack into a single forward pass.";
+  }
+
+  /**
+   * Sets the maximum time in msec that a partially filled batch waits.
+   *
+   * @param value	the timeout, 0 to wait for full batches
+   */
+  public void setFlushTimeout(int value) {
+    if (getOptionManager().isValid("flushTimeout", value)) {
+      m_FlushTimeout = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum time in msec that a partially filled batch waits.
+   *
+   * @return		the timeout, 0 to wait for full batches
+   */
+  public int getFlushTimeout() {
+    return m_FlushTimeout;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String flushTimeoutTipText() {
+    return
+      "The maximum time in msec a partially filled batch waits for more images "
+	+ "before it gets processed (checked when the actor gets executed or "
+	+ "queried for output); use 0 to wait until the batch is full or an image "
+	+ "array arrives.";
+  }
+
+  /**
+   * Sets how to output the predictions.
+   *
+   * @param value	the type
+   */
+  public void setOutputType(OutputType value) {
+    m_OutputType = value;
+    reset();
+  }
+
+  /**
+   * Returns how to output the predictions.
+   *
+   * @return		the type
+   */
+  public OutputType getOutputType() {
+    return m_OutputType;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String outputTypeTipText() {
+    return "How to output the network predictions.";
+  }
+
+  /**
+   * Sets the number of top-scoring classes to store in the report.
+   *
+   * @param value	the number of classes
+   */
+  public void setTop(int value) {
+    if (getOptionManager().isValid("top", value)) {
+      m_Top = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of top-scoring classes to store in the report.
+   *
+   * @return		the number of classes
+   */
+  public int getTop() {
+    return m_Top;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String topTipText() {
+    return "The number of top-scoring classes to store in the report.";
+  }
+
+  /**
+   * Sets the prefix for the report fields.
+   *
+   * @param value	the prefix
+   */
+  public void setPrefix(String value) {
+    m_Prefix = value;
+    reset();
+  }
+
+  /**
+   * Returns the prefix for the report fields.
+   *
+   * @return		the prefix
+   */
+  public String getPrefix() {
+    return m_Prefix;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String prefixTipText() {
+    return "The prefix for the report fields.";
+  }
+
+  /**
+   * Sets the report field with the ID of the image.
+   *
+   * @param value	the field
+   */
+  public void setIDField(Field value) {
+    m_IDField = value;
+    reset();
+  }
+
+  /**
+   * Returns the report field with the ID of the image.
+   *
+   * @return		the field
+   */
+  public Field getIDField() {
+    return m_IDField;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String IDFieldTipText() {
+    return "The report field with the ID of the image (e.g., the filename), used in the spreadsheet output.";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "model", m_Model, "model: ");
+    result += QuickInfoHelper.toString(this, "batchSize", m_BatchSize, ", batch: ");
+    result += QuickInfoHelper.toString(this, "outputType", m_OutputType, ", output: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return		the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{AbstractImageContainer.class, AbstractImageContainer[].class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the Class of objects that it generates
+   */
+  @Override
+  public Class[] generates() {
+    switch (m_OutputType) {
+      case REPORT:
+	return new Class[]{OpenCVImageContainer.class};
+      case SPREADSHEET:
+	return new Class[]{SpreadSheet.class};
+      default:
+	throw new IllegalStateException("Unhandled output type: " + m_OutputType);
+    }
+  }
+
+  /**
+   * Initializes the item for flow execution.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    result = super.setUp();
+
+    if (result == null) {
+      if (m_Model.isDirectory())
+	result = "Model is pointing to a directory, not a file: " + m_Model;
+      else if (!m_Model.exists())
+	result = "Model file does not exist: " + m_Model;
+    }
+
+    return result;
+  }
+
+  /**
+   * Loads the network and the labels, if necessary.
+   *
+   * @return		null if successful, otherwise error message
+   */
+  protected String loadNet() {
+    String	config;
+
+    if (m_Net != null)
+      return null;
+
+    config = "";
+    if (!m_Config.isDirectory() && m_Config.exists())
+      config = m_Config.getAbsolutePath();
+    m_Net = opencv_dnn.readNet(m_Model.getAbsolutePath(), config, "");
+    if ((m_Net == null) || m_Net.empty()) {
+      m_Net = null;
+      return "Failed to load network from: " + m_Model;
+    }
+    m_Net.setPreferableBackend(opencv_dnn.DNN_BACKEND_OPENCV);
+    m_Net.setPreferableTarget(opencv_dnn.DNN_TARGET_CPU);
+
+    m_ClassLabels = null;
+    if (!m_Labels.isDirectory() && m_Labels.exists()) {
+      m_ClassLabels = FileUtils.loadFromFile(m_Labels.getAbsoluteFile());
+      if (m_ClassLabels == null)
+	return "Failed to load labels from: " + m_Labels;
+    }
+
+    if (isLoggingEnabled())
+      getLogger().info("Loaded network: " + m_Model);
+
+    return null;
+  }
+
+  /**
+   * Turns the image into a 3-channel BGR matrix, as expected by the network.
+   * The matrix needs to be released by the caller.
+   *
+   * @param cont	the image to convert
+   * @return		the matrix
+   */
+  protected Mat toInput(OpenCVImageContainer cont) {
+    Mat		result;
+    Mat		mat;
+
+    mat = OpenCVHelper.toMat(cont.getImage());
+    switch (mat.channels()) {
+      case 1:
+	result = new Mat();
+	opencv_imgproc.cvtColor(mat, result, opencv_imgproc.COLOR_GRAY2BGR);
+	mat.release();
+	break;
+      case 4:
+	result = new Mat();
+	opencv_imgproc.cvtColor(mat, result, opencv_imgproc.COLOR_BGRA2BGR);
+	mat.release();
+	break;
+      default:
+	result = mat;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the mean to subtract.
+   *
+   * @return		the mean
+   */
+  protected Scalar getMeanScalar() {
+    double[]	mean;
+    int		i;
+
+    mean = new double[4];
+    for (i = 0; i < m_Mean.length && i < mean.length; i++)
+      mean[i] = m_Mean[i].doubleValue();
+
+    return new Scalar(mean[0], mean[1], mean[2], mean[3]);
+  }
+
+  /**
+   * Stores the network output in the report of the image.
+   *
+   * @param cont	the image to update
+   * @param output	the network output
+   * @param row		the row in the output corresponding to the image
+   */
+  protected void addToReport(OpenCVImageContainer cont, FloatIndexer output, int row) {
+    Report	report;
+    int		cols;
+    int		i;
+    int		n;
+    int		best;
+    boolean[]	used;
+
+    report = cont.getReport();
+    cols   = (int) output.cols();
+    used   = new boolean[cols];
+    for (n = 0; n < m_Top && n < cols; n++) {
+      best = -1;
+      for (i = 0; i < cols; i++) {
+	if (used[i])
+	  continue;
+	if ((best == -1) || (output.get(row, i) > output.get(row, best)))
+	  best = i;
+      }
+      used[best] = true;
+      report.setNumericValue(m_Prefix + SUFFIX_CLASS + (n + 1), best);
+      report.setNumericValue(m_Prefix + SUFFIX_SCORE + (n + 1), output.get(row, best));
+      if ((m_ClassLabels != null) && (best < m_ClassLabels.size()))
+	report.setStringValue(m_Prefix + SUFFIX_LABEL + (n + 1), m_ClassLabels.get(best));
+    }
+  }
+
+  /**
+   * Generates a spreadsheet from the network output. The image column
+   * contains the running number of the image (across all batches).
+   *
+   * @param batch	the images of the batch
+   * @param output	the network output
+   * @return		the spreadsheet
+   */
+  protected SpreadSheet toSpreadSheet(List<OpenCVImageContainer> batch, FloatIndexer output) {
+    SpreadSheet	result;
+    Row		row;
+    int		cols;
+    int		i;
+    int		n;
+
+    result = new DefaultSpreadSheet();
+    cols   = (int) output.cols();
+    row    = result.getHeaderRow();
+    row.addCell("I").setContentAsString("Image");
+    row.addCell("ID").setContentAsString("ID");
+    for (i = 0; i < cols; i++)
+      row.addCell("O" + i).setContentAsString("Output-" + (i + 1));
+
+    for (n = 0; n < batch.size(); n++) {
+      row = result.addRow();
+      row.addCell("I").setContent(m_Count - batch.size() + n + 1);
+      if (batch.get(n).getReport().hasValue(m_IDField))
+	row.addCell("ID").setContentAsString("" + batch.get(n).getReport().getValue(m_IDField));
+      else
+	row.addCell("ID").setMissing();
+      for (i = 0; i < cols; i++)
+	row.addCell("O" + i).setContent((double) output.get(n, i));
+    }
+
+    return result;
+  }
+
+  /**
+   * Performs a forward pass with the images and adds the results to the queue.
+   *
+   * @param batch	the images to process
+   */
+  protected void processBatch(List<OpenCVImageContainer> batch) {
+    MatVector		images;
+    List<Mat>		inputs;
+    Mat			input;
+    Mat			blob;
+    Mat			forward;
+    Mat			output;
+    FloatIndexer	indexer;
+    int			i;
+
+    images  = new MatVector(batch.size());
+    inputs  = new ArrayList<>();
+    blob    = null;
+    forward = null;
+    output  = null;
+    indexer = null;
+    try {
+      for (i = 0; i < batch.size(); i++) {
+	input = toInput(batch.get(i));
+	inputs.add(input);
+	images.put(i, input);
+      }
+
+      blob = opencv_dnn.blobFromImages(images, m_ScaleFactor, new Size(m_Width, m_Height), getMeanScalar(), m_SwapRB, m_Crop);
+      m_Net.setInput(blob);
+      // one row per image, regardless of the dimensionality of the output
+      forward = m_Net.forward();
+      output  = forward.reshape(1, batch.size());
+      indexer = output.createIndexer();
+      m_Count += batch.size();
+      switch (m_OutputType) {
+	case REPORT:
+	  for (i = 0; i < batch.size(); i++) {
+	    addToReport(batch.get(i), indexer, i);
+	    m_Queue.add(batch.get(i));
+	  }
+	  break;
+	case SPREADSHEET:
+	  m_Queue.add(toSpreadSheet(batch, indexer));
+	  break;
+	default:
+	  throw new IllegalStateException("Unhandled output type: " + m_OutputType);
+      }
+    }
+    finally {
+      // free the native memory straight away
+      if (indexer != null)
+	indexer.release();
+      if (output != null)
+	output.release();
+      if (forward != null)
+	forward.release();
+      if (blob != null)
+	blob.release();
+      for (Mat mat: inputs)
+	mat.release();
+      images.deallocate();
+    }
+
+    if (isLoggingEnabled())
+      getLogger().fine("Processed batch of " + batch.size() + " image(s)");
+  }
+
+  /**
+   * Processes the buffered images.
+   */
+  protected void flushBuffer() {
+    List<OpenCVImageContainer>	batch;
+
+    if (m_Buffer.size() == 0)
+      return;
+    batch = new ArrayList<>(m_Buffer);
+    m_Buffer.clear();
+    processBatch(batch);
+  }
+
+  /**
+   * Checks whether the oldest image of the partial batch has waited longer
+   * than the flush timeout.
+   *
+   * @return		true if the partial batch should get processed
+   */
+  protected boolean isFlushTimeoutExpired() {
+    return (m_FlushTimeout > 0)
+      && (m_Buffer.size() > 0)
+      && (System.currentTimeMillis() - m_BufferStart >= m_FlushTimeout);
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String			result;
+    AbstractImageContainer[]	conts;
+    List<OpenCVImageContainer>	batch;
+    int				i;
+
+    result = loadNet();
+    if (result != null)
+      return result;
+
+    try {
+      if (m_InputToken.getPayload() instanceof AbstractImageContainer[]) {
+	flushBuffer();
+	conts = (AbstractImageContainer[]) m_InputToken.getPayload();
+	batch = new ArrayList<>();
+	for (i = 0; i < conts.length; i++) {
+	  batch.add(OpenCVHelper.toOpenCVImageContainer(conts[i]));
+	  if (batch.size() == m_BatchSize) {
+	    processBatch(batch);
+	    batch = new ArrayList<>();
+	  }
+	}
+	if (batch.size() > 0)
+	  processBatch(batch);
+      }
+      else {
+	if (m_Buffer.size() == 0)
+	  m_BufferStart = System.currentTimeMillis();
+	m_Buffer.add(OpenCVHelper.toOpenCVImageContainer((AbstractImageContainer) m_InputToken.getPayload()));
+	if ((m_Buffer.size() >= m_BatchSize) || isFlushTimeoutExpired())
+	  flushBuffer();
+      }
+    }
+    catch (Exception e) {
+      result = handleException("Failed to apply network: ", e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether there is pending output to be collected after
+   * executing the flow item. Processes the partial batch if the flush
+   * timeout has expired.
+   *
+   * @return		true if there is pending output
+   */
+  @Override
+  public boolean hasPendingOutput() {
+    if ((m_Queue.size() == 0) && (m_Net != null) && !isStopped() && isFlushTimeoutExpired()) {
+      if (isLoggingEnabled())
+	getLogger().info("Flush timeout expired, processing " + m_Buffer.size() + " image(s)");
+      try {
+	flushBuffer();
+      }
+      catch (Exception e) {
+	handleException("Failed to apply network to partial batch: ", e);
+      }
+    }
+
+    return (m_Queue.size() > 0);
+  }
+
+  /**
+   * Returns the generated token.
+   *
+   * @return		the generated token
+   */
+  @Override
+  public Token output() {
+    Token	result;
+
+    result = new Token(m_Queue.get(0));
+    m_Queue.remove(0);
+
+    return result;
+  }
+
+  /**
+   * Cleans up after the execution has finished.
+   */
+  @Override
+  public void wrapUp() {
+    // process the remaining images, e.g., to update the reports of images
+    // that are also being held elsewhere
+    if ((m_Buffer.size() > 0) && (m_Net != null)) {
+      try {
+	flushBuffer();
+      }
+      catch (Exception e) {
+	handleException("Failed to apply network to final batch: ", e);
+      }
+    }
+    if (m_Queue.size() > 0)
+      getLogger().warning(
+	"Flow finished, unable to pass on the output of " + m_Queue.size() + " token(s); "
+	  + "use an empty image array to flush the partial batch at the end of the input");
+    m_Buffer.clear();
+    m_Queue.clear();
+    m_Net = null;
+
+    super.wrapUp();
+  }
+}
@@ -15,7 +15,7 @@
 
 /*
  * OpenCVFeatureGenerator.java
- * Copyright (C) 2014-2018 University of Waikato, Hamilton, New Zealand
+ * Copyright (C) 2014-2026 University of Waikato, Hamilton, New Zealand
  */
 
 package adams.flow.transformer;
@@ -25,8 +25,13 @@ import adams.core.QuickInfoHelper;
 import adams.core.VariableName;
 import adams.data.image.AbstractImageContainer;
 import adams.data.opencv.OpenCVHelper;
+import adams.data.opencv.OpenCVImageContainer;
+import adams.data.opencv.ScriptObjectCache;
 import adams.data.opencv.features.AbstractOpenCVFeatureGenerator;
+import adams.data.opencv.features.AbstractScriptedFeatureGenerator;
 import adams.data.opencv.features.Pixels;
+import adams.data.spreadsheet.Row;
+import adams.data.spreadsheet.SpreadSheet;
 import adams.event.VariableChangeEvent;
 import adams.event.VariableChangeEvent.Type;
 import adams.flow.core.Token;
@@ -34,17 +39,23 @@ import adams.flow.core.Token;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
- * Applies a OpenCV feature generator to the incoming image and outputs the generated features.
+ * Applies a OpenCV feature generator to the incoming image and outputs the generated features.<br>
+ * In batch mode (batch size &gt; 1), images get accumulated until the batch is full and the features of the batch get generated in parallel. If the generated features are spreadsheet rows, they get output as a single spreadsheet with a shared header, otherwise the features get output one by one. Arrays of images are processed as a batch straight away, together with any buffered images; an empty array can therefore be used to flush the incomplete batch at the end of the input. Alternatively, an incomplete batch gets processed once its oldest image has waited longer than the flush timeout, which gets checked whenever the flow executes the actor or queries it for output. Images that are still buffered when the flow finishes get discarded.
  * <br><br>
  <!-- globalinfo-end -->
  *
  <!-- flow-summary-start -->
  * Input&#47;output:<br>
  * - accepts:<br>
- * &nbsp;&nbsp;&nbsp;adams.data.opencv.OpenCVImageContainer<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.image.AbstractImageContainer<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.image.AbstractImageContainer[]<br>
  * - generates:<br>
  * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.Row<br>
  * <br><br>
@@ -83,6 +94,32 @@ import java.util.Hashtable;
  * &nbsp;&nbsp;&nbsp;default: adams.data.opencv.features.Pixels -converter \"adams.data.featureconverter.SpreadSheetFeatureConverter -data-row-type adams.data.spreadsheet.DenseDataRow -spreadsheet-type adams.data.spreadsheet.SpreadSheet\"
  * </pre>
  * 
+ * <pre>-var-name &lt;adams.core.VariableName&gt; (property: variableName)
+ * &nbsp;&nbsp;&nbsp;The variable to monitor for resetting trainable batch filters.
+ * &nbsp;&nbsp;&nbsp;default: variable
+ * </pre>
+ * 
+ * <pre>-batch-size &lt;int&gt; (property: batchSize)
+ * &nbsp;&nbsp;&nbsp;The number of images to process as a batch; 1 turns off batch mode.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ * 
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads to use for generating the features of a batch; -1
+ * &nbsp;&nbsp;&nbsp;uses all available cores.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ * 
+ * <pre>-flush-timeout &lt;int&gt; (property: flushTimeout)
+ * &nbsp;&nbsp;&nbsp;The maximum time in msec an incomplete batch waits for more images before
+ * &nbsp;&nbsp;&nbsp;it gets processed (checked when the actor gets executed or queried for output);
+ * &nbsp;&nbsp;&nbsp;use 0 to wait until the batch is full or an image array arrives.
+ * &nbsp;&nbsp;&nbsp;default: 0
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ * 
  <!-- options-end -->
  *
  * @author  fracpete (fracpete at waikato dot ac dot nz)
@@ -100,6 +137,9 @@ public class OpenCVFeatureGenerator
   /** the key for storing the current algorithm in the backup. */
   public final static String BACKUP_ALGORITHM = "algorithm";
 
+  /** the key for storing the buffered images in the backup. */
+  public final static String BACKUP_BUFFER = "buffer";
+
   /** the algorithm to apply to the image. */
   protected AbstractOpenCVFeatureGenerator m_Algorithm;
 
@@ -109,9 +149,30 @@ public class OpenCVFeatureGenerator
   /** the variable to listen to. */
   protected VariableName m_VariableName;
 
+  /** the batch size. */
+  protected int m_BatchSize;
+
+  /** the number of threads to use. */
+  protected int m_NumThreads;
+
+  /** the flush timeout in msec. */
+  protected int m_FlushTimeout;
+
   /** the generated objects. */
   protected ArrayList m_Queue;
 
+  /** the buffered images (batch mode). */
+  protected ArrayList<OpenCVImageContainer> m_Buffer;
+
+  /** the time the oldest image of the incomplete batch got buffered. */
+  protected long m_BufferStart;
+
+  /** the algorithm copies for the threads (batch mode). */
+  protected transient AbstractOpenCVFeatureGenerator[] m_ThreadAlgorithms;
+
+  /** the executor for generating the features in parallel (batch mode). */
+  protected transient ExecutorService m_Executor;
+
   /**
    * Returns a string describing the object.
    *
@@ -121,7 +182,19 @@ public class OpenCVFeatureGenerator
   public String globalInfo() {
     return
         "Applies a OpenCV feature generator to the incoming image and outputs "
-      + "the generated features.";
+      + "the generated features.\n"
+      + "In batch mode (batch size > 1), images get accumulated until the batch "
+      + "is full and the features of the batch get generated in parallel. If "
+      + "the generated features are spreadsheet rows, they get output as a "
+      + "single spreadsheet with a shared header, otherwise the features get "
+      + "output one by one. "
+      + "Arrays of images are processed as a batch straight away, together "
+      + "with any buffered images; an empty array can therefore be used to "
+      + "flush the incomplete batch at the end of the input. Alternatively, "
+      + "an incomplete batch gets processed once its oldest image has waited "
+      + "longer than the flush timeout, which gets checked whenever the flow "
+      + "executes the actor or queries it for output. "
+      + "Images that are still buffered when the flow finishes get discarded.";
   }
 
   /**
@@ -138,6 +211,18 @@ public class OpenCVFeatureGenerator
     m_OptionManager.add(
       "var-name", "variableName",
       new VariableName());
+
+    m_OptionManager.add(
+      "batch-size", "batchSize",
+      1, 1, null);
+
+    m_OptionManager.add(
+      "num-threads", "numThreads",
+      1, -1, null);
+
+    m_OptionManager.add(
+      "flush-timeout", "flushTimeout",
+      0, 0, null);
   }
 
   /**
@@ -147,7 +232,8 @@ public class OpenCVFeatureGenerator
   protected void initialize() {
     super.initialize();
     
-    m_Queue = new ArrayList();
+    m_Queue  = new ArrayList();
+    m_Buffer = new ArrayList<>();
   }
   
   /**
@@ -158,7 +244,9 @@ public class OpenCVFeatureGenerator
     super.reset();
     
     m_Queue.clear();
-    m_ActualAlgorithm = null;
+    m_Buffer.clear();
+    m_ActualAlgorithm  = null;
+    m_ThreadAlgorithms = null;
   }
 
   /**
@@ -219,6 +307,103 @@ public class OpenCVFeatureGenerator
     return "The variable to monitor for resetting trainable batch filters.";
   }
 
+  /**
+   * Sets the number of images to process as a batch.
+   *
+   * @param value	the batch size, 1 turns off batch mode
+   */
+  public void setBatchSize(int value) {
+    if (getOptionManager().isValid("batchSize", value)) {
+      m_BatchSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of images to process as a batch.
+   *
+   * @return		the batch size, 1 turns off batch mode
+   */
+  public int getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String batchSizeTipText() {
+    return "The number of images to process as a batch; 1 turns off batch mode.";
+  }
+
+  /**
+   * Sets the number of threads to use for generating the features of a batch.
+   *
+   * @param value	the number of threads, -1 for all cores
+   */
+  public void setNumThreads(int value) {
+    if (getOptionManager().isValid("numThreads", value)) {
+      m_NumThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads to use for generating the features of a batch.
+   *
+   * @return		the number of threads, -1 for all cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return "The number of threads to use for generating the features of a batch; -1 uses all available cores.";
+  }
+
+  /**
+   * Sets the maximum time in msec that an incomplete batch waits.
+   *
+   * @param value	the timeout, 0 to wait for full batches
+   */
+  public void setFlushTimeout(int value) {
+    if (getOptionManager().isValid("flushTimeout", value)) {
+      m_FlushTimeout = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum time in msec that an incomplete batch waits.
+   *
+   * @return		the timeout, 0 to wait for full batches
+   */
+  public int getFlushTimeout() {
+    return m_FlushTimeout;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String flushTimeoutTipText() {
+    return
+      "The maximum time in msec an incomplete batch waits for more images "
+	+ "before it gets processed (checked when the actor gets executed or "
+	+ "queried for output); use 0 to wait until the batch is full or an "
+	+ "image array arrives.";
+  }
+
   /**
    * Returns a quick info about the actor, which will be displayed in the GUI.
    *
@@ -230,6 +415,12 @@ public class OpenCVFeatureGenerator
 
     result = QuickInfoHelper.toString(this, "algorithm", m_Algorithm, "algorithm: ");
     result += QuickInfoHelper.toString(this, "variableName", m_VariableName.paddedValue(), ", monitor: ");
+    if (m_BatchSize > 1) {
+      result += QuickInfoHelper.toString(this, "batchSize", m_BatchSize, ", batch: ");
+      result += QuickInfoHelper.toString(this, "numThreads", m_NumThreads, ", threads: ");
+      if (m_FlushTimeout > 0)
+	result += QuickInfoHelper.toString(this, "flushTimeout", m_FlushTimeout, ", timeout: ");
+    }
 
     return result;
   }
@@ -243,6 +434,7 @@ public class OpenCVFeatureGenerator
 
     pruneBackup(BACKUP_QUEUE);
     pruneBackup(BACKUP_ALGORITHM);
+    pruneBackup(BACKUP_BUFFER);
   }
 
   /**
@@ -257,6 +449,7 @@ public class OpenCVFeatureGenerator
     result = super.backupState();
 
     result.put(BACKUP_QUEUE, m_Queue);
+    result.put(BACKUP_BUFFER, m_Buffer);
     if (m_ActualAlgorithm != null)
       result.put(BACKUP_ALGORITHM, m_ActualAlgorithm);
 
@@ -274,6 +467,10 @@ public class OpenCVFeatureGenerator
       m_Queue = (ArrayList) state.get(BACKUP_QUEUE);
       state.remove(BACKUP_QUEUE);
     }
+    if (state.containsKey(BACKUP_BUFFER)) {
+      m_Buffer = (ArrayList<OpenCVImageContainer>) state.get(BACKUP_BUFFER);
+      state.remove(BACKUP_BUFFER);
+    }
     if (state.containsKey(BACKUP_ALGORITHM)) {
       m_ActualAlgorithm = (AbstractOpenCVFeatureGenerator) state.get(BACKUP_ALGORITHM);
       state.remove(BACKUP_ALGORITHM);
@@ -292,7 +489,8 @@ public class OpenCVFeatureGenerator
     super.variableChanged(e);
     if ((e.getType() == Type.MODIFIED) || (e.getType() == Type.ADDED)) {
       if (e.getName().equals(m_VariableName.getValue())) {
-	m_ActualAlgorithm = null;
+	m_ActualAlgorithm  = null;
+	m_ThreadAlgorithms = null;
 	if (isLoggingEnabled())
 	  getLogger().info("Reset 'algorithm'");
       }
@@ -305,7 +503,7 @@ public class OpenCVFeatureGenerator
    * @return		the Class of objects that can be processed
    */
   public Class[] accepts() {
-    return new Class[]{AbstractImageContainer.class};
+    return new Class[]{AbstractImageContainer.class, AbstractImageContainer[].class};
   }
 
   /**
@@ -316,10 +514,43 @@ public class OpenCVFeatureGenerator
   public Class[] generates() {
     if (m_Algorithm == null)
       return new Class[]{Object.class};
+    else if ((m_BatchSize > 1) && Row.class.isAssignableFrom(m_Algorithm.getRowFormat()))
+      return new Class[]{SpreadSheet.class};
     else
       return new Class[]{m_Algorithm.getRowFormat()};
   }
 
+  /**
+   * Returns the actual number of threads to use.
+   *
+   * @return		the number of threads
+   */
+  protected int determineNumThreads() {
+    if (m_NumThreads == -1)
+      return Runtime.getRuntime().availableProcessors();
+    else
+      return m_NumThreads;
+  }
+
+  /**
+   * Initializes the item for flow execution.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    result = super.setUp();
+
+    if (result == null) {
+      if ((m_BatchSize > 1) && (determineNumThreads() > 1))
+	m_Executor = Executors.newFixedThreadPool(determineNumThreads());
+    }
+
+    return result;
+  }
+
   /**
    * Executes the flow item.
    *
@@ -327,15 +558,43 @@ public class OpenCVFeatureGenerator
    */
   @Override
   protected String doExecute() {
-    String	result;
+    String			result;
+    AbstractImageContainer[]	conts;
+    List<OpenCVImageContainer>	batch;
 
     result = null;
 
     m_Queue.clear();
     try {
-      if (m_ActualAlgorithm == null)
-        m_ActualAlgorithm = ObjectCopyHelper.copyObject(m_Algorithm);
-      m_Queue.addAll(Arrays.asList(m_ActualAlgorithm.generate(OpenCVHelper.toOpenCVImageContainer((AbstractImageContainer) m_InputToken.getPayload()))));
+      if (m_BatchSize > 1) {
+	if (m_InputToken.getPayload() instanceof AbstractImageContainer[]) {
+	  conts = (AbstractImageContainer[]) m_InputToken.getPayload();
+	  batch = new ArrayList<>(m_Buffer);
+	  m_Buffer.clear();
+	  for (AbstractImageContainer cont: conts)
+	    batch.add(OpenCVHelper.toOpenCVImageContainer(cont));
+	  processBatch(batch);
+	}
+	else {
+	  if (m_Buffer.size() == 0)
+	    m_BufferStart = System.currentTimeMillis();
+	  m_Buffer.add(OpenCVHelper.toOpenCVImageContainer((AbstractImageContainer) m_InputToken.getPayload()));
+	  if ((m_Buffer.size() >= m_BatchSize) || isFlushTimeoutExpired())
+	    flushBuffer();
+	}
+      }
+      else {
+	if (m_ActualAlgorithm == null)
+	  m_ActualAlgorithm = ObjectCopyHelper.copyObject(m_Algorithm);
+	if (m_InputToken.getPayload() instanceof AbstractImageContainer[]) {
+	  conts = (AbstractImageContainer[]) m_InputToken.getPayload();
+	  for (AbstractImageContainer cont: conts)
+	    m_Queue.addAll(Arrays.asList(m_ActualAlgorithm.generate(OpenCVHelper.toOpenCVImageContainer(cont))));
+	}
+	else {
+	  m_Queue.addAll(Arrays.asList(m_ActualAlgorithm.generate(OpenCVHelper.toOpenCVImageContainer((AbstractImageContainer) m_InputToken.getPayload()))));
+	}
+      }
     }
     catch (Exception e) {
       result = handleException("Failed to generate features: ", e);
@@ -344,14 +603,155 @@ public class OpenCVFeatureGenerator
     return result;
   }
 
+  /**
+   * Checks whether the oldest image of the incomplete batch has waited
+   * longer than the flush timeout.
+   *
+   * @return		true if the incomplete batch should get processed
+   */
+  protected boolean isFlushTimeoutExpired() {
+    return (m_FlushTimeout > 0)
+      && (m_Buffer.size() > 0)
+      && (System.currentTimeMillis() - m_BufferStart >= m_FlushTimeout);
+  }
+
+  /**
+   * Processes the buffered images.
+   *
+   * @throws Exception	if feature generation fails
+   */
+  protected void flushBuffer() throws Exception {
+    List<OpenCVImageContainer>	batch;
+
+    batch = new ArrayList<>(m_Buffer);
+    m_Buffer.clear();
+    processBatch(batch);
+  }
+
+  /**
+   * Generates the features for the batch of images, using the specified
+   * number of threads. Each thread works on a contiguous chunk of the batch
+   * with its own copy of the algorithm, keeping the order of the images.
+   *
+   * @param batch	the images to process
+   * @throws Exception	if feature generation fails
+   */
+  protected void processBatch(List<OpenCVImageContainer> batch) throws Exception {
+    List<Future<List<Object>>>	jobs;
+    List<Object>		generated;
+    int				numThreads;
+    int				chunk;
+    int				i;
+    int				start;
+    int				end;
+    final List<OpenCVImageContainer> part;
+    final AbstractOpenCVFeatureGenerator algorithm;
+
+    if (batch.size() == 0)
+      return;
+
+    numThreads = Math.max(1, Math.min(determineNumThreads(), batch.size()));
+    if ((m_ThreadAlgorithms == null) || (m_ThreadAlgorithms.length < numThreads)) {
+      m_ThreadAlgorithms = new AbstractOpenCVFeatureGenerator[numThreads];
+      for (i = 0; i < numThreads; i++)
+	m_ThreadAlgorithms[i] = ObjectCopyHelper.copyObject(m_Algorithm);
+    }
+
+    generated = new ArrayList<>();
+    if (numThreads == 1) {
+      for (OpenCVImageContainer cont: batch)
+	generated.addAll(Arrays.asList(m_ThreadAlgorithms[0].generate(cont)));
+    }
+    else {
+      // the pool is created in setUp, only restored states need a new one
+      if (m_Executor == null)
+	m_Executor = Executors.newFixedThreadPool(determineNumThreads());
+      chunk = (int) Math.ceil((double) batch.size() / numThreads);
+      jobs  = new ArrayList<>();
+      try {
+	for (i = 0; i < numThreads; i++) {
+	  start = i * chunk;
+	  end   = Math.min(batch.size(), start + chunk);
+	  if (start >= end)
+	    break;
+	  part      = batch.subList(start, end);
+	  algorithm = m_ThreadAlgorithms[i];
+	  jobs.add(m_Executor.submit(() -> {
+	    List<Object> features = new ArrayList<>();
+	    for (OpenCVImageContainer cont: part)
+	      features.addAll(Arrays.asList(algorithm.generate(cont)));
+	    return features;
+	  }));
+	}
+	for (Future<List<Object>> job: jobs)
+	  generated.addAll(job.get());
+      }
+      catch (Exception e) {
+	for (Future<List<Object>> job: jobs)
+	  job.cancel(true);
+	throw e;
+      }
+    }
+
+    if ((generated.size() > 0) && (generated.get(0) instanceof Row))
+      m_Queue.add(toSpreadSheet(generated));
+    else
+      m_Queue.addAll(generated);
+  }
+
+  /**
+   * Combines the rows into a single spreadsheet, using the header of the
+   * first row. Cells get matched by column position, as the rows can
+   * originate from different algorithm copies.
+   *
+   * @param rows	the rows to combine
+   * @return		the spreadsheet
+   */
+  protected SpreadSheet toSpreadSheet(List<Object> rows) {
+    SpreadSheet		result;
+    Row			header;
+    Row			srcHeader;
+    Row			src;
+    Row			dest;
+    int			i;
+    String		key;
+
+    result = ((Row) rows.get(0)).getOwner().getHeader();
+    header = result.getHeaderRow();
+    for (Object obj: rows) {
+      src       = (Row) obj;
+      srcHeader = src.getOwner().getHeaderRow();
+      dest      = result.addRow();
+      for (i = 0; i < header.getCellCount(); i++) {
+	key = srcHeader.getCellKey(i);
+	if (src.hasCell(key))
+	  dest.addCell(header.getCellKey(i)).assign(src.getCell(key));
+      }
+    }
+
+    return result;
+  }
+
   /**
    * Checks whether there is pending output to be collected after
-   * executing the flow item.
+   * executing the flow item. Processes the incomplete batch if the flush
+   * timeout has expired.
    *
    * @return		true if there is pending output
    */
   @Override
   public boolean hasPendingOutput() {
+    if ((m_Queue.size() == 0) && !isStopped() && isFlushTimeoutExpired()) {
+      if (isLoggingEnabled())
+	getLogger().info("Flush timeout expired, processing " + m_Buffer.size() + " image(s)");
+      try {
+	flushBuffer();
+      }
+      catch (Exception e) {
+	handleException("Failed to generate features for incomplete batch: ", e);
+      }
+    }
+
     return (m_Queue.size() > 0);
   }
 
@@ -375,8 +775,48 @@ public class OpenCVFeatureGenerator
    */
   @Override
   public void wrapUp() {
+    if (m_Buffer.size() > 0)
+      getLogger().warning(
+	"Flow finished, discarding " + m_Buffer.size() + " image(s) of incomplete batch; "
+	  + "use an empty image array or the flush timeout to process incomplete batches");
+
     m_Queue.clear();
+    m_Buffer.clear();
+    m_ThreadAlgorithms = null;
+    shutdownExecutor();
 
     super.wrapUp();
   }
+
+  /**
+   * Shuts down the executor, if necessary.
+   */
+  protected void shutdownExecutor() {
+    if (m_Executor != null) {
+      m_Executor.shutdownNow();
+      m_Executor = null;
+    }
+  }
+
+  /**
+   * Removes the script objects of a scripted feature generator from the cache.
+   *
+   * @param algorithm	the feature generator to check, can be null
+   */
+  protected void removeCachedScript(AbstractOpenCVFeatureGenerator algorithm) {
+    if (algorithm instanceof AbstractScriptedFeatureGenerator)
+      ScriptObjectCache.remove(((AbstractScriptedFeatureGenerator) algorithm).getScriptFile());
+  }
+
+  /**
+   * Frees up memory in a "destructive" non-reversible way.
+   */
+  @Override
+  public void cleanUp() {
+    shutdownExecutor();
+    removeCachedScript(m_Algorithm);
+    removeCachedScript(m_ActualAlgorithm);
+
+    super.cleanUp();
+  }
 }
@@ -0,0 +1,286 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * OpenCVMultiPageReader.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.transformer;
+
+import adams.core.io.PlaceholderFile;
+import adams.data.opencv.OpenCVHelper;
+import adams.data.opencv.OpenCVImageContainer;
+import adams.flow.core.Token;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Iterator;
+import java.util.logging.Level;
+
+/**
+ <!-- globalinfo-start -->
+ * Reads the pages of a multi-page image file (e.g., TIFF) one at a time and outputs them as OpenCV images.<br>
+ * A page only gets decoded when the next actor requests it, i.e., the stack is never held in memory as a whole.<br>
+ * The 0-based index of the page gets stored in the report under 'Page'.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;java.lang.String<br>
+ * &nbsp;&nbsp;&nbsp;java.io.File<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.opencv.OpenCVImageContainer<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: OpenCVMultiPageReader
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseAnnotation&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-silent &lt;boolean&gt; (property: silent)
+ * &nbsp;&nbsp;&nbsp;If enabled, then no errors are output in the console.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class OpenCVMultiPageReader
+  extends AbstractTransformer {
+
+  private static final long serialVersionUID = 2976004372167329517L;
+
+  /** the report field for the page index. */
+  public final static String FIELD_PAGE = "Page";
+
+  /** the current file. */
+  protected transient File m_CurrentFile;
+
+  /** the input stream of the current file. */
+  protected transient ImageInputStream m_Stream;
+
+  /** the reader for the current file. */
+  protected transient ImageReader m_Reader;
+
+  /** the next page to read. */
+  protected int m_NextPage;
+
+  /** the next image (already decoded). */
+  protected OpenCVImageContainer m_NextImage;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+      "Reads the pages of a multi-page image file (e.g., TIFF) one at a time "
+	+ "and outputs them as OpenCV images.\n"
+	+ "A page only gets decoded when the next actor requests it, i.e., the "
+	+ "stack is never held in memory as a whole.\n"
+	+ "The 0-based index of the page gets stored in the report under '" + FIELD_PAGE + "'.";
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return		the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{String.class, File.class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the Class of objects that it generates
+   */
+  @Override
+  public Class[] generates() {
+    return new Class[]{OpenCVImageContainer.class};
+  }
+
+  /**
+   * Closes the reader and stream of the current file, if any.
+   */
+  protected void close() {
+    if (m_Reader != null) {
+      m_Reader.dispose();
+      m_Reader = null;
+    }
+    if (m_Stream != null) {
+      try {
+	m_Stream.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      m_Stream = null;
+    }
+    m_CurrentFile = null;
+    m_NextImage   = null;
+  }
+
+  /**
+   * Decodes the next page, if available. Closes the file once all pages
+   * have been read.
+   */
+  protected void readNext() {
+    BufferedImage	img;
+
+    m_NextImage = null;
+    if (m_Reader == null)
+      return;
+
+    img = null;
+    try {
+      img = m_Reader.read(m_NextPage);
+    }
+    catch (IndexOutOfBoundsException e) {
+      // no more pages
+    }
+    catch (Exception e) {
+      getLogger().log(Level.SEVERE, "Failed to read page #" + m_NextPage + " of: " + m_CurrentFile, e);
+    }
+
+    if (img == null) {
+      close();
+      return;
+    }
+
+    m_NextImage = new OpenCVImageContainer();
+    m_NextImage.setImage(OpenCVHelper.toOpenCVImage(img));
+    m_NextImage.getReport().setNumericValue(FIELD_PAGE, m_NextPage);
+    m_NextPage++;
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String			result;
+    Iterator<ImageReader>	readers;
+
+    result = null;
+
+    close();
+    if (m_InputToken.getPayload() instanceof File)
+      m_CurrentFile = new PlaceholderFile((File) m_InputToken.getPayload()).getAbsoluteFile();
+    else
+      m_CurrentFile = new PlaceholderFile((String) m_InputToken.getPayload()).getAbsoluteFile();
+
+    try {
+      m_Stream = ImageIO.createImageInputStream(m_CurrentFile);
+      if (m_Stream == null) {
+	result = "Failed to open: " + m_CurrentFile;
+      }
+      else {
+	readers = ImageIO.getImageReaders(m_Stream);
+	if (!readers.hasNext()) {
+	  result = "No image reader available for: " + m_CurrentFile;
+	}
+	else {
+	  m_Reader = readers.next();
+	  // no seeking back required, pages are read sequentially
+	  m_Reader.setInput(m_Stream, true, true);
+	  m_NextPage = 0;
+	  readNext();
+	}
+      }
+    }
+    catch (Exception e) {
+      result = handleException("Failed to open: " + m_CurrentFile, e);
+    }
+
+    if (result != null)
+      close();
+
+    return result;
+  }
+
+  /**
+   * Checks whether there is pending output to be collected after
+   * executing the flow item.
+   *
+   * @return		true if there is pending output
+   */
+  @Override
+  public boolean hasPendingOutput() {
+    return (m_NextImage != null) && !isStopped();
+  }
+
+  /**
+   * Returns the generated token.
+   *
+   * @return		the generated token
+   */
+  @Override
+  public Token output() {
+    Token	result;
+
+    result = new Token(m_NextImage);
+    readNext();
+
+    return result;
+  }
+
+  /**
+   * Cleans up after the execution has finished.
+   */
+  @Override
+  public void wrapUp() {
+    close();
+
+    super.wrapUp();
+  }
+}
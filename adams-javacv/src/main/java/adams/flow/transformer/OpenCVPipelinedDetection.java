@@ -0,0 +1,1202 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * OpenCVPipelinedDetection.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.transformer;
+
+import adams.core.QuickInfoHelper;
+import adams.core.io.PlaceholderDirectory;
+import adams.core.io.PlaceholderFile;
+import adams.data.spreadsheet.DefaultSpreadSheet;
+import adams.data.spreadsheet.Row;
+import adams.data.spreadsheet.SpreadSheet;
+import adams.flow.core.Token;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Rect;
+import org.bytedeco.javacpp.opencv_core.RectVector;
+import org.bytedeco.javacpp.opencv_core.Size;
+import org.bytedeco.javacpp.opencv_imgcodecs;
+import org.bytedeco.javacpp.opencv_imgproc;
+import org.bytedeco.javacpp.opencv_objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ <!-- globalinfo-start -->
+ * Applies an OpenCV cascade classifier to a batch of image files and writes the located objects as images to the output directory, using a pipeline of four stages: reading the files, decoding the images, detecting the objects and encoding&#47;writing the detected objects.<br>
+ * Each stage has its own pool of threads and the stages are connected via bounded queues, so that disk I&#47;O, decoding and detection overlap. The wall-clock time is therefore determined by the slowest stage rather than by the sum of all stages.<br>
+ * The objects get stored as OUTPUTDIR&#47;NAME-N.EXT, with NAME being the name of the image file (without extension), N the index of the object (1-based) and EXT the output format.<br>
+ * If a stage fails with an unrecoverable error or the timeout is exceeded, the pipeline gets aborted.<br>
+ * Outputs a spreadsheet with the throughput statistics of the stages.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;java.lang.String[]<br>
+ * &nbsp;&nbsp;&nbsp;java.io.File[]<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.spreadsheet.SpreadSheet<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: OpenCVPipelinedDetection
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseAnnotation&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow gets stopped in case this actor encounters an error;
+ * &nbsp;&nbsp;&nbsp; useful for critical actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-silent &lt;boolean&gt; (property: silent)
+ * &nbsp;&nbsp;&nbsp;If enabled, then no errors are output in the console.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-classifier &lt;adams.core.io.PlaceholderFile&gt; (property: classifier)
+ * &nbsp;&nbsp;&nbsp;Cascade classifier training data.
+ * &nbsp;&nbsp;&nbsp;default: ${CWD}
+ * </pre>
+ *
+ * <pre>-scale-factor &lt;double&gt; (property: scaleFactor)
+ * &nbsp;&nbsp;&nbsp;How much the image size is reduced at each image scale.
+ * &nbsp;&nbsp;&nbsp;default: 1.1
+ * &nbsp;&nbsp;&nbsp;minimum: 1.1
+ * </pre>
+ *
+ * <pre>-min-neighbors &lt;int&gt; (property: minNeighbors)
+ * &nbsp;&nbsp;&nbsp;How many neighbors each candidate rectangle should have to retain it.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-min-size &lt;int&gt; (property: minSize)
+ * &nbsp;&nbsp;&nbsp;Minimum possible object size. Objects smaller than that are ignored.
+ * &nbsp;&nbsp;&nbsp;default: 10
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-max-size &lt;int&gt; (property: maxSize)
+ * &nbsp;&nbsp;&nbsp;Maximum possible object size. Objects larger than that are ignored.
+ * &nbsp;&nbsp;&nbsp;default: 100
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-output-dir &lt;adams.core.io.PlaceholderDirectory&gt; (property: outputDir)
+ * &nbsp;&nbsp;&nbsp;The directory to write the detected objects to.
+ * &nbsp;&nbsp;&nbsp;default: ${CWD}
+ * </pre>
+ *
+ * <pre>-output-format &lt;java.lang.String&gt; (property: outputFormat)
+ * &nbsp;&nbsp;&nbsp;The image format (= extension, without dot) to use for the detected objects.
+ * &nbsp;&nbsp;&nbsp;default: png
+ * </pre>
+ *
+ * <pre>-read-threads &lt;int&gt; (property: readThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads for reading the files.
+ * &nbsp;&nbsp;&nbsp;default: 2
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-decode-threads &lt;int&gt; (property: decodeThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads for decoding the images.
+ * &nbsp;&nbsp;&nbsp;default: 2
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-detect-threads &lt;int&gt; (property: detectThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads for detecting the objects.
+ * &nbsp;&nbsp;&nbsp;default: 2
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-write-threads &lt;int&gt; (property: writeThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads for encoding and writing the detected objects.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-queue-size &lt;int&gt; (property: queueSize)
+ * &nbsp;&nbsp;&nbsp;The capacity of the queues between the stages.
+ * &nbsp;&nbsp;&nbsp;default: 32
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-timeout &lt;int&gt; (property: timeout)
+ * &nbsp;&nbsp;&nbsp;The maximum number of seconds to wait for the pipeline to finish; 0 for
+ * &nbsp;&nbsp;&nbsp;no limit.
+ * &nbsp;&nbsp;&nbsp;default: 0
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class OpenCVPipelinedDetection
+  extends AbstractTransformer {
+
+  private static final long serialVersionUID = -5140286651183524311L;
+
+  /** the stage for reading. */
+  public final static int STAGE_READ = 0;
+
+  /** the stage for decoding. */
+  public final static int STAGE_DECODE = 1;
+
+  /** the stage for detecting. */
+  public final static int STAGE_DETECT = 2;
+
+  /** the stage for writing. */
+  public final static int STAGE_WRITE = 3;
+
+  /** the names of the stages. */
+  public final static String[] STAGE_NAMES = {"read", "decode", "detect", "write"};
+
+  /**
+   * Container for an item travelling through the pipeline.
+   */
+  protected static class PipelineItem {
+
+    /** the image file. */
+    public File file;
+
+    /** the raw bytes. */
+    public byte[] data;
+
+    /** the decoded image. */
+    public Mat image;
+
+    /** the detected objects. */
+    public RectVector objects;
+  }
+
+  /**
+   * Statistics of a single stage.
+   */
+  protected static class StageStatistics {
+
+    /** the number of processed items. */
+    public AtomicInteger processed = new AtomicInteger();
+
+    /** the number of failed items. */
+    public AtomicInteger failed = new AtomicInteger();
+
+    /** the number of generated outputs. */
+    public AtomicInteger outputs = new AtomicInteger();
+
+    /** the time spent processing items (nano seconds, all threads). */
+    public AtomicLong busy = new AtomicLong();
+  }
+
+  /** the item signaling the end of the data. */
+  protected final static PipelineItem POISON = new PipelineItem();
+
+  /** the trained classifier file. */
+  protected PlaceholderFile m_Classifier;
+
+  /** how much the image size is reduced at each image scale. */
+  protected double m_ScaleFactor;
+
+  /** how many neighbors each candidate rectangle should have to retain it. */
+  protected int m_MinNeighbors;
+
+  /** minimum possible object size. */
+  protected int m_MinSize;
+
+  /** maximum possible object size. */
+  protected int m_MaxSize;
+
+  /** the output directory. */
+  protected PlaceholderDirectory m_OutputDir;
+
+  /** the output format. */
+  protected String m_OutputFormat;
+
+  /** the number of read threads. */
+  protected int m_ReadThreads;
+
+  /** the number of decode threads. */
+  protected int m_DecodeThreads;
+
+  /** the number of detect threads. */
+  protected int m_DetectThreads;
+
+  /** the number of write threads. */
+  protected int m_WriteThreads;
+
+  /** the queue size. */
+  protected int m_QueueSize;
+
+  /** the timeout in seconds (0 = no limit). */
+  protected int m_Timeout;
+
+  /** the executors of the stages. */
+  protected transient ExecutorService[] m_Executors;
+
+  /** the error that aborted the pipeline. */
+  protected transient volatile String m_PipelineError;
+
+  /** the time by which the pipeline has to finish (msec). */
+  protected transient volatile long m_Deadline;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return 			a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return
+      "Applies an OpenCV cascade classifier to a batch of image files and "
+	+ "writes the located objects as images to the output directory, using "
+	+ "a pipeline of four stages: reading the files, decoding the images, "
+	+ "detecting the objects and encoding/writing the detected objects.\n"
+	+ "Each stage has its own pool of threads and the stages are connected "
+	+ "via bounded queues, so that disk I/O, decoding and detection overlap. "
+	+ "The wall-clock time is therefore determined by the slowest stage "
+	+ "rather than by the sum of all stages.\n"
+	+ "The objects get stored as OUTPUTDIR/NAME-N.EXT, with NAME being the "
+	+ "name of the image file (without extension), N the index of the object "
+	+ "(1-based) and EXT the output format.\n"
+	+ "If a stage fails with an unrecoverable error or the timeout is exceeded, "
+	+ "the pipeline gets aborted.\n"
+	+ "Outputs a spreadsheet with the throughput statistics of the stages.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add("classifier", "classifier", new PlaceholderFile());
+    m_OptionManager.add("scale-factor", "scaleFactor", 1.1d, 1.1d, null);
+    m_OptionManager.add("min-neighbors", "minNeighbors", 1, 0, null);
+    m_OptionManager.add("min-size", "minSize", 10, 0, null);
+    m_OptionManager.add("max-size", "maxSize", 100, 0, null);
+    m_OptionManager.add("output-dir", "outputDir", new PlaceholderDirectory());
+    m_OptionManager.add("output-format", "outputFormat", "png");
+    m_OptionManager.add("read-threads", "readThreads", 2, 1, null);
+    m_OptionManager.add("decode-threads", "decodeThreads", 2, 1, null);
+    m_OptionManager.add("detect-threads", "detectThreads", 2, 1, null);
+    m_OptionManager.add("write-threads", "writeThreads", 1, 1, null);
+    m_OptionManager.add("queue-size", "queueSize", 32, 1, null);
+    m_OptionManager.add("timeout", "timeout", 0, 0, null);
+  }
+
+  /**
+   * Sets the trained classifier file.
+   *
+   * @param value	the file
+   */
+  public void setClassifier(PlaceholderFile value) {
+    m_Classifier = value;
+    reset();
+  }
+
+  /**
+   * Returns the trained classifier file.
+   *
+   * @return		the file
+   */
+  public PlaceholderFile getClassifier() {
+    return m_Classifier;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String classifierTipText() {
+    return "Cascade classifier training data.";
+  }
+
+  /**
+   * Sets how much the image size is reduced at each image scale.
+   *
+   * @param value	the scale factor
+   */
+  public void setScaleFactor(double value) {
+    if (getOptionManager().isValid("scaleFactor", value)) {
+      m_ScaleFactor = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns how much the image size is reduced at each image scale.
+   *
+   * @return		the scale factor
+   */
+  public double getScaleFactor() {
+    return m_ScaleFactor;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String scaleFactorTipText() {
+    return "How much the image size is reduced at each image scale.";
+  }
+
+  /**
+   * Sets how many neighbors each candidate rectangle should have to retain it.
+   *
+   * @param value	the number of neighbors
+   */
+  public void setMinNeighbors(int value) {
+    if (getOptionManager().isValid("minNeighbors", value)) {
+      m_MinNeighbors = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns how many neighbors each candidate rectangle should have to retain it.
+   *
+   * @return		the number of neighbors
+   */
+  public int getMinNeighbors() {
+    return m_MinNeighbors;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String minNeighborsTipText() {
+    return "How many neighbors each candidate rectangle should have to retain it.";
+  }
+
+  /**
+   * Sets the minimum possible object size.
+   *
+   * @param value	the size
+   */
+  public void setMinSize(int value) {
+    if (getOptionManager().isValid("minSize", value)) {
+      m_MinSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the minimum possible object size.
+   *
+   * @return		the size
+   */
+  public int getMinSize() {
+    return m_MinSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String minSizeTipText() {
+    return "Minimum possible object size. Objects smaller than that are ignored.";
+  }
+
+  /**
+   * Sets the maximum possible object size.
+   *
+   * @param value	the size
+   */
+  public void setMaxSize(int value) {
+    if (getOptionManager().isValid("maxSize", value)) {
+      m_MaxSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum possible object size.
+   *
+   * @return		the size
+   */
+  public int getMaxSize() {
+    return m_MaxSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxSizeTipText() {
+    return "Maximum possible object size. Objects larger than that are ignored.";
+  }
+
+  /**
+   * Sets the directory to write the detected objects to.
+   *
+   * @param value	the directory
+   */
+  public void setOutputDir(PlaceholderDirectory value) {
+    m_OutputDir = value;
+    reset();
+  }
+
+  /**
+   * Returns the directory to write the detected objects to.
+   *
+   * @return		the directory
+   */
+  public PlaceholderDirectory getOutputDir() {
+    return m_OutputDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String outputDirTipText() {
+    return "The directory to write the detected objects to.";
+  }
+
+  /**
+   * Sets the image format (= extension) for the detected objects.
+   *
+   * @param value	the format
+   */
+  public void setOutputFormat(String value) {
+    m_OutputFormat = value;
+    reset();
+  }
+
+  /**
+   * Returns the image format (= extension) for the detected objects.
+   *
+   * @return		the format
+   */
+  public String getOutputFormat() {
+    return m_OutputFormat;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String outputFormatTipText() {
+    return "The image format (= extension, without dot) to use for the detected objects.";
+  }
+
+  /**
+   * Sets the number of threads for reading the files.
+   *
+   * @param value	the number of threads
+   */
+  public void setReadThreads(int value) {
+    if (getOptionManager().isValid("readThreads", value)) {
+      m_ReadThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads for reading the files.
+   *
+   * @return		the number of threads
+   */
+  public int getReadThreads() {
+    return m_ReadThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String readThreadsTipText() {
+    return "The number of threads for reading the files.";
+  }
+
+  /**
+   * Sets the number of threads for decoding the images.
+   *
+   * @param value	the number of threads
+   */
+  public void setDecodeThreads(int value) {
+    if (getOptionManager().isValid("decodeThreads", value)) {
+      m_DecodeThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads for decoding the images.
+   *
+   * @return		the number of threads
+   */
+  public int getDecodeThreads() {
+    return m_DecodeThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String decodeThreadsTipText() {
+    return "The number of threads for decoding the images.";
+  }
+
+  /**
+   * Sets the number of threads for detecting the objects.
+   *
+   * @param value	the number of threads
+   */
+  public void setDetectThreads(int value) {
+    if (getOptionManager().isValid("detectThreads", value)) {
+      m_DetectThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads for detecting the objects.
+   *
+   * @return		the number of threads
+   */
+  public int getDetectThreads() {
+    return m_DetectThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String detectThreadsTipText() {
+    return "The number of threads for detecting the objects.";
+  }
+
+  /**
+   * Sets the number of threads for encoding and writing the objects.
+   *
+   * @param value	the number of threads
+   */
+  public void setWriteThreads(int value) {
+    if (getOptionManager().isValid("writeThreads", value)) {
+      m_WriteThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads for encoding and writing the objects.
+   *
+   * @return		the number of threads
+   */
+  public int getWriteThreads() {
+    return m_WriteThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String writeThreadsTipText() {
+    return "The number of threads for encoding and writing the detected objects.";
+  }
+
+  /**
+   * Sets the capacity of the queues between the stages.
+   *
+   * @param value	the capacity
+   */
+  public void setQueueSize(int value) {
+    if (getOptionManager().isValid("queueSize", value)) {
+      m_QueueSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the capacity of the queues between the stages.
+   *
+   * @return		the capacity
+   */
+  public int getQueueSize() {
+    return m_QueueSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String queueSizeTipText() {
+    return "The capacity of the queues between the stages.";
+  }
+
+  /**
+   * Sets the maximum number of seconds to wait for the pipeline to finish.
+   *
+   * @param value	the timeout in seconds, 0 for no limit
+   */
+  public void setTimeout(int value) {
+    if (getOptionManager().isValid("timeout", value)) {
+      m_Timeout = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of seconds to wait for the pipeline to finish.
+   *
+   * @return		the timeout in seconds, 0 for no limit
+   */
+  public int getTimeout() {
+    return m_Timeout;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String timeoutTipText() {
+    return "The maximum number of seconds to wait for the pipeline to finish; 0 for no limit.";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result  = QuickInfoHelper.toString(this, "classifier", m_Classifier, "classifier: ");
+    result += QuickInfoHelper.toString(this, "outputDir", m_OutputDir, ", output: ");
+    result += QuickInfoHelper.toString(this, "readThreads", m_ReadThreads, ", threads: ");
+    result += QuickInfoHelper.toString(this, "decodeThreads", m_DecodeThreads, "/");
+    result += QuickInfoHelper.toString(this, "detectThreads", m_DetectThreads, "/");
+    result += QuickInfoHelper.toString(this, "writeThreads", m_WriteThreads, "/");
+
+    return result;
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return		the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{String[].class, File[].class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the Class of objects that it generates
+   */
+  @Override
+  public Class[] generates() {
+    return new Class[]{SpreadSheet.class};
+  }
+
+  /**
+   * Initializes the item for flow execution.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    result = super.setUp();
+
+    if (result == null) {
+      if (m_Classifier.isDirectory())
+	result = "Classifier is pointing to a directory, not a file: " + m_Classifier;
+      else if (!m_Classifier.exists())
+	result = "Classifier file does not exist: " + m_Classifier;
+      else if (!m_OutputDir.isDirectory())
+	result = "Output directory does not exist: " + m_OutputDir;
+    }
+
+    return result;
+  }
+
+  /**
+   * Starts the workers of a stage. The last worker to finish passes on
+   * the end of the data to the next stage (if any).
+   *
+   * @param stage	the stage index
+   * @param numThreads	the number of workers
+   * @param input	the input queue
+   * @param output	the output queue, null if last stage
+   * @param numNext	the number of workers in the next stage
+   * @param stats	the statistics of the stage
+   * @return		the executor running the workers
+   */
+  protected ExecutorService startStage(final int stage, final int numThreads, final BlockingQueue<PipelineItem> input, final BlockingQueue<PipelineItem> output, final int numNext, final StageStatistics stats) {
+    ExecutorService		result;
+    final AtomicInteger		running;
+    final ThreadLocal<CascadeClassifier> classifier;
+    int				i;
+
+    result     = Executors.newFixedThreadPool(numThreads);
+    running    = new AtomicInteger(numThreads);
+    classifier = new ThreadLocal<>();
+    for (i = 0; i < numThreads; i++) {
+      result.submit(() -> {
+	PipelineItem item;
+	long start;
+	boolean passed;
+	int j;
+	try {
+	  while (!isAborted()) {
+	    item = input.take();
+	    if (item == POISON)
+	      break;
+	    start  = System.nanoTime();
+	    passed = false;
+	    try {
+	      if (process(stage, item, classifier, stats)) {
+		stats.processed.incrementAndGet();
+		if (output != null) {
+		  output.put(item);
+		  passed = true;
+		}
+	      }
+	      else {
+		stats.failed.incrementAndGet();
+	      }
+	    }
+	    catch (InterruptedException e) {
+	      throw e;
+	    }
+	    catch (Exception e) {
+	      stats.failed.incrementAndGet();
+	      getLogger().log(Level.SEVERE, "Stage '" + STAGE_NAMES[stage] + "' failed on: " + item.file, e);
+	    }
+	    finally {
+	      // emitted, failed or not passed on: free the native memory
+	      if (!passed)
+		release(item);
+	    }
+	    stats.busy.addAndGet(System.nanoTime() - start);
+	  }
+	}
+	catch (InterruptedException e) {
+	  // stopped
+	}
+	catch (Throwable t) {
+	  m_PipelineError = "Stage '" + STAGE_NAMES[stage] + "' failed: " + t;
+	  getLogger().log(Level.SEVERE, "Stage '" + STAGE_NAMES[stage] + "' failed!", t);
+	}
+	finally {
+	  // the last worker passes on the end of the data, no matter how it exited
+	  if ((running.decrementAndGet() == 0) && (output != null)) {
+	    try {
+	      for (j = 0; j < numNext; j++) {
+		if (!enqueue(output, POISON))
+		  break;
+	      }
+	    }
+	    catch (InterruptedException e) {
+	      // stopped
+	    }
+	  }
+	}
+      });
+    }
+    result.shutdown();
+
+    return result;
+  }
+
+  /**
+   * Processes the item in the specified stage. Native objects allocated
+   * for the item are released by the caller via {@link #release(PipelineItem)}
+   * once the item does not get passed on to the next stage.
+   *
+   * @param stage	the stage to execute
+   * @param item	the item to process
+   * @param classifier	the per-thread classifier (detect stage)
+   * @param stats	the statistics of the stage
+   * @return		true if successfully processed and to pass on
+   * @throws Exception	if processing fails
+   */
+  protected boolean process(int stage, PipelineItem item, ThreadLocal<CascadeClassifier> classifier, StageStatistics stats) throws Exception {
+    BytePointer	pointer;
+    Mat		buffer;
+    Mat		gray;
+    Size	minSize;
+    Size	maxSize;
+    Rect	rect;
+    Mat		crop;
+    String	prefix;
+    String	name;
+    long	i;
+
+    switch (stage) {
+      case STAGE_READ:
+	item.data = Files.readAllBytes(item.file.toPath());
+	stats.outputs.incrementAndGet();
+	return true;
+
+      case STAGE_DECODE:
+	pointer = new BytePointer(item.data);
+	buffer  = new Mat(1, item.data.length, opencv_core.CV_8UC1, pointer);
+	try {
+	  item.image = opencv_imgcodecs.imdecode(buffer, opencv_imgcodecs.IMREAD_COLOR);
+	  item.data  = null;
+	}
+	finally {
+	  buffer.release();
+	  pointer.deallocate();
+	}
+	if (item.image.empty()) {
+	  getLogger().severe("Failed to decode: " + item.file);
+	  return false;
+	}
+	stats.outputs.incrementAndGet();
+	return true;
+
+      case STAGE_DETECT:
+	if (classifier.get() == null)
+	  classifier.set(new CascadeClassifier(m_Classifier.getAbsolutePath()));
+	gray    = new Mat();
+	minSize = new Size(m_MinSize, m_MinSize);
+	maxSize = new Size(m_MaxSize, m_MaxSize);
+	try {
+	  opencv_imgproc.cvtColor(item.image, gray, opencv_imgproc.COLOR_BGR2GRAY);
+	  item.objects = new RectVector();
+	  classifier.get().detectMultiScale(gray, item.objects, m_ScaleFactor, m_MinNeighbors, 0, minSize, maxSize);
+	}
+	finally {
+	  gray.release();
+	  minSize.deallocate();
+	  maxSize.deallocate();
+	}
+	stats.outputs.addAndGet((int) item.objects.size());
+	return true;
+
+      case STAGE_WRITE:
+	name = item.file.getName();
+	if (name.lastIndexOf('.') > -1)
+	  name = name.substring(0, name.lastIndexOf('.'));
+	prefix = m_OutputDir.getAbsolutePath() + File.separator + name + "-";
+	for (i = 0; i < item.objects.size(); i++) {
+	  rect = item.objects.get(i);
+	  crop = new Mat(item.image, rect);
+	  try {
+	    if (!opencv_imgcodecs.imwrite(prefix + (i + 1) + "." + m_OutputFormat, crop))
+	      throw new IllegalStateException("Failed to write object #" + (i + 1));
+	  }
+	  finally {
+	    crop.release();
+	    rect.deallocate();
+	  }
+	  stats.outputs.incrementAndGet();
+	}
+	return true;
+
+      default:
+	throw new IllegalStateException("Unhandled stage: " + stage);
+    }
+  }
+
+  /**
+   * Releases the native memory of the item (decoded image and detected
+   * objects).
+   *
+   * @param item	the item to release
+   */
+  protected void release(PipelineItem item) {
+    item.data = null;
+    if (item.image != null) {
+      item.image.release();
+      item.image = null;
+    }
+    if (item.objects != null) {
+      item.objects.deallocate();
+      item.objects = null;
+    }
+  }
+
+  /**
+   * Releases the items that are still waiting in the queues, e.g., after
+   * the pipeline got aborted.
+   *
+   * @param queues	the queues to empty
+   */
+  protected void release(BlockingQueue<PipelineItem>[] queues) {
+    PipelineItem	item;
+
+    for (BlockingQueue<PipelineItem> queue: queues) {
+      while ((item = queue.poll()) != null) {
+	if (item != POISON)
+	  release(item);
+      }
+    }
+  }
+
+  /**
+   * Generates the statistics spreadsheet.
+   *
+   * @param stats	the statistics of the stages
+   * @param threads	the number of threads per stage
+   * @param numFiles	the number of files
+   * @param wallClock	the wall-clock time in nano seconds
+   * @return		the spreadsheet
+   */
+  protected SpreadSheet toSpreadSheet(StageStatistics[] stats, int[] threads, int numFiles, long wallClock) {
+    SpreadSheet	result;
+    Row		row;
+    double	msec;
+    int		i;
+
+    result = new DefaultSpreadSheet();
+    row    = result.getHeaderRow();
+    row.addCell("S").setContentAsString("Stage");
+    row.addCell("T").setContentAsString("Threads");
+    row.addCell("P").setContentAsString("Processed");
+    row.addCell("F").setContentAsString("Failed");
+    row.addCell("O").setContentAsString("Outputs");
+    row.addCell("B").setContentAsString("Time (msec)");
+    row.addCell("R").setContentAsString("Throughput (items/sec)");
+
+    for (i = 0; i < stats.length; i++) {
+      // average busy time per thread
+      msec = stats[i].busy.get() / 1000000.0 / threads[i];
+      row  = result.addRow();
+      row.addCell("S").setContentAsString(STAGE_NAMES[i]);
+      row.addCell("T").setContent(threads[i]);
+      row.addCell("P").setContent(stats[i].processed.get());
+      row.addCell("F").setContent(stats[i].failed.get());
+      row.addCell("O").setContent(stats[i].outputs.get());
+      row.addCell("B").setContent(msec);
+      row.addCell("R").setContent(msec > 0 ? stats[i].processed.get() / msec * 1000.0 : 0.0);
+    }
+
+    msec = wallClock / 1000000.0;
+    row  = result.addRow();
+    row.addCell("S").setContentAsString("total");
+    row.addCell("T").setContent(threads[0] + threads[1] + threads[2] + threads[3]);
+    row.addCell("P").setContent(stats[STAGE_WRITE].processed.get());
+    row.addCell("F").setContent(numFiles - stats[STAGE_WRITE].processed.get());
+    row.addCell("O").setContent(stats[STAGE_WRITE].outputs.get());
+    row.addCell("B").setContent(msec);
+    row.addCell("R").setContent(msec > 0 ? stats[STAGE_WRITE].processed.get() / msec * 1000.0 : 0.0);
+
+    return result;
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String				result;
+    File[]				files;
+    String[]				names;
+    int[]				threads;
+    StageStatistics[]			stats;
+    BlockingQueue<PipelineItem>[]	queues;
+    PipelineItem			item;
+    long				start;
+    boolean				finished;
+    int					i;
+
+    result          = null;
+    m_PipelineError = null;
+    m_Deadline      = (m_Timeout > 0) ? System.currentTimeMillis() + m_Timeout * 1000L : Long.MAX_VALUE;
+
+    if (m_InputToken.getPayload() instanceof String[]) {
+      names = (String[]) m_InputToken.getPayload();
+      files = new File[names.length];
+      for (i = 0; i < names.length; i++)
+	files[i] = new PlaceholderFile(names[i]).getAbsoluteFile();
+    }
+    else {
+      files = (File[]) m_InputToken.getPayload();
+    }
+
+    threads = new int[]{m_ReadThreads, m_DecodeThreads, m_DetectThreads, m_WriteThreads};
+    stats   = new StageStatistics[STAGE_NAMES.length];
+    queues  = new BlockingQueue[STAGE_NAMES.length];
+    for (i = 0; i < STAGE_NAMES.length; i++) {
+      stats[i]  = new StageStatistics();
+      queues[i] = new ArrayBlockingQueue<>(m_QueueSize);
+    }
+
+    start       = System.nanoTime();
+    m_Executors = new ExecutorService[STAGE_NAMES.length];
+    for (i = 0; i < STAGE_NAMES.length; i++)
+      m_Executors[i] = startStage(i, threads[i], queues[i], (i < STAGE_NAMES.length - 1) ? queues[i + 1] : null, (i < STAGE_NAMES.length - 1) ? threads[i + 1] : 0, stats[i]);
+
+    finished = false;
+    try {
+      for (File file: files) {
+	item      = new PipelineItem();
+	item.file = file;
+	if (!enqueue(queues[STAGE_READ], item))
+	  break;
+      }
+      for (i = 0; i < m_ReadThreads; i++) {
+	if (!enqueue(queues[STAGE_READ], POISON))
+	  break;
+      }
+      finished = true;
+      for (i = 0; i < m_Executors.length; i++) {
+	while (!m_Executors[i].awaitTermination(100, TimeUnit.MILLISECONDS)) {
+	  if (isAborted()) {
+	    finished = false;
+	    break;
+	  }
+	}
+	if (!finished)
+	  break;
+      }
+    }
+    catch (InterruptedException e) {
+      result = handleException("Interrupted while waiting for pipeline to finish!", e);
+    }
+
+    if (!finished || (result != null))
+      shutdownExecutors();
+    m_Executors = null;
+    // workers interrupted while passing on an item release it themselves
+    release(queues);
+
+    if ((result == null) && !isStopped()) {
+      if (m_PipelineError != null)
+	result = m_PipelineError;
+      else if (!finished)
+	result = "Pipeline did not finish within " + m_Timeout + " second(s)!";
+    }
+
+    if (result == null)
+      m_OutputToken = new Token(toSpreadSheet(stats, threads, files.length, System.nanoTime() - start));
+
+    return result;
+  }
+
+  /**
+   * Adds the item to the queue, waiting for space to become available.
+   *
+   * @param queue	the queue to add to
+   * @param item	the item to add
+   * @return		true if added, false if the pipeline got aborted
+   * @throws InterruptedException	if interrupted while waiting
+   */
+  protected boolean enqueue(BlockingQueue<PipelineItem> queue, PipelineItem item) throws InterruptedException {
+    while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+      if (isAborted())
+	return false;
+    }
+    return !isAborted();
+  }
+
+  /**
+   * Checks whether the pipeline should be aborted, i.e., whether the flow
+   * got stopped, a stage failed or the timeout was exceeded.
+   *
+   * @return		true if to abort
+   */
+  protected boolean isAborted() {
+    return isStopped() || (m_PipelineError != null) || (System.currentTimeMillis() > m_Deadline);
+  }
+
+  /**
+   * Shuts down any running executors.
+   */
+  protected void shutdownExecutors() {
+    if (m_Executors == null)
+      return;
+    for (ExecutorService executor: m_Executors) {
+      if (executor != null)
+	executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Stops the execution. No message set.
+   */
+  @Override
+  public void stopExecution() {
+    shutdownExecutors();
+    super.stopExecution();
+  }
+}
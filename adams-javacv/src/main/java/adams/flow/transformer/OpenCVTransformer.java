@@ -24,7 +24,9 @@ import adams.core.QuickInfoHelper;
 import adams.data.image.AbstractImageContainer;
 import adams.data.opencv.OpenCVHelper;
 import adams.data.opencv.OpenCVImageContainer;
+import adams.data.opencv.ScriptObjectCache;
 import adams.data.opencv.transformer.AbstractOpenCVTransformer;
+import adams.data.opencv.transformer.AbstractScriptedTransformer;
 import adams.flow.core.Token;
 
 import java.util.ArrayList;
@@ -294,4 +296,15 @@ public class OpenCVTransformer
 
     super.wrapUp();
   }
+
+  /**
+   * Frees up memory in a "destructive" non-reversible way.
+   */
+  @Override
+  public void cleanUp() {
+    if (m_TransformAlgorithm instanceof AbstractScriptedTransformer)
+      ScriptObjectCache.remove(((AbstractScriptedTransformer) m_TransformAlgorithm).getScriptFile());
+
+    super.cleanUp();
+  }
 }
@@ -0,0 +1,261 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatchTemplateTest.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.opencv.transformer;
+
+import adams.core.io.PlaceholderFile;
+import adams.core.io.TmpFile;
+import adams.data.opencv.OpenCVHelper;
+import adams.data.opencv.OpenCVImageContainer;
+import adams.data.opencv.transformer.MatchTemplate.OutputType;
+import adams.data.opencv.transformer.MatchTemplate.TemplateMatch;
+import adams.data.report.Report;
+import adams.env.Environment;
+import adams.test.AdamsTestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests the MatchTemplate transformer, using a noise image with the template
+ * cut out at a known location.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class MatchTemplateTest
+  extends AdamsTestCase {
+
+  /** the name of the template file. */
+  public final static String TEMPLATE = "matchtemplate.png";
+
+  /** the x coordinate of the template. */
+  public final static int TEMPLATE_X = 120;
+
+  /** the y coordinate of the template. */
+  public final static int TEMPLATE_Y = 40;
+
+  /** the width of the template. */
+  public final static int TEMPLATE_WIDTH = 24;
+
+  /** the height of the template. */
+  public final static int TEMPLATE_HEIGHT = 20;
+
+  /** the image to search. */
+  protected BufferedImage m_Image;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public MatchTemplateTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception	if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    Random	rnd;
+    int		x;
+    int		y;
+    int		gray;
+
+    super.setUp();
+
+    rnd     = new Random(42);
+    m_Image = new BufferedImage(200, 150, BufferedImage.TYPE_3BYTE_BGR);
+    for (y = 0; y < m_Image.getHeight(); y++) {
+      for (x = 0; x < m_Image.getWidth(); x++) {
+	gray = rnd.nextInt(256);
+	m_Image.setRGB(x, y, (gray << 16) | (gray << 8) | gray);
+      }
+    }
+    ImageIO.write(
+      m_Image.getSubimage(TEMPLATE_X, TEMPLATE_Y, TEMPLATE_WIDTH, TEMPLATE_HEIGHT),
+      "png", new TmpFile(TEMPLATE).getAbsoluteFile());
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception	if tear-down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    new TmpFile(TEMPLATE).getAbsoluteFile().delete();
+    m_Image = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Creates the transformer.
+   *
+   * @param scale	the search scale
+   * @param type	the output type
+   * @return		the transformer
+   */
+  protected MatchTemplate newTransformer(double scale, OutputType type) {
+    MatchTemplate	result;
+
+    result = new MatchTemplate();
+    result.setTemplates(new PlaceholderFile[]{new TmpFile(TEMPLATE)});
+    result.setSearchScale(scale);
+    result.setMinScore(0.9);
+    result.setOutputType(type);
+
+    return result;
+  }
+
+  /**
+   * Locates the template and checks the report.
+   *
+   * @param scale	the search scale
+   */
+  protected void checkReport(double scale) {
+    MatchTemplate		transformer;
+    OpenCVImageContainer[]	output;
+    Report			report;
+
+    transformer = newTransformer(scale, OutputType.REPORT);
+    output      = transformer.transform(OpenCVHelper.toOpenCVImageContainer(m_Image));
+    transformer.destroy();
+
+    assertEquals("number of images", 1, output.length);
+    report = output[0].getReport();
+    assertEquals("number of matches", 1.0, report.getDoubleValue("Match." + MatchTemplate.REPORT_KEY_COUNT), 0.0);
+    assertEquals("x", TEMPLATE_X, report.getDoubleValue("Match.1." + MatchTemplate.REPORT_KEY_X), 0.0);
+    assertEquals("y", TEMPLATE_Y, report.getDoubleValue("Match.1." + MatchTemplate.REPORT_KEY_Y), 0.0);
+    assertEquals("width", TEMPLATE_WIDTH, report.getDoubleValue("Match.1." + MatchTemplate.REPORT_KEY_WIDTH), 0.0);
+    assertEquals("height", TEMPLATE_HEIGHT, report.getDoubleValue("Match.1." + MatchTemplate.REPORT_KEY_HEIGHT), 0.0);
+    assertTrue("score", report.getDoubleValue("Match.1." + MatchTemplate.REPORT_KEY_SCORE) > 0.99);
+  }
+
+  /**
+   * Tests locating the template at full resolution.
+   */
+  public void testLocate() {
+    checkReport(1.0);
+  }
+
+  /**
+   * Tests locating the template at half the resolution, with refinement at
+   * full resolution.
+   */
+  public void testLocateReduced() {
+    checkReport(0.5);
+  }
+
+  /**
+   * Tests the output of the cropped region.
+   */
+  public void testROI() {
+    MatchTemplate		transformer;
+    OpenCVImageContainer[]	output;
+    BufferedImage		roi;
+
+    transformer = newTransformer(1.0, OutputType.ROIS);
+    output      = transformer.transform(OpenCVHelper.toOpenCVImageContainer(m_Image));
+    transformer.destroy();
+
+    assertEquals("number of regions", 1, output.length);
+    roi = OpenCVHelper.toBufferedImage(output[0].getImage());
+    assertEquals("width", TEMPLATE_WIDTH, roi.getWidth());
+    assertEquals("height", TEMPLATE_HEIGHT, roi.getHeight());
+    assertEquals("top-left pixel", m_Image.getRGB(TEMPLATE_X, TEMPLATE_Y) & 0xFFFFFF, roi.getRGB(0, 0) & 0xFFFFFF);
+    assertEquals("x", TEMPLATE_X, output[0].getReport().getDoubleValue(MatchTemplate.REPORT_KEY_X), 0.0);
+  }
+
+  /**
+   * Creates a match.
+   *
+   * @param x		the x coordinate
+   * @param y		the y coordinate
+   * @param score	the score
+   * @return		the match
+   */
+  protected TemplateMatch newMatch(int x, int y, double score) {
+    TemplateMatch	result;
+
+    result        = new TemplateMatch();
+    result.x      = x;
+    result.y      = y;
+    result.width  = 10;
+    result.height = 10;
+    result.score  = score;
+
+    return result;
+  }
+
+  /**
+   * Tests the non-maximum suppression of overlapping matches.
+   */
+  public void testSuppress() {
+    MatchTemplate	transformer;
+    List<TemplateMatch>	matches;
+    List<TemplateMatch>	suppressed;
+
+    matches = new ArrayList<>();
+    matches.add(newMatch(0, 0, 0.8));
+    matches.add(newMatch(50, 50, 0.95));
+    matches.add(newMatch(50, 50, 0.95));   // duplicate from refinement
+    matches.add(newMatch(52, 51, 0.9));    // overlaps by more than 50%
+    matches.add(newMatch(57, 50, 0.85));   // overlaps by less than 50%
+
+    transformer = new MatchTemplate();
+    assertEquals("overlap of duplicates", 1.0, matches.get(1).overlap(matches.get(2)), 1e-9);
+    assertEquals("no overlap", 0.0, matches.get(0).overlap(matches.get(1)), 1e-9);
+    suppressed = transformer.suppress(matches);
+
+    assertEquals("number of matches", 3, suppressed.size());
+    assertEquals("best score", 0.95, suppressed.get(0).score, 1e-9);
+    assertEquals("second", 57, suppressed.get(1).x);
+    assertEquals("third", 0, suppressed.get(2).x);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(MatchTemplateTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    Environment.setEnvironmentClass(Environment.class);
+    runTest(suite());
+  }
+}
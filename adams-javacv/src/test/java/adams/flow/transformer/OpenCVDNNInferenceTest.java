@@ -0,0 +1,380 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * OpenCVDNNInferenceTest.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.transformer;
+
+import adams.core.io.PlaceholderFile;
+import adams.core.io.TmpFile;
+import adams.data.image.AbstractImageContainer;
+import adams.data.io.input.OpenCVImageReader;
+import adams.data.opencv.OpenCVImageContainer;
+import adams.data.spreadsheet.SpreadSheet;
+import adams.env.Environment;
+import adams.flow.AbstractFlowTest;
+import adams.flow.control.Flow;
+import adams.flow.core.Actor;
+import adams.flow.core.Token;
+import adams.flow.sink.AbstractSink;
+import adams.flow.source.AbstractSource;
+import adams.flow.transformer.OpenCVDNNInference.OutputType;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the OpenCVDNNInference actor.
+ * <br><br>
+ * Uses a tiny ONNX model (dnn_gap.onnx) that consists of a single
+ * GlobalAveragePool node, turning an Nx3x8x8 input into Nx3x1x1, i.e., the
+ * "class scores" are the mean values of the B, G and R channels.
+ *
+ * @author  fracpete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class OpenCVDNNInferenceTest
+  extends AbstractFlowTest {
+
+  /** the number of images to use. */
+  public final static int NUM_IMAGES = 10;
+
+  /** the batch size to use. */
+  public final static int BATCH_SIZE = 4;
+
+  /**
+   * Source that reads the images and outputs them one by one, optionally
+   * followed by an empty array to flush the partial batch.
+   */
+  public static class Supplier
+    extends AbstractSource {
+
+    private static final long serialVersionUID = 3093427455120488471L;
+
+    /** the images to read. */
+    protected PlaceholderFile[] m_Files = new PlaceholderFile[0];
+
+    /** whether to output an empty array at the end. */
+    protected boolean m_EndMarker = true;
+
+    /** the tokens to output. */
+    protected List<Object> m_Queue = new ArrayList<>();
+
+    @Override
+    public String globalInfo() {
+      return "Outputs the images, followed by an empty array.";
+    }
+
+    /**
+     * Sets the images to read.
+     *
+     * @param value	the files
+     */
+    public void setFiles(PlaceholderFile[] value) {
+      m_Files = value;
+    }
+
+    /**
+     * Sets whether to output an empty array at the end.
+     *
+     * @param value	true if to output the marker
+     */
+    public void setEndMarker(boolean value) {
+      m_EndMarker = value;
+    }
+
+    @Override
+    public Class[] generates() {
+      return new Class[]{AbstractImageContainer.class, AbstractImageContainer[].class};
+    }
+
+    @Override
+    protected String doExecute() {
+      OpenCVImageReader	reader;
+
+      reader = new OpenCVImageReader();
+      for (PlaceholderFile file: m_Files)
+	m_Queue.add(reader.read(file));
+      if (m_EndMarker)
+	m_Queue.add(new AbstractImageContainer[0]);
+
+      return null;
+    }
+
+    @Override
+    public boolean hasPendingOutput() {
+      return (m_Queue.size() > 0);
+    }
+
+    @Override
+    public Token output() {
+      return new Token(m_Queue.remove(0));
+    }
+  }
+
+  /**
+   * Sink that collects the payloads.
+   */
+  public static class Collector
+    extends AbstractSink {
+
+    private static final long serialVersionUID = -1717357163612584541L;
+
+    /** the collected payloads. */
+    protected List<Object> m_Collected = new ArrayList<>();
+
+    @Override
+    public String globalInfo() {
+      return "Collects the payloads.";
+    }
+
+    @Override
+    public Class[] accepts() {
+      return new Class[]{Object.class};
+    }
+
+    @Override
+    protected String doExecute() {
+      m_Collected.add(m_InputToken.getPayload());
+      return null;
+    }
+
+    /**
+     * Returns the collected payloads.
+     *
+     * @return		the payloads
+     */
+    public List<Object> getCollected() {
+      return m_Collected;
+    }
+  }
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public OpenCVDNNInferenceTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the filename of the i-th test image.
+   *
+   * @param i		the index of the image
+   * @return		the filename
+   */
+  protected String getImageName(int i) {
+    return "dnn-" + i + ".png";
+  }
+
+  /**
+   * Returns whether the i-th test image is blue (otherwise red).
+   *
+   * @param i		the index of the image
+   * @return		true if blue
+   */
+  protected boolean isBlue(int i) {
+    return (i % 3 == 0);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception	if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    BufferedImage	img;
+    Graphics2D		g;
+    int			i;
+
+    super.setUp();
+
+    m_TestHelper.copyResourceToTmp("dnn_gap.onnx");
+    for (i = 0; i < NUM_IMAGES; i++) {
+      img = new BufferedImage(16, 16, BufferedImage.TYPE_3BYTE_BGR);
+      g   = img.createGraphics();
+      g.setColor(isBlue(i) ? Color.BLUE : Color.RED);
+      g.fillRect(0, 0, img.getWidth(), img.getHeight());
+      g.dispose();
+      ImageIO.write(img, "png", new TmpFile(getImageName(i)).getAbsoluteFile());
+    }
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception	if tear-down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    int		i;
+
+    m_TestHelper.deleteFileFromTmp("dnn_gap.onnx");
+    for (i = 0; i < NUM_IMAGES; i++)
+      m_TestHelper.deleteFileFromTmp(getImageName(i));
+
+    super.tearDown();
+  }
+
+  /**
+   * Creates the flow.
+   *
+   * @param type	the output type
+   * @param endMarker	whether to flush the partial batch with an empty array
+   * @param sink	the sink to use
+   * @return		the flow
+   */
+  protected Flow createFlow(OutputType type, boolean endMarker, Collector sink) {
+    Flow			result;
+    Supplier			supplier;
+    OpenCVDNNInference		dnn;
+    PlaceholderFile[]		images;
+    int				i;
+
+    images = new PlaceholderFile[NUM_IMAGES];
+    for (i = 0; i < NUM_IMAGES; i++)
+      images[i] = new TmpFile(getImageName(i));
+    supplier = new Supplier();
+    supplier.setFiles(images);
+    supplier.setEndMarker(endMarker);
+
+    dnn = new OpenCVDNNInference();
+    dnn.setModel(new TmpFile("dnn_gap.onnx"));
+    dnn.setWidth(8);
+    dnn.setHeight(8);
+    dnn.setScaleFactor(1.0);
+    dnn.setSwapRB(false);
+    dnn.setBatchSize(BATCH_SIZE);
+    dnn.setFlushTimeout(0);
+    dnn.setOutputType(type);
+
+    result = new Flow();
+    result.setActors(new Actor[]{supplier, dnn, sink});
+
+    return result;
+  }
+
+  /**
+   * Runs the flow.
+   *
+   * @param flow	the flow to execute
+   */
+  protected void run(Flow flow) {
+    assertNull("setUp failed", flow.setUp());
+    assertNull("execute failed", flow.execute());
+    flow.wrapUp();
+    flow.cleanUp();
+  }
+
+  /**
+   * Tests the report output, including the partial batch that gets flushed
+   * by the empty array at the end.
+   */
+  public void testReport() {
+    Collector			sink;
+    OpenCVImageContainer	cont;
+    int				i;
+
+    sink = new Collector();
+    run(createFlow(OutputType.REPORT, true, sink));
+
+    assertEquals("number of images", NUM_IMAGES, sink.getCollected().size());
+    for (i = 0; i < NUM_IMAGES; i++) {
+      cont = (OpenCVImageContainer) sink.getCollected().get(i);
+      assertEquals(
+	"top class of image #" + (i+1),
+	isBlue(i) ? 0.0 : 2.0,
+	cont.getReport().getDoubleValue("DNN." + OpenCVDNNInference.SUFFIX_CLASS + "1"), 0.0);
+    }
+  }
+
+  /**
+   * Tests the spreadsheet output, including the partial batch that gets
+   * flushed by the empty array at the end.
+   */
+  public void testSpreadSheet() {
+    Collector	sink;
+    SpreadSheet	sheet;
+    int		rows;
+    int		i;
+
+    sink = new Collector();
+    run(createFlow(OutputType.SPREADSHEET, true, sink));
+
+    assertEquals("number of batches", (NUM_IMAGES + BATCH_SIZE - 1) / BATCH_SIZE, sink.getCollected().size());
+    rows = 0;
+    for (Object obj: sink.getCollected()) {
+      sheet = (SpreadSheet) obj;
+      for (i = 0; i < sheet.getRowCount(); i++) {
+	rows++;
+	assertEquals("running number", rows, sheet.getRow(i).getCell(0).toDouble(), 0.0);
+      }
+    }
+    assertEquals("number of rows", NUM_IMAGES, rows);
+  }
+
+  /**
+   * Tests that the partial batch does not get output without the empty
+   * array at the end (flush timeout is off).
+   */
+  public void testWithoutEndMarker() {
+    Collector	sink;
+
+    sink = new Collector();
+    run(createFlow(OutputType.REPORT, false, sink));
+
+    assertEquals("number of images", NUM_IMAGES - (NUM_IMAGES % BATCH_SIZE), sink.getCollected().size());
+  }
+
+  /**
+   * Used to create an instance of a specific actor.
+   *
+   * @return a suitably configured <code>Actor</code> value
+   */
+  @Override
+  public Actor getActor() {
+    return createFlow(OutputType.REPORT, true, new Collector());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(OpenCVDNNInferenceTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    Environment.setEnvironmentClass(Environment.class);
+    runTest(suite());
+  }
+}